@@ -7,7 +7,10 @@ import au.edu.wehi.idsv.sam.CigarUtil;
 import au.edu.wehi.idsv.sam.SAMFileUtil;
 import au.edu.wehi.idsv.sam.SAMRecordUtil;
 import au.edu.wehi.idsv.sam.SamTags;
+import au.edu.wehi.idsv.util.BatchingIterator;
+import au.edu.wehi.idsv.util.DuplicatingIterable;
 import au.edu.wehi.idsv.util.FileHelper;
+import au.edu.wehi.idsv.util.FlatMapIterator;
 import au.edu.wehi.idsv.visualisation.AssemblyTelemetry;
 import com.google.common.base.Stopwatch;
 import com.google.common.collect.Lists;
@@ -17,15 +20,19 @@ import gridss.cmdline.CommandLineProgramHelper;
 import htsjdk.samtools.*;
 import htsjdk.samtools.SAMFileHeader.SortOrder;
 import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.samtools.util.InflatedBlockCache;
 import htsjdk.samtools.util.Log;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * Structural variant supporting contigs generated from assembly
@@ -47,6 +54,22 @@ public class AssemblyEvidenceSource extends SAMEvidenceSource {
 	private int cachedMaxReadMappedLength = -1;
 	private AssemblyTelemetry telemetry;
 	private SAMFileHeader header;
+	/**
+	 * Number of evidence records per batch shared between the forward and backward assemblers
+	 */
+	private static final int BIDIRECTIONAL_BATCH_SIZE = 256;
+	/**
+	 * Maximum number of batches one direction can get ahead of the other
+	 */
+	private static final int BIDIRECTIONAL_BATCH_COUNT = 16;
+	/**
+	 * Minimum multiple of the median chunk cost before an assembly chunk is split into sub-chunks
+	 */
+	private static final double SUBCHUNK_SPLIT_THRESHOLD = 4;
+	/**
+	 * Minimum size of an assembly sub-chunk as a multiple of the chunk padding
+	 */
+	private static final int MIN_SUBCHUNK_PADDING_MULTIPLE = 32;
 	/**
 	 * Generates assembly evidence based on the given evidence
 	 * @param evidence evidence for creating assembly
@@ -92,18 +115,68 @@ public class AssemblyEvidenceSource extends SAMEvidenceSource {
 		}
 		List<QueryInterval[]> chunks = getContext().getReference().getIntervals(getContext().getConfig().chunkSize, getContext().getConfig().chunkSequenceChangePenalty);
 		List<File> assembledChunk = new ArrayList<>();
-		List<Future<Void>> tasks = new ArrayList<>();
+		List<Integer> pending = new ArrayList<>();
 		for (int i = 0; i < chunks.size(); i++) {
 			if (i % jobNodes == jobNodeIndex) {
-				QueryInterval[] chunk = chunks.get(i);
 				File f = getContext().getFileSystemContext().getAssemblyChunkBam(getFile(), i);
-				int chunkNumber = i;
 				assembledChunk.add(f);
 				if (!f.exists()) {
+					pending.add(i);
+				}
+			}
+		}
+		List<Future<Void>> tasks = new ArrayList<>();
+		try (ChunkCostEstimator estimator = new ChunkCostEstimator(gridss.Defaults.ADAPTIVE_CHUNK_SCHEDULING ? source : Collections.emptyList())) {
+			long[] cost = new long[pending.size()];
+			int[] order = IntStream.range(0, pending.size()).toArray();
+			if (estimator.canEstimate()) {
+				for (int j = 0; j < pending.size(); j++) {
+					cost[j] = estimator.estimate(chunks.get(pending.get(j)));
+				}
+				// Expensive chunks are scheduled first so they are not left running
+				// on a single thread after all the other chunks have completed
+				order = ChunkCostEstimator.longestFirst(cost);
+			}
+			long typicalCost = ChunkCostEstimator.median(cost);
+			for (int j : order) {
+				int chunkNumber = pending.get(j);
+				QueryInterval[] chunk = chunks.get(chunkNumber);
+				File f = getContext().getFileSystemContext().getAssemblyChunkBam(getFile(), chunkNumber);
+				String contigNamePrefix = String.format(getContext().getConfig().getAssembly().contigNamePrefix, chunkNumber);
+				int parts = estimator.canEstimate() ? ChunkCostEstimator.getSplitCount(cost[j], typicalCost, SUBCHUNK_SPLIT_THRESHOLD, gridss.Defaults.ADAPTIVE_CHUNK_MAX_SPLIT) : 1;
+				List<QueryInterval[]> subchunks = parts > 1 ? estimator.split(chunk, parts, getMinSubchunkSize()) : Collections.singletonList(chunk);
+				if (subchunks.size() <= 1) {
+					long chunkCost = cost[j];
 					tasks.add(threadpool.submit(() -> {
-						assembleChunk(f, chunkNumber, chunk, excludedRegions, safetyRegions, downsampledRegions);
+						assembleChunk(f, chunkNumber, String.format("chunk %d", chunkNumber), contigNamePrefix, chunk, chunkCost, excludedRegions, safetyRegions, downsampledRegions);
 						return null;
 					}));
+				} else {
+					log.info(String.format("Splitting assembly chunk %d into %d sub-chunks (estimated cost %d, typical chunk cost %d)", chunkNumber, subchunks.size(), cost[j], typicalCost));
+					// Sub-chunks are independent tasks so idle workers pick up the remaining
+					// sub-chunks of an expensive chunk. The last sub-chunk to complete
+					// concatenates the sub-chunks into the chunk output.
+					List<File> subchunkFiles = new ArrayList<>();
+					for (int k = 0; k < subchunks.size(); k++) {
+						subchunkFiles.add(FileSystemContext.getWorkingFileFor(f, String.format("gridss.tmp.subchunk%d.", k)));
+					}
+					AtomicInteger remaining = new AtomicInteger(subchunks.size());
+					for (int k = 0; k < subchunks.size(); k++) {
+						QueryInterval[] subchunk = subchunks.get(k);
+						File subchunkFile = subchunkFiles.get(k);
+						String name = String.format("chunk %d sub-chunk %d/%d", chunkNumber, k + 1, subchunks.size());
+						String subchunkPrefix = String.format("%ss%d-", contigNamePrefix, k);
+						long subchunkCost = estimator.estimate(subchunk);
+						tasks.add(threadpool.submit(() -> {
+							if (!subchunkFile.exists()) {
+								assembleChunk(subchunkFile, chunkNumber, name, subchunkPrefix, subchunk, subchunkCost, excludedRegions, safetyRegions, downsampledRegions);
+							}
+							if (remaining.decrementAndGet() == 0) {
+								concatenateSubchunks(subchunkFiles, f);
+							}
+							return null;
+						}));
+					}
 				}
 			}
 		}
@@ -116,6 +189,7 @@ public class AssemblyEvidenceSource extends SAMEvidenceSource {
 		safetyRegions.write(getContext().getFileSystemContext().getAssemblySafetyRegions(getFile(), jobNodeIndex), "subsetOfContigsCalledDueToGraphComplexity");
 		downsampledRegions.write(getContext().getFileSystemContext().getAssemblyDownsampledRegions(getFile(), jobNodeIndex), "subsetOfReadsAssembled");
 		log.info(String.format("Breakend assembly complete (node %d, %d total)", jobNodeIndex, jobNodes));
+		log.info(InflatedBlockCache.getDefault().toString());
 		List<File> deduplicatedChunks = assembledChunk;
 		long secondaryNotSplit = source.stream().mapToLong(ses -> ses.getMetrics().getIdsvMetrics().SECONDARY_NOT_SPLIT).sum();
 		if (secondaryNotSplit > 0) {
@@ -180,9 +254,9 @@ public class AssemblyEvidenceSource extends SAMEvidenceSource {
 		}
 		log.info("Breakend assembly complete.");
 	}
-	private void assembleChunk(File output, int chunkNumber, QueryInterval[] qi, IntervalBed excludedRegions, IntervalBed safetyRegions, IntervalBed downsampledRegions) throws IOException {
-		AssemblyIdGenerator assemblyNameGenerator = new SequentialIdGenerator(String.format(getContext().getConfig().getAssembly().contigNamePrefix, chunkNumber));
-		String chuckName = String.format("chunk %d (%s:%d-%s:%d)", chunkNumber,
+	private void assembleChunk(File output, int chunkNumber, String name, String contigNamePrefix, QueryInterval[] qi, long estimatedCost,
+							   IntervalBed excludedRegions, IntervalBed safetyRegions, IntervalBed downsampledRegions) throws IOException {
+		String chuckName = String.format("%s (%s:%d-%s:%d)", name,
 			getContext().getDictionary().getSequence(qi[0].referenceIndex).getSequenceName(), qi[0].start,
 			getContext().getDictionary().getSequence(qi[qi.length-1].referenceIndex).getSequenceName(), qi[qi.length-1].end);
 		log.info(String.format("Starting assembly on %s", chuckName));
@@ -192,14 +266,10 @@ public class AssemblyEvidenceSource extends SAMEvidenceSource {
 		try (SAMFileWriter writer = new SAMFileWriterFactory().makeSAMOrBAMWriter(header, false, tmpout)) {
 			if (getContext().getAssemblyParameters().writeFiltered) {
 				try (SAMFileWriter filteredWriter = new SAMFileWriterFactory().makeSAMOrBAMWriter(header, false, filteredout)) {
-					for (BreakendDirection direction : BreakendDirection.values()) {
-						assembleChunk(writer, filteredWriter, chunkNumber, qi, direction, assemblyNameGenerator, excludedRegions, safetyRegions, downsampledRegions);
-					}
+					assembleChunk(writer, filteredWriter, chunkNumber, qi, contigNamePrefix, excludedRegions, safetyRegions, downsampledRegions);
 				}
 			} else {
-				for (BreakendDirection direction : BreakendDirection.values()) {
-					assembleChunk(writer, null, chunkNumber, qi, direction, assemblyNameGenerator, excludedRegions, safetyRegions, downsampledRegions);
-				}
+				assembleChunk(writer, null, chunkNumber, qi, contigNamePrefix, excludedRegions, safetyRegions, downsampledRegions);
 			}
 		} catch (Exception e) {
 			log.error(e, "Error assembling ", chuckName);
@@ -209,7 +279,7 @@ public class AssemblyEvidenceSource extends SAMEvidenceSource {
 			throw e;
 		} finally {
 			timer.stop();
-			log.info(String.format("Completed assembly on %s in %ds (%s)", chuckName, timer.elapsed(TimeUnit.SECONDS), timer.toString()));
+			log.info(String.format("Completed assembly on %s in %ds (%s, estimated cost %d)", chuckName, timer.elapsed(TimeUnit.SECONDS), timer.toString(), estimatedCost));
 		}
 		SAMFileUtil.sort(getContext().getFileSystemContext(), tmpout, output, SortOrder.coordinate);
 		if (gridss.Defaults.DELETE_TEMPORARY_FILES) {
@@ -222,30 +292,147 @@ public class AssemblyEvidenceSource extends SAMEvidenceSource {
 			System.runFinalization();
 		}
 	}
+	/**
+	 * Concatenates the assembly sub-chunks into the chunk output.
+	 * Each sub-chunk only contains assemblies starting within its own sequential
+	 * genomic intervals so the concatenation is coordinate sorted.
+	 */
+	private void concatenateSubchunks(List<File> subchunks, File output) throws IOException {
+		File tmpout = FileSystemContext.getWorkingFileFor(output, "gridss.tmp.");
+		SAMFileHeader sortedHeader = header.clone();
+		sortedHeader.setSortOrder(SortOrder.coordinate);
+		try (SAMFileWriter writer = new SAMFileWriterFactory().makeSAMOrBAMWriter(sortedHeader, true, tmpout)) {
+			for (File f : subchunks) {
+				try (SamReader reader = getContext().getSamReader(f)) {
+					for (SAMRecord r : reader) {
+						writer.addAlignment(r);
+					}
+				}
+			}
+		}
+		FileHelper.move(tmpout, output, true);
+		if (gridss.Defaults.DELETE_TEMPORARY_FILES) {
+			for (File f : subchunks) {
+				FileHelper.delete(f, true);
+			}
+		}
+	}
+	/**
+	 * Minimum size of an assembly sub-chunk.
+	 * Evidence within the padding around each sub-chunk is read by the adjacent sub-chunks too
+	 * so sub-chunks must be much larger than the padding.
+	 */
+	private int getMinSubchunkSize() {
+		return MIN_SUBCHUNK_PADDING_MULTIPLE * getChunkPadding();
+	}
+	private int getChunkPadding() {
+		// expand bounds to keep any contig that could overlap our intervals
+		return (int)(2 * getMaxConcordantFragmentSize() * getContext().getConfig().getAssembly().maxExpectedBreakendLengthMultiple) + 1;
+	}
 
 	private QueryInterval[] getExpanded(QueryInterval[] intervals) {
 		QueryInterval[] expanded = QueryIntervalUtil.padIntervals(
 				getContext().getDictionary(),
 				intervals,
-				// expand bounds to keep any contig that could overlap our intervals
-				(int)(2 * getMaxConcordantFragmentSize() * getContext().getConfig().getAssembly().maxExpectedBreakendLengthMultiple) + 1);
+				getChunkPadding());
 		return expanded;
 	}
-	private void assembleChunk(SAMFileWriter writer, SAMFileWriter filteredWriter, int chunkNumber, QueryInterval[] intervals, BreakendDirection direction, AssemblyIdGenerator assemblyNameGenerator,
+	private void assembleChunk(SAMFileWriter writer, SAMFileWriter filteredWriter, int chunkNumber, QueryInterval[] intervals, String contigNamePrefix,
+							   IntervalBed excludedRegions, IntervalBed safetyRegions, IntervalBed downsampledRegions) {
+		if (getContext().getAssemblyParameters().singlePassBidirectional) {
+			assembleChunkBidirectional(writer, filteredWriter, chunkNumber, intervals, contigNamePrefix, excludedRegions, safetyRegions, downsampledRegions);
+		} else {
+			AssemblyIdGenerator assemblyNameGenerator = new SequentialIdGenerator(contigNamePrefix);
+			for (BreakendDirection direction : BreakendDirection.values()) {
+				QueryInterval[] expanded = getExpanded(intervals);
+				try (CloseableIterator<DirectedEvidence> input = mergedIterator(source, expanded, EvidenceSortOrder.SAMRecordStartPosition)) {
+					Iterator<DirectedEvidence> throttledIt = throttled(input, downsampledRegions);
+					assembleChunk(writer, filteredWriter, chunkNumber, intervals, throttledIt, direction, assemblyNameGenerator, excludedRegions, safetyRegions);
+				}
+			}
+		}
+	}
+	/**
+	 * Assembles both breakend directions from a single traversal of the chunk evidence.
+	 * 
+	 * The evidence is read, decoded and throttled once then fanned out to a forward
+	 * assembler running on the calling thread and a backward assembler scheduled on the
+	 * worker scheduler of the processing context. Since the assemblers
+	 * run concurrently, each direction has its own contig name generator so contig names
+	 * do not depend on thread scheduling.
+	 */
+	private void assembleChunkBidirectional(SAMFileWriter writer, SAMFileWriter filteredWriter, int chunkNumber, QueryInterval[] intervals, String prefix,
 							   IntervalBed excludedRegions, IntervalBed safetyRegions, IntervalBed downsampledRegions) {
 		QueryInterval[] expanded = getExpanded(intervals);
 		try (CloseableIterator<DirectedEvidence> input = mergedIterator(source, expanded, EvidenceSortOrder.SAMRecordStartPosition)) {
 			Iterator<DirectedEvidence> throttledIt = throttled(input, downsampledRegions);
-			PositionalAssembler assembler = new PositionalAssembler(getContext(), AssemblyEvidenceSource.this, assemblyNameGenerator, throttledIt, direction, excludedRegions, safetyRegions);
-			if (telemetry != null) {
-				assembler.setTelemetry(telemetry.getTelemetry(chunkNumber, direction));
+			DuplicatingIterable<List<DirectedEvidence>> shared = new DuplicatingIterable<>(2,
+					new BatchingIterator<>(throttledIt, BIDIRECTIONAL_BATCH_SIZE),
+					BIDIRECTIONAL_BATCH_COUNT);
+			Iterator<List<DirectedEvidence>> forwardIt = shared.iterator();
+			Iterator<List<DirectedEvidence>> backwardIt = shared.iterator();
+			Future<?> backward;
+			try {
+				// the forward assembler runs on this thread so only the backward assembler needs scheduling
+				backward = getContext().getWorkerScheduler().submit(Collections.singletonList(() ->
+						assembleDirection(writer, filteredWriter, chunkNumber, intervals, backwardIt, BreakendDirection.Backward,
+								new SequentialIdGenerator(prefix + BreakendDirection.Backward.toChar()), excludedRegions, safetyRegions))).get(0);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
 			}
-			while (assembler.hasNext()) {
-				SAMRecord asm = assembler.next();
-				asm = transformAssembly(asm); // transform before chunk bounds checking as the position may have moved
-				if (QueryIntervalUtil.overlaps(intervals, asm.getReferenceIndex(), asm.getAlignmentStart())) {
-					// only output assemblies that start within our chunk
-					if (shouldFilterAssembly(asm)) {
+			RuntimeException forwardException = null;
+			try {
+				assembleDirection(writer, filteredWriter, chunkNumber, intervals, forwardIt, BreakendDirection.Forward,
+						new SequentialIdGenerator(prefix + BreakendDirection.Forward.toChar()), excludedRegions, safetyRegions);
+			} catch (RuntimeException e) {
+				forwardException = e;
+			}
+			try {
+				backward.get();
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			} catch (ExecutionException e) {
+				if (forwardException == null) {
+					throw new RuntimeException(e.getCause());
+				}
+			}
+			if (forwardException != null) {
+				throw forwardException;
+			}
+		}
+	}
+	private void assembleDirection(SAMFileWriter writer, SAMFileWriter filteredWriter, int chunkNumber, QueryInterval[] intervals, Iterator<List<DirectedEvidence>> batches, BreakendDirection direction, AssemblyIdGenerator assemblyNameGenerator,
+							   IntervalBed excludedRegions, IntervalBed safetyRegions) {
+		try {
+			assembleChunk(writer, filteredWriter, chunkNumber, intervals, new FlatMapIterator<>(batches), direction, assemblyNameGenerator, excludedRegions, safetyRegions);
+		} finally {
+			// Drain any remaining input so the assembler for the other direction is not
+			// blocked waiting for us to consume our copy of the shared evidence stream
+			try {
+				while (batches.hasNext()) {
+					batches.next();
+				}
+			} catch (RuntimeException e) {
+				log.debug(e, "Error draining evidence for ", direction);
+			}
+		}
+	}
+	private void assembleChunk(SAMFileWriter writer, SAMFileWriter filteredWriter, int chunkNumber, QueryInterval[] intervals, Iterator<DirectedEvidence> evidence, BreakendDirection direction, AssemblyIdGenerator assemblyNameGenerator,
+							   IntervalBed excludedRegions, IntervalBed safetyRegions) {
+		PositionalAssembler assembler = new PositionalAssembler(getContext(), AssemblyEvidenceSource.this, assemblyNameGenerator, evidence, direction, excludedRegions, safetyRegions);
+		if (telemetry != null) {
+			assembler.setTelemetry(telemetry.getTelemetry(chunkNumber, direction));
+		}
+		while (assembler.hasNext()) {
+			SAMRecord asm = assembler.next();
+			asm = transformAssembly(asm); // transform before chunk bounds checking as the position may have moved
+			if (QueryIntervalUtil.overlaps(intervals, asm.getReferenceIndex(), asm.getAlignmentStart())) {
+				// only output assemblies that start within our chunk
+				boolean filtered = shouldFilterAssembly(asm);
+				// writers are shared between directions when assembling both directions concurrently
+				synchronized (writer) {
+					if (filtered) {
 						if (filteredWriter != null) {
 							filteredWriter.addAlignment(asm);
 						}
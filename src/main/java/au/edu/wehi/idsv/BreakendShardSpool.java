@@ -0,0 +1,174 @@
+package au.edu.wehi.idsv;
+
+import au.edu.wehi.idsv.util.StableMergingIterator;
+import com.google.common.collect.AbstractIterator;
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.samtools.util.CloserUtil;
+import htsjdk.samtools.util.Log;
+import htsjdk.samtools.util.RuntimeIOException;
+import org.apache.commons.math3.util.Pair;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Spools sorted streams of breakend and breakpoint counts to per-contig temporary files
+ * so each contig can be processed independently.
+ *
+ * Each stream is written to its own set of files. Since streams are sorted by contig,
+ * only one file per stream is open at any time. Records are stored in a compact binary
+ * encoding with the contig implied by the file.
+ *
+ * @author Daniel Cameron
+ *
+ */
+public class BreakendShardSpool implements Closeable {
+	private static final Log log = Log.getInstance(BreakendShardSpool.class);
+	private static final int FLAG_BREAKPOINT = 1;
+	private static final int FLAG_BACKWARD = 2;
+	private static final int FLAG_BACKWARD2 = 4;
+	private final File tmpDir;
+	private final Comparator<Pair<BreakendSummary, Integer>> comparator;
+	/**
+	 * Spool file for each contig of each stream
+	 */
+	private final File[][] files;
+	/**
+	 * @param streams number of streams to spool
+	 * @param contigs number of contigs
+	 * @param comparator sort order of each stream
+	 * @param tmpDir directory to write spool files to
+	 */
+	public BreakendShardSpool(int streams, int contigs, Comparator<Pair<BreakendSummary, Integer>> comparator, File tmpDir) {
+		this.tmpDir = tmpDir;
+		this.comparator = comparator;
+		this.files = new File[streams][contigs];
+	}
+	/**
+	 * Spools the given stream.
+	 * Different streams can be spooled concurrently.
+	 * @param stream stream index
+	 * @param it records sorted by contig
+	 */
+	public void write(int stream, Iterator<Pair<BreakendSummary, Integer>> it) throws IOException {
+		File[] streamFiles = files[stream];
+		int currentReferenceIndex = -1;
+		DataOutputStream os = null;
+		try {
+			while (it.hasNext()) {
+				Pair<BreakendSummary, Integer> record = it.next();
+				BreakendSummary bs = record.getFirst();
+				if (bs.referenceIndex != currentReferenceIndex) {
+					if (bs.referenceIndex < currentReferenceIndex) {
+						throw new IllegalArgumentException(String.format("Stream %d is not sorted by contig: found contig %d after contig %d", stream, bs.referenceIndex, currentReferenceIndex));
+					}
+					if (os != null) {
+						os.close();
+					}
+					currentReferenceIndex = bs.referenceIndex;
+					File f = File.createTempFile(String.format("gridss.shard.%d.%d.", stream, currentReferenceIndex), ".tmp", tmpDir);
+					streamFiles[currentReferenceIndex] = f;
+					os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f)));
+				}
+				write(os, bs, record.getSecond());
+			}
+		} finally {
+			if (os != null) {
+				os.close();
+			}
+		}
+	}
+	private static void write(DataOutputStream os, BreakendSummary bs, int weight) throws IOException {
+		boolean isBreakpoint = bs instanceof BreakpointSummary;
+		int flags = (isBreakpoint ? FLAG_BREAKPOINT : 0)
+				| (bs.direction == BreakendDirection.Backward ? FLAG_BACKWARD : 0)
+				| (isBreakpoint && ((BreakpointSummary)bs).direction2 == BreakendDirection.Backward ? FLAG_BACKWARD2 : 0);
+		os.writeByte(flags);
+		os.writeInt(bs.nominal);
+		os.writeInt(bs.start);
+		os.writeInt(bs.end);
+		if (isBreakpoint) {
+			BreakpointSummary bp = (BreakpointSummary)bs;
+			os.writeInt(bp.referenceIndex2);
+			os.writeInt(bp.nominal2);
+			os.writeInt(bp.start2);
+			os.writeInt(bp.end2);
+		}
+		os.writeInt(weight);
+	}
+	/**
+	 * Records on the given contig from all streams.
+	 * Records are merged in sort order with ties broken by stream index.
+	 */
+	public CloseableIterator<Pair<BreakendSummary, Integer>> iterator(int referenceIndex) {
+		List<SpoolIterator> its = new ArrayList<>();
+		for (File[] streamFiles : files) {
+			if (streamFiles[referenceIndex] != null) {
+				try {
+					its.add(new SpoolIterator(streamFiles[referenceIndex], referenceIndex));
+				} catch (IOException e) {
+					its.forEach(CloserUtil::close);
+					throw new RuntimeIOException(e);
+				}
+			}
+		}
+		return new StableMergingIterator<>(its, comparator);
+	}
+	@Override
+	public void close() {
+		for (File[] streamFiles : files) {
+			for (int i = 0; i < streamFiles.length; i++) {
+				if (streamFiles[i] != null) {
+					if (!streamFiles[i].delete()) {
+						log.warn("Unable to delete " + streamFiles[i]);
+					}
+					streamFiles[i] = null;
+				}
+			}
+		}
+	}
+	private static class SpoolIterator extends AbstractIterator<Pair<BreakendSummary, Integer>> implements Closeable {
+		private final DataInputStream is;
+		private final int referenceIndex;
+		public SpoolIterator(File file, int referenceIndex) throws IOException {
+			this.is = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			this.referenceIndex = referenceIndex;
+		}
+		@Override
+		protected Pair<BreakendSummary, Integer> computeNext() {
+			try {
+				int flags = is.read();
+				if (flags < 0) {
+					close();
+					return endOfData();
+				}
+				BreakendDirection direction = (flags & FLAG_BACKWARD) != 0 ? BreakendDirection.Backward : BreakendDirection.Forward;
+				int nominal = is.readInt();
+				int start = is.readInt();
+				int end = is.readInt();
+				BreakendSummary bs;
+				if ((flags & FLAG_BREAKPOINT) != 0) {
+					BreakendDirection direction2 = (flags & FLAG_BACKWARD2) != 0 ? BreakendDirection.Backward : BreakendDirection.Forward;
+					int referenceIndex2 = is.readInt();
+					int nominal2 = is.readInt();
+					int start2 = is.readInt();
+					int end2 = is.readInt();
+					bs = new BreakpointSummary(referenceIndex, direction, nominal, start, end, referenceIndex2, direction2, nominal2, start2, end2);
+				} else {
+					bs = new BreakendSummary(referenceIndex, direction, nominal, start, end);
+				}
+				return Pair.create(bs, is.readInt());
+			} catch (IOException e) {
+				close();
+				throw new RuntimeIOException(e);
+			}
+		}
+		@Override
+		public void close() {
+			CloserUtil.close(is);
+		}
+	}
+}
@@ -1,6 +1,7 @@
 package au.edu.wehi.idsv;
 
 import java.util.HashMap;
+import java.util.Map;
 
 public class CalledBreakpointPositionLookup {
     public static class NominalPosition {
@@ -34,4 +35,21 @@ public class CalledBreakpointPositionLookup {
     public NominalPosition removeUpper(String eventId) {
         return lookup.remove(eventId);
     }
+
+    /**
+     * Adds an upper breakend position previously removed from another lookup
+     */
+    public void addUpper(String eventId, NominalPosition upperPosition) {
+        lookup.put(eventId, upperPosition);
+    }
+
+    /**
+     * Removes all upper breakend positions whose breakend has yet to be processed
+     * @return upper breakend positions keyed by event identifier
+     */
+    public Map<String, NominalPosition> removeAllUpper() {
+        Map<String, NominalPosition> result = lookup;
+        lookup = new HashMap<>();
+        return result;
+    }
 }
@@ -0,0 +1,195 @@
+package au.edu.wehi.idsv;
+
+import htsjdk.samtools.BAMFileSpan;
+import htsjdk.samtools.BAMIndex;
+import htsjdk.samtools.Chunk;
+import htsjdk.samtools.QueryInterval;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.util.BlockCompressedFilePointerUtil;
+import htsjdk.samtools.util.CloserUtil;
+import htsjdk.samtools.util.Log;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Estimates the relative processing cost of genomic chunks from the BAM indexes of the evidence files.
+ *
+ * The cost of an interval is the number of compressed bytes of the evidence files
+ * that need to be read to traverse the interval. Since evidence density varies by orders
+ * of magnitude across the genome (centromeres, satellite repeats, amplifications),
+ * this is a much better predictor of assembly and variant calling time than the
+ * interval length.
+ *
+ * @author Daniel Cameron
+ *
+ */
+public class ChunkCostEstimator implements Closeable {
+	private static final Log log = Log.getInstance(ChunkCostEstimator.class);
+	/**
+	 * Size of the windows used to find split points. Matches the BAM linear index bin size.
+	 */
+	private static final int WINDOW_SIZE = 16384;
+	private final List<SamReader> readers = new ArrayList<>();
+	private final List<BAMIndex> indexes = new ArrayList<>();
+	public ChunkCostEstimator(List<? extends SAMEvidenceSource> sources) {
+		for (SAMEvidenceSource ses : sources) {
+			if (ses == null || ses.getFile() == null) continue;
+			SamReader reader = null;
+			try {
+				reader = ses.getReader();
+				if (reader.hasIndex()) {
+					indexes.add(reader.indexing().getIndex());
+					readers.add(reader);
+					reader = null;
+				}
+			} catch (RuntimeException e) {
+				log.debug(e, "Unable to load index for ", ses.getFile());
+			} finally {
+				CloserUtil.close(reader);
+			}
+		}
+	}
+	/**
+	 * Determines whether any of the evidence files are indexed.
+	 * Chunks cannot be differentiated by cost if no indexes are available.
+	 */
+	public boolean canEstimate() {
+		return !indexes.isEmpty();
+	}
+	/**
+	 * Estimated cost of processing the given intervals
+	 */
+	public long estimate(QueryInterval[] intervals) {
+		long cost = 0;
+		for (QueryInterval qi : intervals) {
+			cost += estimate(qi.referenceIndex, qi.start, qi.end);
+		}
+		return cost;
+	}
+	/**
+	 * Estimated cost of processing the given interval
+	 * @param referenceIndex contig
+	 * @param start first position
+	 * @param end last position
+	 * @return number of compressed evidence file bytes overlapping the interval
+	 */
+	public long estimate(int referenceIndex, int start, int end) {
+		long cost = 0;
+		for (BAMIndex index : indexes) {
+			BAMFileSpan span = index.getSpanOverlapping(referenceIndex, start, end);
+			if (span == null) continue;
+			for (Chunk c : span.getChunks()) {
+				long startAddress = BlockCompressedFilePointerUtil.getBlockAddress(c.getChunkStart());
+				long endAddress = BlockCompressedFilePointerUtil.getBlockAddress(c.getChunkEnd());
+				// chunks within a single BGZF block still cost something to decode
+				cost += Math.max(1, endAddress - startAddress);
+			}
+		}
+		return cost;
+	}
+	/**
+	 * Splits the given chunk into sequential sub-chunks of approximately equal cost.
+	 *
+	 * @param chunk intervals to split
+	 * @param parts number of sub-chunks to split into
+	 * @param minLength minimum number of bases in each sub-chunk
+	 * @return sub-chunks in genomic order. Fewer than the requested number of sub-chunks
+	 * are returned if the chunk is too short or cost is concentrated in too few windows.
+	 */
+	public List<QueryInterval[]> split(QueryInterval[] chunk, int parts, int minLength) {
+		List<QueryInterval[]> result = new ArrayList<>();
+		if (parts <= 1) {
+			result.add(chunk);
+			return result;
+		}
+		List<QueryInterval> windows = new ArrayList<>();
+		List<Long> windowCost = new ArrayList<>();
+		long totalCost = 0;
+		for (QueryInterval qi : chunk) {
+			for (int start = qi.start; start <= qi.end; start += WINDOW_SIZE) {
+				int end = (int)Math.min(qi.end, (long)start + WINDOW_SIZE - 1);
+				long cost = estimate(qi.referenceIndex, start, end);
+				windows.add(new QueryInterval(qi.referenceIndex, start, end));
+				windowCost.add(cost);
+				totalCost += cost;
+			}
+		}
+		double target = totalCost / (double)parts;
+		List<QueryInterval> current = new ArrayList<>();
+		long currentCost = 0;
+		long currentLength = 0;
+		long remainingLength = Arrays.stream(chunk).mapToLong(qi -> qi.end - qi.start + 1).sum();
+		for (int i = 0; i < windows.size(); i++) {
+			QueryInterval w = windows.get(i);
+			append(current, w);
+			long length = w.end - w.start + 1;
+			currentCost += windowCost.get(i);
+			currentLength += length;
+			remainingLength -= length;
+			if (currentCost >= target && currentLength >= minLength && remainingLength >= minLength && result.size() < parts - 1) {
+				result.add(current.toArray(new QueryInterval[0]));
+				current = new ArrayList<>();
+				currentCost = 0;
+				currentLength = 0;
+			}
+		}
+		if (!current.isEmpty()) {
+			result.add(current.toArray(new QueryInterval[0]));
+		}
+		return result;
+	}
+	private static void append(List<QueryInterval> intervals, QueryInterval qi) {
+		if (!intervals.isEmpty()) {
+			QueryInterval last = intervals.get(intervals.size() - 1);
+			if (last.referenceIndex == qi.referenceIndex && last.end + 1 == qi.start) {
+				intervals.set(intervals.size() - 1, new QueryInterval(last.referenceIndex, last.start, qi.end));
+				return;
+			}
+		}
+		intervals.add(qi);
+	}
+	/**
+	 * Number of sub-chunks the chunk should be split into so that each
+	 * sub-chunk costs approximately the same as a typical chunk.
+	 * @param cost estimated cost of the chunk
+	 * @param typicalCost estimated cost of a typical chunk
+	 * @param splitThreshold minimum multiple of the typical cost before a chunk is split
+	 * @param maxParts maximum number of sub-chunks
+	 */
+	public static int getSplitCount(long cost, long typicalCost, double splitThreshold, int maxParts) {
+		if (typicalCost <= 0 || maxParts <= 1 || cost < splitThreshold * typicalCost) return 1;
+		return (int)Math.min(maxParts, (cost + typicalCost - 1) / typicalCost);
+	}
+	public static long median(long[] cost) {
+		if (cost.length == 0) return 0;
+		long[] sorted = Arrays.copyOf(cost, cost.length);
+		Arrays.sort(sorted);
+		return sorted[sorted.length / 2];
+	}
+	/**
+	 * Chunk processing order in which the most expensive chunks are processed first.
+	 * Ties are broken by genomic order.
+	 * @param cost estimated cost of each chunk
+	 * @return chunk indexes in processing order
+	 */
+	public static int[] longestFirst(long[] cost) {
+		return IntStream.range(0, cost.length)
+				.boxed()
+				.sorted(Comparator.<Integer>comparingLong(i -> cost[i]).reversed().thenComparing(i -> i))
+				.mapToInt(i -> i)
+				.toArray();
+	}
+	@Override
+	public void close() {
+		for (SamReader reader : readers) {
+			CloserUtil.close(reader);
+		}
+		readers.clear();
+		indexes.clear();
+	}
+}
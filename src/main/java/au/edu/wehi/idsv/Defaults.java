@@ -17,6 +17,11 @@ public class Defaults {
 	public static final boolean ATTEMPT_ASSEMBLY_RECOVERY;
 	public static final boolean USE_OPTIMISED_ASSEMBLY_DATA_STRUCTURES;
     public static final boolean EXPORT_INPROCESS_ALIGNMENTS;
+	/**
+	 * Run the kmer support, aggregation and path compression stages of positional assembly
+	 * on their own threads instead of on the assembly thread.
+	 */
+	public static final boolean PIPELINED_ASSEMBLY;
 
     static {
 		SANITY_CHECK_ASSEMBLY_GRAPH = Boolean.valueOf(System.getProperty("sanitycheck.assembly", "false"));
@@ -33,5 +38,6 @@ public class Defaults {
 		ATTEMPT_ASSEMBLY_RECOVERY = Boolean.valueOf(System.getProperty("assembly.recover", "true"));
 		USE_OPTIMISED_ASSEMBLY_DATA_STRUCTURES = Boolean.valueOf(System.getProperty("assembly.optimised_data_structures", "true"));
 		EXPORT_INPROCESS_ALIGNMENTS = Boolean.valueOf(System.getProperty("bwa.export", "false"));
+		PIPELINED_ASSEMBLY = Boolean.valueOf(System.getProperty("assembly.pipeline", "false"));
 	}
 }
\ No newline at end of file
@@ -96,11 +96,12 @@ public class GenomicProcessingContext implements Closeable {
 	protected ReferenceLookup LoadSynchronizedReference(File referenceFile) {
 		try {
 			ReferenceSequenceFile underlying = new IndexedFastaSequenceFile(referenceFile);
-			if (referenceFile.length() > Runtime.getRuntime().maxMemory()) {
+			File cacheFile = getGridssCacheFileForReference(referenceFile);
+			// a memory mapped cache does not require heap memory
+			if (!TwoBitBufferedReferenceSequenceFile.isCacheFile(cacheFile) && referenceFile.length() > Runtime.getRuntime().maxMemory()) {
 				log.error("Caching reference fasta in memory would require more than 50% of the memory allocated to the JVM. Allocate more heap memory to the JVM..");
 				throw new RuntimeException("Not enough memory to cache reference fasta.");
 			}
-			File cacheFile = getGridssCacheFileForReference(referenceFile);
 			return new TwoBitBufferedReferenceSequenceFile(underlying, cacheFile);
 		} catch (FileNotFoundException e) {
 			throw new RuntimeException("Unabled load fasta " + referenceFile, e);
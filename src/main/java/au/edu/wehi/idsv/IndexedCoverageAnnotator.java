@@ -0,0 +1,113 @@
+package au.edu.wehi.idsv;
+
+import au.edu.wehi.idsv.util.FlatMapIterator;
+import au.edu.wehi.idsv.util.ParallelTransformIterator;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
+import com.google.common.util.concurrent.MoreExecutors;
+import htsjdk.samtools.SamReaderFactory;
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.samtools.util.CloserUtil;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Annotates breakends with reference allele coverage information
+ * using BAM index queries around each cluster of calls.
+ * 
+ * Calls are grouped into clusters of nearby calls and the clusters are
+ * annotated in parallel. Each cluster requires a single query per input file. 
+ * 
+ * @author Daniel Cameron
+ *
+ */
+public class IndexedCoverageAnnotator<T extends VariantContextDirectedEvidence> implements CloseableIterator<T> {
+	/**
+	 * Maximum genomic width of a cluster of calls
+	 */
+	private static final int MAX_CLUSTER_WIDTH = 65536;
+	/**
+	 * Maximum number of calls in a cluster
+	 */
+	private static final int MAX_CLUSTER_SIZE = 1024;
+	private final List<IndexedReferenceCoverageLookup> reference = new ArrayList<>();
+	private final SequentialCoverageAnnotator<T> annotator;
+	private final Iterator<T> it;
+	public IndexedCoverageAnnotator(ProcessingContext context, List<SAMEvidenceSource> sources, Iterator<T> it, int parallelism, ExecutorService threadpool) {
+		SamReaderFactory readerFactory = SamReaderFactory.makeDefault().referenceSequence(context.getReferenceFile());
+		for (SAMEvidenceSource ses : sources) {
+			reference.add(new IndexedReferenceCoverageLookup(ses.getFile(), readerFactory, ses.getMetrics().getIdsvMetrics(), ses.getReadPairConcordanceCalculator(), ses.getSourceCategory(), context.isFilterDuplicates()));
+		}
+		// lookups are performed on the cluster thread 
+		this.annotator = new SequentialCoverageAnnotator<T>(context, null, new ArrayList<>(reference), MoreExecutors.newDirectExecutorService());
+		this.it = new FlatMapIterator<>(new ParallelTransformIterator<>(new ClusterIterator(it), this::annotate, parallelism, threadpool));
+	}
+	/**
+	 * Determines whether all the given sources can be queried by index
+	 */
+	public static boolean canAnnotate(ProcessingContext context, List<SAMEvidenceSource> sources) {
+		SamReaderFactory readerFactory = SamReaderFactory.makeDefault().referenceSequence(context.getReferenceFile());
+		return sources.stream().allMatch(ses -> IndexedReferenceCoverageLookup.isIndexed(readerFactory, ses.getFile()));
+	}
+	private static int firstPosition(VariantContextDirectedEvidence v) {
+		BreakendSummary loc = v.getBreakendSummary();
+		return loc.start + (loc.direction == BreakendDirection.Forward ? 0 : -1);
+	}
+	private static int lastPosition(VariantContextDirectedEvidence v) {
+		BreakendSummary loc = v.getBreakendSummary();
+		return loc.end + (loc.direction == BreakendDirection.Forward ? 0 : -1);
+	}
+	private List<T> annotate(List<T> cluster) {
+		int referenceIndex = cluster.get(0).getBreakendSummary().referenceIndex;
+		int start = cluster.stream().mapToInt(IndexedCoverageAnnotator::firstPosition).min().getAsInt();
+		int end = cluster.stream().mapToInt(IndexedCoverageAnnotator::lastPosition).max().getAsInt();
+		for (IndexedReferenceCoverageLookup lookup : reference) {
+			lookup.prefetch(referenceIndex, start, end);
+		}
+		List<T> result = new ArrayList<>(cluster.size());
+		for (T v : cluster) {
+			result.add(annotator.annotate(v));
+		}
+		return result;
+	}
+	private class ClusterIterator extends AbstractIterator<List<T>> {
+		private final PeekingIterator<T> it;
+		public ClusterIterator(Iterator<T> it) {
+			this.it = Iterators.peekingIterator(it);
+		}
+		@Override
+		protected List<T> computeNext() {
+			if (!it.hasNext()) return endOfData();
+			List<T> cluster = new ArrayList<>();
+			T first = it.next();
+			cluster.add(first);
+			int referenceIndex = first.getBreakendSummary().referenceIndex;
+			int start = firstPosition(first);
+			while (it.hasNext() && cluster.size() < MAX_CLUSTER_SIZE
+					&& it.peek().getBreakendSummary().referenceIndex == referenceIndex
+					&& Math.abs(lastPosition(it.peek()) - start) <= MAX_CLUSTER_WIDTH
+					&& Math.abs(firstPosition(it.peek()) - start) <= MAX_CLUSTER_WIDTH) {
+				cluster.add(it.next());
+			}
+			return cluster;
+		}
+	}
+	@Override
+	public boolean hasNext() {
+		return it.hasNext();
+	}
+	@Override
+	public T next() {
+		return it.next();
+	}
+	@Override
+	public void close() {
+		for (IndexedReferenceCoverageLookup lookup : reference) {
+			CloserUtil.close(lookup);
+		}
+	}
+}
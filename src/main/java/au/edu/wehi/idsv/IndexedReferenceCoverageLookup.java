@@ -0,0 +1,188 @@
+package au.edu.wehi.idsv;
+
+import gridss.analysis.IdsvMetrics;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordIterator;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
+import htsjdk.samtools.filter.AggregateFilter;
+import htsjdk.samtools.filter.AlignedFilter;
+import htsjdk.samtools.filter.DuplicateReadFilter;
+import htsjdk.samtools.filter.SamRecordFilter;
+import htsjdk.samtools.util.CloserUtil;
+
+import java.io.Closeable;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Counts the number of reads and read pairs providing support for the
+ * absence of a structural variation at a given position using BAM index queries.
+ * 
+ * Unlike {@link SequentialReferenceCoverageLookup}, only the reads around the
+ * queried positions are read and queries can be made in any order.
+ * Coverage is calculated for a region around each query and cached per thread.
+ * 
+ * This class is thread-safe.
+ * 
+ * @author Daniel Cameron
+ *
+ */
+public class IndexedReferenceCoverageLookup implements Closeable, ReferenceCoverageLookup {
+	/**
+	 * Number of positions calculated when a query falls outside the prefetched region
+	 */
+	private static final int DEFAULT_REGION_SIZE = 4096;
+	private final File file;
+	private final SamReaderFactory readerFactory;
+	private final ReadPairConcordanceCalculator pairing;
+	private final int category;
+	private final AggregateFilter filter;
+	/**
+	 * Maximum distance from read alignment start to last concordant support position 
+	 */
+	private final int maxEvidenceWindow;
+	private final Queue<SamReader> idleReaders = new ConcurrentLinkedQueue<>();
+	private final List<SamReader> openReaders = new ArrayList<>();
+	private final ThreadLocal<CoverageRegion> currentRegion = new ThreadLocal<>();
+	private volatile boolean closed = false;
+	public IndexedReferenceCoverageLookup(File file, SamReaderFactory readerFactory, IdsvMetrics metrics, ReadPairConcordanceCalculator pairing, int category, boolean ignoreDuplicates) {
+		this.file = file;
+		this.readerFactory = readerFactory;
+		this.pairing = pairing;
+		this.category = category;
+		List<SamRecordFilter> filters = new ArrayList<>();
+		filters.add(new AlignedFilter(true));
+		if (ignoreDuplicates) {
+			filters.add(new DuplicateReadFilter());
+		}
+		this.filter = new AggregateFilter(filters);
+		this.maxEvidenceWindow = Math.max(metrics.MAX_READ_LENGTH, Math.max(metrics.MAX_READ_MAPPED_LENGTH, pairing != null ? pairing.maxConcordantFragmentSize() : 0));
+	}
+	/**
+	 * Determines whether the given file can be queried by this lookup 
+	 */
+	public static boolean isIndexed(SamReaderFactory readerFactory, File file) {
+		try (SamReader reader = readerFactory.open(file)) {
+			return reader.hasIndex();
+		} catch (Exception e) {
+			return false;
+		}
+	}
+	/**
+	 * Calculates the coverage of the given region so subsequent queries
+	 * from the current thread within the region do not require any I/O.
+	 * @param referenceIndex contig
+	 * @param start first position
+	 * @param end last position
+	 */
+	public void prefetch(int referenceIndex, int start, int end) {
+		CoverageRegion region = currentRegion.get();
+		if (region == null || !region.contains(referenceIndex, start) || !region.contains(referenceIndex, end)) {
+			currentRegion.set(calculate(referenceIndex, start, end));
+		}
+	}
+	private CoverageRegion getRegion(int referenceIndex, int position) {
+		CoverageRegion region = currentRegion.get();
+		if (region == null || !region.contains(referenceIndex, position)) {
+			region = calculate(referenceIndex, position, position + DEFAULT_REGION_SIZE - 1);
+			currentRegion.set(region);
+		}
+		return region;
+	}
+	@Override
+	public int readsSupportingNoBreakendAfter(int referenceIndex, int position) {
+		CoverageRegion region = getRegion(referenceIndex, position);
+		return region.reads[position - region.start];
+	}
+	@Override
+	public int readPairsSupportingNoBreakendAfter(int referenceIndex, int position) {
+		CoverageRegion region = getRegion(referenceIndex, position);
+		return region.pairs[position - region.start];
+	}
+	@Override
+	public int getCategory() {
+		return category;
+	}
+	private CoverageRegion calculate(int referenceIndex, int start, int end) {
+		CoverageRegion region = new CoverageRegion(referenceIndex, start, end);
+		// difference arrays
+		int[] reads = new int[region.reads.length + 1];
+		int[] pairs = new int[region.pairs.length + 1];
+		int queryStart = Math.max(1, start - maxEvidenceWindow);
+		int queryEnd = Math.max(queryStart, end);
+		SamReader reader = borrowReader();
+		try {
+			String contig = reader.getFileHeader().getSequence(referenceIndex).getSequenceName();
+			try (SAMRecordIterator it = reader.queryOverlapping(contig, queryStart, queryEnd)) {
+				while (it.hasNext()) {
+					SAMRecord r = it.next();
+					if (filter.filterOut(r)) continue;
+					// reads support the reference from their alignment start until the base before their alignment end
+					add(reads, start, end, r.getAlignmentStart(), r.getAlignmentEnd() - 1);
+					if (SequentialReferenceCoverageLookup.isLowerMappedOfNonOverlappingConcordantPair(r, pairing)) {
+						add(pairs, start, end, r.getAlignmentEnd(), r.getMateAlignmentStart() - 1);
+					}
+				}
+			}
+		} finally {
+			idleReaders.add(reader);
+		}
+		int readCount = 0;
+		int pairCount = 0;
+		for (int i = 0; i < region.reads.length; i++) {
+			readCount += reads[i];
+			pairCount += pairs[i];
+			region.reads[i] = readCount;
+			region.pairs[i] = pairCount;
+		}
+		return region;
+	}
+	private static void add(int[] diff, int regionStart, int regionEnd, int start, int end) {
+		start = Math.max(start, regionStart);
+		end = Math.min(end, regionEnd);
+		if (start > end) return;
+		diff[start - regionStart]++;
+		diff[end - regionStart + 1]--;
+	}
+	private SamReader borrowReader() {
+		if (closed) throw new IllegalStateException("Lookup has been closed");
+		SamReader reader = idleReaders.poll();
+		if (reader == null) {
+			reader = readerFactory.open(file);
+			synchronized (openReaders) {
+				openReaders.add(reader);
+			}
+		}
+		return reader;
+	}
+	@Override
+	public void close() {
+		closed = true;
+		synchronized (openReaders) {
+			for (SamReader reader : openReaders) {
+				CloserUtil.close(reader);
+			}
+			openReaders.clear();
+		}
+		idleReaders.clear();
+	}
+	private static class CoverageRegion {
+		private final int referenceIndex;
+		private final int start;
+		private final int[] reads;
+		private final int[] pairs;
+		public CoverageRegion(int referenceIndex, int start, int end) {
+			this.referenceIndex = referenceIndex;
+			this.start = start;
+			this.reads = new int[end - start + 1];
+			this.pairs = new int[end - start + 1];
+		}
+		public boolean contains(int referenceIndex, int position) {
+			return this.referenceIndex == referenceIndex && position >= start && position < start + reads.length;
+		}
+	}
+}
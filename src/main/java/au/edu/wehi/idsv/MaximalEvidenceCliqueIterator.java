@@ -1,5 +1,6 @@
 package au.edu.wehi.idsv;
 
+import au.edu.wehi.idsv.graph.PartitionedRectangleGraphMaximalCliqueIterator;
 import au.edu.wehi.idsv.graph.RectangleGraphMaximalCliqueIterator;
 import au.edu.wehi.idsv.graph.RectangleGraphNode;
 import au.edu.wehi.idsv.graph.RectangleGraphNodeMergingIterator;
@@ -24,26 +25,38 @@ public class MaximalEvidenceCliqueIterator extends AbstractIterator<VariantConte
 	private static final Log log = Log.getInstance(MaximalEvidenceCliqueIterator.class);
 	public static final String BREAKPOINT_ID_SUFFIX_HIGH = "h";
 	public static final String BREAKPOINT_ID_SUFFIX_LOW = "o";
+	/**
+	 * Minimum number of graph nodes processed between synchronisation of contig pair partitions
+	 */
+	private static final int PARTITION_BATCH_SIZE = 4096;
 	private VariantContextDirectedBreakpoint lastHigh = null;
 	private final BreakendDirection targetLowDir;
 	private final BreakendDirection targetHighDir;
-	private final RectangleGraphMaximalCliqueIterator calc;
+	private final Iterator<RectangleGraphNode> calc;
 	private final ProcessingContext context;
 	private final VariantIdGenerator idGenerator;
 	public MaximalEvidenceCliqueIterator(ProcessingContext processContext, Iterator<DirectedEvidence> evidenceIt, BreakendDirection lowDir, BreakendDirection highDir, VariantIdGenerator idGenerator) {
 		this.context = processContext;
-		this.calc = new RectangleGraphMaximalCliqueIterator(
-						// collapse evidence at the same location to a single node
-						new RectangleGraphNodeMergingIterator(RectangleGraphNode.ByStartXYEndXY,
-							// make sure nodes to be merged are adjacent in the stream
-							new GraphNodeWindowedSortingIterator(context, 1, 
-								// convert evidence breakpoints to GraphNodes
-								new EvidenceToGraphNodeIterator(evidenceIt))));
+		// collapse evidence at the same location to a single node
+		Iterator<RectangleGraphNode> nodeIt = new RectangleGraphNodeMergingIterator(RectangleGraphNode.ByStartXYEndXY,
+				// make sure nodes to be merged are adjacent in the stream
+				new GraphNodeWindowedSortingIterator(context, 1,
+					// convert evidence breakpoints to GraphNodes
+					new EvidenceToGraphNodeIterator(evidenceIt)));
+		if (gridss.Defaults.PARALLEL_CLIQUE_PARTITIONS) {
+			// breakpoints between different contig pairs cannot overlap so can be called independently
+			this.calc = new PartitionedRectangleGraphMaximalCliqueIterator(nodeIt, this::getContigPair, context.getWorkerScheduler(), PARTITION_BATCH_SIZE);
+		} else {
+			this.calc = new RectangleGraphMaximalCliqueIterator(nodeIt);
+		}
 		this.targetLowDir = lowDir;
 		this.targetHighDir = highDir;
 		this.idGenerator = idGenerator;
 	}
 
+	private long getContigPair(RectangleGraphNode node) {
+		return ((long)context.getLinear().getReferenceIndex(node.startX) << 32) | context.getLinear().getReferenceIndex(node.startY);
+	}
 	private class GraphNodeWindowedSortingIterator extends WindowedSortingIterator<RectangleGraphNode> {
 		public GraphNodeWindowedSortingIterator(final GenomicProcessingContext processContext, final int windowSize, final Iterator<RectangleGraphNode> it) {
 			super(it, new Function<RectangleGraphNode, Long>() {
@@ -161,16 +174,16 @@ public class MaximalEvidenceCliqueIterator extends AbstractIterator<VariantConte
 
 	@Override
 	public String[] trackedNames() {
-		return calc.trackedNames();
+		return ((TrackedState)calc).trackedNames();
 	}
 
 	@Override
 	public Object[] trackedState() {
-		return calc.trackedState();
+		return ((TrackedState)calc).trackedState();
 	}
 
 	@Override
 	public Collection<TrackedState> trackedObjects() {
-		return calc.trackedObjects();
+		return ((TrackedState)calc).trackedObjects();
 	}
 }
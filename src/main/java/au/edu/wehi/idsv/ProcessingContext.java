@@ -5,6 +5,7 @@ import au.edu.wehi.idsv.configuration.GridssConfiguration;
 import au.edu.wehi.idsv.configuration.SoftClipConfiguration;
 import au.edu.wehi.idsv.configuration.VariantCallingConfiguration;
 import au.edu.wehi.idsv.picard.ReferenceLookup;
+import au.edu.wehi.idsv.util.TaskGroupScheduler;
 import au.edu.wehi.idsv.vcf.GridssVcfConstants;
 import au.edu.wehi.idsv.visualisation.BufferTracker;
 import au.edu.wehi.idsv.visualisation.TrackedBuffer;
@@ -33,6 +34,13 @@ public class ProcessingContext extends GenomicProcessingContext {
 	private final List<String> categories = Lists.newArrayList();
 	private EvidenceIdentifierGenerator eidgen;
 	private BufferTracker bufferTracker = null;
+	private TaskGroupScheduler workerScheduler = null;
+	/**
+	 * Minimum number of concurrent worker tasks. This must be large enough
+	 * to schedule the largest group of inter-dependent worker tasks scheduled by a
+	 * single chunk (the evidence feeder and six directional callers of a variant calling chunk).
+	 */
+	private static final int MIN_CONCURRENT_WORKER_TASKS = 8;
 	
 	public ProcessingContext(
 			FileSystemContext fileSystemContext,  File ref, ReferenceLookup reference, List<Header> metricsHeaders,
@@ -109,11 +117,30 @@ public class ProcessingContext extends GenomicProcessingContext {
 	public VariantContextWriter getVariantContextWriter(File file, boolean createIndex) {
 		VariantContextWriterBuilder builder = getVariantContextWriterBuilder(file, createIndex);
 		VariantContextWriter vcfWriter = builder.build();
+		vcfWriter.writeHeader(getVcfHeader());
+		return vcfWriter;
+	}
+	/**
+	 * Gets the VCF header written by {@link #getVariantContextWriter(File, boolean)}
+	 */
+	public VCFHeader getVcfHeader() {
 		final VCFHeader vcfHeader = new VCFHeader(Collections.emptySet(), categories);
 		GridssVcfConstants.addHeaders(vcfHeader);
 		vcfHeader.setSequenceDictionary(getReference().getSequenceDictionary());
-		vcfWriter.writeHeader(vcfHeader);
-		return vcfWriter;
+		return vcfHeader;
+	}
+	/**
+	 * Scheduler shared by all background worker tasks run by this context.
+	 * The number of concurrently running tasks, and hence worker task threads, is bounded
+	 * by the worker thread count. Chunks whose task group cannot yet be scheduled wait
+	 * for a running chunk to complete so only as many chunks as fit within that bound
+	 * hold a task group at any one time.
+	 */
+	public synchronized TaskGroupScheduler getWorkerScheduler() {
+		if (workerScheduler == null) {
+			workerScheduler = new TaskGroupScheduler("Worker-task", Math.max(MIN_CONCURRENT_WORKER_TASKS, getWorkerThreadCount()));
+		}
+		return workerScheduler;
 	}
 	public EvidenceIdentifierGenerator getEvidenceIDGenerator() {
 		return eidgen;
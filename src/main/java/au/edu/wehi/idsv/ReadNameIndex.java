@@ -0,0 +1,399 @@
+package au.edu.wehi.idsv;
+
+import au.edu.wehi.idsv.util.FileHelper;
+import htsjdk.samtools.BAMFileSpan;
+import htsjdk.samtools.SAMFileSpan;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordIterator;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
+import htsjdk.samtools.util.Log;
+import htsjdk.samtools.util.ProgressLogger;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrays;
+import it.unimi.dsi.fastutil.longs.LongSet;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.PriorityQueue;
+
+/**
+ * Lookup from read name to the BAM virtual file offsets of the primary alignment records of that read.
+ *
+ * Read names are stored as 64-bit fingerprints in a single table sorted by fingerprint.
+ * The first fingerprint of each fixed-size block of the table is held in memory so
+ * a lookup reads each block containing a requested fingerprint at most once.
+ * The index is built from sorted runs that are merged once the BAM has been traversed
+ * so building the index requires only a bounded amount of memory.
+ * Only primary alignment records are indexed: secondary and supplementary alignments are not included.
+ *
+ * The size and modification time of the BAM are recorded in the index so a stale index can be detected.
+ *
+ * @author Daniel Cameron
+ *
+ */
+public class ReadNameIndex implements Closeable {
+	private static final Log log = Log.getInstance(ReadNameIndex.class);
+	public static final String FILE_EXTENSION = ".rni";
+	private static final int MAGIC = 0x494E5247; // "GRNI"
+	private static final int VERSION = 2;
+	private static final int HEADER_SIZE = 24;
+	private static final int FOOTER_SIZE = 8;
+	private static final int ENTRY_SIZE = 16;
+	/**
+	 * Number of entries in each block of the index table
+	 */
+	private static final int BLOCK_SIZE = 4096;
+	/**
+	 * Number of records in each sorted run when building the index
+	 */
+	private static final int RUN_SIZE = 4 * 1024 * 1024;
+	private final FileChannel channel;
+	private final long bamLength;
+	private final long bamLastModified;
+	private final long entryCount;
+	/**
+	 * First fingerprint of each block
+	 */
+	private final long[] blockFirst;
+	public ReadNameIndex(File file) throws IOException {
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			if (channel.size() < HEADER_SIZE + FOOTER_SIZE) {
+				throw new IOException(file + " is not a read name index");
+			}
+			ByteBuffer header = read(0, HEADER_SIZE);
+			if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+				throw new IOException(file + " is not a read name index");
+			}
+			this.bamLength = header.getLong();
+			this.bamLastModified = header.getLong();
+			this.entryCount = read(channel.size() - FOOTER_SIZE, FOOTER_SIZE).getLong();
+			int blocks = blockCount(entryCount);
+			long summaryOffset = HEADER_SIZE + entryCount * ENTRY_SIZE;
+			if (entryCount < 0 || summaryOffset + (long)blocks * 8 + FOOTER_SIZE != channel.size()) {
+				throw new IOException(file + " is truncated");
+			}
+			this.blockFirst = new long[blocks];
+			read(summaryOffset, blocks * 8).asLongBuffer().get(blockFirst);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+	private static int blockCount(long entries) {
+		return (int)((entries + BLOCK_SIZE - 1) / BLOCK_SIZE);
+	}
+	/**
+	 * Default location of the read name index of the given BAM file.
+	 */
+	public static File getIndexFile(File bam) {
+		return new File(bam.getPath() + FILE_EXTENSION);
+	}
+	/**
+	 * Determines whether this index was created from the current version of the given BAM file
+	 */
+	public boolean isIndexOf(File bam) {
+		return bam.length() == bamLength && bam.lastModified() == bamLastModified;
+	}
+	/**
+	 * 64-bit read name fingerprint.
+	 * Collisions between distinct read names are possible but, for the number of
+	 * reads in a sequencing library, vanishingly rare.
+	 */
+	public static long fingerprint(String readName) {
+		// FNV-1a
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < readName.length(); i++) {
+			hash ^= readName.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		// MurmurHash3 finaliser to spread the low entropy of similar read names
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+	/**
+	 * Virtual file offsets of the records with the given read name fingerprints.
+	 * Due to fingerprint collisions, records with other read names can also be returned.
+	 * @param fingerprints read name fingerprints to look up
+	 * @return virtual file offsets in ascending order
+	 */
+	public long[] lookup(LongSet fingerprints) throws IOException {
+		long[] query = fingerprints.toLongArray();
+		LongArrays.quickSort(query);
+		LongArrayList result = new LongArrayList();
+		int loadedBlock = -1;
+		long[] block = new long[2 * BLOCK_SIZE];
+		for (long fp : query) {
+			int b = startBlock(fp);
+			if (b < 0) continue;
+			if (b != loadedBlock) {
+				loadBlock(b, block);
+				loadedBlock = b;
+			}
+			long i = (long)b * BLOCK_SIZE + lowerBound(block, blockEntries(b), fp);
+			// matching entries can continue into subsequent blocks
+			while (i < entryCount) {
+				int entryBlock = (int)(i / BLOCK_SIZE);
+				if (entryBlock != loadedBlock) {
+					loadBlock(entryBlock, block);
+					loadedBlock = entryBlock;
+				}
+				int offset = (int)(i % BLOCK_SIZE);
+				if (block[2 * offset] != fp) break;
+				result.add(block[2 * offset + 1]);
+				i++;
+			}
+		}
+		long[] offsets = result.toLongArray();
+		LongArrays.quickSort(offsets);
+		return offsets;
+	}
+	/**
+	 * Block containing the first entry with a fingerprint not less than the given fingerprint
+	 * @return block index, -1 if there is no such block
+	 */
+	private int startBlock(long fp) {
+		// last block starting before fp since earlier entries with fp can precede a block starting with fp
+		int low = 0;
+		int high = blockFirst.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (blockFirst[mid] < fp) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low == 0 ? (blockFirst.length == 0 ? -1 : 0) : low - 1;
+	}
+	private int blockEntries(int b) {
+		return (int)Math.min(BLOCK_SIZE, entryCount - (long)b * BLOCK_SIZE);
+	}
+	private void loadBlock(int b, long[] block) throws IOException {
+		int entries = blockEntries(b);
+		read(HEADER_SIZE + (long)b * BLOCK_SIZE * ENTRY_SIZE, entries * ENTRY_SIZE).asLongBuffer().get(block, 0, 2 * entries);
+	}
+	/**
+	 * Index of the first entry in the block with a fingerprint not less than the given fingerprint
+	 */
+	private static int lowerBound(long[] block, int entries, long fp) {
+		int low = 0;
+		int high = entries;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (block[2 * mid] < fp) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+	private ByteBuffer read(long position, int length) throws IOException {
+		return read(channel, position, length);
+	}
+	private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+		ByteBuffer bb = ByteBuffer.allocate(length);
+		while (bb.hasRemaining()) {
+			if (channel.read(bb, position + bb.position()) < 0) {
+				throw new EOFException();
+			}
+		}
+		bb.flip();
+		return bb;
+	}
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+	/**
+	 * Builds a read name index for the given BAM file
+	 * @param bam BAM file to index
+	 * @param output index file to write
+	 */
+	public static void create(File bam, File output) throws IOException {
+		create(bam, output, RUN_SIZE);
+	}
+	static void create(File bam, File output, int runSize) throws IOException {
+		long bamLength = bam.length();
+		long bamLastModified = bam.lastModified();
+		long[] fingerprints = new long[runSize];
+		long[] offsets = new long[runSize];
+		int size = 0;
+		LongArrayList runSizes = new LongArrayList();
+		File runFile = FileSystemContext.getWorkingFileFor(output, "gridss.tmp.runs.");
+		ProgressLogger progress = new ProgressLogger(log);
+		try {
+			try (SamReader reader = SamReaderFactory.makeDefault()
+					.enable(SamReaderFactory.Option.INCLUDE_SOURCE_IN_RECORDS)
+					.open(bam)) {
+				if (reader.type() != SamReader.Type.BAM_TYPE) {
+					throw new IllegalArgumentException("Read name index requires a BAM file. " + bam + " is not a BAM file.");
+				}
+				DataOutputStream runs = null;
+				try (SAMRecordIterator it = reader.iterator()) {
+					while (it.hasNext()) {
+						SAMRecord r = it.next();
+						progress.record(r);
+						if (r.isSecondaryOrSupplementary()) continue;
+						fingerprints[size] = fingerprint(r.getReadName());
+						offsets[size] = getVirtualOffset(r);
+						size++;
+						if (size == runSize) {
+							if (runs == null) {
+								runs = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(runFile)));
+							}
+							writeRun(runs, fingerprints, offsets, size);
+							runSizes.add(size);
+							size = 0;
+						}
+					}
+				} finally {
+					if (runs != null) {
+						runs.close();
+					}
+				}
+			}
+			LongArrays.quickSort(fingerprints, offsets, 0, size);
+			try (DataOutputStream os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(output)))) {
+				os.writeInt(MAGIC);
+				os.writeInt(VERSION);
+				os.writeLong(bamLength);
+				os.writeLong(bamLastModified);
+				LongArrayList blockFirst = new LongArrayList();
+				long count;
+				if (runSizes.isEmpty()) {
+					for (int i = 0; i < size; i++) {
+						if (i % BLOCK_SIZE == 0) {
+							blockFirst.add(fingerprints[i]);
+						}
+						os.writeLong(fingerprints[i]);
+						os.writeLong(offsets[i]);
+					}
+					count = size;
+				} else {
+					log.info("Merging ", runSizes.size() + 1, " sorted runs");
+					count = mergeRuns(runFile, runSizes, fingerprints, offsets, size, os, blockFirst);
+				}
+				for (int i = 0; i < blockFirst.size(); i++) {
+					os.writeLong(blockFirst.getLong(i));
+				}
+				os.writeLong(count);
+			}
+		} finally {
+			FileHelper.delete(runFile, false);
+		}
+	}
+	/**
+	 * Cursor over the entries of a sorted run
+	 */
+	private static abstract class RunCursor implements Comparable<RunCursor> {
+		protected long fingerprint;
+		protected long offset;
+		/**
+		 * Advances to the next entry
+		 * @return false if the run is exhausted
+		 */
+		public abstract boolean next() throws IOException;
+		@Override
+		public int compareTo(RunCursor o) {
+			int cmp = Long.compare(fingerprint, o.fingerprint);
+			if (cmp == 0) cmp = Long.compare(offset, o.offset);
+			return cmp;
+		}
+	}
+	private static class FileRunCursor extends RunCursor {
+		private final FileChannel channel;
+		private long position;
+		private final long end;
+		private ByteBuffer buffer = ByteBuffer.allocate(0);
+		public FileRunCursor(FileChannel channel, long start, long entries) {
+			this.channel = channel;
+			this.position = start;
+			this.end = start + entries * ENTRY_SIZE;
+		}
+		@Override
+		public boolean next() throws IOException {
+			if (!buffer.hasRemaining()) {
+				if (position >= end) return false;
+				int length = (int)Math.min((long)BLOCK_SIZE * ENTRY_SIZE, end - position);
+				buffer = read(channel, position, length);
+				position += length;
+			}
+			fingerprint = buffer.getLong();
+			offset = buffer.getLong();
+			return true;
+		}
+	}
+	private static class ArrayRunCursor extends RunCursor {
+		private final long[] fingerprints;
+		private final long[] offsets;
+		private final int size;
+		private int i = 0;
+		public ArrayRunCursor(long[] fingerprints, long[] offsets, int size) {
+			this.fingerprints = fingerprints;
+			this.offsets = offsets;
+			this.size = size;
+		}
+		@Override
+		public boolean next() {
+			if (i >= size) return false;
+			fingerprint = fingerprints[i];
+			offset = offsets[i];
+			i++;
+			return true;
+		}
+	}
+	/**
+	 * Merges the sorted runs into a single sorted table
+	 * @return number of entries written
+	 */
+	private static long mergeRuns(File runFile, LongArrayList runSizes, long[] fingerprints, long[] offsets, int size, DataOutputStream os, LongArrayList blockFirst) throws IOException {
+		long count = 0;
+		try (FileChannel channel = FileChannel.open(runFile.toPath(), StandardOpenOption.READ)) {
+			PriorityQueue<RunCursor> queue = new PriorityQueue<>();
+			long start = 0;
+			for (int i = 0; i < runSizes.size(); i++) {
+				long entries = runSizes.getLong(i);
+				RunCursor cursor = new FileRunCursor(channel, start + 4, entries);
+				if (cursor.next()) queue.add(cursor);
+				start += 4 + entries * ENTRY_SIZE;
+			}
+			RunCursor last = new ArrayRunCursor(fingerprints, offsets, size);
+			if (last.next()) queue.add(last);
+			while (!queue.isEmpty()) {
+				RunCursor cursor = queue.poll();
+				if (count % BLOCK_SIZE == 0) {
+					blockFirst.add(cursor.fingerprint);
+				}
+				os.writeLong(cursor.fingerprint);
+				os.writeLong(cursor.offset);
+				count++;
+				if (cursor.next()) queue.add(cursor);
+			}
+		}
+		return count;
+	}
+	private static long getVirtualOffset(SAMRecord r) {
+		SAMFileSpan span = r.getFileSource() == null ? null : r.getFileSource().getFilePointer();
+		if (!(span instanceof BAMFileSpan)) {
+			throw new IllegalStateException("Missing BAM file offset for " + r.getReadName());
+		}
+		return ((BAMFileSpan)span).getFirstOffset();
+	}
+	private static void writeRun(DataOutputStream os, long[] fingerprints, long[] offsets, int size) throws IOException {
+		LongArrays.quickSort(fingerprints, offsets, 0, size);
+		os.writeInt(size);
+		for (int i = 0; i < size; i++) {
+			os.writeLong(fingerprints[i]);
+			os.writeLong(offsets[i]);
+		}
+	}
+}
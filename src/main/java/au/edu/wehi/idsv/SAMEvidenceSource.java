@@ -1,6 +1,8 @@
 package au.edu.wehi.idsv;
 
+import au.edu.wehi.idsv.alignment.ExternalProcessStreamingAligner;
 import au.edu.wehi.idsv.bed.IntervalBed;
+import au.edu.wehi.idsv.bed.IntervalIndex;
 import au.edu.wehi.idsv.configuration.GridssConfiguration;
 import au.edu.wehi.idsv.configuration.SoftClipConfiguration;
 import au.edu.wehi.idsv.metrics.IdsvSamFileMetrics;
@@ -10,6 +12,7 @@ import au.edu.wehi.idsv.sam.SAMFileUtil;
 import au.edu.wehi.idsv.sam.SAMRecordUtil;
 import au.edu.wehi.idsv.util.*;
 import au.edu.wehi.idsv.validation.OrderAssertingIterator;
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Iterators;
@@ -30,6 +33,7 @@ import picard.cmdline.CommandLineProgram;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -162,6 +166,10 @@ public class SAMEvidenceSource extends EvidenceSource {
 		// extract -> query sort -> tag -> split read -> back to coordinate sorted
 		// We want to tag before generating split reads so all splits are guaranteed to
 		// have the same tags
+		boolean hasIntermediate = extractedFile.exists() || querysortedFile.exists() || taggedFile.exists() || withsplitreadsFile.exists();
+		if (!svFile.exists() && !hasIntermediate && gridss.Defaults.STREAMING_SV_READ_EXTRACTION) {
+			extractStreaming(svFile);
+		}
 		if (!svFile.exists()) {
 			if (!withsplitreadsFile.exists()) {
 				if (!taggedFile.exists()) {
@@ -230,6 +238,49 @@ public class SAMEvidenceSource extends EvidenceSource {
 			FileHelper.delete(withsplitreadsFile, true);
 		}
 	}
+	/**
+	 * Performs SV read extraction, tag computation and split read identification
+	 * without intermediate files.
+	 */
+	private void extractStreaming(File svFile) throws IOException {
+		log.info("Extracting SV reads from " + getFile().getAbsolutePath());
+		File in = getFile(SortOrder.queryname);
+		if (in == null || !in.exists()) {
+			in = getFile();
+		}
+		ExtractSVReads extract = new ExtractSVReads();
+		extract.INPUT = in;
+		extract.UNMAPPED_READS = false;
+		extract.METRICS_OUTPUT = getContext().getFileSystemContext().getSVMetrics(getFile());
+		extract.MIN_CLIP_LENGTH = getContext().getConfig().getSoftClip().minLength;
+		extract.INSERT_SIZE_METRICS = getContext().getFileSystemContext().getInsertSizeMetrics(getFile());
+		extract.INCLUDE_DUPLICATES = true;
+		extract.READ_PAIR_CONCORDANCE_MIN_FRAGMENT_SIZE = rpcMinFragmentSize;
+		extract.READ_PAIR_CONCORDANCE_MAX_FRAGMENT_SIZE = rpcMaxFragmentSize;
+		extract.READ_PAIR_CONCORDANT_PERCENT = rpcConcordantPercentage;
+		extract.setReference(getContext().getReference());
+		SoftClipsToSplitReads split = new SoftClipsToSplitReads();
+		try (ExternalProcessStreamingAligner aligner = new ExternalProcessStreamingAligner(
+				SamReaderFactory.makeDefault().referenceSequence(getContext().getReferenceFile()),
+				split.ALIGNER_COMMAND_LINE,
+				getContext().getReferenceFile(),
+				getProcessContext().getWorkerThreadCount(),
+				getContext().getDictionary(),
+				split.ALIGNER_STREAMING_PROCESSES,
+				ExternalProcessStreamingAligner.DEFAULT_BATCH_SIZE)) {
+			StreamingSplitReadRealigner realigner = new StreamingSplitReadRealigner(getContext(), aligner, getContext().getFileSystemContext().getMaxBufferedRecordsPerFile());
+			realigner.setFallbackBaseQuality(split.FALLBACK_BASE_QUALITY);
+			realigner.setMinSoftClipLength(split.MIN_CLIP_LENGTH);
+			realigner.setMinSoftClipQuality(split.MIN_CLIP_QUAL);
+			realigner.setProcessSecondaryAlignments(split.PROCESS_SECONDARY_ALIGNMENTS);
+			realigner.setRealignExistingSplitReads(getContext().getConfig().getSoftClip().realignSplitReads);
+			realigner.setRealignEntireRecord(split.REALIGN_ENTIRE_READ);
+			realigner.setWorkerThreads(getProcessContext().getWorkerThreadCount());
+			realigner.setAdjustPrimaryAlignment(split.READJUST_PRIMARY_ALIGNMENT_POSITION);
+			realigner.setWriteOATag(split.WRITE_OA);
+			new SVReadExtractionPipeline(getContext(), extract, new ComputeSamTags(), realigner).process(in, svFile);
+		}
+	}
 	public CloseableIterator<DirectedEvidence> iterator(final QueryInterval[] intervals, EvidenceSortOrder eso) {
 		SamReader reader = getReader();
 		// expand query bounds as the alignment for a discordant read pair could fall before or after the breakend interval we are extracting
@@ -293,11 +344,12 @@ public class SAMEvidenceSource extends EvidenceSource {
 	}
 	private Iterator<DirectedEvidence> asEvidence(Iterator<SAMRecord> it, EvidenceSortOrder eso) {
 		it = new BufferedIterator<>(it, 2); // TODO: remove when https://github.com/samtools/htsjdk/issues/760 is resolved
-		it = Iterators.filter(it, r -> !shouldFilterPreTransform(r));
-		it = Iterators.transform(it, r -> transform(r));
-		it = Iterators.filter(it, r -> !shouldFilter(r));		
+		// reads are coordinate sorted so blacklist lookups can use sequential cursors
+		IntervalBed blacklist = getBlacklistedRegions();
+		IntervalIndex.Cursor evidenceBlacklist = blacklist.cursor();
+		it = new EvidenceRecordIterator(it, blacklist.cursor());
 		Iterator<DirectedEvidence> eit = new DirectedEvidenceIterator(it, this, minIndelSize());
-		eit = Iterators.filter(eit, e -> !shouldFilter(e));
+		eit = Iterators.filter(eit, e -> !shouldFilter(e, evidenceBlacklist));
 		switch (eso) {
 			case SAMRecordStartPosition:
 				// already sorted by coordinate
@@ -315,6 +367,30 @@ public class SAMEvidenceSource extends EvidenceSource {
 		}
 		return eit;
 	}
+	/**
+	 * Filters and transforms the records that could contribute evidence in a single pass
+	 * so records are only transformed if they pass the filters that can be applied directly
+	 * to the record.
+	 */
+	private class EvidenceRecordIterator extends AbstractIterator<SAMRecord> {
+		private final Iterator<SAMRecord> it;
+		private final IntervalIndex.Cursor blacklist;
+		public EvidenceRecordIterator(Iterator<SAMRecord> it, IntervalIndex.Cursor blacklist) {
+			this.it = it;
+			this.blacklist = blacklist;
+		}
+		@Override
+		protected SAMRecord computeNext() {
+			while (it.hasNext()) {
+				SAMRecord r = it.next();
+				if (shouldFilterPreTransform(r)) continue;
+				r = transform(r, blacklist);
+				if (shouldFilter(r)) continue;
+				return r;
+			}
+			return endOfData();
+		}
+	}
 	private static float average(byte[] values) {
 		float total = 0;
 		for (byte b : values) {
@@ -323,10 +399,17 @@ public class SAMEvidenceSource extends EvidenceSource {
 		return total / values.length;
 	}
 	public SAMRecord transform(SAMRecord r) {
+		return transform(r, getBlacklistedRegions().cursor());
+	}
+	/**
+	 * @param blacklist blacklist lookup for the alignment of the read.
+	 * Mate and supplementary alignments are not in coordinate order so are looked up directly.
+	 */
+	private SAMRecord transform(SAMRecord r, IntervalIndex.Cursor blacklist) {
 		SAMRecordUtil.lowMapqToUnmapped(r, getContext().getConfig().minMapq);
 		// Converts overlaps of blacklisted regions to unmapped
 		if (!r.getReadUnmappedFlag()) {
-			if (getBlacklistedRegions().overlaps(r.getReferenceIndex(), r.getAlignmentStart(), r.getAlignmentEnd())) {
+			if (blacklist.overlaps(r.getReferenceIndex(), r.getAlignmentStart(), r.getAlignmentEnd())) {
 				r.setReadUnmappedFlag(true);
 			}
 		}
@@ -342,20 +425,32 @@ public class SAMEvidenceSource extends EvidenceSource {
 				r.setMateUnmappedFlag(true);
 			}
 		}
-		if (r.getAttribute(SAMTag.SA.name()) != null) {
+		List<ChimericAlignment> splits = SAMRecordUtil.getCachedChimericAlignments(r);
+		if (!splits.isEmpty()) {
 			SAMSequenceDictionary dict = getContext().getDictionary();
-			// Need to keep track of original SA tag as if we unmap the primary alignment
-			// the supplementary alignment scoring will be inconsistent since it is based
-			// on the length of the primary alignment soft clip.
-			r.setTransientAttribute("OSA", r.getStringAttribute(SAMTag.SA.name()));
-			r.setAttribute(SAMTag.SA.name(), ChimericAlignment.getChimericAlignments(r).stream()
-					.filter(ca -> isInReference(r, ca, dict))
-					.filter(ca -> !getBlacklistedRegions().overlaps(
-							dict.getSequence(ca.rname).getSequenceIndex(),
-							ca.pos,
-							ca.pos + ca.cigar.getReferenceLength() - 1))
-					.map(ca -> ca.toString())
-					.collect(Collectors.joining(";")));
+			List<ChimericAlignment> retained = null;
+			for (int i = 0; i < splits.size(); i++) {
+				ChimericAlignment ca = splits.get(i);
+				boolean retain = isInReference(r, ca, dict) && !getBlacklistedRegions().overlaps(
+						dict.getSequence(ca.rname).getSequenceIndex(),
+						ca.pos,
+						ca.pos + ca.cigar.getReferenceLength() - 1);
+				if (!retain && retained == null) {
+					retained = new ArrayList<>(splits.subList(0, i));
+				} else if (retain && retained != null) {
+					retained.add(ca);
+				}
+			}
+			// Only rewrite the SA tag if a split alignment has been removed
+			if (retained != null) {
+				// Need to keep track of original SA tag as if we unmap the primary alignment
+				// the supplementary alignment scoring will be inconsistent since it is based
+				// on the length of the primary alignment soft clip.
+				r.setTransientAttribute("OSA", r.getStringAttribute(SAMTag.SA.name()));
+				r.setAttribute(SAMTag.SA.name(), retained.stream()
+						.map(ca -> ca.toString())
+						.collect(Collectors.joining(";")));
+			}
 		}
 		return r;
 	}
@@ -458,8 +553,11 @@ public class SAMEvidenceSource extends EvidenceSource {
 		return Math.min(getContext().getConfig().getSoftClip().minLength, getContext().getVariantCallingParameters().minSize);
 	}
 	public boolean shouldFilter(DirectedEvidence e) {
+		return shouldFilter(e, getBlacklistedRegions().cursor());
+	}
+	private boolean shouldFilter(DirectedEvidence e, IntervalIndex.Cursor blacklist) {
 		BreakendSummary bs = e.getBreakendSummary();
-		if (getBlacklistedRegions().overlaps(bs.referenceIndex, bs.start - 1, bs.end + 1)) {
+		if (blacklist.overlaps(bs.referenceIndex, bs.start - 1, bs.end + 1)) {
 			return true;
 		}
 		GridssConfiguration config = getContext().getConfig();
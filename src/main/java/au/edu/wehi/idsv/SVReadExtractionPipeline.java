@@ -0,0 +1,173 @@
+package au.edu.wehi.idsv;
+
+import au.edu.wehi.idsv.sam.TemplateTagsIterator;
+import au.edu.wehi.idsv.util.AsyncBufferedIterator;
+import au.edu.wehi.idsv.util.FileHelper;
+import au.edu.wehi.idsv.util.UngroupingIterator;
+import au.edu.wehi.idsv.validation.OrderAssertingIterator;
+import gridss.ComputeSamTags;
+import gridss.ExtractSVReads;
+import htsjdk.samtools.*;
+import htsjdk.samtools.SAMFileHeader.SortOrder;
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.samtools.util.CloserUtil;
+import htsjdk.samtools.util.Log;
+import htsjdk.samtools.util.ProgressLogger;
+import htsjdk.samtools.util.ProgressLoggerInterface;
+import htsjdk.samtools.util.SortingCollection;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Extracts SV reads, computes SAM tags and identifies split reads in a single pass.
+ *
+ * Records are streamed between the ExtractSVReads, ComputeSamTags and SoftClipsToSplitReads
+ * stages through bounded buffers instead of being written to intermediate BAM files.
+ * Only the final coordinate sort spills to disk, and it does so using the uncompressed
+ * BAM record encoding.
+ *
+ * Input that is not queryname sorted is additionally sorted by queryname after extraction
+ * since ComputeSamTags requires all records for each read to be consecutive.
+ *
+ * @author Daniel Cameron
+ *
+ */
+public class SVReadExtractionPipeline {
+	private static final Log log = Log.getInstance(SVReadExtractionPipeline.class);
+	private final GenomicProcessingContext pc;
+	private final ExtractSVReads extract;
+	private final ComputeSamTags tags;
+	private final StreamingSplitReadRealigner realigner;
+	/**
+	 * @param pc processing context
+	 * @param extract SV read extraction parameters
+	 * @param tags SAM tag parameters
+	 * @param realigner split read realigner. The realigner is not closed by this class.
+	 */
+	public SVReadExtractionPipeline(GenomicProcessingContext pc, ExtractSVReads extract, ComputeSamTags tags, StreamingSplitReadRealigner realigner) {
+		this.pc = pc;
+		this.extract = extract;
+		this.tags = tags;
+		this.realigner = realigner;
+	}
+	/**
+	 * Writes the coordinate sorted SV reads of the given input file to the given output file
+	 */
+	public void process(File input, File output) throws IOException {
+		File tmpoutput = gridss.Defaults.OUTPUT_TO_TEMP_FILE ? FileSystemContext.getWorkingFileFor(output, "gridss.tmp.SVReadExtractionPipeline.") : output;
+		SamReaderFactory readerFactory = SamReaderFactory.makeDefault().referenceSequence(pc.getReferenceFile());
+		String threadPrefix = input.getName() + "-";
+		SortingCollection<SAMRecord> querynameSorted = null;
+		SortingCollection<SAMRecord> coordinateSorted = null;
+		CloseableIterator<SAMRecord> asyncIn = null;
+		CloseableIterator<SAMRecord> grouped = null;
+		CloseableIterator<SAMRecord> asyncPerRecord = null;
+		CloseableIterator<List<SAMRecord>> asyncPerFragment = null;
+		try (SamReader reader = readerFactory.open(input)) {
+			SAMFileHeader header = reader.getFileHeader();
+			asyncIn = new AsyncBufferedIterator<>(reader.iterator(), threadPrefix + "raw");
+			Iterator<SAMRecord> extracted = extract.extract(header, input, asyncIn, pc.getReference());
+			if (header.getSortOrder() == SortOrder.queryname) {
+				grouped = new AsyncBufferedIterator<>(extracted, threadPrefix + "extract");
+			} else {
+				log.info("Sorting extracted reads from " + input + " by queryname");
+				SAMFileHeader querynameHeader = header.clone();
+				querynameHeader.setSortOrder(SortOrder.queryname);
+				querynameSorted = createSortingCollection(querynameHeader);
+				while (extracted.hasNext()) {
+					querynameSorted.add(extracted.next());
+				}
+				querynameSorted.doneAdding();
+				asyncIn.close();
+				grouped = querynameSorted.iterator();
+			}
+			Iterator<SAMRecord> perRecord = ComputeSamTags.computePerRecordFields(grouped, pc.getReference(), tags.TAGS, tags.SOFTEN_HARD_CLIPS, tags.FIX_MATE_INFORMATION, tags.FIX_DUPLICATE_FLAG, tags.FIX_SA, tags.FIX_MISSING_HARD_CLIP, tags.RECALCULATE_SA_SUPPLEMENTARY);
+			asyncPerRecord = new AsyncBufferedIterator<>(perRecord, threadPrefix + "nm");
+			Iterator<List<SAMRecord>> perFragment = ComputeSamTags.computePerFragmentFields(TemplateTagsIterator.withGrouping(asyncPerRecord), pc.getReference(), tags.TAGS, tags.SOFTEN_HARD_CLIPS, tags.FIX_MATE_INFORMATION, tags.FIX_DUPLICATE_FLAG, tags.FIX_SA, tags.FIX_MISSING_HARD_CLIP, tags.RECALCULATE_SA_SUPPLEMENTARY);
+			asyncPerFragment = new AsyncBufferedIterator<>(perFragment, threadPrefix + "tags");
+			SAMFileHeader outputHeader = header.clone();
+			outputHeader.setSortOrder(SortOrder.coordinate);
+			coordinateSorted = createSortingCollection(outputHeader);
+			log.info("Identifying split reads for " + input);
+			realigner.process(new UngroupingIterator<>(asyncPerFragment), new SortingCollectionWriter(outputHeader, coordinateSorted), new SortingCollectionWriter(outputHeader, coordinateSorted));
+			asyncPerFragment.close();
+			asyncPerRecord.close();
+			grouped.close();
+			asyncIn.close();
+			if (querynameSorted != null) {
+				querynameSorted.cleanup();
+				querynameSorted = null;
+			}
+			coordinateSorted.doneAdding();
+			try (SAMFileWriter writer = new SAMFileWriterFactory().makeSAMOrBAMWriter(outputHeader, true, tmpoutput)) {
+				writer.setProgressLogger(new ProgressLogger(log, 10000000));
+				try (CloseableIterator<SAMRecord> wit = coordinateSorted.iterator()) {
+					Iterator<SAMRecord> it = wit;
+					if (Defaults.SANITY_CHECK_ITERATORS) {
+						it = new OrderAssertingIterator<>(it, new SAMRecordCoordinateComparator());
+					}
+					while (it.hasNext()) {
+						writer.addAlignment(it.next());
+					}
+				}
+			}
+			coordinateSorted.cleanup();
+			coordinateSorted = null;
+			if (tmpoutput != output) {
+				FileHelper.move(tmpoutput, output, true);
+			}
+		} finally {
+			CloserUtil.close(asyncPerFragment);
+			CloserUtil.close(asyncPerRecord);
+			CloserUtil.close(grouped);
+			CloserUtil.close(asyncIn);
+			if (querynameSorted != null) querynameSorted.cleanup();
+			if (coordinateSorted != null) coordinateSorted.cleanup();
+			if (tmpoutput != output && tmpoutput.exists()) {
+				FileHelper.delete(tmpoutput, true);
+			}
+		}
+	}
+	private SortingCollection<SAMRecord> createSortingCollection(SAMFileHeader header) {
+		return SortingCollection.newInstance(
+				SAMRecord.class,
+				new BAMRecordCodec(header),
+				header.getSortOrder().getComparatorInstance(),
+				pc.getFileSystemContext().getMaxBufferedRecordsPerFile(),
+				pc.getFileSystemContext().getTemporaryDirectory().toPath());
+	}
+	/**
+	 * Adapts a SortingCollection to the writer interface expected by the split read realigner
+	 */
+	private static class SortingCollectionWriter implements SAMFileWriter {
+		private final SAMFileHeader header;
+		private final SortingCollection<SAMRecord> collection;
+		private ProgressLoggerInterface progress;
+		public SortingCollectionWriter(SAMFileHeader header, SortingCollection<SAMRecord> collection) {
+			this.header = header;
+			this.collection = collection;
+		}
+		@Override
+		public void addAlignment(SAMRecord alignment) {
+			alignment.setHeader(header);
+			collection.add(alignment);
+			if (progress != null) {
+				progress.record(alignment);
+			}
+		}
+		@Override
+		public SAMFileHeader getFileHeader() {
+			return header;
+		}
+		@Override
+		public void setProgressLogger(ProgressLoggerInterface progress) {
+			this.progress = progress;
+		}
+		@Override
+		public void close() {
+		}
+	}
+}
@@ -179,6 +179,9 @@ public class SequentialReferenceCoverageLookup implements Closeable, ReferenceCo
 		while (!currentEndReferencePairs.isEmpty() && currentEndReferencePairs.peek() <= currentPosition) currentEndReferencePairs.poll();
 	}
 	private boolean isLowerMappedOfNonOverlappingConcordantPair(SAMRecord read) {
+		return isLowerMappedOfNonOverlappingConcordantPair(read, pairing);
+	}
+	static boolean isLowerMappedOfNonOverlappingConcordantPair(SAMRecord read, ReadPairConcordanceCalculator pairing) {
 		return !read.getReadUnmappedFlag()
 				&& read.getReadPairedFlag()
 				&& !read.getMateUnmappedFlag()
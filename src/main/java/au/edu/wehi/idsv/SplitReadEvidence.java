@@ -35,7 +35,7 @@ public class SplitReadEvidence extends SingleReadEvidence implements DirectedBre
 	}
 	public static List<SplitReadEvidence> create(SAMEvidenceSource source, SAMRecord record) {
 		if (record.getReadUnmappedFlag() || record.getCigar() == null) return Collections.emptyList();
-		List<ChimericAlignment> aln = ChimericAlignment.getChimericAlignments(record);
+		List<ChimericAlignment> aln = SAMRecordUtil.getCachedChimericAlignments(record);
 		if (aln.isEmpty()) return Collections.emptyList();
 		if (record.getCigar().getFirstCigarElement().getOperator() == CigarOperator.HARD_CLIP
 				|| record.getCigar().getLastCigarElement().getOperator() == CigarOperator.HARD_CLIP) {
@@ -138,7 +138,7 @@ public class SplitReadEvidence extends SingleReadEvidence implements DirectedBre
 		if (getSAMRecord().getSupplementaryAlignmentFlag()) {
 			ChimericAlignment caThis = new ChimericAlignment(getSAMRecord());
 			// The first record should be the primary
-			ChimericAlignment caPrimary = ChimericAlignment.getChimericAlignments(getSAMRecord().getStringAttribute(SAMTag.SA.name())).get(0);
+			ChimericAlignment caPrimary = SAMRecordUtil.getCachedChimericAlignments(getSAMRecord()).get(0);
 			ChimericAlignment osaPrimary = caPrimary;
 			String osa = (String)getSAMRecord().getTransientAttribute("OSA");
 			if (osa != null) {
@@ -200,7 +200,7 @@ public class SplitReadEvidence extends SingleReadEvidence implements DirectedBre
 	public boolean involvesPrimaryReadAlignment() {
 		return super.involvesPrimaryReadAlignment()
 			// the first record in the SA tag should be the primary read alignment 
-			|| ChimericAlignment.getChimericAlignments(getSAMRecord()).get(0).equals(remoteAlignment);
+			|| SAMRecordUtil.getCachedChimericAlignments(getSAMRecord()).get(0).equals(remoteAlignment);
 	}
 
 	/**
@@ -20,6 +20,7 @@ import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.BlockingDeque;
 import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
 /**
  * Calls breakpoints from the given evidence
  * 
@@ -28,6 +29,10 @@ import java.util.concurrent.LinkedBlockingDeque;
 public class VariantCallIterator implements CloseableIterator<VariantContextDirectedEvidence> {
 	private static final Log log = Log.getInstance(VariantCallIterator.class);
 	private static final int ITERATOR_BUFFER_SIZE = 256;
+	/**
+	 * Interval at which workers blocked on a full output buffer check whether they have been aborted
+	 */
+	private static final long OUTPUT_POLL_INTERVAL_MS = 100;
 	private final VariantContextDirectedEvidence endOfStream;
 	private final ProcessingContext processContext;
 	private final DuplicatingIterable<List<DirectedEvidence>> iterable;
@@ -35,6 +40,7 @@ public class VariantCallIterator implements CloseableIterator<VariantContextDire
 	private final BlockingDeque<VariantContextDirectedEvidence> outBuffer = new LinkedBlockingDeque<>(ITERATOR_BUFFER_SIZE);
 	private VariantContextDirectedEvidence outBufferHeadNextValidRecord = null;
 	private final List<AsyncDirectionalIterator> async = new ArrayList<>();
+	private final List<Runnable> workerTasks = new ArrayList<>();
 	private int activeIterators;
 	private volatile Exception workerThreadException;
 	private VariantCallIterator(ProcessingContext processContext, Iterator<DirectedEvidence> evidence, QueryInterval[] interval, int intervalNumber) {
@@ -48,7 +54,7 @@ public class VariantCallIterator implements CloseableIterator<VariantContextDire
 		this.processContext = processContext;
 		boolean callBreakends = processContext.getVariantCallingParameters().callBreakends;
 		this.activeIterators = callBreakends ? 6 : 4;
-		this.iterable = new DuplicatingIterable<>(activeIterators, new BatchingIterator<>(evidence, ITERATOR_BUFFER_SIZE), 2);
+		this.iterable = new DuplicatingIterable<>(activeIterators, new BatchingIterator<>(evidence, ITERATOR_BUFFER_SIZE), 2, workerTasks::add);
 		this.filterInterval = interval;
 		for (BreakendDirection localDir : BreakendDirection.values()) {
 			for (BreakendDirection remoteDir : BreakendDirection.values()) {
@@ -69,6 +75,16 @@ public class VariantCallIterator implements CloseableIterator<VariantContextDire
 				async.add(new AsyncDirectionalIterator(it, localDir, null));
 			}
 		}
+		for (AsyncDirectionalIterator adi : async) {
+			workerTasks.add(adi::run);
+		}
+		try {
+			// the feeder and directional callers block on each other so must be scheduled together
+			processContext.getWorkerScheduler().submit(workerTasks);
+		} catch (InterruptedException e) {
+			log.error(e);
+			throw new RuntimeException(e);
+		}
 	}
 	public VariantCallIterator(ProcessingContext processContext, Iterator<DirectedEvidence> evidence) {
 		this(processContext, evidence, null, -1);
@@ -87,7 +103,7 @@ public class VariantCallIterator implements CloseableIterator<VariantContextDire
 		private StateTracker currentTracker = null;
 		private Collection<TrackedState> currentTrackedObjects = null;
 		private T lastElement = null;
-		private Thread thread;
+		private final String name;
 		private volatile boolean shouldAbortImmediately = false;
 		public AsyncDirectionalIterator(Iterator<T> iterator, BreakendDirection dir1, BreakendDirection dir2) {
 			this.it = iterator;
@@ -107,10 +123,7 @@ public class VariantCallIterator implements CloseableIterator<VariantContextDire
 				}
 			}
 			this.it = filterInterval == null ? this.it : wrapFilter(filterInterval, this.it);
-			this.thread = new Thread(() -> run());
-			this.thread.setDaemon(true);
-			this.thread.setName("CallVariants " + positionComponent + dir1.toChar() + (dir2 == null ? "" : dir2.toChar()));
-			this.thread.start();
+			this.name = "CallVariants " + positionComponent + dir1.toChar() + (dir2 == null ? "" : dir2.toChar());
 		}
 		private Iterator<T> wrapFilter(QueryInterval[] filterInterval, Iterator<T> it) {
 			return Iterators.filter(it, v -> {
@@ -124,11 +137,23 @@ public class VariantCallIterator implements CloseableIterator<VariantContextDire
 				}
 			});
 		}
+		/**
+		 * Writes to the output buffer, blocking whilst the buffer is full.
+		 * @return true if the record was written, false if we have been aborted
+		 */
+		private boolean put(VariantContextDirectedEvidence record) throws InterruptedException {
+			while (!outBuffer.offerLast(record, OUTPUT_POLL_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+				if (shouldAbortImmediately) return false;
+			}
+			return true;
+		}
 		public void run() {
+			String threadName = Thread.currentThread().getName();
+			Thread.currentThread().setName(name);
 			try {
 				while (it.hasNext() && !shouldAbortImmediately) {
 					lastElement = it.next();
-					outBuffer.putLast(lastElement);
+					if (!put(lastElement)) break;
 					if (currentTracker != null) {
 						try {
 							currentTracker.track(currentTrackedObjects);
@@ -137,7 +162,7 @@ public class VariantCallIterator implements CloseableIterator<VariantContextDire
 						}
 					}
 				}
-				outBuffer.putLast(endOfStream);
+				put(endOfStream);
 				if (currentTracker != null) {
 					try {
 						currentTracker.close();
@@ -148,10 +173,12 @@ public class VariantCallIterator implements CloseableIterator<VariantContextDire
 			} catch (Exception e) {
 				workerThreadException = e;
 				try {
-					outBuffer.putLast(endOfStream);
+					put(endOfStream);
 				} catch (InterruptedException ex) {
 					log.error("Interrupted writing end of stream");
 				}
+			} finally {
+				Thread.currentThread().setName(threadName);
 			}
 		}
 		@Override
@@ -1,12 +1,18 @@
 package au.edu.wehi.idsv;
 
-import au.edu.wehi.idsv.util.AsyncBufferedIterator;
 import au.edu.wehi.idsv.util.FileHelper;
 import au.edu.wehi.idsv.vcf.VcfFileUtil;
+import com.google.common.base.Stopwatch;
 import com.google.common.util.concurrent.MoreExecutors;
 import htsjdk.samtools.QueryInterval;
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.samtools.util.InflatedBlockCache;
 import htsjdk.samtools.util.Log;
+import htsjdk.samtools.util.SortingCollection;
+import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.variantcontext.writer.VariantContextWriter;
+import htsjdk.variant.vcf.VCFHeader;
+import htsjdk.variant.vcf.VCFRecordCodec;
 
 import java.io.File;
 import java.io.IOException;
@@ -14,6 +20,8 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
 
 
 /**
@@ -43,24 +51,46 @@ public class VariantCaller {
 		List<QueryInterval[]> chunks = processContext.getReference().getIntervals(processContext.getConfig().chunkSize, processContext.getConfig().chunkSequenceChangePenalty);
 		List<File> calledChunk = new ArrayList<>();
 		List<Future<Void>> tasks = new ArrayList<>();
-		
+		List<Integer> pending = new ArrayList<>();
 		for (int i = 0; i < chunks.size(); i++) {
-			QueryInterval[] chunk = chunks.get(i);
 			File f = processContext.getFileSystemContext().getVariantCallChunkVcf(vcf, i);
-			int chunkNumber = i;
 			calledChunk.add(f);
 			if (!f.exists()) {
-				tasks.add(threadpool.submit(() -> { callChunk(f, es, chunkNumber, chunk); return null; }));
+				pending.add(i);
+			}
+		}
+		long[] cost = new long[pending.size()];
+		int[] order = IntStream.range(0, pending.size()).toArray();
+		if (gridss.Defaults.ADAPTIVE_CHUNK_SCHEDULING) {
+			List<SAMEvidenceSource> sources = new ArrayList<>(samEvidence);
+			sources.add(assemblyEvidence);
+			try (ChunkCostEstimator estimator = new ChunkCostEstimator(sources)) {
+				if (estimator.canEstimate()) {
+					for (int j = 0; j < pending.size(); j++) {
+						cost[j] = estimator.estimate(chunks.get(pending.get(j)));
+					}
+					order = ChunkCostEstimator.longestFirst(cost);
+				}
 			}
 		}
+		for (int j : order) {
+			int chunkNumber = pending.get(j);
+			QueryInterval[] chunk = chunks.get(chunkNumber);
+			File f = calledChunk.get(chunkNumber);
+			long chunkCost = cost[j];
+			tasks.add(threadpool.submit(() -> { callChunk(f, es, chunkNumber, chunk, chunkCost); return null; }));
+		}
 		runTasks(tasks);
+		log.info(InflatedBlockCache.getDefault().toString());
 		
 		log.info("Merging identified breakpoints");
 		File mergedOut = FileSystemContext.getWorkingFileFor(vcf, "gridss.merged.");
-		VcfFileUtil.concat(processContext.getReference().getSequenceDictionary(), calledChunk, mergedOut);
-		
-		log.info("Sorting identified breakpoints");
-		VcfFileUtil.sort(processContext, mergedOut, vcf);
+		if (!VcfFileUtil.mergeSorted(processContext, calledChunk, vcf, processContext.getVcfHeader(), IdsvVariantContext.VariantContextByLocationStart(processContext.getDictionary()), true)) {
+			// chunks written by earlier versions are not sorted
+			log.info("Sorting identified breakpoints");
+			VcfFileUtil.concat(processContext.getReference().getSequenceDictionary(), calledChunk, mergedOut);
+			VcfFileUtil.sort(processContext, mergedOut, vcf);
+		}
 		// clean up chunked
 		if (gridss.Defaults.DELETE_TEMPORARY_FILES) {
 			for (File f : calledChunk) {
@@ -86,33 +116,52 @@ public class VariantCaller {
 			throw new RuntimeException(firstException);
 		}
 	}
-	private void callChunk(File output, AggregateEvidenceSource es, int chunkNumber, QueryInterval[] chunk) {
+	private void callChunk(File output, AggregateEvidenceSource es, int chunkNumber, QueryInterval[] chunk, long estimatedCost) {
 		String chunkMsg = String.format("chunk %d (%s:%d-%s:%d)", chunkNumber,
 				processContext.getDictionary().getSequence(chunk[0].referenceIndex).getSequenceName(), chunk[0].start,
 				processContext.getDictionary().getSequence(chunk[chunk.length-1].referenceIndex).getSequenceName(), chunk[chunk.length-1].end);
 		String msg = "calling maximal cliques in " + chunkMsg;
 		File tmp = new File(output.getParent(), "gridss.tmp." + output.getName());
+		VCFHeader header = processContext.getVcfHeader();
+		SortingCollection<VariantContext> sorted = null;
+		Stopwatch timer = Stopwatch.createStarted();
 		try (VariantCallIterator rawit = new VariantCallIterator(es, chunk, chunkNumber)) {
-			try (VariantContextWriter vcfWriter = processContext.getVariantContextWriter(tmp, false)) {
+			try (VariantContextWriter vcfWriter = processContext.getVariantContextWriterBuilder(tmp, false).build()) {
+				vcfWriter.writeHeader(header);
 				log.info("Start ", msg);
-				try (AsyncBufferedIterator<VariantContextDirectedEvidence> it = new AsyncBufferedIterator<>(rawit, "VariantCaller " + chunkMsg)) {
+				// calls from the directional clique callers are interleaved so the chunk is sorted here
+				// allowing the chunks to be merged without a full resort
+				sorted = SortingCollection.newInstance(
+						VariantContext.class,
+						new VCFRecordCodec(header),
+						IdsvVariantContext.VariantContextByLocationStart(processContext.getDictionary()),
+						processContext.getFileSystemContext().getMaxBufferedRecordsPerFile(),
+						processContext.getFileSystemContext().getTemporaryDirectory().toPath());
+				// calls are already buffered by the directional callers so are consumed directly
+				while (rawit.hasNext()) {
+					VariantContextDirectedEvidence loc = rawit.next();
+					if (loc.getBreakendQual() >= processContext.getVariantCallingParameters().minScore || processContext.getVariantCallingParameters().writeFiltered) {
+						// If we're under min score with all possible evidence allocated, we're definitely going to fail
+						// when we restrict evidence to single breakpoint support
+						sorted.add(loc);
+					}
+				}
+				sorted.doneAdding();
+				try (CloseableIterator<VariantContext> it = sorted.iterator()) {
 					while (it.hasNext()) {
-						VariantContextDirectedEvidence loc = it.next();
-						if (loc.getBreakendQual() >= processContext.getVariantCallingParameters().minScore || processContext.getVariantCallingParameters().writeFiltered) {
-							// If we're under min score with all possible evidence allocated, we're definitely going to fail
-							// when we restrict evidence to single breakpoint support
-							vcfWriter.add(loc);
-						}
+						vcfWriter.add(it.next());
 					}
 				}
 			}
+		} finally {
+			if (sorted != null) sorted.cleanup();
 		}
 		try {
 			FileHelper.move(tmp, output, true);
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
-		log.info("Complete ", msg);
+		log.info(String.format("Complete %s in %ds (estimated cost %d)", msg, timer.elapsed(TimeUnit.SECONDS), estimatedCost));
 		if (gridss.Defaults.DEFENSIVE_GC) {
 			log.info("Requesting defensive GC to ensure OS file handles are closed");
 			System.gc();
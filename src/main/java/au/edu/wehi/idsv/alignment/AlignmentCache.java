@@ -0,0 +1,313 @@
+package au.edu.wehi.idsv.alignment;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import htsjdk.samtools.*;
+import htsjdk.samtools.fastq.FastqRecord;
+import htsjdk.samtools.util.Log;
+import htsjdk.samtools.util.RuntimeIOException;
+import htsjdk.samtools.util.SequenceUtil;
+import org.apache.commons.lang3.ArrayUtils;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Persistent content-addressed cache of aligner output.
+ *
+ * Alignments are keyed by the read bases and are stored in a subdirectory specific to
+ * the reference genome and aligner so a cache directory can be shared between runs.
+ * Each run writes its new alignments to a separate file, so concurrent runs can share
+ * a cache directory and the cache can be cleared at any time by deleting the directory.
+ * The number of cached alignments is bounded, with the most recently written files
+ * retained when the bound is reached. Cache files are merged into a single file once
+ * there are more than {@link #MAX_FILES} of them, or when the bound truncates the cache.
+ *
+ * Alignments are only cached if the read name, bases and base qualities of every
+ * alignment record can be recreated from the input read. Since base qualities are not
+ * part of the key, this cache should only be used with aligners that do not consider
+ * base qualities when aligning (such as bwa mem).
+ *
+ * @author Daniel Cameron
+ *
+ */
+public class AlignmentCache implements Closeable {
+	private static final Log log = Log.getInstance(AlignmentCache.class);
+	private static final String FILE_SUFFIX = ".alncache.gz";
+	private static final String ENTRY_PREFIX = "@";
+	/**
+	 * Maximum number of cache files before they are merged
+	 */
+	public static final int MAX_FILES = 8;
+	private final File directory;
+	private final int maxEntries;
+	/**
+	 * Cache files whose alignments are all in the cache
+	 */
+	private final List<File> files = new ArrayList<>();
+	private final SAMFileHeader header;
+	private final Map<HashCode, String[]> cache = new ConcurrentHashMap<>();
+	private final Map<HashCode, String[]> added = new ConcurrentHashMap<>();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong uncacheable = new AtomicLong();
+	private final AtomicLong full = new AtomicLong();
+	public AlignmentCache(File cacheDirectory, File reference, SAMSequenceDictionary dict, String aligner) {
+		this(cacheDirectory, reference, dict, aligner, gridss.Defaults.ALIGNMENT_CACHE_MAX_ENTRIES);
+	}
+	/**
+	 * @param cacheDirectory directory to store cached alignments in
+	 * @param reference reference genome reads are aligned to
+	 * @param dict reference genome sequence dictionary
+	 * @param aligner aligner identifier. Alignments made by different aligners are cached separately.
+	 * @param maxEntries maximum number of reads to cache alignments for
+	 */
+	public AlignmentCache(File cacheDirectory, File reference, SAMSequenceDictionary dict, String aligner, int maxEntries) {
+		if (maxEntries < 1) throw new IllegalArgumentException("maxEntries must be positive");
+		this.directory = new File(cacheDirectory, namespace(reference, dict, aligner));
+		this.maxEntries = maxEntries;
+		this.header = new SAMFileHeader(dict);
+		if (!directory.exists() && !directory.mkdirs()) {
+			String msg = String.format("Unable to create alignment cache directory %s", directory);
+			log.error(msg);
+			throw new RuntimeIOException(msg);
+		}
+		load();
+		log.info(String.format("Loaded %d cached alignments from %s", cache.size(), directory));
+	}
+	private static String namespace(File reference, SAMSequenceDictionary dict, String aligner) {
+		Hasher hasher = Hashing.murmur3_128().newHasher();
+		hasher.putString(aligner, StandardCharsets.UTF_8);
+		hasher.putLong(reference.length());
+		for (SAMSequenceRecord seq : dict.getSequences()) {
+			hasher.putString(seq.getSequenceName(), StandardCharsets.UTF_8);
+			hasher.putInt(seq.getSequenceLength());
+		}
+		return hasher.hash().toString();
+	}
+	private static HashCode key(FastqRecord read) {
+		byte[] bases = read.getReadBases().clone();
+		SequenceUtil.upperCase(bases);
+		return Hashing.murmur3_128().hashBytes(bases);
+	}
+	private void load() {
+		File[] found = directory.listFiles((dir, name) -> name.endsWith(FILE_SUFFIX));
+		if (found == null) return;
+		// newest first so the most recent alignments are retained if the cache is full
+		Arrays.sort(found, Comparator.comparingLong(File::lastModified).reversed());
+		boolean truncated = false;
+		for (File file : found) {
+			files.add(file);
+			if (cache.size() >= maxEntries) {
+				truncated = true;
+				continue;
+			}
+			try (BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(file)), StandardCharsets.UTF_8))) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					if (!line.startsWith(ENTRY_PREFIX)) {
+						throw new IOException("Malformed alignment cache entry");
+					}
+					String[] fields = line.substring(ENTRY_PREFIX.length()).split("\t");
+					String[] records = new String[Integer.parseInt(fields[1])];
+					for (int i = 0; i < records.length; i++) {
+						records[i] = reader.readLine();
+						if (records[i] == null) {
+							throw new EOFException("Truncated alignment cache entry");
+						}
+					}
+					if (cache.size() >= maxEntries) {
+						truncated = true;
+						break;
+					}
+					cache.putIfAbsent(HashCode.fromString(fields[0]), records);
+				}
+			} catch (IOException | RuntimeException e) {
+				truncated = true;
+				log.warn(e, "Ignoring remainder of unreadable alignment cache file ", file);
+			}
+		}
+		if (truncated || files.size() > MAX_FILES) {
+			try {
+				compact();
+			} catch (IOException e) {
+				// cache files are left as is and will be merged by a later run
+				log.warn(e, "Unable to compact alignment cache ", directory);
+			}
+		}
+	}
+	/**
+	 * Replaces all cache files read or written by this cache with a single file
+	 * containing every cached alignment.
+	 */
+	private void compact() throws IOException {
+		File merged = write(cache);
+		for (File file : files) {
+			if (!file.delete() && file.exists()) {
+				log.warn("Unable to delete merged alignment cache file ", file);
+			}
+		}
+		files.clear();
+		files.add(merged);
+		log.debug(String.format("Merged alignment cache into %s", merged));
+	}
+	/**
+	 * Writes the given alignments to a new cache file
+	 */
+	private File write(Map<HashCode, String[]> entries) throws IOException {
+		String name = UUID.randomUUID().toString();
+		File tmp = new File(directory, name + ".tmp");
+		File file = new File(directory, name + FILE_SUFFIX);
+		try (Writer writer = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(tmp)), StandardCharsets.UTF_8))) {
+			for (Map.Entry<HashCode, String[]> entry : entries.entrySet()) {
+				String[] records = entry.getValue();
+				writer.write(ENTRY_PREFIX);
+				writer.write(entry.getKey().toString());
+				writer.write('\t');
+				writer.write(Integer.toString(records.length));
+				writer.write('\n');
+				for (String record : records) {
+					writer.write(record);
+					writer.write('\n');
+				}
+			}
+		}
+		if (!tmp.renameTo(file)) {
+			String msg = String.format("Unable to move %s to %s", tmp, file);
+			log.error(msg);
+			throw new IOException(msg);
+		}
+		return file;
+	}
+	/**
+	 * Gets the cached alignments of the given read
+	 * @return alignment records identical to those returned by the aligner, null if the read is not in the cache
+	 */
+	public List<SAMRecord> get(FastqRecord read) {
+		List<SAMRecord> result = lookup(read);
+		if (result == null) {
+			misses.incrementAndGet();
+		} else {
+			hits.incrementAndGet();
+		}
+		return result;
+	}
+	/**
+	 * Gets the cached alignments of the given read without updating cache statistics
+	 */
+	public List<SAMRecord> lookup(FastqRecord read) {
+		String[] records = cache.get(key(read));
+		if (records == null) return null;
+		SAMLineParser parser = new SAMLineParser(new DefaultSAMRecordFactory(), ValidationStringency.SILENT, header, null, null);
+		List<SAMRecord> result = new ArrayList<>(records.length);
+		for (String record : records) {
+			result.add(decode(parser, record, read));
+		}
+		return result;
+	}
+	/**
+	 * Adds the alignments of the given read to the cache
+	 * @param read aligned read
+	 * @param alignments all alignment records returned by the aligner for the read
+	 */
+	public void put(FastqRecord read, List<SAMRecord> alignments) {
+		if (alignments.isEmpty()) return;
+		SAMLineParser parser = new SAMLineParser(new DefaultSAMRecordFactory(), ValidationStringency.SILENT, header, null, null);
+		String[] records = new String[alignments.size()];
+		for (int i = 0; i < records.length; i++) {
+			SAMRecord r = alignments.get(i);
+			records[i] = encode(r);
+			// only cache alignments that we can recreate exactly
+			if (!decode(parser, records[i], read).getSAMString().equals(r.getSAMString())) {
+				uncacheable.incrementAndGet();
+				return;
+			}
+		}
+		if (cache.size() >= maxEntries) {
+			full.incrementAndGet();
+			return;
+		}
+		HashCode key = key(read);
+		if (cache.putIfAbsent(key, records) == null) {
+			added.put(key, records);
+		}
+	}
+	/**
+	 * Encodes the alignment with the read-specific fields removed
+	 */
+	private static String encode(SAMRecord r) {
+		SAMRecord copy = r.deepCopy();
+		copy.setReadName("*");
+		copy.setReadBases(SAMRecord.NULL_SEQUENCE);
+		copy.setBaseQualities(SAMRecord.NULL_QUALS);
+		String str = copy.getSAMString();
+		return (r.getReadLength() > 0 ? "1" : "0")
+				+ (r.getBaseQualities().length > 0 ? "1" : "0")
+				+ "\t" + str.substring(0, str.length() - 1);
+	}
+	private static SAMRecord decode(SAMLineParser parser, String encoded, FastqRecord read) {
+		SAMRecord r = parser.parseLine(encoded.substring(3));
+		r.setReadName(PendingAlignment.normaliseReadName(read.getReadName()));
+		if (encoded.charAt(0) == '1') {
+			byte[] bases = read.getReadBases().clone();
+			if (r.getReadNegativeStrandFlag()) {
+				SequenceUtil.reverseComplement(bases);
+			}
+			r.setReadBases(trimHardClips(r, bases));
+		}
+		if (encoded.charAt(1) == '1') {
+			byte[] quals = SAMUtils.fastqToPhred(read.getBaseQualityString());
+			if (r.getReadNegativeStrandFlag()) {
+				ArrayUtils.reverse(quals);
+			}
+			r.setBaseQualities(trimHardClips(r, quals));
+		}
+		return r;
+	}
+	private static byte[] trimHardClips(SAMRecord r, byte[] b) {
+		Cigar cigar = r.getCigar();
+		if (cigar.isEmpty()) return b;
+		int start = cigar.getFirstCigarElement().getOperator() == CigarOperator.HARD_CLIP ? cigar.getFirstCigarElement().getLength() : 0;
+		int end = b.length - (cigar.numCigarElements() > 1 && cigar.getLastCigarElement().getOperator() == CigarOperator.HARD_CLIP ? cigar.getLastCigarElement().getLength() : 0);
+		if (start == 0 && end == b.length) return b;
+		if (start > end) return SAMRecord.NULL_SEQUENCE;
+		byte[] trimmed = new byte[end - start];
+		System.arraycopy(b, start, trimmed, 0, trimmed.length);
+		return trimmed;
+	}
+	public long getHits() {
+		return hits.get();
+	}
+	public long getMisses() {
+		return misses.get();
+	}
+	public double getHitRate() {
+		long total = hits.get() + misses.get();
+		return total == 0 ? 0 : hits.get() / (double)total;
+	}
+	/**
+	 * Writes the alignments added to the cache to disk
+	 */
+	public synchronized void flush() throws IOException {
+		if (added.isEmpty()) return;
+		Map<HashCode, String[]> toWrite = new HashMap<>(added);
+		if (files.size() >= MAX_FILES) {
+			compact();
+		} else {
+			files.add(write(toWrite));
+		}
+		added.keySet().removeAll(toWrite.keySet());
+	}
+	@Override
+	public void close() throws IOException {
+		log.info(String.format("Alignment cache: %d hits, %d misses (%.1f%% hit rate). %d alignments could not be cached. %d alignments not cached as the cache was full.",
+				hits.get(), misses.get(), 100 * getHitRate(), uncacheable.get(), full.get()));
+		flush();
+	}
+}
@@ -0,0 +1,105 @@
+package au.edu.wehi.idsv.alignment;
+
+import au.edu.wehi.idsv.FileSystemContext;
+import au.edu.wehi.idsv.util.FileHelper;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
+import htsjdk.samtools.*;
+import htsjdk.samtools.fastq.BasicFastqWriter;
+import htsjdk.samtools.fastq.FastqReader;
+import htsjdk.samtools.fastq.FastqRecord;
+import htsjdk.samtools.fastq.FastqWriter;
+import htsjdk.samtools.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Aligner that only sends reads not found in the alignment cache to the underlying aligner.
+ *
+ * The underlying aligner must write alignments in the same order as the input fastq.
+ *
+ * @author Daniel Cameron
+ *
+ */
+public class CachingFastqAligner implements FastqAligner {
+	private static final Log log = Log.getInstance(CachingFastqAligner.class);
+	private final FastqAligner underlying;
+	private final AlignmentCache cache;
+	private final SamReaderFactory readerFactory;
+	private final SAMFileWriterFactory writerFactory;
+	public CachingFastqAligner(FastqAligner underlying, AlignmentCache cache, SamReaderFactory readerFactory, SAMFileWriterFactory writerFactory) {
+		this.underlying = underlying;
+		this.cache = cache;
+		this.readerFactory = readerFactory;
+		this.writerFactory = writerFactory;
+	}
+	@Override
+	public void align(File fastq, File output, File reference, int threads, SAMSequenceDictionary dict) throws IOException {
+		File missFastq = FileSystemContext.getWorkingFileFor(fastq, "gridss.tmp.uncached.");
+		File missOutput = FileSystemContext.getWorkingFileFor(output, "gridss.tmp.uncached.");
+		try {
+			BitSet cached = new BitSet();
+			int reads = 0;
+			int misses = 0;
+			try (FastqReader reader = new FastqReader(fastq)) {
+				try (FastqWriter writer = new BasicFastqWriter(missFastq)) {
+					for (FastqRecord fq : reader) {
+						if (cache.get(fq) != null) {
+							cached.set(reads);
+						} else {
+							writer.write(fq);
+							misses++;
+						}
+						reads++;
+					}
+				}
+			}
+			log.debug(String.format("%d of %d reads found in alignment cache", reads - misses, reads));
+			SAMFileHeader header;
+			SamReader missReader = null;
+			try {
+				if (misses > 0) {
+					underlying.align(missFastq, missOutput, reference, threads, dict);
+					missReader = readerFactory.open(missOutput);
+					header = missReader.getFileHeader();
+				} else {
+					header = new SAMFileHeader(dict);
+				}
+				PeekingIterator<SAMRecord> missIt = missReader == null ? Iterators.peekingIterator(Collections.emptyIterator()) : Iterators.peekingIterator(missReader.iterator());
+				try (FastqReader reader = new FastqReader(fastq)) {
+					try (SAMFileWriter writer = writerFactory.clone().setCompressionLevel(0).makeWriter(header, false, output, reference)) {
+						int i = 0;
+						for (FastqRecord fq : reader) {
+							List<SAMRecord> alignments;
+							if (cached.get(i)) {
+								alignments = cache.lookup(fq);
+							} else {
+								PendingAlignment read = new PendingAlignment(fq);
+								while (missIt.hasNext() && read.isAlignmentOf(missIt.peek())) {
+									read.add(missIt.next());
+								}
+								alignments = read.getAlignments();
+								cache.put(fq, alignments);
+							}
+							for (SAMRecord r : alignments) {
+								writer.addAlignment(r);
+							}
+							i++;
+						}
+					}
+				}
+			} finally {
+				if (missReader != null) {
+					missReader.close();
+				}
+			}
+		} finally {
+			FileHelper.delete(missFastq, true);
+			FileHelper.delete(missOutput, true);
+		}
+	}
+}
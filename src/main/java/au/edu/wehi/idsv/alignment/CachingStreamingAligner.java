@@ -0,0 +1,125 @@
+package au.edu.wehi.idsv.alignment;
+
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.fastq.FastqRecord;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * Streaming aligner that only sends reads not found in the alignment cache to the underlying aligner.
+ *
+ * Alignments are returned in the order reads were submitted. The underlying aligner
+ * must return alignments in the order reads were submitted to it.
+ *
+ * @author Daniel Cameron
+ *
+ */
+public class CachingStreamingAligner implements StreamingAligner {
+	private final StreamingAligner underlying;
+	private final AlignmentCache cache;
+	/**
+	 * Submitted reads that have not yet been returned
+	 */
+	private final Queue<CachedAlignment> pending = new ArrayDeque<>();
+	/**
+	 * Reads sent to the underlying aligner that do not yet have all their alignments
+	 */
+	private final Queue<CachedAlignment> aligning = new ArrayDeque<>();
+	private final Queue<SAMRecord> buffer = new ArrayDeque<>();
+	public CachingStreamingAligner(StreamingAligner underlying, AlignmentCache cache) {
+		this.underlying = underlying;
+		this.cache = cache;
+	}
+	private static class CachedAlignment extends PendingAlignment {
+		private boolean complete;
+		public CachedAlignment(FastqRecord read) {
+			super(read);
+		}
+	}
+	@Override
+	public synchronized void asyncAlign(FastqRecord fq) throws IOException {
+		CachedAlignment read = new CachedAlignment(fq);
+		List<SAMRecord> cached = cache.get(fq);
+		if (cached != null) {
+			read.getAlignments().addAll(cached);
+			read.complete = true;
+		} else {
+			aligning.add(read);
+			underlying.asyncAlign(fq);
+		}
+		pending.add(read);
+		releaseCompleted();
+	}
+	/**
+	 * Assigns the alignments returned by the underlying aligner to their reads
+	 */
+	private void receiveAlignments() {
+		// all alignments have been received if there are no outstanding alignments
+		// before we start consuming the underlying output
+		boolean allReceived = underlying.outstandingAlignmentRecord() == 0;
+		while (underlying.processedAlignmentRecords() > 0) {
+			SAMRecord r = underlying.getAlignment();
+			CachedAlignment read = aligning.peek();
+			while (read != null && !read.isAlignmentOf(r)) {
+				onAligned(aligning.poll());
+				read = aligning.peek();
+			}
+			if (read == null) {
+				throw new IllegalStateException(String.format("Aligner returned alignment for %s that was not requested.", r.getReadName()));
+			}
+			read.add(r);
+		}
+		if (allReceived) {
+			// reads without any alignments will never be matched by a later record
+			while (!aligning.isEmpty()) {
+				onAligned(aligning.poll());
+			}
+		}
+		releaseCompleted();
+	}
+	private void onAligned(CachedAlignment read) {
+		read.complete = true;
+		cache.put(read.getRead(), read.getAlignments());
+	}
+	private void releaseCompleted() {
+		while (!pending.isEmpty() && pending.peek().complete) {
+			buffer.addAll(pending.poll().getAlignments());
+		}
+	}
+	@Override
+	public synchronized void flush() throws IOException {
+		underlying.flush();
+		receiveAlignments();
+	}
+	@Override
+	public synchronized int processedAlignmentRecords() {
+		receiveAlignments();
+		return buffer.size();
+	}
+	@Override
+	public synchronized int outstandingAlignmentRecord() {
+		return pending.size();
+	}
+	@Override
+	public synchronized SAMRecord getAlignment() {
+		if (buffer.isEmpty()) {
+			receiveAlignments();
+		}
+		SAMRecord r = buffer.poll();
+		if (r == null) {
+			throw new IllegalStateException("No alignments available. getAlignment() should only be called if at least one alignment record is available.");
+		}
+		return r;
+	}
+	/**
+	 * Closes the underlying aligner. The alignment cache is not closed.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		flush();
+		underlying.close();
+	}
+}
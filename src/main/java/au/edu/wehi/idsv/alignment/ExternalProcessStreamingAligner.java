@@ -10,57 +10,100 @@ import org.apache.commons.lang3.SystemUtils;
 
 import java.io.*;
 import java.lang.ProcessBuilder.Redirect;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 /**
  * Performs alignment of the given records using an external alignment tools.
  * stdin and stdout of the alignment tool are hooked up.
- * 
+ *
+ * Records are written in batches to a pool of aligner processes. Each process
+ * has a dedicated writer thread so the next batch can be filled while the
+ * previous batch is being written. Alignments are returned in the order
+ * the input records were submitted.
+ *
  * Iterator methods block until an input record has been aligned. The StreamingAligner
  * interface allows for more fine-grain control over record processing.
- * 
+ *
  * @author Daniel Cameron
  *
  */
 public class ExternalProcessStreamingAligner implements Closeable, Flushable, StreamingAligner {
-	private static final int POLL_INTERVAL = 1000;
-	private static final int OUTPUT_BUFFER_SIZE = 1024;
+	public static final int DEFAULT_BATCH_SIZE = 256;
+	/**
+	 * Number of batches queued for each aligner process
+	 */
+	private static final int BATCHES_PER_PROCESS = 2;
 	private static final Log log = Log.getInstance(ExternalProcessStreamingAligner.class);
 	private final AtomicInteger outstandingReads = new AtomicInteger(0);
-	private final BlockingQueue<SAMRecord> buffer = new ArrayBlockingQueue<>(OUTPUT_BUFFER_SIZE);
+	private final BlockingQueue<SAMRecord> buffer = new LinkedBlockingQueue<>();
 	private final List<String> args;
 	private final SamReaderFactory readerFactory;
 	private final SAMSequenceDictionary dict;
-	private Process aligner = null;
-	private BasicFastqWriter toExternalProgram = null;
-	private Thread reader = null;
+	private final int processCount;
+	private final int batchSize;
+	private List<AlignerProcess> aligners = null;
+	private List<FastqRecord> batch;
+	private int nextAligner = 0;
+	private long nextSubmissionNumber = 0;
+	/**
+	 * Alignments completed out of submission order
+	 */
+	private final Map<Long, PendingRead> reorderBuffer = new HashMap<>();
+	private long nextToReturn = 0;
 	// The following are only needed for pretty error messages
 	private final String commandlinestr;
 	private final File reference;
 	public ExternalProcessStreamingAligner(final SamReaderFactory readerFactory, final List<String> commandline, final File reference, final int threads, final SAMSequenceDictionary dict) {
+		this(readerFactory, commandline, reference, threads, dict, 1, DEFAULT_BATCH_SIZE);
+	}
+	/**
+	 * @param threads total number of threads to use across all aligner processes
+	 * @param processes number of aligner processes to run
+	 * @param batchSize number of records to send to an aligner process at a time
+	 */
+	public ExternalProcessStreamingAligner(final SamReaderFactory readerFactory, final List<String> commandline, final File reference, final int threads, final SAMSequenceDictionary dict, final int processes, final int batchSize) {
+		if (processes < 1) throw new IllegalArgumentException("At least one aligner process is required");
+		if (batchSize < 1) throw new IllegalArgumentException("batchSize must be positive");
 		this.readerFactory = readerFactory;
 		this.reference = reference;
 		this.dict = dict;
+		this.processCount = processes;
+		this.batchSize = batchSize;
+		this.batch = new ArrayList<>(batchSize);
 		this.args = commandline.stream()
-				.map(s -> String.format(s, "-", reference.getPath(), threads))
+				.map(s -> String.format(s, "-", reference.getPath(), Math.max(1, threads / processes)))
 				.collect(Collectors.toList());
 		this.commandlinestr = args.stream().collect(Collectors.joining(" "));
 	}
-	@Override
-	public synchronized void asyncAlign(FastqRecord fq) throws IOException {
-		ensureAligner();
-		outstandingReads.incrementAndGet();
-		toExternalProgram.write(fq);
-		toExternalProgram.flush();
+	/**
+	 * Input record awaiting alignment
+	 */
+	private static class PendingRead extends PendingAlignment {
+		private final long submissionNumber;
+		public PendingRead(long submissionNumber, FastqRecord read) {
+			super(read);
+			this.submissionNumber = submissionNumber;
+		}
 	}
-	private void ensureAligner() throws IOException {
-		if (aligner == null) {
-			log.info("Starting external aligner");
-			log.info(commandlinestr);
+	private class AlignerProcess {
+		private final Process process;
+		private final BasicFastqWriter toExternalProgram;
+		private final BlockingQueue<List<FastqRecord>> batches = new ArrayBlockingQueue<>(BATCHES_PER_PROCESS);
+		private final Queue<PendingRead> pending = new ConcurrentLinkedQueue<>();
+		private final Thread writer;
+		private final Thread reader;
+		private volatile IOException writeError = null;
+		public AlignerProcess(int index) throws IOException {
 			List<String> commandline = args;
 			if (SystemUtils.IS_OS_WINDOWS) {
 				// WSL path conversion
@@ -68,49 +111,184 @@ public class ExternalProcessStreamingAligner implements Closeable, Flushable, St
 						.map(s -> s.replace('\\', '/'))
 						.collect(Collectors.toList());
 			}
-			aligner = new ProcessBuilder(commandline)
+			process = new ProcessBuilder(commandline)
 					.redirectInput(Redirect.PIPE)
 					.redirectOutput(Redirect.PIPE)
 					.redirectError(Redirect.INHERIT)
 					.start();
-			toExternalProgram = new BasicFastqWriter(new PrintStream(new BufferedOutputStream(aligner.getOutputStream())));
-			reader = new Thread(() -> readAllAlignments(readerFactory));
-			reader.setName("ExternalProcessStreamingAligner");
+			toExternalProgram = new BasicFastqWriter(new PrintStream(new BufferedOutputStream(process.getOutputStream())));
+			writer = new Thread(this::writeAllBatches);
+			writer.setName("ExternalProcessStreamingAligner-writer-" + index);
+			writer.start();
+			reader = new Thread(this::readAllAlignments);
+			reader.setName("ExternalProcessStreamingAligner-" + index);
 			reader.start();
 		}
+		public void submit(List<FastqRecord> records) throws IOException {
+			checkWriteError();
+			for (FastqRecord fq : records) {
+				pending.add(new PendingRead(nextSubmissionNumber++, fq));
+			}
+			outstandingReads.addAndGet(records.size());
+			try {
+				batches.put(records);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted waiting for external aligner");
+			}
+		}
+		private void checkWriteError() throws IOException {
+			if (writeError != null) {
+				throw writeError;
+			}
+		}
+		private void writeAllBatches() {
+			try {
+				List<FastqRecord> records = batches.take();
+				while (!records.isEmpty()) {
+					for (FastqRecord fq : records) {
+						toExternalProgram.write(fq);
+					}
+					toExternalProgram.flush();
+					records = batches.take();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				log.warn(e, "writer thread interrupted");
+				onWriteError(new InterruptedIOException("Interrupted writing to external aligner"));
+			} catch (Exception e) {
+				log.error(e, "Error writing to external aligner");
+				onWriteError(e instanceof IOException ? (IOException)e : new IOException(e));
+			} finally {
+				toExternalProgram.close();
+				// and just to be sure we don't hit any more htsjdk bugs where they don't close the underlying stream
+				try {
+					process.getOutputStream().close();
+				} catch (IOException e) {
+					log.debug(e);
+				}
+			}
+		}
+		/**
+		 * Records the write failure so submit() and flush() fail instead of waiting
+		 * on a writer that will no longer consume batches.
+		 */
+		private void onWriteError(IOException e) {
+			writeError = e;
+			// unwritten batches will never be aligned
+			batches.clear();
+		}
+		private void readAllAlignments() {
+			SamReader fromExternalProgram = readerFactory.open(SamInputResource.of(process.getInputStream()));
+			SAMRecordIterator it = fromExternalProgram.iterator();
+			while (it.hasNext()) {
+				SAMRecord r = it.next();
+				if (SAMRecordUtil.forceValidContigBounds(r, dict)) {
+					if (!MessageThrottler.Current.shouldSupress(log, "streaming aligner out of bounds")) {
+						log.warn(String.format("Streamed aligner returned out of bounds alignment. %s adjusted to %s:%d %s", dict.getSequence(r.getReferenceIndex()).getSequenceName(), r.getAlignmentStart(), r.getCigarString()));
+					}
+				}
+				PendingRead read = pending.peek();
+				while (read != null && !read.isAlignmentOf(r)) {
+					completeRead(pending.poll());
+					read = pending.peek();
+				}
+				if (read == null) {
+					log.error(String.format("External aligner returned alignment for %s that was not requested.", r.getReadName()));
+				} else {
+					read.add(r);
+				}
+			}
+			// the remaining reads have all of their alignments
+			while (!pending.isEmpty()) {
+				completeRead(pending.poll());
+			}
+			log.debug("Reader thread complete.");
+		}
+		private void completeRead(PendingRead read) {
+			if (read.getAlignments().isEmpty()) {
+				log.error(String.format("External aligner did not return any alignments for %s", read.getReadName()));
+			}
+			onAligned(read);
+		}
+	}
+	/**
+	 * Returns alignments to the caller in submission order
+	 */
+	private void onAligned(PendingRead read) {
+		synchronized (reorderBuffer) {
+			reorderBuffer.put(read.submissionNumber, read);
+			PendingRead next;
+			while ((next = reorderBuffer.remove(nextToReturn)) != null) {
+				buffer.addAll(next.getAlignments());
+				outstandingReads.decrementAndGet();
+				nextToReturn++;
+			}
+		}
+	}
+	@Override
+	public synchronized void asyncAlign(FastqRecord fq) throws IOException {
+		batch.add(fq);
+		if (batch.size() >= batchSize) {
+			submitBatch();
+		}
+	}
+	private void submitBatch() throws IOException {
+		if (batch.isEmpty()) return;
+		ensureAligner();
+		List<FastqRecord> records = batch;
+		batch = new ArrayList<>(batchSize);
+		AlignerProcess aligner = aligners.get(nextAligner);
+		nextAligner = (nextAligner + 1) % aligners.size();
+		aligner.submit(records);
+	}
+	private void ensureAligner() throws IOException {
+		if (aligners == null) {
+			log.info(String.format("Starting %d external aligner process(es)", processCount));
+			log.info(commandlinestr);
+			aligners = new ArrayList<>(processCount);
+			for (int i = 0; i < processCount; i++) {
+				aligners.add(new AlignerProcess(i));
+			}
+		}
 	}
 	@Override
-	public void flush() throws IOException {
-		if (aligner != null) {
+	public synchronized void flush() throws IOException {
+		submitBatch();
+		if (aligners != null) {
 			log.info("Waiting for external aligner to complete all alignments.");
-			toExternalProgram.flush();
-			aligner.getOutputStream().flush();
-			toExternalProgram.close();
-			// and just to be sure we don't hit any more htsjdk bugs where they don't close the underlying stream
-			aligner.getOutputStream().close();
-			// wait for the aligner to complete all outstanding alignments
+			for (AlignerProcess aligner : aligners) {
+				if (aligner.writeError != null) continue;
+				try {
+					// signal end of input
+					aligner.batches.put(new ArrayList<>());
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					aligner.onWriteError(new InterruptedIOException("Interrupted waiting for external aligner"));
+					aligner.writer.interrupt();
+				}
+			}
+			// reader threads will have completed when they hit the end of the output stream
 			// This doesn't deadlock as buffer is unbounded in size so we're guaranteed to be able to
 			// read the entire output stream without blocking
-			while (outstandingReads.get() > 0) {
+			for (AlignerProcess aligner : aligners) {
 				try {
-					log.debug(String.format("%d alignments outstanding", outstandingReads.get()));
-					Thread.sleep(POLL_INTERVAL);
+					aligner.writer.join();
+					aligner.reader.join();
 				} catch (InterruptedException e) {
 					log.warn(e);
 				}
 			}
-			// reader thread will have completed when it hits then end of the output stream
-			ExternalProcessHelper.shutdownAligner(aligner, commandlinestr, reference, null);
+			for (AlignerProcess aligner : aligners) {
+				ExternalProcessHelper.shutdownAligner(aligner.process, commandlinestr, reference, aligner.writeError);
+			}
 			log.info("External alignments complete");
-			try {
-				reader.join();
-			} catch (InterruptedException e) {
-				log.warn(e);
+			for (AlignerProcess aligner : aligners) {
+				aligner.checkWriteError();
 			}
 		}
-		aligner = null;
-		reader = null;
-		toExternalProgram = null;
+		aligners = null;
+		nextAligner = 0;
 	}
 	@Override
 	public int processedAlignmentRecords() {
@@ -118,7 +296,7 @@ public class ExternalProcessStreamingAligner implements Closeable, Flushable, St
 	}
 	@Override
 	public int outstandingAlignmentRecord() {
-		return outstandingReads.get();
+		return outstandingReads.get() + batch.size();
 	}
 	/* (non-Javadoc)
 	 * @see au.edu.wehi.idsv.alignment.StreamingAligner#getAlignment()
@@ -131,25 +309,6 @@ public class ExternalProcessStreamingAligner implements Closeable, Flushable, St
 		}
 		return r;
 	}
-	private void readAllAlignments(final SamReaderFactory readerFactory) {
-		try {
-			SamReader fromExternalProgram = readerFactory.open(SamInputResource.of(aligner.getInputStream()));
-			SAMRecordIterator it = fromExternalProgram.iterator();
-			while (it.hasNext()) {
-				SAMRecord r = it.next();
-				if (SAMRecordUtil.forceValidContigBounds(r, dict)) {
-					if (!MessageThrottler.Current.shouldSupress(log, "streaming aligner out of bounds")) {
-						log.warn(String.format("Streamed aligner returned out of bounds alignment. %s adjusted to %s:%d %s", dict.getSequence(r.getReferenceIndex()).getSequenceName(), r.getAlignmentStart(), r.getCigarString()));
-					}
-				}
-				buffer.put(r);
-				outstandingReads.decrementAndGet();
-			}
-			log.info(String.format("Reader thread complete. %s reads in output buffer", buffer.size()));
-		} catch (InterruptedException ie) {
-			log.warn(ie, "reader thread interrupted");
-		}
-	}
 
 	@Override
 	public void close() throws IOException {
@@ -0,0 +1,63 @@
+package au.edu.wehi.idsv.alignment;
+
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.fastq.FastqRecord;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Alignment records returned by an aligner for a single input read.
+ *
+ * Aligners write every alignment record of a read before the records of the next read
+ * so the aligner output can be split into reads based on the read name and primary
+ * alignment flag.
+ */
+class PendingAlignment {
+	private final FastqRecord read;
+	private final String readName;
+	private final List<SAMRecord> alignments = new ArrayList<>(1);
+	private boolean hasPrimary = false;
+	public PendingAlignment(FastqRecord read) {
+		this.read = read;
+		this.readName = normaliseReadName(read.getReadName());
+	}
+	public FastqRecord getRead() {
+		return read;
+	}
+	public String getReadName() {
+		return readName;
+	}
+	public List<SAMRecord> getAlignments() {
+		return alignments;
+	}
+	/**
+	 * Determines whether the given alignment record is for this read.
+	 * Records are matched on read name so a read the aligner did not return
+	 * is not assigned the alignments of the following read.
+	 */
+	public boolean isAlignmentOf(SAMRecord r) {
+		boolean isPrimary = !r.isSecondaryOrSupplementary();
+		return readName.equals(normaliseReadName(r.getReadName())) && !(isPrimary && hasPrimary);
+	}
+	public void add(SAMRecord r) {
+		alignments.add(r);
+		hasPrimary |= !r.isSecondaryOrSupplementary();
+	}
+	/**
+	 * Aligners ignore fastq comments and strip read pair suffixes
+	 */
+	public static String normaliseReadName(String readName) {
+		int end = readName.length();
+		for (int i = 0; i < readName.length(); i++) {
+			if (Character.isWhitespace(readName.charAt(i))) {
+				end = i;
+				break;
+			}
+		}
+		if (end >= 2 && readName.charAt(end - 2) == '/' && (readName.charAt(end - 1) == '1' || readName.charAt(end - 1) == '2')) {
+			end -= 2;
+		}
+		return readName.substring(0, end);
+	}
+}
@@ -1,6 +1,7 @@
 package au.edu.wehi.idsv.bed;
 
 import au.edu.wehi.idsv.LinearGenomicCoordinate;
+import com.google.common.collect.BoundType;
 import com.google.common.collect.Range;
 import com.google.common.collect.RangeSet;
 import com.google.common.collect.TreeRangeSet;
@@ -16,46 +17,65 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.util.stream.Collectors;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Minimal bed wrapper retaining only interval information
+ * 
+ * Intervals are stored in an immutable {@link IntervalIndex}. Intervals can be
+ * added concurrently without locking and are merged into the index on the next query,
+ * or once the number of pending intervals exceeds the size of the index.
  * @author Daniel Cameron
  *
  */
 public class IntervalBed {
 	private static final Log log = Log.getInstance(IntervalBed.class);
+	/**
+	 * Minimum number of pending intervals before they are merged into the index without a query
+	 */
+	private static final int MIN_PENDING_MERGE_SIZE = 4096;
 	private final LinearGenomicCoordinate linear;
-	private final RangeSet<Long> intervals;
+	private volatile IntervalIndex intervals;
+	/**
+	 * Intervals added but not yet merged into the index 
+	 */
+	private final Queue<QueryInterval> pending = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger pendingCount = new AtomicInteger();
 	public int size() {
-		return intervals.asRanges().size();
+		return getIntervals().size();
 	}
 	public IntervalBed(LinearGenomicCoordinate linear, File bed) throws IOException {
-		this(linear, toRangeSet(linear, bed));
+		this(linear, toIntervalIndex(linear, bed));
 	}
 	public IntervalBed(LinearGenomicCoordinate linear) {
-		this(linear, TreeRangeSet.<Long>create());
+		this(linear, IntervalIndex.empty());
 	}
 	public IntervalBed(LinearGenomicCoordinate linear, QueryInterval[] intervals) {
-		this(linear, TreeRangeSet.<Long>create());
-		for (QueryInterval qi : intervals) {
-			addInterval(qi);
-		}
+		this(linear, toIntervalIndex(intervals));
 	}
-	private IntervalBed(LinearGenomicCoordinate linear, RangeSet<Long> intervals) {
+	private IntervalBed(LinearGenomicCoordinate linear, IntervalIndex intervals) {
 		this.linear = linear;
 		this.intervals = intervals;
 	}
 	public static IntervalBed merge(LinearGenomicCoordinate linear, Iterable<IntervalBed> list) {
-		RangeSet<Long> blacklisted = TreeRangeSet.create();
+		IntervalIndex.Builder builder = new IntervalIndex.Builder();
 		for (IntervalBed bed : list) {
 			// TODO assert dictionaries and linear coordinates match
-			blacklisted.addAll(bed.intervals);
+			builder.addAll(bed.getIntervals());
 		}
-		return new IntervalBed(linear, blacklisted);
+		return new IntervalBed(linear, builder.build());
 	}
-	private static RangeSet<Long> toRangeSet(LinearGenomicCoordinate linear, File bed) throws IOException {
-		RangeSet<Long> rs = TreeRangeSet.create();
+	private static IntervalIndex toIntervalIndex(QueryInterval[] intervals) {
+		IntervalIndex.Builder builder = new IntervalIndex.Builder();
+		for (QueryInterval qi : intervals) {
+			builder.add(qi.referenceIndex, qi.start, qi.end);
+		}
+		return builder.build();
+	}
+	private static IntervalIndex toIntervalIndex(LinearGenomicCoordinate linear, File bed) throws IOException {
+		IntervalIndex.Builder builder = new IntervalIndex.Builder();
 		BEDCodec codec = new BEDCodec();
 	    try (AbstractFeatureReader<BEDFeature, LineIterator> reader = AbstractFeatureReader.getFeatureReader(bed.getPath(), codec, false)) {
 	    	int lineno = 0;
@@ -70,19 +90,40 @@ public class IntervalBed {
 					log.error(msg);
 					throw new IllegalArgumentException(msg);
 				}
-				rs.add(Range.closedOpen(linear.getLinearCoordinate(referenceIndex, start), linear.getLinearCoordinate(referenceIndex, end) + 1));
+				builder.add(referenceIndex, start, end);
 			}
         }
-		return rs;
+		return builder.build();
 	}
-	public static void addInterval(LinearGenomicCoordinate linear, RangeSet<Long> blacklisted, int referenceIndex, int start, int end) {
-		blacklisted.add(Range.closedOpen(linear.getLinearCoordinate(referenceIndex, start), linear.getLinearCoordinate(referenceIndex, end) + 1));
+	/**
+	 * Gets the current intervals, merging any intervals that have been added since the last call. 
+	 */
+	public IntervalIndex getIntervals() {
+		if (!pending.isEmpty()) {
+			synchronized (pending) {
+				if (!pending.isEmpty()) {
+					IntervalIndex.Builder builder = new IntervalIndex.Builder();
+					QueryInterval qi;
+					while ((qi = pending.poll()) != null) {
+						pendingCount.decrementAndGet();
+						builder.add(qi.referenceIndex, qi.start, qi.end);
+					}
+					intervals = intervals.union(builder.build());
+				}
+			}
+		}
+		return intervals;
 	}
-	public synchronized void addInterval(int referenceIndex, int start, int end) {
-		addInterval(linear, intervals, referenceIndex, start, end);
+	public void addInterval(int referenceIndex, int start, int end) {
+		addInterval(new QueryInterval(referenceIndex, start, end));
 	}
-	public synchronized void addInterval(QueryInterval qi) {
-		addInterval(linear, intervals, qi.referenceIndex, qi.start, qi.end);
+	public void addInterval(QueryInterval qi) {
+		pending.add(qi);
+		// merging once pending outgrows the index bounds memory usage
+		// while keeping the amortised merge cost per interval constant
+		if (pendingCount.incrementAndGet() >= Math.max(MIN_PENDING_MERGE_SIZE, intervals.size())) {
+			getIntervals();
+		}
 	}
 	/**
 	 * Determines whether any of the intervals overlap the given interval
@@ -92,48 +133,71 @@ public class IntervalBed {
 	 * @return
 	 */
 	public boolean overlaps(int referenceIndex, int start, int end) {
-		return overlaps(linear.getLinearCoordinate(referenceIndex, start), linear.getLinearCoordinate(referenceIndex, end));
+		return getIntervals().overlaps(referenceIndex, start, end);
 	}
 	public boolean overlaps(long start, long end) {
-		Range<Long> r = Range.closedOpen(start, end + 1);
-		return overlaps(r);
+		int startReferenceIndex = linear.getReferenceIndex(start);
+		int endReferenceIndex = linear.getReferenceIndex(end);
+		if (startReferenceIndex == endReferenceIndex) {
+			return overlaps(startReferenceIndex, linear.getReferencePosition(start), linear.getReferencePosition(end));
+		}
+		IntervalIndex index = getIntervals();
+		if (index.overlaps(startReferenceIndex, linear.getReferencePosition(start), Integer.MAX_VALUE)) return true;
+		for (int referenceIndex = startReferenceIndex + 1; referenceIndex < endReferenceIndex; referenceIndex++) {
+			if (index.size(referenceIndex) > 0) return true;
+		}
+		return index.overlaps(endReferenceIndex, Integer.MIN_VALUE, linear.getReferencePosition(end));
 	}
 	public boolean overlaps(Range<Long> interval) {
 		if (interval == null) {
 			return false;
 		}
-		return intervals.intersects(interval);
+		long start = interval.lowerEndpoint();
+		long end = interval.upperEndpoint();
+		if (interval.lowerBoundType() == BoundType.OPEN) start++;
+		if (interval.upperBoundType() == BoundType.OPEN) end--;
+		if (end < start) {
+			return false;
+		}
+		return overlaps(start, end);
+	}
+	/**
+	 * Creates a cursor over the current intervals for overlap queries made in coordinate order.
+	 * Intervals added after the cursor has been created are not visible to the cursor.
+	 */
+	public IntervalIndex.Cursor cursor() {
+		return getIntervals().cursor();
 	}
 	/**
 	 * Removes the given set of intervals
 	 * @param toRemove intervals to remove
 	 */
 	public void remove(IntervalBed toRemove) {
-		intervals.removeAll(toRemove.intervals.asRanges());
+		IntervalIndex removed = toRemove.getIntervals();
+		synchronized (pending) {
+			intervals = getIntervals().subtract(removed);
+		}
 	}
 	public void write(File bed, String name) throws IOException {
+		IntervalIndex index = getIntervals();
 		try (BufferedWriter writer = Files.newBufferedWriter(bed.toPath(), StandardCharsets.US_ASCII)) {
 			writer.write(String.format("track name=\"%s\" description=\"%s\" useScore=0\n", name, name));
-			for (Range<Long> r : intervals.asRanges()) {
-				long lower = r.lowerEndpoint();
-				long upper = r.upperEndpoint();
-				int referenceIndex = linear.getReferenceIndex(lower);
-				int referenceIndex2 = linear.getReferenceIndex(upper);
-				assert(referenceIndex == referenceIndex2);
-				int bedStart = linear.getReferencePosition(lower) - 1;
-				int bedEnd = linear.getReferencePosition(upper) - 1;
-				writer.write(String.format("%s\t%d\t%d\n", linear.getDictionary().getSequence(referenceIndex).getSequenceName(), bedStart, bedEnd));
+			for (int referenceIndex = 0; referenceIndex < index.getReferenceCount(); referenceIndex++) {
+				for (int i = 0; i < index.size(referenceIndex); i++) {
+					int bedStart = index.getStart(referenceIndex, i) - 1;
+					int bedEnd = index.getEnd(referenceIndex, i);
+					writer.write(String.format("%s\t%d\t%d\n", linear.getDictionary().getSequence(referenceIndex).getSequenceName(), bedStart, bedEnd));
+				}
 			}
 		}
 	}
 	public QueryInterval[] asQueryInterval() {
-		QueryInterval[] qis = new QueryInterval[intervals.asRanges().size()];
-		int i = 0;
-		for (Range<Long> r : intervals.asRanges()) {
-			QueryInterval qi = new QueryInterval(linear.getReferenceIndex(r.lowerEndpoint()), linear.getReferencePosition(r.lowerEndpoint()), linear.getReferencePosition(r.upperEndpoint() - 1));
-			qis[i++] = qi;
-			if (linear.getReferenceIndex(r.upperEndpoint() - 1) != qi.referenceIndex) {
-				throw new RuntimeException("Not Yet Implemented: support for interval spaning chromosomes and unpadded LinearGenomicCoordinate lookups. This should not happen. Please raise an issue at https://github.com/PapenfussLab/gridss/issues");
+		IntervalIndex index = getIntervals();
+		QueryInterval[] qis = new QueryInterval[index.size()];
+		int j = 0;
+		for (int referenceIndex = 0; referenceIndex < index.getReferenceCount(); referenceIndex++) {
+			for (int i = 0; i < index.size(referenceIndex); i++) {
+				qis[j++] = new QueryInterval(referenceIndex, index.getStart(referenceIndex, i), index.getEnd(referenceIndex, i));
 			}
 		}
 		return qis;
@@ -144,22 +208,18 @@ public class IntervalBed {
 	 * Expanded intervals are truncated at reference contig bounds.
 	 */
 	public IntervalBed expandIntervals(int startBases, int endBases) {
-		TreeRangeSet<Long> expanded = TreeRangeSet.create(intervals
-				.asRanges()
-				.stream()
-				.map(r -> expand(r, startBases, endBases))
-				.collect(Collectors.toList()));
-		return new IntervalBed(linear, expanded);
-	}
-	private Range<Long> expand(Range<Long> range, int startBases, int endBases) {
-		int referenceIndex = linear.getReferenceIndex(range.lowerEndpoint());
-		int start = linear.getReferencePosition(range.lowerEndpoint());
-		int end = linear.getReferencePosition(range.upperEndpoint());
-		start = Math.max(1, start - startBases);
-		end = Math.min(linear.getDictionary().getSequence(referenceIndex).getSequenceLength() + 1, end + endBases);
-		return Range.closedOpen(linear.getLinearCoordinate(referenceIndex, start), linear.getLinearCoordinate(referenceIndex, end));
+		IntervalIndex index = getIntervals();
+		int[] contigLengths = new int[index.getReferenceCount()];
+		for (int i = 0; i < contigLengths.length; i++) {
+			contigLengths[i] = linear.getDictionary().getSequence(i).getSequenceLength();
+		}
+		return new IntervalBed(linear, index.expand(startBases, endBases, contigLengths));
 	}
 	public RangeSet<Long> asRangeSet() {
-		return TreeRangeSet.create(intervals);
+		RangeSet<Long> rs = TreeRangeSet.create();
+		for (QueryInterval qi : asQueryInterval()) {
+			rs.add(Range.closedOpen(linear.getLinearCoordinate(qi.referenceIndex, qi.start), linear.getLinearCoordinate(qi.referenceIndex, qi.end) + 1));
+		}
+		return rs;
 	}
 }
@@ -0,0 +1,318 @@
+package au.edu.wehi.idsv.bed;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable set of genomic intervals stored as sorted primitive arrays per contig.
+ *
+ * Overlapping and adjacent intervals are merged on construction so each contig
+ * is represented by disjoint intervals sorted by start position. Interval bounds
+ * are 1-based inclusive contig positions.
+ *
+ * @author Daniel Cameron
+ *
+ */
+public class IntervalIndex {
+	private static final int[] EMPTY = new int[0];
+	private static final IntervalIndex EMPTY_INDEX = new IntervalIndex(new int[0][], new int[0][]);
+	private final int[][] starts;
+	private final int[][] ends;
+	private final int size;
+	private IntervalIndex(int[][] starts, int[][] ends) {
+		this.starts = starts;
+		this.ends = ends;
+		int n = 0;
+		for (int[] s : starts) {
+			n += s.length;
+		}
+		this.size = n;
+	}
+	public static IntervalIndex empty() {
+		return EMPTY_INDEX;
+	}
+	/**
+	 * Number of disjoint intervals
+	 */
+	public int size() {
+		return size;
+	}
+	/**
+	 * Number of contigs for which intervals could be present.
+	 * Contigs with an index greater than or equal to this value contain no intervals.
+	 */
+	public int getReferenceCount() {
+		return starts.length;
+	}
+	public int size(int referenceIndex) {
+		if (referenceIndex < 0 || referenceIndex >= starts.length) return 0;
+		return starts[referenceIndex].length;
+	}
+	/**
+	 * Start position of the given interval on the given contig
+	 */
+	public int getStart(int referenceIndex, int i) {
+		return starts[referenceIndex][i];
+	}
+	/**
+	 * Inclusive end position of the given interval on the given contig
+	 */
+	public int getEnd(int referenceIndex, int i) {
+		return ends[referenceIndex][i];
+	}
+	/**
+	 * Determines whether any of the intervals overlap the given interval
+	 * @param referenceIndex contig
+	 * @param start first position
+	 * @param end last position
+	 */
+	public boolean overlaps(int referenceIndex, int start, int end) {
+		if (referenceIndex < 0 || referenceIndex >= starts.length) return false;
+		int[] e = ends[referenceIndex];
+		int i = firstEndingOnOrAfter(e, 0, e.length, start);
+		return i < e.length && starts[referenceIndex][i] <= end;
+	}
+	/**
+	 * Index of the first interval in [from, to) ending at or after the given position
+	 */
+	private static int firstEndingOnOrAfter(int[] ends, int from, int to, int position) {
+		int lo = from;
+		int hi = to;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (ends[mid] < position) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+	/**
+	 * Creates a cursor for overlap queries made in coordinate order.
+	 */
+	public Cursor cursor() {
+		return new Cursor();
+	}
+	/**
+	 * Merges the given intervals into this set in linear time.
+	 * Contigs without intervals in one of the sets share the arrays of the other set.
+	 * @param other intervals to add
+	 * @return intervals in either set
+	 */
+	public IntervalIndex union(IntervalIndex other) {
+		if (other.size == 0) return this;
+		if (size == 0) return other;
+		int referenceCount = Math.max(starts.length, other.starts.length);
+		int[][] unionStarts = new int[referenceCount][];
+		int[][] unionEnds = new int[referenceCount][];
+		for (int referenceIndex = 0; referenceIndex < referenceCount; referenceIndex++) {
+			int[] as = referenceIndex < starts.length ? starts[referenceIndex] : EMPTY;
+			int[] ae = referenceIndex < ends.length ? ends[referenceIndex] : EMPTY;
+			int[] bs = referenceIndex < other.starts.length ? other.starts[referenceIndex] : EMPTY;
+			int[] be = referenceIndex < other.ends.length ? other.ends[referenceIndex] : EMPTY;
+			if (bs.length == 0) {
+				unionStarts[referenceIndex] = as;
+				unionEnds[referenceIndex] = ae;
+				continue;
+			}
+			if (as.length == 0) {
+				unionStarts[referenceIndex] = bs;
+				unionEnds[referenceIndex] = be;
+				continue;
+			}
+			int[] s = new int[as.length + bs.length];
+			int[] e = new int[as.length + bs.length];
+			int n = 0;
+			int i = 0;
+			int j = 0;
+			while (i < as.length || j < bs.length) {
+				int start;
+				int end;
+				if (j >= bs.length || (i < as.length && as[i] <= bs[j])) {
+					start = as[i];
+					end = ae[i++];
+				} else {
+					start = bs[j];
+					end = be[j++];
+				}
+				if (n > 0 && (long)start <= (long)e[n - 1] + 1) {
+					// merge overlapping and adjacent intervals
+					e[n - 1] = Math.max(e[n - 1], end);
+				} else {
+					s[n] = start;
+					e[n] = end;
+					n++;
+				}
+			}
+			unionStarts[referenceIndex] = Arrays.copyOf(s, n);
+			unionEnds[referenceIndex] = Arrays.copyOf(e, n);
+		}
+		return new IntervalIndex(unionStarts, unionEnds);
+	}
+	/**
+	 * Removes the given intervals from this set
+	 * @param other intervals to remove
+	 * @return intervals in this set that are not in the given set
+	 */
+	public IntervalIndex subtract(IntervalIndex other) {
+		if (size == 0 || other.size == 0) return this;
+		Builder builder = new Builder();
+		for (int referenceIndex = 0; referenceIndex < starts.length; referenceIndex++) {
+			int[] s = starts[referenceIndex];
+			int[] e = ends[referenceIndex];
+			int[] rs = referenceIndex < other.starts.length ? other.starts[referenceIndex] : EMPTY;
+			int[] re = referenceIndex < other.ends.length ? other.ends[referenceIndex] : EMPTY;
+			int j = 0;
+			for (int i = 0; i < s.length; i++) {
+				long start = s[i];
+				long end = e[i];
+				while (j < rs.length && re[j] < start) j++;
+				int k = j;
+				while (start <= end && k < rs.length && rs[k] <= end) {
+					if (rs[k] > start) {
+						builder.add(referenceIndex, (int)start, rs[k] - 1);
+					}
+					start = (long)re[k] + 1;
+					k++;
+				}
+				if (start <= end) {
+					builder.add(referenceIndex, (int)start, (int)end);
+				}
+			}
+		}
+		return builder.build();
+	}
+	/**
+	 * Expands each interval by the given number of bases.
+	 * @param startBases bases to expand the start of each interval by
+	 * @param endBases bases to expand the end of each interval by
+	 * @param contigLengths length of each contig. Expanded intervals are truncated at contig bounds.
+	 */
+	public IntervalIndex expand(int startBases, int endBases, int[] contigLengths) {
+		Builder builder = new Builder();
+		for (int referenceIndex = 0; referenceIndex < starts.length; referenceIndex++) {
+			int[] s = starts[referenceIndex];
+			int[] e = ends[referenceIndex];
+			for (int i = 0; i < s.length; i++) {
+				int start = (int)Math.max(1, (long)s[i] - startBases);
+				int end = (int)Math.min(contigLengths[referenceIndex], (long)e[i] + endBases);
+				builder.add(referenceIndex, start, end);
+			}
+		}
+		return builder.build();
+	}
+	/**
+	 * Overlap lookup optimised for queries made in coordinate order.
+	 *
+	 * Queries with a start position at or after the previous query on the same contig
+	 * search forward from the previously matched interval. Out of order queries
+	 * fall back to a binary search so are still correct.
+	 *
+	 * Cursors are not thread-safe.
+	 */
+	public class Cursor {
+		private int referenceIndex = -1;
+		private int lastStart;
+		private int offset;
+		private Cursor() {
+		}
+		public boolean overlaps(int referenceIndex, int start, int end) {
+			if (referenceIndex < 0 || referenceIndex >= starts.length) return false;
+			int[] e = ends[referenceIndex];
+			int i;
+			if (referenceIndex == this.referenceIndex && start >= lastStart) {
+				// gallop forward from the previous position
+				int lo = offset;
+				int hi = offset;
+				int step = 1;
+				while (hi < e.length && e[hi] < start) {
+					lo = hi + 1;
+					hi = offset + step;
+					step <<= 1;
+				}
+				i = firstEndingOnOrAfter(e, lo, Math.min(hi, e.length), start);
+			} else {
+				i = firstEndingOnOrAfter(e, 0, e.length, start);
+			}
+			this.referenceIndex = referenceIndex;
+			this.lastStart = start;
+			this.offset = i;
+			return i < e.length && starts[referenceIndex][i] <= end;
+		}
+	}
+	/**
+	 * Accumulates intervals in any order.
+	 *
+	 * Builders are not thread-safe.
+	 */
+	public static class Builder {
+		private final List<LongArrayList> intervals = new ArrayList<>();
+		/**
+		 * Adds the given interval. Empty intervals and intervals on negative contig indexes are ignored.
+		 * @param referenceIndex contig
+		 * @param start first position
+		 * @param end last position (inclusive)
+		 */
+		public Builder add(int referenceIndex, int start, int end) {
+			if (referenceIndex < 0 || end < start) return this;
+			while (intervals.size() <= referenceIndex) {
+				intervals.add(null);
+			}
+			LongArrayList list = intervals.get(referenceIndex);
+			if (list == null) {
+				list = new LongArrayList();
+				intervals.set(referenceIndex, list);
+			}
+			// signed start in the high bits sorts by start position
+			list.add(((long)start << 32) | (end & 0xFFFFFFFFL));
+			return this;
+		}
+		public Builder addAll(IntervalIndex index) {
+			for (int referenceIndex = 0; referenceIndex < index.starts.length; referenceIndex++) {
+				int[] s = index.starts[referenceIndex];
+				int[] e = index.ends[referenceIndex];
+				for (int i = 0; i < s.length; i++) {
+					add(referenceIndex, s[i], e[i]);
+				}
+			}
+			return this;
+		}
+		public IntervalIndex build() {
+			if (intervals.isEmpty()) return EMPTY_INDEX;
+			int[][] starts = new int[intervals.size()][];
+			int[][] ends = new int[intervals.size()][];
+			for (int referenceIndex = 0; referenceIndex < intervals.size(); referenceIndex++) {
+				LongArrayList list = intervals.get(referenceIndex);
+				if (list == null || list.isEmpty()) {
+					starts[referenceIndex] = EMPTY;
+					ends[referenceIndex] = EMPTY;
+					continue;
+				}
+				long[] packed = list.toLongArray();
+				Arrays.sort(packed);
+				int[] s = new int[packed.length];
+				int[] e = new int[packed.length];
+				int n = 0;
+				for (long p : packed) {
+					int start = (int)(p >> 32);
+					int end = (int)p;
+					if (n > 0 && (long)start <= (long)e[n - 1] + 1) {
+						// merge overlapping and adjacent intervals
+						e[n - 1] = Math.max(e[n - 1], end);
+					} else {
+						s[n] = start;
+						e[n] = end;
+						n++;
+					}
+				}
+				starts[referenceIndex] = Arrays.copyOf(s, n);
+				ends[referenceIndex] = Arrays.copyOf(e, n);
+			}
+			return new IntervalIndex(starts, ends);
+		}
+	}
+}
@@ -1,5 +1,6 @@
 package au.edu.wehi.idsv.configuration;
 
+import au.edu.wehi.idsv.debruijn.KmerEncoding;
 import org.apache.commons.configuration.Configuration;
 
 public class AssemblyConfiguration {
@@ -21,14 +22,26 @@ public class AssemblyConfiguration {
 		contigNamePrefix = config.getString("contigNamePrefix");
 		recoverAfterError = config.getBoolean("recoverAfterError");
 		longReadReadLengthThreshold = config.getInt("longReadReadLengthThreshold");
+		singlePassBidirectional = config.getBoolean("singlePassBidirectional");
+		if (k < 1 || k > KmerEncoding.MAX_K) {
+			throw new IllegalArgumentException(String.format("k must be between 1 and %d", KmerEncoding.MAX_K));
+		}
 	}
 	public ErrorCorrectionConfiguration errorCorrection;
 	public DownsamplingConfiguration downsampling;
 	public PositionalAssemblyConfiguration positional;
 	/**
-	 * De Bruijn graph kmer size
+	 * De Bruijn graph kmer size.
+	 * Kmers of up to 32 bases are packed into a long. Larger kmers (up to 63 bases)
+	 * use a 128-bit representation which requires additional memory and time.
 	 */
 	public int k;
+	/**
+	 * Creates the kmer encoding for a single de Bruijn graph
+	 */
+	public KmerEncoding createKmerEncoding() {
+		return KmerEncoding.create(k);
+	}
 	/**
 	 * Minimum number of reads contributing the the assembly
 	 */
@@ -88,4 +101,9 @@ public class AssemblyConfiguration {
 	 * Input files with any reads longer than this are not assembled.
 	 */
 	public int longReadReadLengthThreshold;
+	/**
+	 * Read the evidence for each assembly chunk once and assemble both breakend
+	 * directions concurrently instead of performing a separate pass per direction.
+	 */
+	public boolean singlePassBidirectional;
 }
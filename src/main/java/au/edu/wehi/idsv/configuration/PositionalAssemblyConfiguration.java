@@ -14,6 +14,8 @@ public class PositionalAssemblyConfiguration {
 		forceFullMemoizationRecalculationAt = config.getFloat("forceFullMemoizationRecalculationAt");
 		safetyModePathCountThreshold = config.getInt("safetyModePathCountThreshold");
 		safetyModeContigsToCall = config.getInt("safetyModeContigsToCall");
+		safetyModeSpilledPathCountThreshold = config.getInt("safetyModeSpilledPathCountThreshold");
+		memoizationSpillThreshold = config.getInt("memoizationSpillThreshold");
 		if (retainWidthMultiple < 1) {
 			throw new IllegalArgumentException("retainWidthMultiple must be at least 1");
 		}
@@ -23,6 +25,9 @@ public class PositionalAssemblyConfiguration {
 		if (maximumNodeDensity <= 0) {
 			throw new IllegalArgumentException("maximumNodeDensity must be positive");
 		}
+		if (memoizationSpillThreshold < 0) {
+			throw new IllegalArgumentException("memoizationSpillThreshold must be non-negative");
+		}
 	}
 	/**
 	 * Maximum length of a single path node. Leaves longer that this length will not be collapsed.
@@ -72,7 +77,23 @@ public class PositionalAssemblyConfiguration {
 	 */
 	public final int safetyModeContigsToCall;
 	/**
-	 * Number of memoized paths to enter safety mode
+	 * Number of in-memory memoized paths to enter safety mode
+	 *
+	 * Paths spilled to disk do not count towards this threshold. Enabling spilling therefore
+	 * allows regions that would otherwise enter safety mode to be fully assembled.
 	 */
 	public final int safetyModePathCountThreshold;
+	/**
+	 * Number of memoized paths spilled to disk to enter safety mode
+	 *
+	 * Bounds the disk usage and reload cost of the spill file for pathologically complex regions.
+	 */
+	public final int safetyModeSpilledPathCountThreshold;
+	/**
+	 * Number of in-memory memoized nodes at which the memoized paths of nodes
+	 * no longer reachable from the traversal frontier are spilled to a temporary file.
+	 * Spilled paths are reloaded when required for contig calling.
+	 * Set to 0 to disable spilling.
+	 */
+	public final int memoizationSpillThreshold;
 }
\ No newline at end of file
@@ -22,7 +22,10 @@ public class DeBruijnSequenceGraphNodeUtil {
 	 * @return number of bases difference between the two paths
 	 */
 	public static int basesDifferent(int k, Iterable<? extends DeBruijnSequenceGraphNode> pathA, Iterable<? extends DeBruijnSequenceGraphNode> pathB) {
-		return basesDifferent(k, pathA, pathB, 0, 0);
+		return basesDifferent(KmerEncoding.packed(k), pathA, pathB);
+	}
+	public static int basesDifferent(KmerEncoding encoding, Iterable<? extends DeBruijnSequenceGraphNode> pathA, Iterable<? extends DeBruijnSequenceGraphNode> pathB) {
+		return basesDifferent(encoding, pathA, pathB, 0, 0);
 	}
 	/**
 	 * Returns the number of bases difference between the two paths when
@@ -34,12 +37,15 @@ public class DeBruijnSequenceGraphNodeUtil {
 	 * @return number of bases difference between the two paths
 	 */
 	public static int reverseBasesDifferent(int k, Iterable<? extends DeBruijnSequenceGraphNode> pathA, Iterable<? extends DeBruijnSequenceGraphNode> pathB) {
+		return reverseBasesDifferent(KmerEncoding.packed(k), pathA, pathB);
+	}
+	public static int reverseBasesDifferent(KmerEncoding encoding, Iterable<? extends DeBruijnSequenceGraphNode> pathA, Iterable<? extends DeBruijnSequenceGraphNode> pathB) {
 		int lengthA = WeightedSequenceGraphNodeUtil.nodeLength(pathA);
 		int lengthB = WeightedSequenceGraphNodeUtil.nodeLength(pathB);
 		int skipCountA = Math.max(0, lengthA - lengthB);
 		int skipCountB = Math.max(0, lengthB - lengthA);
 		// skip initial bases of the longer path
-		int diff = basesDifferent(k, pathA, pathB, skipCountA, skipCountB); 
+		int diff = basesDifferent(encoding, pathA, pathB, skipCountA, skipCountB); 
 		return diff;
 	}
 	/**
@@ -51,24 +57,27 @@ public class DeBruijnSequenceGraphNodeUtil {
 	 * @return number of bases difference
 	 */
 	public static int basesDifferent(int k, LongStream pathA, LongStream pathB, boolean forwardKmerTraversal) {
+		return basesDifferent(KmerEncoding.packed(k), pathA, pathB, forwardKmerTraversal);
+	}
+	public static int basesDifferent(KmerEncoding encoding, LongStream pathA, LongStream pathB, boolean forwardKmerTraversal) {
 		OfLong itA = pathA.iterator();
 		OfLong itB = pathB.iterator();
 		if (!itA.hasNext() || !itB.hasNext()) return 0;
-		int diff = KmerEncodingHelper.basesDifference(k, itA.nextLong(), itB.nextLong());
+		int diff = encoding.basesDifference(itA.nextLong(), itB.nextLong());
 		while (itA.hasNext() && itB.hasNext()) {
 			if (forwardKmerTraversal) {
-				if (!KmerEncodingHelper.lastBaseMatches(k, itA.nextLong(), itB.nextLong())) {
+				if (!encoding.lastBaseMatches(itA.nextLong(), itB.nextLong())) {
 					diff++;
 				}
 			} else {
-				if (!KmerEncodingHelper.firstBaseMatches(k, itA.nextLong(), itB.nextLong())) {
+				if (!encoding.firstBaseMatches(itA.nextLong(), itB.nextLong())) {
 					diff++;
 				}
 			}
 		}
 		return diff;
 	}
-	private static int basesDifferent(int k, Iterable<? extends DeBruijnSequenceGraphNode> pathA, Iterable<? extends DeBruijnSequenceGraphNode> pathB, final int initialSkipCountA, final int initialSkipCountB) {
+	private static int basesDifferent(KmerEncoding encoding, Iterable<? extends DeBruijnSequenceGraphNode> pathA, Iterable<? extends DeBruijnSequenceGraphNode> pathB, final int initialSkipCountA, final int initialSkipCountB) {
 		int skipCountA = initialSkipCountA;
 		int skipCountB = initialSkipCountB;
 		int diff = 0;
@@ -105,9 +114,9 @@ public class DeBruijnSequenceGraphNodeUtil {
 				} else {
 					// compare bases
 					if (isFirstKmer) {
-						diff = KmerEncodingHelper.basesDifference(k, currentA.kmer(offsetA), currentB.kmer(offsetB));
+						diff = encoding.basesDifference(currentA.kmer(offsetA), currentB.kmer(offsetB));
 						isFirstKmer = false;
-					} else if (!KmerEncodingHelper.lastBaseMatches(k, currentA.kmer(offsetA), currentB.kmer(offsetB))) {
+					} else if (!encoding.lastBaseMatches(currentA.kmer(offsetA), currentB.kmer(offsetB))) {
 						diff++;
 					}
 					offsetA++;
@@ -116,7 +125,7 @@ public class DeBruijnSequenceGraphNodeUtil {
 			}
 		}
 		if (Defaults.SANITY_CHECK_ASSEMBLY_GRAPH) {
-			int streamDiff = basesDifferent(k,
+			int streamDiff = basesDifferent(encoding,
 					StreamSupport.stream(pathA.spliterator(), false).flatMapToLong(n -> IntStream.range(0, n.length()).mapToLong(i -> n.kmer(i))).skip(initialSkipCountA),
 					StreamSupport.stream(pathB.spliterator(), false).flatMapToLong(n -> IntStream.range(0, n.length()).mapToLong(i -> n.kmer(i))).skip(initialSkipCountB),
 					true);
@@ -0,0 +1,113 @@
+package au.edu.wehi.idsv.debruijn;
+
+import it.unimi.dsi.fastutil.HashCommon;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash table assigning sequential identifiers to 128 bit values.
+ *
+ * Values are stored in primitive arrays indexed by identifier so lookup of
+ * the value of an identifier is a pair of array accesses.
+ *
+ * This class is not thread-safe.
+ *
+ * @author Daniel Cameron
+ *
+ */
+public class Kmer128Dictionary {
+	private static final int MAX_CAPACITY = 1 << 30;
+	private static final float LOAD_FACTOR = 0.5f;
+	private long[] high;
+	private long[] low;
+	/**
+	 * Hash table of identifier + 1. Zero indicates an empty slot.
+	 */
+	private int[] table;
+	private int mask;
+	private int size = 0;
+	public Kmer128Dictionary() {
+		this(1024);
+	}
+	public Kmer128Dictionary(int expectedSize) {
+		int capacity = HashCommon.arraySize(Math.max(expectedSize, 16), LOAD_FACTOR);
+		table = new int[capacity];
+		mask = capacity - 1;
+		high = new long[Math.max(expectedSize, 16)];
+		low = new long[high.length];
+	}
+	private static int hash(long high, long low) {
+		return (int)HashCommon.mix(HashCommon.mix(high) ^ low);
+	}
+	/**
+	 * Returns the identifier of the given value, allocating a new identifier if the value has not been seen before
+	 */
+	public long intern(long highBits, long lowBits) {
+		int pos = hash(highBits, lowBits) & mask;
+		int id;
+		while ((id = table[pos]) != 0) {
+			if (high[id - 1] == highBits && low[id - 1] == lowBits) {
+				return id - 1;
+			}
+			pos = (pos + 1) & mask;
+		}
+		if (size == high.length) {
+			if (size >= MAX_CAPACITY) {
+				throw new IllegalStateException(String.format("Unable to store more than %d distinct kmers", MAX_CAPACITY));
+			}
+			int newLength = (int)Math.min(MAX_CAPACITY, 2L * high.length);
+			high = Arrays.copyOf(high, newLength);
+			low = Arrays.copyOf(low, newLength);
+		}
+		high[size] = highBits;
+		low[size] = lowBits;
+		table[pos] = ++size;
+		if (size > table.length * LOAD_FACTOR) {
+			rehash(table.length * 2);
+		}
+		return size - 1;
+	}
+	/**
+	 * Returns the identifier of the given value
+	 * @return identifier, or -1 if the value has not been interned
+	 */
+	public long find(long highBits, long lowBits) {
+		int pos = hash(highBits, lowBits) & mask;
+		int id;
+		while ((id = table[pos]) != 0) {
+			if (high[id - 1] == highBits && low[id - 1] == lowBits) {
+				return id - 1;
+			}
+			pos = (pos + 1) & mask;
+		}
+		return -1;
+	}
+	private void rehash(int capacity) {
+		int[] newTable = new int[capacity];
+		int newMask = capacity - 1;
+		for (int i = 0; i < size; i++) {
+			int pos = hash(high[i], low[i]) & newMask;
+			while (newTable[pos] != 0) {
+				pos = (pos + 1) & newMask;
+			}
+			newTable[pos] = i + 1;
+		}
+		table = newTable;
+		mask = newMask;
+	}
+	public long high(long id) {
+		return high[(int)id];
+	}
+	public long low(long id) {
+		return low[(int)id];
+	}
+	public int size() {
+		return size;
+	}
+	/**
+	 * @return approximate heap size of the dictionary in bytes
+	 */
+	public long sizeInBytes() {
+		return 8L * high.length + 8L * low.length + 4L * table.length;
+	}
+}
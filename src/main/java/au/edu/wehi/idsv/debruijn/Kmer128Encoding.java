@@ -0,0 +1,121 @@
+package au.edu.wehi.idsv.debruijn;
+
+import java.util.Arrays;
+
+/**
+ * Kmers of 33 to 63 bases.
+ *
+ * Each kmer is 2bit encoded into two longs with the first k-32 bases in the
+ * high long and the final 32 bases in the low long. Graph nodes refer to
+ * kmers by an identifier allocated the first time each kmer is encoded.
+ *
+ * Identifiers are only meaningful within the encoding instance that allocated
+ * them and identifier order does not correspond to kmer sequence order.
+ * Allocated identifiers are retained for the lifetime of the encoding.
+ *
+ * This class is not thread-safe.
+ *
+ * @author Daniel Cameron
+ *
+ */
+public class Kmer128Encoding extends KmerEncoding {
+	private static final int LOW_BASES = KmerEncodingHelper.MAX_K;
+	private final Kmer128Dictionary dictionary = new Kmer128Dictionary();
+	/**
+	 * Number of bases stored in the high long
+	 */
+	private final int highBases;
+	private final long highMask;
+	Kmer128Encoding(int k) {
+		super(k);
+		if (k <= LOW_BASES || k > MAX_K) {
+			throw new IllegalArgumentException(String.format("Kmer size %d not in supported range of %d-%d", k, LOW_BASES + 1, MAX_K));
+		}
+		this.highBases = k - LOW_BASES;
+		this.highMask = (1L << (2 * highBases)) - 1;
+	}
+	@Override
+	public boolean isPacked() {
+		return false;
+	}
+	/**
+	 * Number of distinct kmers encoded
+	 */
+	public int size() {
+		return dictionary.size();
+	}
+	/**
+	 * @return approximate heap size of the kmer dictionary in bytes
+	 */
+	public long sizeInBytes() {
+		return dictionary.sizeInBytes();
+	}
+	@Override
+	public long kmer(PackedSequence seq, int offset) {
+		return dictionary.intern(seq.getKmer(offset, highBases), seq.getKmer(offset + highBases, LOW_BASES));
+	}
+	@Override
+	public long[] nextStates(long kmer) {
+		long low = dictionary.low(kmer);
+		long nextHigh = ((dictionary.high(kmer) << 2) | (low >>> 62)) & highMask;
+		long nextLow = low << 2;
+		long[] result = new long[4];
+		int count = 0;
+		for (long base = 0; base < 4; base++) {
+			long id = dictionary.find(nextHigh, nextLow | base);
+			if (id >= 0) {
+				result[count++] = id;
+			}
+		}
+		return count == 4 ? result : Arrays.copyOf(result, count);
+	}
+	@Override
+	public long[] prevStates(long kmer) {
+		long high = dictionary.high(kmer);
+		long prevHigh = high >>> 2;
+		long prevLow = (dictionary.low(kmer) >>> 2) | ((high & 3) << 62);
+		long[] result = new long[4];
+		int count = 0;
+		for (long base = 0; base < 4; base++) {
+			long id = dictionary.find(prevHigh | (base << (2 * (highBases - 1))), prevLow);
+			if (id >= 0) {
+				result[count++] = id;
+			}
+		}
+		return count == 4 ? result : Arrays.copyOf(result, count);
+	}
+	@Override
+	public boolean isNext(long kmer, long next) {
+		long low = dictionary.low(kmer);
+		return (((dictionary.high(kmer) << 2) | (low >>> 62)) & highMask) == dictionary.high(next)
+				&& low << 2 == (dictionary.low(next) & ~3L);
+	}
+	@Override
+	public int firstBase(long kmer) {
+		return (int)(dictionary.high(kmer) >>> (2 * (highBases - 1)));
+	}
+	@Override
+	public int lastBase(long kmer) {
+		return (int)(dictionary.low(kmer) & 3);
+	}
+	@Override
+	public int basesDifference(long kmer1, long kmer2) {
+		return KmerEncodingHelper.basesDifference(highBases, dictionary.high(kmer1), dictionary.high(kmer2))
+				+ KmerEncodingHelper.basesDifference(LOW_BASES, dictionary.low(kmer1), dictionary.low(kmer2));
+	}
+	@Override
+	public byte[] bases(long kmer) {
+		byte[] bases = new byte[k];
+		long state = dictionary.low(kmer);
+		for (int i = k - 1; i >= highBases; i--) {
+			bases[i] = KmerEncodingHelper.lastBaseEncodedToPicardBase(state);
+			state >>>= 2;
+		}
+		state = dictionary.high(kmer);
+		for (int i = highBases - 1; i >= 0; i--) {
+			bases[i] = KmerEncodingHelper.lastBaseEncodedToPicardBase(state);
+			state >>>= 2;
+		}
+		return bases;
+	}
+}
@@ -0,0 +1,175 @@
+package au.edu.wehi.idsv.debruijn;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Kmer representation used by a de Bruijn graph.
+ *
+ * Graph nodes store each kmer as a single long. For k <= 32 this long is
+ * the 2bit encoded kmer itself. Larger kmers do not fit in a long and are
+ * instead represented by an identifier allocated by the encoding.
+ *
+ * All components of a graph must share the same encoding instance.
+ *
+ * @author Daniel Cameron
+ *
+ */
+public abstract class KmerEncoding {
+	/**
+	 * Maximum supported kmer size
+	 */
+	public static final int MAX_K = 2 * KmerEncodingHelper.MAX_K - 1;
+	private static final KmerEncoding[] PACKED = new KmerEncoding[KmerEncodingHelper.MAX_K + 1];
+	static {
+		for (int k = 1; k <= KmerEncodingHelper.MAX_K; k++) {
+			PACKED[k] = new PackedKmerEncoding(k);
+		}
+	}
+	protected final int k;
+	protected KmerEncoding(int k) {
+		this.k = k;
+	}
+	/**
+	 * Creates a kmer encoding for the given kmer size.
+	 *
+	 * Kmers larger than 32 bases are interned by the returned encoding
+	 * so a new encoding should be created for each independent graph.
+	 * @param k kmer size
+	 * @return kmer encoding
+	 */
+	public static KmerEncoding create(int k) {
+		if (k <= 0 || k > MAX_K) {
+			throw new IllegalArgumentException(String.format("Kmer size %d not in supported range of 1-%d", k, MAX_K));
+		}
+		if (k <= KmerEncodingHelper.MAX_K) {
+			return PACKED[k];
+		}
+		return new Kmer128Encoding(k);
+	}
+	/**
+	 * Shared encoding for kmers that fit in a long.
+	 *
+	 * Packed encodings hold no state so can be shared by every graph. Kmers larger
+	 * than 32 bases require the encoding instance shared by all components of the graph.
+	 * @param k kmer size
+	 * @return kmer encoding
+	 */
+	public static KmerEncoding packed(int k) {
+		if (k <= 0 || k > KmerEncodingHelper.MAX_K) {
+			throw new IllegalArgumentException(String.format("Kmer size %d not in supported range of 1-%d. Larger kmers require the KmerEncoding of the graph.", k, KmerEncodingHelper.MAX_K));
+		}
+		return PACKED[k];
+	}
+	public int k() {
+		return k;
+	}
+	/**
+	 * Indicates whether kmers are stored as the 2bit encoded bases.
+	 * @return true if the kmer value is the 2bit encoded kmer, false if it is an identifier
+	 */
+	public abstract boolean isPacked();
+	/**
+	 * Encodes the kmer starting at the given offset
+	 * @param seq sequence
+	 * @param offset offset of first base of kmer
+	 * @return encoded kmer
+	 */
+	public abstract long kmer(PackedSequence seq, int offset);
+	/**
+	 * Successor kmers. Encodings that do not store the kmer bases directly
+	 * only return successors that have been previously encoded.
+	 */
+	public abstract long[] nextStates(long kmer);
+	/**
+	 * Predecessor kmers. Encodings that do not store the kmer bases directly
+	 * only return predecessors that have been previously encoded.
+	 */
+	public abstract long[] prevStates(long kmer);
+	public abstract boolean isNext(long kmer, long next);
+	/**
+	 * @return 2bit encoded first base of the kmer
+	 */
+	public abstract int firstBase(long kmer);
+	/**
+	 * @return 2bit encoded last base of the kmer
+	 */
+	public abstract int lastBase(long kmer);
+	/**
+	 * @return number of mismatching bases
+	 */
+	public abstract int basesDifference(long kmer1, long kmer2);
+	/**
+	 * @return ASCII bases of the kmer
+	 */
+	public abstract byte[] bases(long kmer);
+	public boolean lastBaseMatches(long kmer1, long kmer2) {
+		return lastBase(kmer1) == lastBase(kmer2);
+	}
+	public boolean firstBaseMatches(long kmer1, long kmer2) {
+		return firstBase(kmer1) == firstBase(kmer2);
+	}
+	public String toString(long kmer) {
+		return new String(bases(kmer));
+	}
+	/**
+	 * Base calls of contig
+	 * @param path kmer contig
+	 * @return base calls of a positive strand SAMRecord readout of contig
+	 */
+	public byte[] baseCalls(List<Long> path) {
+		byte[] bases = Arrays.copyOf(bases(path.get(0)), path.size() + k - 1);
+		for (int i = 1; i < path.size(); i++) {
+			bases[k - 1 + i] = KmerEncodingHelper.encodedToPicardBase(lastBase(path.get(i)));
+		}
+		return bases;
+	}
+	/**
+	 * Sums base counts for the given sequence
+	 */
+	public int[] baseCounts(LongArrayList path) {
+		int[] counts = new int[4];
+		for (byte b : bases(path.getLong(0))) {
+			counts[KmerEncodingHelper.picardBaseToEncoded(b)]++;
+		}
+		for (int i = 1; i < path.size(); i++) {
+			counts[lastBase(path.getLong(i))]++;
+		}
+		return counts;
+	}
+	/**
+	 * Calculates the additional bases difference by incorporating the given
+	 * kmers to a larger sequence anchored at the start or the end of the reference
+	 * sequence
+	 *
+	 * @see KmerEncodingHelper#partialSequenceBasesDifferent(int, LongArrayList, LongArrayList, int, boolean)
+	 */
+	public int partialSequenceBasesDifferent(LongArrayList ref, LongArrayList kmers, int offset, boolean startAnchored) {
+		int basesDiff = 0;
+		if (startAnchored) {
+			if (offset == 0) {
+				basesDiff = basesDifference(ref.getLong(0), kmers.getLong(0));
+			}
+			int loopEnd = Math.min(kmers.size(), ref.size() - offset);
+			for (int i = offset == 0 ? 1 : 0; i < loopEnd; i++) {
+				if (!lastBaseMatches(ref.getLong(offset + i), kmers.getLong(i))) {
+					basesDiff++;
+				}
+			}
+		} else {
+			int loopEnd = kmers.size();
+			if (offset + kmers.size() == ref.size()) {
+				basesDiff = basesDifference(ref.getLong(ref.size() - 1), kmers.getLong(kmers.size() - 1));
+				loopEnd--;
+			}
+			for (int i = Math.max(0, -offset); i < loopEnd; i++) {
+				if (!firstBaseMatches(ref.getLong(offset + i), kmers.getLong(i))) {
+					basesDiff++;
+				}
+			}
+		}
+		return basesDiff;
+	}
+}
@@ -0,0 +1,77 @@
+package au.edu.wehi.idsv.debruijn;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+
+import java.util.List;
+
+/**
+ * Kmers of up to 32 bases stored directly as 2bit encoded bases in a long
+ *
+ * @author Daniel Cameron
+ *
+ */
+public class PackedKmerEncoding extends KmerEncoding {
+	PackedKmerEncoding(int k) {
+		super(k);
+	}
+	@Override
+	public boolean isPacked() {
+		return true;
+	}
+	@Override
+	public long kmer(PackedSequence seq, int offset) {
+		return seq.getKmer(offset, k);
+	}
+	@Override
+	public long[] nextStates(long kmer) {
+		return KmerEncodingHelper.nextStates(k, kmer);
+	}
+	@Override
+	public long[] prevStates(long kmer) {
+		return KmerEncodingHelper.prevStates(k, kmer);
+	}
+	@Override
+	public boolean isNext(long kmer, long next) {
+		return KmerEncodingHelper.isNext(k, kmer, next);
+	}
+	@Override
+	public int firstBase(long kmer) {
+		return (int)(kmer >>> (2 * (k - 1)));
+	}
+	@Override
+	public int lastBase(long kmer) {
+		return (int)(kmer & 3);
+	}
+	@Override
+	public int basesDifference(long kmer1, long kmer2) {
+		return KmerEncodingHelper.basesDifference(k, kmer1, kmer2);
+	}
+	@Override
+	public byte[] bases(long kmer) {
+		return KmerEncodingHelper.encodedToPicardBases(k, kmer);
+	}
+	@Override
+	public boolean lastBaseMatches(long kmer1, long kmer2) {
+		return KmerEncodingHelper.lastBaseMatches(k, kmer1, kmer2);
+	}
+	@Override
+	public boolean firstBaseMatches(long kmer1, long kmer2) {
+		return KmerEncodingHelper.firstBaseMatches(k, kmer1, kmer2);
+	}
+	@Override
+	public String toString(long kmer) {
+		return KmerEncodingHelper.toString(k, kmer);
+	}
+	@Override
+	public byte[] baseCalls(List<Long> path) {
+		return KmerEncodingHelper.baseCalls(path, k);
+	}
+	@Override
+	public int[] baseCounts(LongArrayList path) {
+		return KmerEncodingHelper.baseCounts(k, path);
+	}
+	@Override
+	public int partialSequenceBasesDifferent(LongArrayList ref, LongArrayList kmers, int offset, boolean startAnchored) {
+		return KmerEncodingHelper.partialSequenceBasesDifferent(k, ref, kmers, offset, startAnchored);
+	}
+}
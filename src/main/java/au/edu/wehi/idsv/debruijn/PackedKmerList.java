@@ -4,10 +4,20 @@ package au.edu.wehi.idsv.debruijn;
 public class PackedKmerList extends PackedSequence {
 	private final byte[] weights;
 	protected final byte k;
+	protected final KmerEncoding encoding;
+	/**
+	 * Encoded kmers. Only populated when the encoding does not store the kmer bases directly.
+	 */
+	private final long[] encodedKmers;
 	public PackedKmerList(int k, byte[] bases, byte[] qual, boolean reverse, boolean complement) {
+		this(KmerEncoding.packed(k), bases, qual, reverse, complement);
+	}
+	public PackedKmerList(KmerEncoding encoding, byte[] bases, byte[] qual, boolean reverse, boolean complement) {
 		super(bases, reverse, complement);
+		int k = encoding.k();
 		int kmers = bases.length - k + 1;
 		this.k = (byte)k;
+		this.encoding = encoding;
 		if (kmers <= 0) {
 			this.weights = new byte[0];
 		} else if (qual == null) {
@@ -15,6 +25,14 @@ public class PackedKmerList extends PackedSequence {
 		} else {
 			this.weights = calcWeight(k, qual, reverse);
 		}
+		if (encoding.isPacked()) {
+			this.encodedKmers = null;
+		} else {
+			this.encodedKmers = new long[weights.length];
+			for (int i = 0; i < encodedKmers.length; i++) {
+				encodedKmers[i] = encoding.kmer(this, i);
+			}
+		}
 	}
 	private static byte[] calcWeight(int k, byte[] qual, boolean reverse) {
 		byte[] weights = new byte[qual.length - k + 1];
@@ -35,7 +53,10 @@ public class PackedKmerList extends PackedSequence {
 		return weights;
 	}
 	public long kmer(int offset) {
-		return getKmer(offset, k); 
+		if (encodedKmers != null) {
+			return encodedKmers[offset];
+		}
+		return getKmer(offset, k);
 	}
 	public int weight(int offset) {
 		return weights[offset];
@@ -46,4 +67,7 @@ public class PackedKmerList extends PackedSequence {
 	public int kmerSize() {
 		return k;
 	}
+	public KmerEncoding kmerEncoding() {
+		return encoding;
+	}
 }
@@ -2,6 +2,7 @@ package au.edu.wehi.idsv.debruijn.positional;
 
 import au.edu.wehi.idsv.Defaults;
 import au.edu.wehi.idsv.debruijn.DeBruijnSequenceGraphNodeUtil;
+import au.edu.wehi.idsv.debruijn.KmerEncoding;
 import au.edu.wehi.idsv.debruijn.positional.optimiseddatastructures.KmerNodeByFirstStartEndKmerReferenceNavigablePartiallyOrderedSet;
 import au.edu.wehi.idsv.debruijn.positional.optimiseddatastructures.KmerNodeByLastEndStartKmerReferenceNavigablePartiallyOrderedSet;
 import com.google.common.collect.Iterables;
@@ -31,6 +32,7 @@ import java.util.*;
 public abstract class CollapseIterator implements PeekingIterator<KmerPathNode> {
 	private final PeekingIterator<KmerPathNode> underlying;
 	protected final int k;
+	protected final KmerEncoding encoding;
 	private final int maxCollapseLength;
 	protected final int maxBasesMismatch;
 	private final NavigableSet<KmerPathNode> processed = Defaults.USE_OPTIMISED_ASSEMBLY_DATA_STRUCTURES ? new KmerNodeByFirstStartEndKmerReferenceNavigablePartiallyOrderedSet<KmerPathNode>(16) : new TreeSet<KmerPathNode>(KmerNodeUtil.ByFirstStartEndKmerReference);
@@ -70,13 +72,14 @@ public abstract class CollapseIterator implements PeekingIterator<KmerPathNode>
 	protected abstract boolean reprocessMergedNodes();
 	public CollapseIterator(
 			Iterator<KmerPathNode> it,
-			int k,
+			KmerEncoding encoding,
 			int maxPathCollapseLength,
 			int maxBasesMismatch,
 			int preCollapseBufferSize,
 			int postCollapseBufferSize) {
 		this.underlying = Iterators.peekingIterator(it);
-		this.k = k;
+		this.k = encoding.k();
+		this.encoding = encoding;
 		this.maxBasesMismatch = maxBasesMismatch;
 		this.maxCollapseLength = maxPathCollapseLength;
 		this.processOffset = maxPathCollapseLength + 1 + preCollapseBufferSize;
@@ -197,7 +200,7 @@ public abstract class CollapseIterator implements PeekingIterator<KmerPathNode>
 	private void merge(List<KmerPathSubnode> sourcePath, List<KmerPathSubnode> targetPath) {
 		assert(sourcePath.get(0).width() == targetPath.get(0).width());
 		assert(sourcePath.get(0).firstStart() == targetPath.get(0).firstStart());
-		assert(DeBruijnSequenceGraphNodeUtil.basesDifferent(k, sourcePath, targetPath) <= maxBasesMismatch);
+		assert(DeBruijnSequenceGraphNodeUtil.basesDifferent(encoding, sourcePath, targetPath) <= maxBasesMismatch);
 		trimCommon(sourcePath, targetPath);
 		assertKmerPathNodesUnique(sourcePath, targetPath);
 		List<KmerPathNode> source = positionSplit(sourcePath);
@@ -213,7 +216,7 @@ public abstract class CollapseIterator implements PeekingIterator<KmerPathNode>
 		}
 		source = lengthSplit(kmerStartPositions, source);
 		target = lengthSplit(kmerStartPositions, target);
-		assert(DeBruijnSequenceGraphNodeUtil.basesDifferent(k, source, target) <= maxBasesMismatch);
+		assert(DeBruijnSequenceGraphNodeUtil.basesDifferent(encoding, source, target) <= maxBasesMismatch);
 		assert(source.size() <= target.size());
 		// merge the common nodes
 		for (int i = 0; i < source.size(); i++) {
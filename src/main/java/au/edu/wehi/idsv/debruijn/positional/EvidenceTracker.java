@@ -3,15 +3,14 @@ package au.edu.wehi.idsv.debruijn.positional;
 import au.edu.wehi.idsv.Defaults;
 import au.edu.wehi.idsv.util.IntervalUtil;
 import it.unimi.dsi.fastutil.ints.IntArrayList;
-import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
 import it.unimi.dsi.fastutil.longs.LongArrayList;
 import it.unimi.dsi.fastutil.longs.LongLinkedOpenHashSet;
 import it.unimi.dsi.fastutil.longs.LongSortedSet;
-import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 import static au.edu.wehi.idsv.Defaults.SANITY_CHECK_EVIDENCE_TRACKER;
 
@@ -19,18 +18,128 @@ import static au.edu.wehi.idsv.Defaults.SANITY_CHECK_EVIDENCE_TRACKER;
  * Tracks evidence provided to a given graph by wrapping a source iterator
  * and tracking evidence emitted by the iterator 
  * 
+ * Support nodes are stored as primitive records in contiguous arrays,
+ * chained per kmer in insertion order. Evidence is referenced by
+ * int handle, and each evidence ID is interned to the handle of the first
+ * of its chained KmerEvidence. Removed records and handles are recycled
+ * through free lists.
+ * 
  * @author Daniel Cameron
  *
  */
 public class EvidenceTracker {
 	//public static EvidenceTracker TEMP_HACK_CURRENT_TRACKER = null;
-	private final Long2ObjectOpenHashMap<LinkedList<KmerSupportNode>> lookup = new Long2ObjectOpenHashMap<>();
-	private final Object2ObjectOpenHashMap<String, List<KmerEvidence>> id = new Object2ObjectOpenHashMap<>();
+	private static final int NONE = -1;
+	private static final int INITIAL_CAPACITY = 1024;
+	/**
+	 * kmer -> packed head and tail support node records
+	 */
+	private final Long2LongOpenHashMap lookup = new Long2LongOpenHashMap();
+	/**
+	 * evidence ID -> handle of first KmerEvidence for that evidence
+	 */
+	private final Object2IntOpenHashMap<String> id = new Object2IntOpenHashMap<>();
+	// support node records
+	private int[] nodeStart = new int[INITIAL_CAPACITY];
+	private int[] nodeEnd = new int[INITIAL_CAPACITY];
+	private int[] nodeEvidence = new int[INITIAL_CAPACITY];
+	private int[] nodeOffset = new int[INITIAL_CAPACITY];
+	private int[] nodeNext = new int[INITIAL_CAPACITY];
+	private int nodeAllocated = 0;
+	private int nodeFree = NONE;
+	private int nodeActive = 0;
+	// KmerEvidence handles
+	private KmerEvidence[] evidence = new KmerEvidence[INITIAL_CAPACITY];
+	private int[] evidenceNext = new int[INITIAL_CAPACITY];
+	private boolean[] evidenceRemoved = new boolean[INITIAL_CAPACITY];
+	private int evidenceAllocated = 0;
+	private int evidenceFree = NONE;
 	private long evidenceTotal = 0;
 	/**
 	 * Tracks evidence emitted from the given iterator
 	 */
 	public EvidenceTracker() {
+		lookup.defaultReturnValue(NONE);
+		id.defaultReturnValue(NONE);
+	}
+	private static long pack(int head, int tail) {
+		return ((long)head << 32) | (tail & 0xFFFFFFFFL);
+	}
+	private static int head(long headTail) {
+		return (int)(headTail >> 32);
+	}
+	private static int tail(long headTail) {
+		return (int)headTail;
+	}
+	private int allocateNode() {
+		nodeActive++;
+		if (nodeFree != NONE) {
+			int node = nodeFree;
+			nodeFree = nodeNext[node];
+			return node;
+		}
+		if (nodeAllocated == nodeNext.length) {
+			int capacity = nodeNext.length * 2;
+			nodeStart = Arrays.copyOf(nodeStart, capacity);
+			nodeEnd = Arrays.copyOf(nodeEnd, capacity);
+			nodeEvidence = Arrays.copyOf(nodeEvidence, capacity);
+			nodeOffset = Arrays.copyOf(nodeOffset, capacity);
+			nodeNext = Arrays.copyOf(nodeNext, capacity);
+		}
+		return nodeAllocated++;
+	}
+	private void freeNode(int node) {
+		nodeActive--;
+		nodeNext[node] = nodeFree;
+		nodeFree = node;
+	}
+	private int allocateEvidence(KmerEvidence ke) {
+		int handle;
+		if (evidenceFree != NONE) {
+			handle = evidenceFree;
+			evidenceFree = evidenceNext[handle];
+		} else {
+			if (evidenceAllocated == evidence.length) {
+				int capacity = evidence.length * 2;
+				evidence = Arrays.copyOf(evidence, capacity);
+				evidenceNext = Arrays.copyOf(evidenceNext, capacity);
+				evidenceRemoved = Arrays.copyOf(evidenceRemoved, capacity);
+			}
+			handle = evidenceAllocated++;
+		}
+		evidence[handle] = ke;
+		evidenceNext[handle] = NONE;
+		evidenceRemoved[handle] = false;
+		return handle;
+	}
+	private void freeEvidence(int handle) {
+		evidence[handle] = null;
+		evidenceRemoved[handle] = false;
+		evidenceNext[handle] = evidenceFree;
+		evidenceFree = handle;
+	}
+	/**
+	 * Gets the handle of the given KmerEvidence, creating a new handle if required
+	 */
+	private int evidenceHandle(KmerEvidence ke) {
+		String evidenceId = ke.evidence().getEvidenceID();
+		int first = id.getInt(evidenceId);
+		if (first == NONE) {
+			evidenceTotal++;
+			int handle = allocateEvidence(ke);
+			id.put(evidenceId, handle);
+			return handle;
+		}
+		int last = first;
+		for (int handle = first; handle != NONE; handle = evidenceNext[handle]) {
+			if (evidence[handle] == ke || evidence[handle].equals(ke)) {
+				return handle;
+			}
+			last = handle;
+		}
+		int handle = allocateEvidence(ke);
+		evidenceNext[last] = handle;
+		return handle;
 	}
 	/**
 	 * Tracks the given evidence
@@ -38,22 +147,18 @@ public class EvidenceTracker {
 	 */
 	public KmerSupportNode track(KmerSupportNode support) {
 		long kmer = support.lastKmer();
-		LinkedList<KmerSupportNode> list = lookup.get(kmer);
-		if (list == null) {
-			list = new LinkedList<KmerSupportNode>();
-			lookup.put(kmer, list);
-		}
-		list.add(support);
-		KmerEvidence ke = support.evidence();
-		String evidenceId = ke.evidence().getEvidenceID();
-		List<KmerEvidence> idvalue = id.get(evidenceId);
-		if (idvalue == null) {
-			evidenceTotal++;
-			idvalue = new ArrayList<>();
-			id.put(evidenceId, idvalue);
-		}
-		if (!idvalue.contains(ke)) {
-			idvalue.add(ke);
+		int node = allocateNode();
+		nodeStart[node] = support.lastStart();
+		nodeEnd[node] = support.lastEnd();
+		nodeEvidence[node] = evidenceHandle(support.evidence());
+		nodeOffset[node] = support.offset();
+		nodeNext[node] = NONE;
+		long headTail = lookup.get(kmer);
+		if (headTail == NONE) {
+			lookup.put(kmer, pack(node, node));
+		} else {
+			nodeNext[tail(headTail)] = node;
+			lookup.put(kmer, pack(head(headTail), node));
 		}
 		return support;
 	}
@@ -63,53 +168,77 @@ public class EvidenceTracker {
 	 */
 	public Set<KmerEvidence> remove(Set<KmerEvidence> evidenceSet) {
 		Set<KmerEvidence> evidenceToRemove = new ObjectOpenHashSet<>();
+		IntArrayList handles = new IntArrayList();
 		LongSortedSet kmersInSet = new LongLinkedOpenHashSet();
 		for (KmerEvidence evidence : evidenceSet) {
-			addToRemoveList(evidence, evidenceToRemove, kmersInSet);
+			addToRemoveList(evidence, evidenceToRemove, handles, kmersInSet);
 		}
 		for (long kmer : kmersInSet) {
-			remove(kmer, evidenceToRemove);
+			removeFlagged(kmer);
+		}
+		for (int i = 0; i < handles.size(); i++) {
+			freeEvidence(handles.getInt(i));
 		}
 		if (SANITY_CHECK_EVIDENCE_TRACKER) {
 			sanityCheck();
 		}
 		return evidenceToRemove;
 	}
-	private void addToRemoveList(KmerEvidence evidence, Set<KmerEvidence> removeSet, LongSortedSet kmersInSet) {
+	private void addToRemoveList(KmerEvidence evidence, Set<KmerEvidence> removeSet, IntArrayList handles, LongSortedSet kmersInSet) {
 		// Need to remove all KmerEvidence associated with the evidence
 		// Read pairs can have two: one each of the anchored and unanchored reads
-		Collection<KmerEvidence> trackedKmerEvidenceForEvidence = id.remove(evidence.evidence().getEvidenceID());
-		if (trackedKmerEvidenceForEvidence == null) {
+		int first = id.removeInt(evidence.evidence().getEvidenceID());
+		if (first == NONE) {
 			// Will happen when we attempt to remove the second KmerEvidence in a read pair
 			return;
 		}
-		removeSet.addAll(trackedKmerEvidenceForEvidence);
-		for (KmerEvidence e : trackedKmerEvidenceForEvidence) {
+		for (int handle = first; handle != NONE; handle = evidenceNext[handle]) {
+			KmerEvidence e = this.evidence[handle];
+			evidenceRemoved[handle] = true;
+			handles.add(handle);
+			removeSet.add(e);
 			for (int i = 0; i < e.length(); i++) {
-				KmerSupportNode node = e.node(i);
-				if (node != null) {
-					kmersInSet.add(node.firstKmer());
+				if (!e.isAmbiguous(i)) {
+					kmersInSet.add(e.kmer(i));
 				}
 			}
 		}
 	}
 	/**
-	 * Stops tracking all nodes associated with the given evidence 
-	 * @param evidence
+	 * Stops tracking all nodes of the given kmer associated with removed evidence
+	 * @param kmer
 	 */
-	private void remove(long kmer, Collection<KmerEvidence> evidence) {
-		LinkedList<KmerSupportNode> list = lookup.get(kmer);
-		if (list != null) {
-			ListIterator<KmerSupportNode> it = list.listIterator();
-			while (it.hasNext()) {
-				KmerSupportNode n = it.next();
-				if (evidence.contains(n.evidence())) {
-					it.remove();
+	private void removeFlagged(long kmer) {
+		long headTail = lookup.get(kmer);
+		if (headTail == NONE) return;
+		int head = head(headTail);
+		int tail = tail(headTail);
+		int prev = NONE;
+		int node = head;
+		while (node != NONE) {
+			int next = nodeNext[node];
+			if (evidenceRemoved[nodeEvidence[node]]) {
+				if (prev == NONE) {
+					head = next;
+				} else {
+					nodeNext[prev] = next;
 				}
+				if (node == tail) {
+					tail = prev;
+				}
+				freeNode(node);
+			} else {
+				prev = node;
 			}
-			if (list.size() == 0) {
-				lookup.remove(kmer);
-			}
+			node = next;
+		}
+		updateLookup(kmer, head, tail);
+	}
+	private void updateLookup(long kmer, int head, int tail) {
+		if (head == NONE) {
+			lookup.remove(kmer);
+		} else {
+			lookup.put(kmer, pack(head, tail));
 		}
 	}
 	/**
@@ -162,19 +291,35 @@ public class EvidenceTracker {
 	 * @param end
 	 */
 	private void toCollection(Collection<KmerEvidence> collection, long kmer, int start, int end, boolean remove) {
-		LinkedList<KmerSupportNode> list = lookup.get(kmer);
-		if (list != null) {
-			ListIterator<KmerSupportNode> it = list.listIterator();
-			while (it.hasNext()) {
-				KmerSupportNode n = it.next();
-				if (IntervalUtil.overlapsClosed(start, end, n.lastStart(), n.lastEnd())) {
-					if (remove) {
-						it.remove();
+		long headTail = lookup.get(kmer);
+		if (headTail == NONE) return;
+		int head = head(headTail);
+		int tail = tail(headTail);
+		int prev = NONE;
+		int node = head;
+		while (node != NONE) {
+			int next = nodeNext[node];
+			if (IntervalUtil.overlapsClosed(start, end, nodeStart[node], nodeEnd[node])) {
+				collection.add(evidence[nodeEvidence[node]]);
+				if (remove) {
+					if (prev == NONE) {
+						head = next;
+					} else {
+						nodeNext[prev] = next;
+					}
+					if (node == tail) {
+						tail = prev;
 					}
-					KmerEvidence e = n.evidence();
-					collection.add(e);
+					freeNode(node);
+					node = next;
+					continue;
 				}
 			}
+			prev = node;
+			node = next;
+		}
+		if (remove) {
+			updateLookup(kmer, head, tail);
 		}
 	}
 	public boolean matchesExpected(KmerPathSubnode pn) {
@@ -195,18 +340,18 @@ public class EvidenceTracker {
 	public boolean matchesExpected(int expectedWidthWeight, LongArrayList kmers, int start, int end) {
 		int evidenceWeight = 0;
 		for (long kmer : kmers) {
-			LinkedList<KmerSupportNode> list = lookup.get(kmer);
-			if (list != null) {
-				for (KmerSupportNode n : list) {
-					evidenceWeight += n.weight() * IntervalUtil.overlapsWidthClosed(start, end, n.lastStart(), n.lastEnd());
-				}
+			long headTail = lookup.get(kmer);
+			if (headTail == NONE) continue;
+			for (int node = head(headTail); node != NONE; node = nodeNext[node]) {
+				int weight = evidence[nodeEvidence[node]].weight(nodeOffset[node]);
+				evidenceWeight += weight * IntervalUtil.overlapsWidthClosed(start, end, nodeStart[node], nodeEnd[node]);
 			}
 		}
 		assert(evidenceWeight == expectedWidthWeight);
 		return evidenceWeight == expectedWidthWeight;
 	}
 	public boolean isTracked(String evidenceId) {
-		return id.keySet().contains(evidenceId);
+		return id.containsKey(evidenceId);
 	}
 	public class PathNodeAssertionInterceptor implements Iterator<KmerPathNode> {
 		private final Iterator<KmerPathNode> underlying;
@@ -247,7 +392,13 @@ public class EvidenceTracker {
 		}
 	}
 	public Set<KmerEvidence> getTrackedEvidence() {
-		return id.values().stream().flatMap(x -> x.stream()).collect(Collectors.toSet());
+		Set<KmerEvidence> result = new HashSet<>();
+		for (int first : id.values()) {
+			for (int handle = first; handle != NONE; handle = evidenceNext[handle]) {
+				result.add(evidence[handle]);
+			}
+		}
+		return result;
 	}
 	public long tracking_evidenceTotal() {
 		return evidenceTotal;
@@ -259,36 +410,52 @@ public class EvidenceTracker {
 		return lookup.size();
 	}
 	public int tracking_supportNodeCount() {
-		return lookup.values().stream().mapToInt(x -> x.size()).sum();
+		return nodeActive;
 	}
 	public int tracking_maxKmerSupportNodesCount() {
-		return lookup.values().stream().mapToInt(x -> x.size()).max().orElse(0);
+		int max = 0;
+		for (long headTail : lookup.values()) {
+			int count = 0;
+			for (int node = head(headTail); node != NONE; node = nodeNext[node]) {
+				count++;
+			}
+			max = Math.max(max, count);
+		}
+		return max;
 	}
 	public void sanityCheck() {
-		Set<String> lookupEid = lookup.values()
-				.stream()
-				.flatMap(ll -> ll.stream())
-				.map(ksn -> ksn.evidence().evidence().getEvidenceID())
-				.collect(Collectors.toSet());
-		Set<String> idEid = id.keySet().stream().collect(Collectors.toSet());
+		Set<String> lookupEid = new HashSet<>();
+		Set<KmerEvidence> kes = new HashSet<>();
+		int nodeCount = 0;
+		for (long headTail : lookup.values()) {
+			int last = NONE;
+			for (int node = head(headTail); node != NONE; node = nodeNext[node]) {
+				KmerEvidence ke = evidence[nodeEvidence[node]];
+				if (ke == null || evidenceRemoved[nodeEvidence[node]]) {
+					throw new IllegalStateException("Support node references removed evidence");
+				}
+				lookupEid.add(ke.evidence().getEvidenceID());
+				kes.add(ke);
+				last = node;
+				nodeCount++;
+			}
+			if (last != tail(headTail)) {
+				throw new IllegalStateException("Support node list tail mismatch");
+			}
+		}
+		if (nodeCount != nodeActive) {
+			throw new IllegalStateException("Support node count mismatch");
+		}
+		Set<String> idEid = new HashSet<>(id.keySet());
 		Set<String> missingInLookup = new HashSet<>(idEid);
 		Set<String> missingInIds = new HashSet<>(lookupEid);
 		missingInIds.removeAll(idEid);
 		missingInLookup.removeAll(lookupEid);
-		Set<KmerEvidence> kes = lookup.values()
-				.stream()
-				.flatMap(ll -> ll.stream())
-				.map(ksn -> ksn.evidence())
-				.collect(Collectors.toSet());
 		List<KmerSupportNode> missingKsn = new ArrayList<>();
 		for (KmerEvidence ke : kes) {
 			for (int i = 0; i < ke.length(); i++) {
-				KmerSupportNode ksn = ke.node(i);
-				if (ksn != null) {
-					LinkedList<KmerSupportNode> list = lookup.get(ksn.firstKmer());
-					if (!list.contains(ksn)) {
-						missingKsn.add(ksn);
-					}
+				if (!ke.isAmbiguous(i) && !isTracked(ke, i)) {
+					missingKsn.add(ke.node(i));
 				}
 			}
 		}
@@ -302,4 +469,14 @@ public class EvidenceTracker {
 			throw new IllegalStateException("Partially missing kmer support.");
 		}
 	}
+	private boolean isTracked(KmerEvidence ke, int offset) {
+		long headTail = lookup.get(ke.kmer(offset));
+		if (headTail == NONE) return false;
+		for (int node = head(headTail); node != NONE; node = nodeNext[node]) {
+			if (nodeOffset[node] == offset && evidence[nodeEvidence[node]].equals(ke)) {
+				return true;
+			}
+		}
+		return false;
+	}
 }
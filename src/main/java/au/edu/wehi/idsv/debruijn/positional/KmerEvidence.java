@@ -1,6 +1,7 @@
 package au.edu.wehi.idsv.debruijn.positional;
 
 import au.edu.wehi.idsv.*;
+import au.edu.wehi.idsv.debruijn.KmerEncoding;
 import au.edu.wehi.idsv.debruijn.KmerEncodingHelper;
 import au.edu.wehi.idsv.debruijn.PackedKmerList;
 import au.edu.wehi.idsv.picard.ReferenceLookup;
@@ -46,11 +47,18 @@ public class KmerEvidence extends PackedKmerList {
 	private final float score;
 	private final boolean isReadPairAnchorRead;
 	public KmerSupportNode node(int offset) {
-		if (ambiguous != null && ambiguous.get(offset)) {
+		if (isAmbiguous(offset)) {
 			return null;
 		}
 		return new KmerSupportNode(this, offset);
 	}
+	/**
+	 * Indicates whether the kmer at the given offset contains an ambiguous base
+	 * @return true if no support node exists for the given offset
+	 */
+	public boolean isAmbiguous(int offset) {
+		return ambiguous != null && ambiguous.get(offset);
+	}
 	public float evidenceQuality() { return score; }
 	public DirectedEvidence evidence() { return evidence; }
 	/**
@@ -91,10 +99,10 @@ public class KmerEvidence extends PackedKmerList {
 			DirectedEvidence evidence,
 			int start,
 			int end,
-			int k, int firstAnchoredKmer, int lastAnchoredKmer, byte[] bases, byte[] qual, boolean reverse, boolean complement,
+			KmerEncoding encoding, int firstAnchoredKmer, int lastAnchoredKmer, byte[] bases, byte[] qual, boolean reverse, boolean complement,
 			float evidenceQual,
 			boolean isReadPairAnchorRead) {
-		super(k, bases, qual, reverse, complement);
+		super(encoding, bases, qual, reverse, complement);
 		assert(evidence != null);
 		assert(qual.length == bases.length);
 		this.evidence = evidence;
@@ -138,7 +146,7 @@ public class KmerEvidence extends PackedKmerList {
 			KmerSupportNode n = nodes[i];
 			if (n != null) {
 				long currentkmer = n.firstKmer();
-				for (long kmer : KmerEncodingHelper.nextStates(k, currentkmer)) {
+				for (long kmer : encoding.nextStates(currentkmer)) {
 					List<KmerSupportNode> kmerList = lookup.get(kmer);
 					if (kmerList != null) {
 						for (KmerSupportNode adj : kmerList) {
@@ -171,6 +179,10 @@ public class KmerEvidence extends PackedKmerList {
 		return toFlag;
 	}
 	public static KmerEvidence create(int k, NonReferenceReadPair pair) {
+		return create(KmerEncoding.packed(k), pair);
+	}
+	public static KmerEvidence create(KmerEncoding encoding, NonReferenceReadPair pair) {
+		int k = encoding.k();
 		SAMRecord local = pair.getLocalledMappedRead();
 		SAMRecord remote = pair.getNonReferenceRead();
 		if (k > remote.getReadLength()) {
@@ -224,7 +236,7 @@ public class KmerEvidence extends PackedKmerList {
 			log.error(msg);
 			return null;
 		}
-		return new KmerEvidence(pair, startPosition, endPosition, k, -1, -1, remote.getReadBases(), remote.getBaseQualities(), reverseComp, reverseComp, pair.getBreakendQual(), false);
+		return new KmerEvidence(pair, startPosition, endPosition, encoding, -1, -1, remote.getReadBases(), remote.getBaseQualities(), reverseComp, reverseComp, pair.getBreakendQual(), false);
 	}
 	/**
 	 * Finds the length of the reference sequence on which this kmer is placed
@@ -244,16 +256,25 @@ public class KmerEvidence extends PackedKmerList {
 	}
 	/**
 	 * Creates anchoring evidence for the given read pair
-	 * @param k kmer size
+	 * @param k kmer size. Must be at most 32 as larger kmers require the encoding of the graph.
 	 * @param pair read pair evidence
 	 * @return anchoring support
 	 */
 	public static KmerEvidence createAnchor(int k, NonReferenceReadPair pair, int disallowMismatch, ReferenceLookup reference) {
-		return createAnchor(pair, k, pair.getLocalledMappedRead(), pair.getBreakendSummary().direction, disallowMismatch, reference);
+		return createAnchor(KmerEncoding.packed(k), pair, disallowMismatch, reference);
+	}
+	/**
+	 * Creates anchoring evidence for the given read pair
+	 * @param encoding kmer encoding
+	 * @param pair read pair evidence
+	 * @return anchoring support
+	 */
+	public static KmerEvidence createAnchor(KmerEncoding encoding, NonReferenceReadPair pair, int disallowMismatch, ReferenceLookup reference) {
+		return createAnchor(pair, encoding, pair.getLocalledMappedRead(), pair.getBreakendSummary().direction, disallowMismatch, reference);
 	}
 	/**
 	 * Creates anchoring evidence for the given read
-	 * @param k kmer size
+	 * @param k kmer size. Must be at most 32 as larger kmers require the encoding of the graph.
 	 * @param read read
 	 * @param direction direction to consider matching from. If an indel is present in the read, only bases closes to the
 	 * inferred breakend in this direction will be considered anchoring
@@ -262,6 +283,15 @@ public class KmerEvidence extends PackedKmerList {
 	 * @return
 	 */
 	public static KmerEvidence createAnchor(DirectedEvidence evidence, int k, SAMRecord read, BreakendDirection direction, int disallowMismatch, ReferenceLookup reference) {
+		return createAnchor(evidence, KmerEncoding.packed(k), read, direction, disallowMismatch, reference);
+	}
+	/**
+	 * Creates anchoring evidence for the given read
+	 * @param encoding kmer encoding
+	 * @see #createAnchor(DirectedEvidence, int, SAMRecord, BreakendDirection, int, ReferenceLookup)
+	 */
+	public static KmerEvidence createAnchor(DirectedEvidence evidence, KmerEncoding encoding, SAMRecord read, BreakendDirection direction, int disallowMismatch, ReferenceLookup reference) {
+		int k = encoding.k();
 		if (k > read.getReadLength()) {
 			return null;
 		}
@@ -301,13 +331,17 @@ public class KmerEvidence extends PackedKmerList {
 				}
 			}
 		}
-		return new KmerEvidence(evidence, firstBasePosition, firstBasePosition, k, 0, bases.length, bases, read.getBaseQualities(), false, false, 0, true);
+		return new KmerEvidence(evidence, firstBasePosition, firstBasePosition, encoding, 0, bases.length, bases, read.getBaseQualities(), false, false, 0, true);
 	}
 	private static byte getBase(ReferenceLookup reference, int referenceIndex, int contigLength, int position) {
 		if (position <= 0 || position > contigLength) return 'N';
 		return reference.getBase(referenceIndex, position);
 	}
 	public static KmerEvidence create(int k, SingleReadEvidence sre) {
+		return create(KmerEncoding.packed(k), sre);
+	}
+	public static KmerEvidence create(KmerEncoding encoding, SingleReadEvidence sre) {
+		int k = encoding.k();
 		if (!sre.isBreakendExact()) {
 			throw new NotImplementedException("reassembly of XNX placeholder contigs");
 		}
@@ -342,7 +376,7 @@ public class KmerEvidence extends PackedKmerList {
 		if (k > seq.length) {
 			return null;
 		}
-		return new KmerEvidence(sre, bs.start + positionOffset, bs.end + positionOffset, k, firstAnchoredBase, firstAnchoredBase + anchoredBases - (k - 1), seq, qual, false, false, sre.getBreakendQual(), false);
+		return new KmerEvidence(sre, bs.start + positionOffset, bs.end + positionOffset, encoding, firstAnchoredBase, firstAnchoredBase + anchoredBases - (k - 1), seq, qual, false, false, sre.getBreakendQual(), false);
 		
 	}
 	@Override
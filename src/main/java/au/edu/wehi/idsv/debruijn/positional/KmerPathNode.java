@@ -2,6 +2,7 @@ package au.edu.wehi.idsv.debruijn.positional;
 
 import au.edu.wehi.idsv.Defaults;
 import au.edu.wehi.idsv.debruijn.DeBruijnSequenceGraphNode;
+import au.edu.wehi.idsv.debruijn.KmerEncoding;
 import au.edu.wehi.idsv.debruijn.KmerEncodingHelper;
 import au.edu.wehi.idsv.util.CollectionUtil;
 import au.edu.wehi.idsv.util.IntervalUtil;
@@ -1068,21 +1069,27 @@ public class KmerPathNode implements KmerNode, DeBruijnSequenceGraphNode {
 		}
 	}
 	public boolean sanityCheck(int k, int maxSupportWidth, int maxPathLength) {
+		return sanityCheck(KmerEncoding.packed(k), maxSupportWidth, maxPathLength);
+	}
+	/**
+	 * @param encoding kmer encoding of the graph containing this node
+	 */
+	public boolean sanityCheck(KmerEncoding encoding, int maxSupportWidth, int maxPathLength) {
 		//sanityCheck(); // TEMPHACK
 		assert(length() <= maxPathLength);
 		assert(end - start <= maxSupportWidth);
 		for (int i = 1; i < length(); i++) {
-			assert(KmerEncodingHelper.isNext(k, kmers.getLong(i - 1), kmers.getLong(i)));
+			assert(encoding.isNext(kmers.getLong(i - 1), kmers.getLong(i)));
 		}
 		assert(sumWeights(weight) == totalWeight);
 		if (nextList != null) {
 			for (KmerPathNode next : nextList) {
-				assert(KmerEncodingHelper.isNext(k, lastKmer(), next.firstKmer()));
+				assert(encoding.isNext(lastKmer(), next.firstKmer()));
 			}
 		}
 		if (prevList != null) {
 			for (KmerPathNode prev : prevList) {
-				assert(KmerEncodingHelper.isNext(k, prev.lastKmer(), firstKmer()));
+				assert(encoding.isNext(prev.lastKmer(), firstKmer()));
 			}
 		}
 		return true;
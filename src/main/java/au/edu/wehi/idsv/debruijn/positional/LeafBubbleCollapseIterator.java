@@ -1,6 +1,6 @@
 package au.edu.wehi.idsv.debruijn.positional;
 
-import au.edu.wehi.idsv.debruijn.KmerEncodingHelper;
+import au.edu.wehi.idsv.debruijn.KmerEncoding;
 import au.edu.wehi.idsv.debruijn.positional.optimiseddatastructures.IntegerIntervalSet;
 import it.unimi.dsi.fastutil.longs.LongArrayList;
 
@@ -31,7 +31,14 @@ public class LeafBubbleCollapseIterator extends CollapseIterator {
 			int k,
 			int maxPathCollapseLength,
 			int maxBasesMismatch) {
-		super(it, k, maxPathCollapseLength, maxBasesMismatch, 0, RECOLLAPSE_MARGIN * maxPathCollapseLength);
+		this(it, KmerEncoding.packed(k), maxPathCollapseLength, maxBasesMismatch);
+	}
+	public LeafBubbleCollapseIterator(
+			Iterator<KmerPathNode> it,
+			KmerEncoding encoding,
+			int maxPathCollapseLength,
+			int maxBasesMismatch) {
+		super(it, encoding, maxPathCollapseLength, maxBasesMismatch, 0, RECOLLAPSE_MARGIN * maxPathCollapseLength);
 	}
 	@Override
 	protected boolean collapse(KmerPathNode node, int maxCollapseLength) {
@@ -186,9 +193,9 @@ public class LeafBubbleCollapseIterator extends CollapseIterator {
 		LongArrayList nodeKmers = tn.node.node().pathKmers();
 		int basesDifference;
 		if (traversalForward) {
-			basesDifference = KmerEncodingHelper.partialSequenceBasesDifferent(k, toCollapsePathKmers, nodeKmers, tn.pathLength - tn.node.length(), true);
+			basesDifference = encoding.partialSequenceBasesDifferent(toCollapsePathKmers, nodeKmers, tn.pathLength - tn.node.length(), true);
 		} else {
-			basesDifference = KmerEncodingHelper.partialSequenceBasesDifferent(k, toCollapsePathKmers, nodeKmers, toCollapsePathKmers.size() - tn.pathLength, false);
+			basesDifference = encoding.partialSequenceBasesDifferent(toCollapsePathKmers, nodeKmers, toCollapsePathKmers.size() - tn.pathLength, false);
 		}
 		return basesDifference;
 	}
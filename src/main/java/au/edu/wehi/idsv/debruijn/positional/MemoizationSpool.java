@@ -0,0 +1,361 @@
+package au.edu.wehi.idsv.debruijn.positional;
+
+import htsjdk.samtools.util.Log;
+import htsjdk.samtools.util.RuntimeIOException;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.objects.Reference2IntMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Temporary file storage for the memoized paths of positional de Bruijn graph nodes.
+ *
+ * Each path is stored as a fixed-width record of primitive values that references
+ * the record of its predecessor path. Predecessor paths shared by multiple spilled
+ * paths are written once per spill.
+ *
+ * Spilled paths are recreated as new objects when they are brought back into memory.
+ * Since paths are immutable, the recreated paths are equivalent to the spilled paths.
+ *
+ * @author Daniel Cameron
+ *
+ */
+public class MemoizationSpool implements Closeable {
+	private static final Log log = Log.getInstance(MemoizationSpool.class);
+	private static final int RECORD_SIZE = 24;
+	private static final int WRITE_BUFFER_RECORDS = 4096;
+	private static final int NO_RECORD = -1;
+	private final File directory;
+	private File file;
+	private FileChannel channel;
+	private int recordCount = 0;
+	/**
+	 * Incremented whenever the spool file is truncated so stale record references are not reused
+	 */
+	private int generation = 0;
+	private int nextSpilledNodeId = 0;
+	private final List<KmerPathNode> nodeTable = new ArrayList<>();
+	private final Reference2IntMap<KmerPathNode> nodeIndex = new Reference2IntOpenHashMap<>();
+	private final IdentityHashMap<KmerPathNode, SpilledNode> spilled = new IdentityHashMap<>();
+	private final NavigableSet<SpilledNode> byScore = new TreeSet<>(
+			Comparator.comparingInt((SpilledNode sn) -> -sn.maxScore).thenComparingInt(sn -> sn.id));
+	private final NavigableSet<SpilledNode> byPathStart = new TreeSet<>(
+			Comparator.comparingInt((SpilledNode sn) -> sn.minPathFirstStart).thenComparingInt(sn -> sn.id));
+	private int spilledPathCount = 0;
+	private long totalPathsSpilled = 0;
+	private long totalPathsUnspilled = 0;
+	private long peakBytes = 0;
+	/**
+	 * @param directory directory to write the spool file to
+	 */
+	public MemoizationSpool(File directory) {
+		this.directory = directory;
+		this.nodeIndex.defaultReturnValue(NO_RECORD);
+	}
+	private static class SpilledNode {
+		private final int id;
+		private final KmerPathNode node;
+		private final int[] records;
+		private final int maxScore;
+		private final int minPathFirstStart;
+		private SpilledNode(int id, KmerPathNode node, int[] records, int maxScore, int minPathFirstStart) {
+			this.id = id;
+			this.node = node;
+			this.records = records;
+			this.maxScore = maxScore;
+			this.minPathFirstStart = minPathFirstStart;
+		}
+	}
+	/**
+	 * Path recreated from the spool.
+	 * Tracking the record allows the path to be spilled again without rewriting it.
+	 */
+	private static class SpooledTraversalNode extends TraversalNode {
+		private final int generation;
+		private final int record;
+		private SpooledTraversalNode(TraversalNode parent, KmerPathSubnode node, int score, int pathLength, int generation, int record) {
+			super(parent, node, score, pathLength);
+			this.generation = generation;
+			this.record = record;
+		}
+	}
+	/**
+	 * Writes the memoized paths of the given nodes to the spool.
+	 * @param paths memoized paths of each node
+	 */
+	public void spill(Map<KmerPathNode, ? extends Collection<TraversalNode>> paths) {
+		try {
+			ensureOpen();
+			Reference2IntMap<TraversalNode> written = new Reference2IntOpenHashMap<>();
+			written.defaultReturnValue(NO_RECORD);
+			ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_RECORDS * RECORD_SIZE);
+			for (Map.Entry<KmerPathNode, ? extends Collection<TraversalNode>> entry : paths.entrySet()) {
+				assert(!spilled.containsKey(entry.getKey()));
+				int[] records = new int[entry.getValue().size()];
+				int maxScore = Integer.MIN_VALUE;
+				int minPathFirstStart = Integer.MAX_VALUE;
+				int i = 0;
+				for (TraversalNode tn : entry.getValue()) {
+					records[i++] = write(tn, written, buffer);
+					maxScore = Math.max(maxScore, tn.score);
+					minPathFirstStart = Math.min(minPathFirstStart, tn.pathFirstStart());
+				}
+				SpilledNode sn = new SpilledNode(nextSpilledNodeId++, entry.getKey(), records, maxScore, minPathFirstStart);
+				spilled.put(sn.node, sn);
+				byScore.add(sn);
+				byPathStart.add(sn);
+				spilledPathCount += records.length;
+				totalPathsSpilled += records.length;
+			}
+			flush(buffer);
+			peakBytes = Math.max(peakBytes, (long)recordCount * RECORD_SIZE);
+		} catch (IOException e) {
+			log.error(e, "Error writing memoization spool ", file);
+			throw new RuntimeIOException(e);
+		}
+	}
+	private int write(TraversalNode tn, Reference2IntMap<TraversalNode> written, ByteBuffer buffer) throws IOException {
+		// find the already written part of the path
+		ArrayDeque<TraversalNode> toWrite = new ArrayDeque<>();
+		int parentRecord = NO_RECORD;
+		for (TraversalNode n = tn; n != null; n = n.parent) {
+			int record = getRecord(n, written);
+			if (record != NO_RECORD) {
+				parentRecord = record;
+				break;
+			}
+			toWrite.push(n);
+		}
+		while (!toWrite.isEmpty()) {
+			TraversalNode n = toWrite.pop();
+			if (!buffer.hasRemaining()) {
+				flush(buffer);
+			}
+			buffer.putInt(getNodeIndex(n.node.node()));
+			buffer.putInt(n.node.firstStart());
+			buffer.putInt(n.node.firstEnd());
+			buffer.putInt(n.score);
+			buffer.putInt(n.pathLength);
+			buffer.putInt(parentRecord);
+			if (recordCount == Integer.MAX_VALUE) {
+				throw new IllegalStateException("Memoization spool record limit exceeded");
+			}
+			parentRecord = recordCount++;
+			written.put(n, parentRecord);
+		}
+		return parentRecord;
+	}
+	private int getRecord(TraversalNode tn, Reference2IntMap<TraversalNode> written) {
+		if (tn instanceof SpooledTraversalNode && ((SpooledTraversalNode)tn).generation == generation) {
+			return ((SpooledTraversalNode)tn).record;
+		}
+		return written.getInt(tn);
+	}
+	private int getNodeIndex(KmerPathNode node) {
+		int index = nodeIndex.getInt(node);
+		if (index == NO_RECORD) {
+			index = nodeTable.size();
+			nodeTable.add(node);
+			nodeIndex.put(node, index);
+		}
+		return index;
+	}
+	private void flush(ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		long position = (long)recordCount * RECORD_SIZE - buffer.remaining();
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+		buffer.clear();
+	}
+	/**
+	 * Reads the memoized paths of the given node back from the spool.
+	 * The node is no longer considered spilled.
+	 * @param node spilled node
+	 * @param cache paths already read back from the spool. Passing the same cache
+	 * when reading multiple nodes ensures shared predecessor paths are only recreated once.
+	 * @return memoized paths of the given node
+	 */
+	public List<TraversalNode> unspill(KmerPathNode node, Int2ObjectMap<TraversalNode> cache) {
+		SpilledNode sn = spilled.remove(node);
+		if (sn == null) return Collections.emptyList();
+		byScore.remove(sn);
+		byPathStart.remove(sn);
+		List<TraversalNode> result = new ArrayList<>(sn.records.length);
+		try {
+			for (int record : sn.records) {
+				result.add(read(record, cache));
+			}
+		} catch (IOException e) {
+			log.error(e, "Error reading memoization spool ", file);
+			throw new RuntimeIOException(e);
+		}
+		spilledPathCount -= sn.records.length;
+		totalPathsUnspilled += sn.records.length;
+		if (spilled.isEmpty()) {
+			reset();
+		}
+		return result;
+	}
+	public List<TraversalNode> unspill(KmerPathNode node) {
+		return unspill(node, new Int2ObjectOpenHashMap<>());
+	}
+	private TraversalNode read(int record, Int2ObjectMap<TraversalNode> cache) throws IOException {
+		// find the part of the path we have already recreated
+		ArrayDeque<ByteBuffer> toCreate = new ArrayDeque<>();
+		IntArrayList records = new IntArrayList();
+		TraversalNode parent = null;
+		for (int r = record; r != NO_RECORD; ) {
+			parent = cache.get(r);
+			if (parent != null) break;
+			ByteBuffer bb = readRecord(r);
+			toCreate.push(bb);
+			records.push(r);
+			r = bb.getInt(RECORD_SIZE - 4);
+		}
+		while (!toCreate.isEmpty()) {
+			ByteBuffer bb = toCreate.pop();
+			int r = records.popInt();
+			KmerPathNode pn = nodeTable.get(bb.getInt());
+			int start = bb.getInt();
+			int end = bb.getInt();
+			int score = bb.getInt();
+			int pathLength = bb.getInt();
+			parent = new SpooledTraversalNode(parent, new KmerPathSubnode(pn, start, end), score, pathLength, generation, r);
+			cache.put(r, parent);
+		}
+		return parent;
+	}
+	private ByteBuffer readRecord(int record) throws IOException {
+		ByteBuffer bb = ByteBuffer.allocate(RECORD_SIZE);
+		long position = (long)record * RECORD_SIZE;
+		while (bb.hasRemaining()) {
+			int read = channel.read(bb, position + bb.position());
+			if (read < 0) {
+				throw new IOException("Unexpected end of memoization spool " + file);
+			}
+		}
+		bb.flip();
+		return bb;
+	}
+	private void ensureOpen() throws IOException {
+		if (channel == null) {
+			file = File.createTempFile("gridss.memoization.", ".spool", directory);
+			channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+		}
+	}
+	/**
+	 * Discards the spool file contents once nothing is spilled
+	 */
+	private void reset() {
+		assert(spilled.isEmpty());
+		recordCount = 0;
+		generation++;
+		nodeTable.clear();
+		nodeIndex.clear();
+		if (channel != null) {
+			try {
+				channel.truncate(0);
+			} catch (IOException e) {
+				log.warn(e, "Unable to truncate memoization spool ", file);
+			}
+		}
+	}
+	public boolean isSpilled(KmerPathNode node) {
+		return spilled.containsKey(node);
+	}
+	/**
+	 * Highest path score of any spilled path
+	 * @return highest spilled path score, Integer.MIN_VALUE if nothing has been spilled
+	 */
+	public int maxScore() {
+		if (byScore.isEmpty()) return Integer.MIN_VALUE;
+		return byScore.first().maxScore;
+	}
+	/**
+	 * Spilled nodes with at least one path scoring at least the given score
+	 */
+	public List<KmerPathNode> nodesWithScoreAtLeast(int score) {
+		List<KmerPathNode> result = new ArrayList<>();
+		for (SpilledNode sn : byScore) {
+			if (sn.maxScore < score) break;
+			result.add(sn.node);
+		}
+		return result;
+	}
+	/**
+	 * Highest path score of any spilled node with at least one path starting before the given position
+	 * @return highest spilled path score, Integer.MIN_VALUE if no such node has been spilled
+	 */
+	public int maxScoreWithPathStartBefore(int position) {
+		if (byPathStart.isEmpty() || byPathStart.first().minPathFirstStart >= position) return Integer.MIN_VALUE;
+		for (SpilledNode sn : byScore) {
+			if (sn.minPathFirstStart < position) return sn.maxScore;
+		}
+		return Integer.MIN_VALUE;
+	}
+	/**
+	 * Spilled nodes with at least one path scoring at least the given score
+	 * and at least one path starting before the given position
+	 */
+	public List<KmerPathNode> nodesWithScoreAtLeast(int score, int pathStartBefore) {
+		List<KmerPathNode> result = new ArrayList<>();
+		for (SpilledNode sn : byScore) {
+			if (sn.maxScore < score) break;
+			if (sn.minPathFirstStart < pathStartBefore) {
+				result.add(sn.node);
+			}
+		}
+		return result;
+	}
+	public List<KmerPathNode> spilledNodes() {
+		return new ArrayList<>(spilled.keySet());
+	}
+	public int spilledNodeCount() {
+		return spilled.size();
+	}
+	public int spilledPathCount() {
+		return spilledPathCount;
+	}
+	public long totalPathsSpilled() {
+		return totalPathsSpilled;
+	}
+	public long totalPathsUnspilled() {
+		return totalPathsUnspilled;
+	}
+	/**
+	 * Largest spool file size
+	 */
+	public long peakBytes() {
+		return peakBytes;
+	}
+	@Override
+	public void close() {
+		spilled.clear();
+		byScore.clear();
+		byPathStart.clear();
+		spilledPathCount = 0;
+		reset();
+		if (channel != null) {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				log.warn(e, "Unable to close memoization spool ", file);
+			}
+			channel = null;
+			if (!file.delete()) {
+				log.warn("Unable to delete ", file);
+			}
+			file = null;
+		}
+	}
+}
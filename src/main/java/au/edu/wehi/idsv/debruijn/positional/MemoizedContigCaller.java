@@ -57,7 +57,7 @@ public class MemoizedContigCaller extends ContigCaller {
 	// We could convert this into an Int2IntSortedMap if we changed MemoizedContigTraverse
 	// to only call onFrontierRemove() on nodes that are actually in the frontier
 	private final SortedSet<TraversalNode> frontierByPathStart = Defaults.USE_OPTIMISED_ASSEMBLY_DATA_STRUCTURES ? new TraversalNodeByPathFirstStartEndSubnodeSortedSet(16) : new TreeSet<>(TraversalNode.ByPathFirstStartScoreEndSubnode);
-	private final MemoizedContigTraverse frontier = new MemoizedContigTraverse();
+	private final MemoizedContigTraverse frontier;
 	
 	private int contigByScoreBeforePosition_startPosition = Integer.MIN_VALUE;
 	private SortedSet<TraversalNode> contigByScoreBeforePosition = Defaults.USE_OPTIMISED_ASSEMBLY_DATA_STRUCTURES ? new TraversalNodeByScoreDescPathFirstIdentity() : new TreeSet<>(TraversalNode.ByScoreDescPathFirstEndSubnode);
@@ -66,7 +66,17 @@ public class MemoizedContigCaller extends ContigCaller {
 	 */
 	private final int anchoredScore;
 	private int maxVisitedEndPosition = Integer.MIN_VALUE;
+	/**
+	 * Number of in-memory memoized nodes at which paths are spilled. Spilling is disabled if zero.
+	 */
+	private final int spillThreshold;
+	private int nextSpillAt;
+	private int peakMemoizedNodeCount = 0;
+	private int peakSpilledNodeCount = 0;
 	private class MemoizedContigTraverse extends MemoizedTraverse {
+		public MemoizedContigTraverse(File spillDirectory) {
+			super(spillDirectory);
+		}
 		@Override
 		protected void onMemoizeAdd(TraversalNode tn) {
 			if (tn.node.isReference()) {
@@ -114,8 +124,19 @@ public class MemoizedContigCaller extends ContigCaller {
 		}
 	}
 	public MemoizedContigCaller(int anchoredScore, int maxEvidenceSupportIntervalWidth) {
+		this(anchoredScore, maxEvidenceSupportIntervalWidth, 0, null);
+	}
+	/**
+	 * @param spillThreshold number of in-memory memoized nodes at which the memoized paths of
+	 * nodes before the frontier are spilled to disk. Spilling is disabled if zero.
+	 * @param spillDirectory directory to spill memoized paths to
+	 */
+	public MemoizedContigCaller(int anchoredScore, int maxEvidenceSupportIntervalWidth, int spillThreshold, File spillDirectory) {
 		super(maxEvidenceSupportIntervalWidth);
 		this.anchoredScore = anchoredScore;
+		this.spillThreshold = spillDirectory == null ? 0 : spillThreshold;
+		this.nextSpillAt = this.spillThreshold;
+		this.frontier = new MemoizedContigTraverse(this.spillThreshold > 0 ? spillDirectory : null);
 	}
 	/**
 	 * Adds a new node to the graph.
@@ -182,11 +203,52 @@ public class MemoizedContigCaller extends ContigCaller {
 			TraversalNode tn = frontier.pollFrontier();
 			visit(tn, unprocessedPosition);
 		}
+		peakMemoizedNodeCount = Math.max(peakMemoizedNodeCount, frontier.memoizedNodeCount());
+		spillIfRequired(unprocessedPosition);
 		if (Defaults.SANITY_CHECK_MEMOIZATION && Defaults.SANITY_CHECK_MEMOIZATION_ALL_OPERATIONS) {
 			sanityCheck();
 			sanityCheckFrontier(unprocessedPosition);
 		}
 	}
+	/**
+	 * Spills the memoized paths of nodes before the frontier once the in-memory
+	 * memoization exceeds the spill threshold.
+	 */
+	private void spillIfRequired(int unprocessedPosition) {
+		if (spillThreshold <= 0) return;
+		int memoizedNodes = frontier.memoizedNodeCount();
+		if (memoizedNodes < spillThreshold) {
+			nextSpillAt = spillThreshold;
+			return;
+		}
+		if (memoizedNodes < nextSpillAt) return;
+		int coldBefore = unprocessedPosition;
+		if (!frontierByPathStart.isEmpty()) {
+			coldBefore = Math.min(coldBefore, frontierByPathStart.first().pathFirstStart());
+		}
+		final int spillBefore = coldBefore;
+		frontier.spill(node -> node.lastEnd() < spillBefore);
+		peakSpilledNodeCount = Math.max(peakSpilledNodeCount, frontier.spilledNodeCount());
+		// don't rescan the memoization each call if most of it is still in use.
+		// A fixed increment (instead of doubling) ensures the scan is retried
+		// once the frontier has advanced past the nodes still in memory.
+		nextSpillAt = Math.max(spillThreshold, frontier.memoizedNodeCount() + Math.max(1, spillThreshold / 2));
+	}
+	/**
+	 * Ensures every spilled path that could be the best contig is in memory
+	 */
+	private void ensureBestContigInMemory() {
+		MemoizationSpool spool = frontier.getSpool();
+		if (spool == null) return;
+		// reload the highest scoring spilled nodes first so we only bring back
+		// what is required to beat the best in-memory contig
+		while (spool.spilledNodeCount() > 0 && spool.maxScore() >= bestInMemoryScore()) {
+			frontier.unspill(spool.nodesWithScoreAtLeast(spool.maxScore()));
+		}
+	}
+	private int bestInMemoryScore() {
+		return contigByScore.isEmpty() ? Integer.MIN_VALUE : contigByScore.first().score;
+	}
 	/**
 	 * Visits the given frontier node.
 	 *
@@ -298,6 +360,7 @@ public class MemoizedContigCaller extends ContigCaller {
 	}
 	private TraversalNode bestTraversal(int unprocessedPosition) {
 		advanceFrontier(unprocessedPosition);
+		ensureBestContigInMemory();
 		if (!canCallBestContig(unprocessedPosition)) {
 			return null;
 		}
@@ -334,6 +397,14 @@ public class MemoizedContigCaller extends ContigCaller {
 	public ArrayDeque<KmerPathSubnode> callBestContigStartingBefore(int unprocessedPosition, int contigStartsBefore) {
 		advanceFrontier(unprocessedPosition);
 		ensureContigByScoreBeforePosition(contigStartsBefore);
+		MemoizationSpool spool = frontier.getSpool();
+		if (spool != null) {
+			int maxSpilledScore;
+			while ((maxSpilledScore = spool.maxScoreWithPathStartBefore(contigStartsBefore)) != Integer.MIN_VALUE
+					&& maxSpilledScore >= (contigByScoreBeforePosition.isEmpty() ? Integer.MIN_VALUE : contigByScoreBeforePosition.first().score)) {
+				frontier.unspill(spool.nodesWithScoreAtLeast(maxSpilledScore, contigStartsBefore));
+			}
+		}
 		if (contigByScoreBeforePosition.isEmpty()) return null;
 		return asUnanchoredPath(contigByScoreBeforePosition.first());
 	}
@@ -371,10 +442,40 @@ public class MemoizedContigCaller extends ContigCaller {
 		}
 		return null;
 	}
+	/**
+	 * Number of nodes with memoized paths held in memory
+	 */
 	@Override
 	public int memoizedNodeCount() {
 		return frontier.memoizedNodeCount();
 	}
+	public int spilledNodeCount() {
+		return frontier.spilledNodeCount();
+	}
+	public int peakMemoizedNodeCount() {
+		return peakMemoizedNodeCount;
+	}
+	public int peakSpilledNodeCount() {
+		return peakSpilledNodeCount;
+	}
+	/**
+	 * Total number of memoized paths spilled
+	 */
+	public long totalPathsSpilled() {
+		return frontier.getSpool() == null ? 0 : frontier.getSpool().totalPathsSpilled();
+	}
+	/**
+	 * Largest size of the spilled memoization
+	 */
+	public long peakSpillBytes() {
+		return frontier.getSpool() == null ? 0 : frontier.getSpool().peakBytes();
+	}
+	/**
+	 * Deletes any spilled memoization
+	 */
+	public void close() {
+		frontier.close();
+	}
 	@Override
 	public int tracking_frontierSize() {
 		return frontier.tracking_frontierSize();
@@ -388,6 +489,7 @@ public class MemoizedContigCaller extends ContigCaller {
 		frontier.export(file);
 	}
 	public void exportScores(File file) throws IOException {
+		frontier.unspillAll();
 		try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
 			writer.write("start,score\n");
 			for (TraversalNode tn : contigByScore) {
@@ -411,6 +513,7 @@ public class MemoizedContigCaller extends ContigCaller {
 		return (sanityCheck());
 	}
 	public boolean sanityCheck() {
+		frontier.unspillAll();
 		for (TraversalNode tn : contigByScore) {
 			assert(frontier.memoized(tn.node.node()).contains(tn));
 			if (tn.parent == null && tn.node.isReference()) {
@@ -446,6 +549,7 @@ public class MemoizedContigCaller extends ContigCaller {
 	 * @param nodes
 	 */
 	private boolean sanityCheckAreRemovedFromPaths(Set<KmerPathNode> nodes) {
+		frontier.unspillAll();
 		Set<TraversalNode> processed = new HashSet<>();
 		for (TraversalNode tn : contigByScore) {
 			sanityCheckAreRemovedFromPaths_node(nodes, processed, tn);
@@ -483,6 +587,8 @@ public class MemoizedContigCaller extends ContigCaller {
 	 * @param caller caller to compare to
 	 */
 	public void sanityCheckMatches(MemoizedContigCaller caller) {
+		frontier.unspillAll();
+		caller.frontier.unspillAll();
 		NavigableSet<TraversalNode> set1 = new TreeSet<>(TraversalNode.ByKmerScoreStartEnd);
 		NavigableSet<TraversalNode> set2 = new TreeSet<>(TraversalNode.ByKmerScoreStartEnd);
 		set1.addAll(contigByScore);
@@ -9,6 +9,8 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.io.Files;
 import htsjdk.samtools.util.Log;
 import it.unimi.dsi.fastutil.ints.AbstractInt2ObjectSortedMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.ints.Int2ObjectRBTreeMap;
 import it.unimi.dsi.fastutil.objects.ObjectOpenCustomHashSet;
 
@@ -16,6 +18,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.function.Predicate;
 import java.util.stream.Stream;
 
 /**
@@ -37,6 +40,105 @@ public class MemoizedTraverse {
 	// TODO: track anchored and unanchored paths in different frontiers - only call unanchored when no anchored paths nearby
 	private final SortedSet<TraversalNode> frontier = Defaults.USE_OPTIMISED_ASSEMBLY_DATA_STRUCTURES ? new TraversalNodeByLastEndKmerSortedSet(16) : new TreeSet<>(TraversalNode.ByLastEndKmer);
 	private final MemoizationStats stats = new MemoizationStats();
+	/**
+	 * Directory to spill memoized paths to. Spilling is disabled if null.
+	 */
+	private final File spillDirectory;
+	private MemoizationSpool spool = null;
+	public MemoizedTraverse() {
+		this(null);
+	}
+	/**
+	 * @param spillDirectory directory to spill memoized paths to. Spilling is disabled if null.
+	 */
+	public MemoizedTraverse(File spillDirectory) {
+		this.spillDirectory = spillDirectory;
+	}
+	/**
+	 * Memoized paths of the given node, bringing them back into memory if they have been spilled
+	 */
+	private AbstractInt2ObjectSortedMap<TraversalNode> getMemoized(KmerPathNode node) {
+		AbstractInt2ObjectSortedMap<TraversalNode> cache = memoized.get(node);
+		if (cache == null && spool != null && spool.isSpilled(node)) {
+			cache = unspill(node, new Int2ObjectOpenHashMap<>());
+		}
+		return cache;
+	}
+	private AbstractInt2ObjectSortedMap<TraversalNode> unspill(KmerPathNode node, Int2ObjectMap<TraversalNode> spoolCache) {
+		List<TraversalNode> tns = spool.unspill(node, spoolCache);
+		AbstractInt2ObjectSortedMap<TraversalNode> cache = new Int2ObjectRBTreeMap<TraversalNode>();
+		for (TraversalNode tn : tns) {
+			cache.put(tn.node.firstEnd(), tn);
+		}
+		memoized.put(node, cache);
+		for (TraversalNode tn : tns) {
+			onMemoizeAdd(tn);
+		}
+		return cache;
+	}
+	/**
+	 * Brings the memoized paths of the given nodes back into memory
+	 * @param nodes spilled nodes
+	 */
+	public void unspill(Collection<KmerPathNode> nodes) {
+		if (spool == null) return;
+		Int2ObjectMap<TraversalNode> spoolCache = new Int2ObjectOpenHashMap<>();
+		for (KmerPathNode node : nodes) {
+			if (spool.isSpilled(node)) {
+				unspill(node, spoolCache);
+			}
+		}
+	}
+	/**
+	 * Brings all spilled paths back into memory
+	 */
+	public void unspillAll() {
+		if (spool == null) return;
+		unspill(spool.spilledNodes());
+	}
+	/**
+	 * Spills the memoized paths of nodes that are not expected to be revisited.
+	 * Spilled paths are transparently brought back into memory when required. 
+	 * @param shouldSpill nodes to spill. Nodes with paths in the frontier are never spilled.
+	 * @return number of nodes spilled
+	 */
+	public int spill(Predicate<KmerPathNode> shouldSpill) {
+		if (spillDirectory == null) return 0;
+		Map<KmerPathNode, Collection<TraversalNode>> toSpill = new IdentityHashMap<>();
+		for (Entry<KmerPathNode, AbstractInt2ObjectSortedMap<TraversalNode>> entry : memoized.entrySet()) {
+			if (entry.getValue().isEmpty() || !shouldSpill.test(entry.getKey())) continue;
+			if (entry.getValue().values().stream().anyMatch(frontier::contains)) continue;
+			toSpill.put(entry.getKey(), entry.getValue().values());
+		}
+		if (toSpill.isEmpty()) return 0;
+		if (spool == null) {
+			spool = new MemoizationSpool(spillDirectory);
+		}
+		spool.spill(toSpill);
+		List<TraversalNode> tns = new ArrayList<>();
+		for (Entry<KmerPathNode, Collection<TraversalNode>> entry : toSpill.entrySet()) {
+			tns.addAll(entry.getValue());
+			memoized.remove(entry.getKey());
+		}
+		onMemoizeRemove(tns);
+		return toSpill.size();
+	}
+	/**
+	 * Spool containing spilled paths
+	 * @return spool, null if nothing has been spilled
+	 */
+	public MemoizationSpool getSpool() {
+		return spool;
+	}
+	/**
+	 * Deletes any spilled paths
+	 */
+	public void close() {
+		if (spool != null) {
+			spool.close();
+			spool = null;
+		}
+	}
 	/**
 	 * Removes all given nodes from the graph
 	 * @param nodes nodes to remove
@@ -53,7 +155,7 @@ public class MemoizedTraverse {
 				}
 				continue;
 			}
-			AbstractInt2ObjectSortedMap<TraversalNode> cache = memoized.remove(node);
+			AbstractInt2ObjectSortedMap<TraversalNode> cache = getMemoized(node) == null ? null : memoized.remove(node);
 			if (cache == null) {
 				if (!MessageThrottler.Current.shouldSupress(log, "removal of unmemoized nodes")) {
 					log.error(String.format("Sanity check failure: %s not memoized", node));
@@ -105,7 +207,7 @@ public class MemoizedTraverse {
 	private Collection<TraversalNode> removeChildPaths(Iterable<KmerPathNode> toCheck, Set<KmerPathNode> parents) {
 		Collection<TraversalNode> matches = new ArrayList<>();
 		for (KmerPathNode node : toCheck) {
-			AbstractInt2ObjectSortedMap<TraversalNode> cache = memoized.get(node);
+			AbstractInt2ObjectSortedMap<TraversalNode> cache = getMemoized(node);
 			if (cache == null || cache.isEmpty()) continue;
 			Iterator<TraversalNode> it = cache.values().iterator();
 			while (it.hasNext()) {
@@ -132,7 +234,7 @@ public class MemoizedTraverse {
 	 */
 	public void remove(KmerPathNode node) {
 		assert(node.isValid());
-		AbstractInt2ObjectSortedMap<TraversalNode> cache = memoized.get(node);
+		AbstractInt2ObjectSortedMap<TraversalNode> cache = getMemoized(node);
 		if (cache == null) return;
 		Stack<TraversalNode> callStack = new Stack<TraversalNode>();
 		callStack.addAll(cache.values());
@@ -157,7 +259,7 @@ public class MemoizedTraverse {
 	 */
 	private int unmemoize(TraversalNode tn, Stack<TraversalNode> callStack, boolean alreadyRemoved) {
 		if (!alreadyRemoved) {
-			if (memoized.get(tn.node.node()).remove(tn.node.firstEnd()) == null) {
+			if (getMemoized(tn.node.node()).remove(tn.node.firstEnd()) == null) {
 				// already processed this TraversalNode
 				return 0;
 			}
@@ -169,7 +271,7 @@ public class MemoizedTraverse {
 		int frontierResetCount = addAlternatePathsToFrontier(tn);
 		// check if this path continues on to any children
 		for (KmerPathNode child : tn.node.node().next()) {
-			AbstractInt2ObjectSortedMap<TraversalNode> cache = memoized.get(child);
+			AbstractInt2ObjectSortedMap<TraversalNode> cache = getMemoized(child);
 			if (cache != null) {
 				// skip values that end before we start
 				for (TraversalNode childtn : cache.tailMap(tn.node.lastStart() + 1).values()) {
@@ -211,7 +313,7 @@ public class MemoizedTraverse {
 		for (KmerPathNode prev : tn.node.node().prev()) {
 			if (prev != parent) {
 				int parentLength = prev.length();
-				AbstractInt2ObjectSortedMap<TraversalNode> cache = memoized.get(prev);
+				AbstractInt2ObjectSortedMap<TraversalNode> cache = getMemoized(prev);
 				if (cache != null) {
 					for (TraversalNode altParent : cache.tailMap(tn.node.firstStart() - parentLength).values()) {
 						if (altParent.node.lastStart() + 1 > tn.node.firstEnd()) {
@@ -230,7 +332,7 @@ public class MemoizedTraverse {
 	 * @return Memoized best paths
 	 */
 	public Collection<TraversalNode> memoized(KmerPathNode node) {
-		AbstractInt2ObjectSortedMap<TraversalNode> cache = memoized.get(node);
+		AbstractInt2ObjectSortedMap<TraversalNode> cache = getMemoized(node);
 		if (cache == null) return Collections.emptyList();
 		return cache.values();
 	}
@@ -242,7 +344,7 @@ public class MemoizedTraverse {
 	public void memoize(TraversalNode node) {
 		KmerPathSubnode sn = node.node;
 		KmerPathNode pn = sn.node();
-		AbstractInt2ObjectSortedMap<TraversalNode> cache = memoized.get(pn);
+		AbstractInt2ObjectSortedMap<TraversalNode> cache = getMemoized(pn);
 		if (cache == null) {
 			cache = new Int2ObjectRBTreeMap<TraversalNode>();
 			memoized.put(pn, cache);
@@ -396,14 +498,14 @@ public class MemoizedTraverse {
 	 * node, and the node has not been removed.
 	 */
 	public boolean isMemoized(KmerPathNode node) {
-		return memoized.containsKey(node);
+		return memoized.containsKey(node) || (spool != null && spool.isSpilled(node));
 	}
 	/**
 	 * Returns the memoized predecessor of the given path
 	 * @return predecessor node, null if no single predecessor is defined for the entire interval 
 	 */
 	public KmerPathNode getParent(KmerPathNode node, int start, int end) {
-		AbstractInt2ObjectSortedMap<TraversalNode> cache = memoized.get(node);
+		AbstractInt2ObjectSortedMap<TraversalNode> cache = getMemoized(node);
 		Iterator<TraversalNode> it = cache.tailMap(start).values().iterator();
 		if (it.hasNext()) {
 			TraversalNode existing = it.next();
@@ -427,11 +529,17 @@ public class MemoizedTraverse {
 	}
 	@Override
 	public String toString() {
-		return String.format("%d nodes memoized, %d in frontier", memoized.size(), frontier.size());
+		return String.format("%d nodes memoized, %d in frontier, %d spilled", memoized.size(), frontier.size(), spilledNodeCount());
 	}
+	/**
+	 * Number of nodes with memoized paths in memory
+	 */
 	public int memoizedNodeCount() {
 		return memoized.size();
 	}
+	public int spilledNodeCount() {
+		return spool == null ? 0 : spool.spilledNodeCount();
+	}
 	public int tracking_frontierSize() {
 		return frontier.size();
 	}
@@ -444,6 +552,7 @@ public class MemoizedTraverse {
 	 * @throws IOException 
 	 */
 	public void export(File file) throws IOException {
+		unspillAll();
 		StringBuilder sb = new StringBuilder("score,kmerlength,start,end,nodehash,parenthash,nodestart,nodeend,memoized,frontier\n");
 		Stream.concat(frontier.stream(), memoized.values().stream().flatMap(m -> m.values().stream())).distinct().forEach(tn -> {
 			sb.append(String.format("%d,%d,%d,%d,%x,%x,%d,%d,%b,%b\n",
@@ -461,6 +570,7 @@ public class MemoizedTraverse {
 		Files.write(sb.toString().getBytes(), file);
 	}
 	public boolean sanityCheck() {
+		unspillAll();
 		for (Entry<KmerPathNode, AbstractInt2ObjectSortedMap<TraversalNode>> entry : memoized.entrySet()) {
 			KmerPathNode node = entry.getKey();
 			assert(node.isValid());
@@ -481,6 +591,7 @@ public class MemoizedTraverse {
 		return true;
 	}
 	public boolean sanityCheckAreRemoved(Collection<KmerPathNode> removed) {
+		unspillAll();
 		for (Entry<KmerPathNode, AbstractInt2ObjectSortedMap<TraversalNode>> entry : memoized.entrySet()) {
 			for (int position : entry.getValue().keySet()) {
 				TraversalNode tn = entry.getValue().get(position);
@@ -3,7 +3,10 @@ package au.edu.wehi.idsv.debruijn.positional;
 import au.edu.wehi.idsv.*;
 import au.edu.wehi.idsv.bed.IntervalBed;
 import au.edu.wehi.idsv.debruijn.DeBruijnGraphBase;
-import au.edu.wehi.idsv.debruijn.KmerEncodingHelper;
+import au.edu.wehi.idsv.debruijn.KmerEncoding;
+import au.edu.wehi.idsv.debruijn.positional.optimiseddatastructures.KmerNodeByFirstStartKmerSet;
+import au.edu.wehi.idsv.debruijn.positional.optimiseddatastructures.KmerNodeByFirstStartKmerSlidingWindowSet;
+import au.edu.wehi.idsv.debruijn.positional.optimiseddatastructures.KmerNodeByFirstStartKmerTreeSet;
 import au.edu.wehi.idsv.graph.ScalingHelper;
 import au.edu.wehi.idsv.model.Models;
 import au.edu.wehi.idsv.util.IntervalUtil;
@@ -72,14 +75,15 @@ public class NonReferenceContigAssembler implements Iterator<SAMRecord> {
 	// TODO: OPT: don't use ArrayList<>() as child structure
 	// sort by end position so we can do fast overlap calculations
 	private Long2ObjectMap<Collection<KmerPathNodeKmerNode>> graphByKmerNode = new Long2ObjectOpenHashMap<Collection<KmerPathNodeKmerNode>>();
-	private TreeSet<KmerPathNode> graphByPosition = new TreeSet<KmerPathNode>(KmerNodeUtil.ByFirstStartKmer); // TODO: OPT: replace data structure
-	private SortedSet<KmerPathNode> nonReferenceGraphByPosition = new TreeSet<KmerPathNode>(KmerNodeUtil.ByFirstStartKmer); // TODO: OPT: replace data structure
+	private KmerNodeByFirstStartKmerSet<KmerPathNode> graphByPosition = Defaults.USE_OPTIMISED_ASSEMBLY_DATA_STRUCTURES ? new KmerNodeByFirstStartKmerSlidingWindowSet<>(12) : new KmerNodeByFirstStartKmerTreeSet<>();
+	private KmerNodeByFirstStartKmerSet<KmerPathNode> nonReferenceGraphByPosition = Defaults.USE_OPTIMISED_ASSEMBLY_DATA_STRUCTURES ? new KmerNodeByFirstStartKmerSlidingWindowSet<>(12) : new KmerNodeByFirstStartKmerTreeSet<>();
 	private final EvidenceTracker evidenceTracker;
 	private final AssemblyEvidenceSource aes;
 	private final AssemblyIdGenerator assemblyNameGenerator;
 	private final int maxEvidenceSupportIntervalWidth;
 	private final int maxAnchorLength;
 	private final int k;
+	private final KmerEncoding encoding;
 	private final int referenceIndex;
 	private final ContigStats stats = new ContigStats();
 	private final PeekingIterator<KmerPathNode> underlying;
@@ -90,6 +94,7 @@ public class NonReferenceContigAssembler implements Iterator<SAMRecord> {
 	private int lastNextPosition = Integer.MIN_VALUE;
 	private RangeSet<Integer> toFlush = TreeRangeSet.create();
 	private MemoizedContigCaller bestContigCaller;
+	private int bestContigCallerStartPosition;
 	private int contigsCalled = 0;
 	private int contigsCalledInSafetyMode = 0;
 	private long consumed = 0;
@@ -170,10 +175,31 @@ public class NonReferenceContigAssembler implements Iterator<SAMRecord> {
 			BreakendDirection preferredContigDirection,
 			IntervalBed excludedRegions,
 			IntervalBed safetyRegions) {
+		this(it, referenceIndex, maxEvidenceSupportIntervalWidth, maxAnchorLength, KmerEncoding.packed(k), source, assemblyNameGenerator, tracker, contigName, preferredContigDirection, excludedRegions, safetyRegions);
+	}
+	/**
+	 * Creates a new structural variant positional de Bruijn graph contig assembly for the given chromosome
+	 * @param encoding kmer encoding shared by all components of the graph
+	 * @see #NonReferenceContigAssembler(Iterator, int, int, int, int, AssemblyEvidenceSource, AssemblyIdGenerator, EvidenceTracker, String, BreakendDirection, IntervalBed, IntervalBed)
+	 */
+	public NonReferenceContigAssembler(
+			Iterator<KmerPathNode> it,
+			int referenceIndex,
+			int maxEvidenceSupportIntervalWidth,
+			int maxAnchorLength,
+			KmerEncoding encoding,
+			AssemblyEvidenceSource source,
+			AssemblyIdGenerator assemblyNameGenerator,
+			EvidenceTracker tracker,
+			String contigName,
+			BreakendDirection preferredContigDirection,
+			IntervalBed excludedRegions,
+			IntervalBed safetyRegions) {
 		this.underlying = Iterators.peekingIterator(it);
 		this.maxEvidenceSupportIntervalWidth = maxEvidenceSupportIntervalWidth;
 		this.maxAnchorLength = maxAnchorLength;
-		this.k = k;
+		this.k = encoding.k();
+		this.encoding = encoding;
 		this.referenceIndex = referenceIndex;
 		this.aes = source;
 		this.assemblyNameGenerator = assemblyNameGenerator;
@@ -185,11 +211,28 @@ public class NonReferenceContigAssembler implements Iterator<SAMRecord> {
 		initialiseBestCaller();
 	}
 	private void initialiseBestCaller() {
-		this.bestContigCaller = new MemoizedContigCaller(ANCHORED_SCORE, maxEvidenceSupportIntervalWidth);
+		this.bestContigCaller = new MemoizedContigCaller(ANCHORED_SCORE, maxEvidenceSupportIntervalWidth,
+				aes.getContext().getAssemblyParameters().positional.memoizationSpillThreshold,
+				aes.getContext().getFileSystemContext().getTemporaryDirectory());
+		this.bestContigCallerStartPosition = lastNextPosition;
 		for (KmerPathNode n : graphByPosition) {
 			bestContigCaller.add(n);
 		}
 	}
+	/**
+	 * Discards the current contig caller
+	 * @param safetyMode caller is being discarded due to safety mode
+	 */
+	private void retireBestCaller(boolean safetyMode) {
+		if (bestContigCaller == null) return;
+		if (getTelemetry() != null && bestContigCaller.peakMemoizedNodeCount() > 0) {
+			getTelemetry().memoization(referenceIndex, Math.max(0, bestContigCallerStartPosition), Math.max(0, lastNextPosition),
+					bestContigCaller.peakMemoizedNodeCount(), safetyMode,
+					bestContigCaller.peakSpilledNodeCount(), bestContigCaller.totalPathsSpilled(), bestContigCaller.peakSpillBytes());
+		}
+		bestContigCaller.close();
+		bestContigCaller = null;
+	}
 	@Override
 	public boolean hasNext() {
 		ensureCalledContig();
@@ -278,6 +321,8 @@ public class NonReferenceContigAssembler implements Iterator<SAMRecord> {
 						}
 						throw new RuntimeException(msg);
 					}
+					// release any spilled memoization now that assembly is complete
+					bestContigCaller.close();
 					return;
 				}
 			}
@@ -512,7 +557,7 @@ public class NonReferenceContigAssembler implements Iterator<SAMRecord> {
 			endingAnchor.addFirst(endIt.next());
 		}
 		
-		byte[] bases = KmerEncodingHelper.baseCalls(fullContig.stream().flatMap(sn -> sn.node().pathKmers().stream()).collect(Collectors.toList()), k);
+		byte[] bases = encoding.baseCalls(fullContig.stream().flatMap(sn -> sn.node().pathKmers().stream()).collect(Collectors.toList()));
 		byte[] quals = DeBruijnGraphBase.kmerWeightsToBaseQuals(k, fullContig.stream().flatMapToInt(sn -> sn.node().pathWeights().stream().mapToInt(Integer::intValue)).toArray());
 		assert(quals.length == bases.length);
 		// left aligned anchor position although it shouldn't matter since anchoring should be a single base wide
@@ -631,11 +676,13 @@ public class NonReferenceContigAssembler implements Iterator<SAMRecord> {
 		}
 		// remove all evidence contributing to this assembly from the graph
 		if (evidence.size() > 0) {
-			if (bestContigCaller.memoizedNodeCount() >= aes.getContext().getAssemblyParameters().positional.safetyModePathCountThreshold) {
+			// spilled paths only count towards their own (larger) threshold so spilling lets complex regions complete
+			if (bestContigCaller.memoizedNodeCount() >= aes.getContext().getAssemblyParameters().positional.safetyModePathCountThreshold
+					|| bestContigCaller.spilledNodeCount() >= aes.getContext().getAssemblyParameters().positional.safetyModeSpilledPathCountThreshold) {
 				contigsCalledInSafetyMode++;
 				log.info(String.format("Safety mode initiated when graph loaded till %s:%d. Emitted contigs: %d.", contigName, nextPosition(), contigsCalledInSafetyMode));
 				// Local graph path complexity is too high.
-				bestContigCaller = null; // restart memoization from scratch (saves having to do node by node removals)
+				retireBestCaller(true); // restart memoization from scratch (saves having to do node by node removals)
 				if (contigsCalledInSafetyMode >= aes.getContext().getAssemblyParameters().positional.safetyModeContigsToCall) {
 					log.warn(String.format("Safety threshold reached when graph at %s:%d. Flushing graph.", contigName, nextPosition()));
 					// abort assembly - flush out everything that at least a contig length from the next position
@@ -645,7 +692,8 @@ public class NonReferenceContigAssembler implements Iterator<SAMRecord> {
 							.map(x -> new KmerPathSubnode(x, x.firstStart(), x.firstEnd()))
 							.collect(Collectors.toList());
 					Set<KmerEvidence> evidenceToRemove = evidenceTracker.untrack(toRemove);
-					removeFromGraph(evidenceToRemove);
+					// the called contig's evidence is no longer tracked so must be removed as well
+					removeFromGraph(Sets.union(evidence, evidenceToRemove));
 					safetyRegions.addInterval(
 							referenceIndex,
 							evidenceToRemove.stream().mapToInt(ke -> ke.startPosition()).min().orElse(0),
@@ -784,7 +832,7 @@ public class NonReferenceContigAssembler implements Iterator<SAMRecord> {
 			}
 		}
 		if (toRemove.size() > aes.getContext().getAssemblyParameters().positional.forceFullMemoizationRecalculationAt * graphByPosition.size()) {
-			bestContigCaller = null;
+			retireBestCaller(false);
 		}
 		if (bestContigCaller != null) {
 			// removes all KmerPathNodes that need mutation from the memoization 
@@ -794,10 +842,14 @@ public class NonReferenceContigAssembler implements Iterator<SAMRecord> {
 		if (SIMPLIFY_AFTER_REMOVAL) {
 			simplifyCandidates = new ObjectOpenCustomHashSet<KmerPathNode>(new KmerPathNode.HashByFirstKmerStartPositionKmer<KmerPathNode>());
 		}
+		// remove all mutated nodes from the positional indexes in a single batch
+		boolean removed = graphByPosition.removeAll(toRemove.keySet());
+		assert(removed || toRemove.isEmpty());
+		nonReferenceGraphByPosition.removeAll(toRemove.keySet());
 		for (Entry<KmerPathNode, List<List<KmerNode>>> entry : toRemove.entrySet()) {
 			// removing down-weighted replacement nodes from memoization is unnecessary since we just
 			// removed the entire node earlier in this function
-			removeWeight(entry.getKey(), entry.getValue(), simplifyCandidates, false);
+			removeWeight(entry.getKey(), entry.getValue(), simplifyCandidates);
 		}
 		if (SIMPLIFY_AFTER_REMOVAL) {
 			simplify(simplifyCandidates);
@@ -893,11 +945,15 @@ public class NonReferenceContigAssembler implements Iterator<SAMRecord> {
 		}
 		evidenceList.add(support);
 	}
-	private void removeWeight(KmerPathNode node, List<List<KmerNode>> toRemove, Set<KmerPathNode> simplifyCandidates, boolean includeMemoizationRemoval) {
+	/**
+	 * Replaces the given node with the down-weighted replacement nodes.
+	 * The node must have already been removed from the memoization and positional indexes. 
+	 */
+	private void removeWeight(KmerPathNode node, List<List<KmerNode>> toRemove, Set<KmerPathNode> simplifyCandidates) {
 		if (node == null) return;
 		assert(node.length() >= toRemove.size());
 		// remove from graph
-		removeFromGraph(node, includeMemoizationRemoval);
+		removeKmerNodesFromGraph(node);
 		if (SIMPLIFY_AFTER_REMOVAL) {
 			simplifyCandidates.addAll(node.next());
 			simplifyCandidates.addAll(node.prev());
@@ -939,6 +995,9 @@ public class NonReferenceContigAssembler implements Iterator<SAMRecord> {
 		boolean removed = graphByPosition.remove(node);
 		nonReferenceGraphByPosition.remove(node);
 		assert(removed);
+		removeKmerNodesFromGraph(node);
+	}
+	private void removeKmerNodesFromGraph(KmerPathNode node) {
 		for (int i = 0; i < node.length(); i++) {
 			removeFromGraph(new KmerPathNodeKmerNode(node, i));
 		}
@@ -1010,7 +1069,7 @@ public class NonReferenceContigAssembler implements Iterator<SAMRecord> {
 		}
 		private Range<Integer> readPairEvidence(KmerEvidence e) {
 			NonReferenceReadPair nrrp = (NonReferenceReadPair)e.evidence();
-			KmerEvidence e2 = KmerEvidence.createAnchor(k, nrrp, aes.getContext().getAssemblyParameters().pairAnchorMismatchIgnoreEndBases, nrrp.getEvidenceSource().getContext().getReference());
+			KmerEvidence e2 = KmerEvidence.createAnchor(encoding, nrrp, aes.getContext().getAssemblyParameters().pairAnchorMismatchIgnoreEndBases, nrrp.getEvidenceSource().getContext().getReference());
 
 			Range<Integer> bounds = contigBaseOffsetBounds(lookup, e);
 			// #287 e2 can be null if we don't have any valid kmers on the mate.
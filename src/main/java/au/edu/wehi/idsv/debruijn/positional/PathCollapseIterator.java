@@ -3,7 +3,7 @@ package au.edu.wehi.idsv.debruijn.positional;
 import au.edu.wehi.idsv.Defaults;
 import au.edu.wehi.idsv.debruijn.DeBruijnGraph;
 import au.edu.wehi.idsv.debruijn.DeBruijnSequenceGraphNodeUtil;
-import au.edu.wehi.idsv.debruijn.KmerEncodingHelper;
+import au.edu.wehi.idsv.debruijn.KmerEncoding;
 import au.edu.wehi.idsv.debruijn.positional.KmerPathNodeBasePath.TraversalNode;
 import au.edu.wehi.idsv.util.IntervalUtil;
 import au.edu.wehi.idsv.util.SequenceUtil;
@@ -91,7 +91,16 @@ public class PathCollapseIterator extends CollapseIterator implements DeBruijnGr
 			int maxBasesMismatch,
 			boolean bubblesAndLeavesOnly,
 			double minimumPathNodeEntropy) {
-		super(it, k, maxPathCollapseLength, maxBasesMismatch, 0, 0);
+		this(it, KmerEncoding.packed(k), maxPathCollapseLength, maxBasesMismatch, bubblesAndLeavesOnly, minimumPathNodeEntropy);
+	}
+	public PathCollapseIterator(
+			Iterator<KmerPathNode> it,
+			KmerEncoding encoding,
+			int maxPathCollapseLength,
+			int maxBasesMismatch,
+			boolean bubblesAndLeavesOnly,
+			double minimumPathNodeEntropy) {
+		super(it, encoding, maxPathCollapseLength, maxBasesMismatch, 0, 0);
 		this.bubblesAndLeavesOnly = bubblesAndLeavesOnly;
 		this.minimumPathNodeEntropy = minimumPathNodeEntropy;
 	}
@@ -233,9 +242,9 @@ public class PathCollapseIterator extends CollapseIterator implements DeBruijnGr
 	private int pathBasesDifferent(KmerPathNodePath pathA, KmerPathNodePath pathB, boolean traverseForward) {
 		int basesDifference;
 		if (traverseForward) {
-			basesDifference = DeBruijnSequenceGraphNodeUtil.basesDifferent(k, pathA.currentPath(), pathB.currentPath()); 
+			basesDifference = DeBruijnSequenceGraphNodeUtil.basesDifferent(encoding, pathA.currentPath(), pathB.currentPath()); 
 		} else {
-			basesDifference = DeBruijnSequenceGraphNodeUtil.reverseBasesDifferent(k, pathA.currentPath(), pathB.currentPath());
+			basesDifference = DeBruijnSequenceGraphNodeUtil.reverseBasesDifferent(encoding, pathA.currentPath(), pathB.currentPath());
 		}
 		return basesDifference;
 	}
@@ -259,10 +268,10 @@ public class PathCollapseIterator extends CollapseIterator implements DeBruijnGr
 			final int commonPathEndOffset  = Math.min(headPathEndOffset, nodePathEndOffset);
 			if (commonPathEndOffset < commonPathStartOffset) break;
 			for (int offset = commonPathStartOffset; offset <= commonPathEndOffset; offset++) {
-				if ((traverseForward && !KmerEncodingHelper.lastBaseMatches(k,
+				if ((traverseForward && !encoding.lastBaseMatches(
 						headPathNode.kmer(offset - headPathStartOffset),
 						refPathNode.kmer(offset - nodePathStartOffset)))
-					|| (!traverseForward && !KmerEncodingHelper.firstBaseMatches(k,
+					|| (!traverseForward && !encoding.firstBaseMatches(
 						headPathNode.kmer(headPathNode.length() - 1 - (offset - headPathStartOffset)),
 						refPathNode.kmer(refPathNode.length() - 1 - (offset - nodePathStartOffset))))) {
 					diff++;
@@ -346,7 +355,7 @@ public class PathCollapseIterator extends CollapseIterator implements DeBruijnGr
 	}
 	private boolean hasSufficientEntropy(KmerPathNode node) {
 		if (minimumPathNodeEntropy <= 0) return true;
-		double entropy = SequenceUtil.shannonEntropy(KmerEncodingHelper.baseCounts(k, node.pathKmers()));
+		double entropy = SequenceUtil.shannonEntropy(encoding.baseCounts(node.pathKmers()));
 		return entropy > minimumPathNodeEntropy;
 	}
 	@Override
@@ -386,7 +395,7 @@ public class PathCollapseIterator extends CollapseIterator implements DeBruijnGr
 		return String.format("[%d-%d] %s",
 			path.iterator().next().firstStart(),
 			path.iterator().next().firstEnd(),
-			new String(KmerEncodingHelper.baseCalls(DeBruijnSequenceGraphNodeUtil.asKmers(path), k)));
+			new String(encoding.baseCalls(DeBruijnSequenceGraphNodeUtil.asKmers(path))));
 	}
 	@Override
 	public int getK() {
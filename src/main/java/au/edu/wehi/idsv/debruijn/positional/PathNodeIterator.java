@@ -1,7 +1,7 @@
 package au.edu.wehi.idsv.debruijn.positional;
 
 import au.edu.wehi.idsv.Defaults;
-import au.edu.wehi.idsv.debruijn.KmerEncodingHelper;
+import au.edu.wehi.idsv.debruijn.KmerEncoding;
 import au.edu.wehi.idsv.debruijn.positional.optimiseddatastructures.KmerNodeByFirstStartPriorityQueue;
 import au.edu.wehi.idsv.debruijn.positional.optimiseddatastructures.KmerNodeByLastEndPriorityQueue;
 import au.edu.wehi.idsv.util.IntervalUtil;
@@ -20,7 +20,7 @@ import java.util.*;
 public class PathNodeIterator implements Iterator<KmerPathNode> {
 	private final PeekingIterator<? extends KmerNode> underlying;
 	private final int maxNodeLength;
-	private final int k;
+	private final KmerEncoding encoding;
 	/**
 	 * Edge lookup. This lookup contains each KmerNode/KmerPathNode at the start/end kmers
 	 * As a KmerPathNode is constructed, the KmerNode lookup entries are replaced
@@ -57,22 +57,25 @@ public class PathNodeIterator implements Iterator<KmerPathNode> {
 	private int maxNodeWidth = 0;
 	private long consumed = 0;
 	public PathNodeIterator(Iterator<? extends KmerNode> it, int maxPathLength, int k) {
+		this(it, maxPathLength, KmerEncoding.packed(k));
+	}
+	public PathNodeIterator(Iterator<? extends KmerNode> it, int maxPathLength, KmerEncoding encoding) {
 		if (maxPathLength < 1) throw new IllegalArgumentException("Path length must be positive");
 		this.underlying = Iterators.peekingIterator(it);
 		this.maxNodeLength = maxPathLength;
-		this.k = k;
+		this.encoding = encoding;
 	}
 	/**
 	 * Edge lookup
 	 */
 	private List<KmerNode> nextNodes(KmerNode node) {
 		List<KmerNode> adj = new ArrayList<KmerNode>(4);
-		for (long kmer : KmerEncodingHelper.nextStates(k, node.lastKmer())) {
+		for (long kmer : encoding.nextStates(node.lastKmer())) {
 			List<KmerNode> list = edgeLookup.get(kmer);
 			if (list != null) {
 				for (KmerNode n : list) {
 					if (!(n instanceof KmerPathNode) && IntervalUtil.overlapsClosed(node.lastStart() + 1, node.lastEnd() + 1, n.firstStart(), n.firstEnd())) {
-						assert(KmerEncodingHelper.isNext(k, node.lastKmer(), n.firstKmer()));
+						assert(encoding.isNext(node.lastKmer(), n.firstKmer()));
 						adj.add(n);
 					}
 				}
@@ -81,7 +84,7 @@ public class PathNodeIterator implements Iterator<KmerPathNode> {
 			if (pnList != null) {
 				for (KmerNode n : pnList) {
 					if (IntervalUtil.overlapsClosed(node.lastStart() + 1, node.lastEnd() + 1, n.firstStart(), n.firstEnd())) {
-						assert(KmerEncodingHelper.isNext(k, node.lastKmer(), n.firstKmer()));
+						assert(encoding.isNext(node.lastKmer(), n.firstKmer()));
 						adj.add(n);
 					}
 				}
@@ -91,12 +94,12 @@ public class PathNodeIterator implements Iterator<KmerPathNode> {
 	}
 	private List<KmerNode> prevNodes(KmerNode node) {
 		List<KmerNode> adj = new ArrayList<KmerNode>(4);
-		for (long kmer : KmerEncodingHelper.prevStates(k, node.firstKmer())) {
+		for (long kmer : encoding.prevStates(node.firstKmer())) {
 			List<KmerNode> list = edgeLookup.get(kmer);
 			if (list != null) {
 				for (KmerNode n : list) {
 					if (IntervalUtil.overlapsClosed(n.lastStart() + 1, n.lastEnd() + 1, node.firstStart(), node.firstEnd())) {
-						assert(KmerEncodingHelper.isNext(k, n.lastKmer(), node.firstKmer()));
+						assert(encoding.isNext(n.lastKmer(), node.firstKmer()));
 						adj.add(n);
 					}
 				}
@@ -204,7 +207,7 @@ public class PathNodeIterator implements Iterator<KmerPathNode> {
 					&& toMerge.isReference() == node.isReference()
 					&& toMerge.length() < maxNodeLength) {
 				// we can merge
-				assert(KmerEncodingHelper.isNext(k, toMerge.lastKmer(), node.firstKmer()));
+				assert(encoding.isNext(toMerge.lastKmer(), node.firstKmer()));
 				assert(toMerge instanceof KmerPathNode); // must have already processed our previous node
 				KmerPathNode pn = (KmerPathNode)toMerge;
 				List<KmerNode> pnNext = nextNodes(pn);
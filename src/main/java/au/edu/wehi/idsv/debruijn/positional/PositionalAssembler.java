@@ -5,8 +5,10 @@ import au.edu.wehi.idsv.*;
 import au.edu.wehi.idsv.bed.IntervalBed;
 import au.edu.wehi.idsv.configuration.AssemblyConfiguration;
 import au.edu.wehi.idsv.configuration.VisualisationConfiguration;
+import au.edu.wehi.idsv.debruijn.KmerEncoding;
 import au.edu.wehi.idsv.picard.ReferenceLookup;
 import au.edu.wehi.idsv.sam.SamTags;
+import au.edu.wehi.idsv.util.AsyncBufferedIterator;
 import au.edu.wehi.idsv.util.FileHelper;
 import au.edu.wehi.idsv.visualisation.AssemblyTelemetry.AssemblyChunkTelemetry;
 import au.edu.wehi.idsv.visualisation.PositionalDeBruijnGraphTracker;
@@ -41,6 +43,11 @@ public class PositionalAssembler implements Iterator<SAMRecord> {
 	private final IntervalBed safetyRegions;
 	private EvidenceTracker evidenceTracker = null;
 	private boolean contigGeneratedSinceException = false;
+	/**
+	 * Background threads running the graph construction stages of the current assembler
+	 */
+	private final List<AsyncBufferedIterator<?>> pipeline = new ArrayList<>();
+	private boolean pipelined = Defaults.PIPELINED_ASSEMBLY;
 	public PositionalAssembler(ProcessingContext context, AssemblyEvidenceSource source, AssemblyIdGenerator assemblyNameGenerator, Iterator<DirectedEvidence> backingIterator, BreakendDirection direction, IntervalBed excludedRegions, IntervalBed safetyRegions) {
 		this.context = context;
 		this.source = source;
@@ -78,6 +85,7 @@ public class PositionalAssembler implements Iterator<SAMRecord> {
 		}
 	}
 	private void closeCurrentAssembler() {
+		closePipeline();
 		if (currentAssembler != null && currentAssembler.getExportTracker() != null) {
 			try {
 				currentAssembler.getExportTracker().close();
@@ -87,6 +95,21 @@ public class PositionalAssembler implements Iterator<SAMRecord> {
 		}
 		currentAssembler = null;
 	}
+	/**
+	 * Stops the graph construction threads. Once stopped, the input iterator and evidence tracker
+	 * are no longer accessed by any background thread.
+	 */
+	private void closePipeline() {
+		for (AsyncBufferedIterator<?> stage : pipeline) {
+			stage.close();
+		}
+		pipeline.clear();
+	}
+	private <T> Iterator<T> pipelineStage(Iterator<T> it, String stageName) {
+		AsyncBufferedIterator<T> stage = new AsyncBufferedIterator<>(it, String.format("asm-%s-%s-%s", currentContig, direction == null ? "" : direction.toChar(), stageName));
+		pipeline.add(stage);
+		return stage;
+	}
 	private Set<DirectedEvidence> getEvidenceInCurrentAssembler() {
 		Set<DirectedEvidence> reloadRecoverySet = new HashSet<>();
 		if (currentAssembler != null) {
@@ -102,6 +125,8 @@ public class PositionalAssembler implements Iterator<SAMRecord> {
 		try {
 			ensureAssembler(preload);
 		} catch (AssertionError|Exception e) {
+			// background stages must not touch the input or the graph during recovery
+			closePipeline();
 			if (contigGeneratedSinceException) {
 				contigGeneratedSinceException = false;
 				Set<DirectedEvidence> reloadRecoverySet = getEvidenceInCurrentAssembler();
@@ -268,16 +293,38 @@ public class PositionalAssembler implements Iterator<SAMRecord> {
 			inputIterator = Iterators.peekingIterator(Iterators.concat(list.iterator(), it));
 		}
 		currentContig = context.getDictionary().getSequence(referenceIndex).getSequenceName();
-		ReferenceIndexIterator evidenceIt = new ReferenceIndexIterator(inputIterator, referenceIndex);
-		evidenceTracker = new EvidenceTracker();
-		SupportNodeIterator supportIt = new SupportNodeIterator(k, evidenceIt, Math.max(2 * source.getMaxReadLength(), source.getMaxConcordantFragmentSize()), evidenceTracker, ap.includePairAnchors, ap.pairAnchorMismatchIgnoreEndBases);
-		AggregateNodeIterator agIt = new AggregateNodeIterator(supportIt);
+		// kmers larger than a long are interned so each graph gets its own encoding
+		KmerEncoding encoding = ap.createKmerEncoding();
+		// Interned kmers are only released with the encoding so, instead of a single graph for
+		// the entire contig, each independent region gets its own graph
+		long maxGap = Long.MAX_VALUE;
+		if (!encoding.isPacked()) {
+			maxGap = 2L * (maxReadLength + source.getMaxConcordantFragmentSize()) + maxEvidenceSupportIntervalWidth + anchorAssemblyLength;
+		}
+		ReferenceIndexIterator evidenceIt = new ReferenceIndexIterator(inputIterator, referenceIndex, maxGap);
+		VisualisationConfiguration vis = context.getConfig().getVisualisation();
+		// Interned kmer encodings are not thread-safe, and the sanity checks and
+		// graph export inspect the state of every stage so require a single thread
+		boolean pipelined = this.pipelined
+				&& encoding.isPacked()
+				&& !Defaults.SANITY_CHECK_ASSEMBLY_GRAPH
+				&& !Defaults.SANITY_CHECK_EVIDENCE_TRACKER
+				&& !vis.assemblyProgress;
+		evidenceTracker = pipelined ? new SynchronizedEvidenceTracker() : new EvidenceTracker();
+		SupportNodeIterator supportIt = new SupportNodeIterator(encoding, evidenceIt, Math.max(2 * source.getMaxReadLength(), source.getMaxConcordantFragmentSize()), evidenceTracker, ap.includePairAnchors, ap.pairAnchorMismatchIgnoreEndBases);
+		AggregateNodeIterator agIt = new AggregateNodeIterator(pipelined ? pipelineStage(supportIt, "support") : supportIt);
 		Iterator<KmerNode> knIt = agIt;
+		if (pipelined) {
+			knIt = pipelineStage(knIt, "aggregate");
+		}
 		if (Defaults.SANITY_CHECK_ASSEMBLY_GRAPH) {
 			knIt = evidenceTracker.new AggregateNodeAssertionInterceptor(knIt);
 		}
-		PathNodeIterator pathNodeIt = new PathNodeIterator(knIt, maxPathLength, k); 
+		PathNodeIterator pathNodeIt = new PathNodeIterator(knIt, maxPathLength, encoding); 
 		Iterator<KmerPathNode> pnIt = pathNodeIt;
+		if (pipelined) {
+			pnIt = pipelineStage(pnIt, "path");
+		}
 		if (Defaults.SANITY_CHECK_ASSEMBLY_GRAPH) {
 			pnIt = evidenceTracker.new PathNodeAssertionInterceptor(pnIt, "PathNodeIterator");
 		}
@@ -286,9 +333,9 @@ public class PositionalAssembler implements Iterator<SAMRecord> {
 		if (ap.errorCorrection.maxBaseMismatchForCollapse > 0) {
 			if (!ap.errorCorrection.collapseBubblesOnly) {
 				log.warn("Collapsing all paths is an exponential time operation. Gridss is likely to hang if your genome contains repetative sequence");
-				collapseIt = new PathCollapseIterator(pnIt, k, maxPathCollapseLength, ap.errorCorrection.maxBaseMismatchForCollapse, false, 0);
+				collapseIt = new PathCollapseIterator(pnIt, encoding, maxPathCollapseLength, ap.errorCorrection.maxBaseMismatchForCollapse, false, 0);
 			} else {
-				collapseIt = new LeafBubbleCollapseIterator(pnIt, k, maxPathCollapseLength, ap.errorCorrection.maxBaseMismatchForCollapse);
+				collapseIt = new LeafBubbleCollapseIterator(pnIt, encoding, maxPathCollapseLength, ap.errorCorrection.maxBaseMismatchForCollapse);
 			}
 			pnIt = collapseIt;
 			if (Defaults.SANITY_CHECK_ASSEMBLY_GRAPH) {
@@ -300,8 +347,7 @@ public class PositionalAssembler implements Iterator<SAMRecord> {
 				pnIt = evidenceTracker.new PathNodeAssertionInterceptor(pnIt, "PathSimplificationIterator");
 			}
 		}
-		currentAssembler = new NonReferenceContigAssembler(pnIt, referenceIndex, maxEvidenceSupportIntervalWidth, anchorAssemblyLength, k, source, assemblyNameGenerator, evidenceTracker, currentContig, BreakendDirection.Forward, excludedRegions, safetyRegions);
-		VisualisationConfiguration vis = context.getConfig().getVisualisation();
+		currentAssembler = new NonReferenceContigAssembler(pnIt, referenceIndex, maxEvidenceSupportIntervalWidth, anchorAssemblyLength, encoding, source, assemblyNameGenerator, evidenceTracker, currentContig, BreakendDirection.Forward, excludedRegions, safetyRegions);
 		if (vis.assemblyProgress) {
 			String filename = String.format("positional-%s_%d-%s.csv", context.getDictionary().getSequence(referenceIndex).getSequenceName(), firstPosition, direction);
 			File file = new File(vis.directory, filename);
@@ -317,28 +363,47 @@ public class PositionalAssembler implements Iterator<SAMRecord> {
 		currentAssembler.setTelemetry(getTelemetry());
 		return currentAssembler;
 	}
+	/**
+	 * Runs the graph construction stages on background threads.
+	 * This does not change the assembly output.
+	 */
+	public void setPipelined(boolean pipelined) {
+		this.pipelined = pipelined;
+	}
 	public AssemblyChunkTelemetry getTelemetry() {
 		return telemetry;
 	}
 	public void setTelemetry(AssemblyChunkTelemetry assemblyChunkTelemetry) {
 		this.telemetry = assemblyChunkTelemetry;
 	}
+	/**
+	 * Iterates over the evidence on the given contig up to the first gap in evidence
+	 * wider than the given width.
+	 */
 	private static class ReferenceIndexIterator implements PeekingIterator<DirectedEvidence> {
 		private final PeekingIterator<DirectedEvidence> it;
 		private final int referenceIndex;
-		public ReferenceIndexIterator(PeekingIterator<DirectedEvidence> it, int referenceIndex) {
+		private final long maxGap;
+		private long maxEnd = Long.MIN_VALUE;
+		public ReferenceIndexIterator(PeekingIterator<DirectedEvidence> it, int referenceIndex, long maxGap) {
 			this.it = it;
 			this.referenceIndex = referenceIndex;
+			this.maxGap = maxGap;
 		}
 		@Override
 		public boolean hasNext() {
-			return it.hasNext() && it.peek().getBreakendSummary().referenceIndex == referenceIndex;
+			if (!it.hasNext()) return false;
+			BreakendSummary bs = it.peek().getBreakendSummary();
+			return bs.referenceIndex == referenceIndex
+					&& (maxEnd == Long.MIN_VALUE || maxGap == Long.MAX_VALUE || bs.start <= maxEnd + maxGap);
 		}
 
 		@Override
 		public DirectedEvidence next() {
 			if (!hasNext()) throw new NoSuchElementException();
-			return it.next();
+			DirectedEvidence e = it.next();
+			maxEnd = Math.max(maxEnd, e.getBreakendSummary().end);
+			return e;
 		}
 
 		@Override
@@ -4,6 +4,7 @@ import au.edu.wehi.idsv.Defaults;
 import au.edu.wehi.idsv.DirectedEvidence;
 import au.edu.wehi.idsv.NonReferenceReadPair;
 import au.edu.wehi.idsv.SingleReadEvidence;
+import au.edu.wehi.idsv.debruijn.KmerEncoding;
 import au.edu.wehi.idsv.debruijn.positional.optimiseddatastructures.KmerNodeByFirstStartPriorityQueue;
 import au.edu.wehi.idsv.util.MessageThrottler;
 import com.google.common.collect.Iterators;
@@ -25,7 +26,7 @@ public class SupportNodeIterator implements PeekingIterator<KmerSupportNode> {
 	private static final Log log = Log.getInstance(SupportNodeIterator.class);
 	private final PeekingIterator<DirectedEvidence> underlying;
 	private final boolean includePairAnchors;
-	private final int k;
+	private final KmerEncoding encoding;
 	/**
 	 * Position to emit kmers as no more can be added
 	 *                  | input position
@@ -58,8 +59,16 @@ public class SupportNodeIterator implements PeekingIterator<KmerSupportNode> {
 	 * position).
 	 */
 	public SupportNodeIterator(int k, Iterator<DirectedEvidence> it, int maxSupportStartPositionOffset, EvidenceTracker tracker, boolean includePairAnchors, int disallowMismatch) {
+		this(KmerEncoding.packed(k), it, maxSupportStartPositionOffset, tracker, includePairAnchors, disallowMismatch);
+	}
+	/**
+	 * Iterator that converts evidence to kmer nodes
+	 * @param encoding kmer encoding shared by all components of the graph
+	 * @see #SupportNodeIterator(int, Iterator, int, EvidenceTracker, boolean, int)
+	 */
+	public SupportNodeIterator(KmerEncoding encoding, Iterator<DirectedEvidence> it, int maxSupportStartPositionOffset, EvidenceTracker tracker, boolean includePairAnchors, int disallowMismatch) {
 		this.underlying = Iterators.peekingIterator(it);
-		this.k = k;
+		this.encoding = encoding;
 		this.includePairAnchors = includePairAnchors;
 		this.disallowMismatch = disallowMismatch;
 		this.maxSupportStartPositionOffset = maxSupportStartPositionOffset;
@@ -92,12 +101,12 @@ public class SupportNodeIterator implements PeekingIterator<KmerSupportNode> {
 		KmerEvidence e;
 		KmerEvidence e2 = null;
 		if (de instanceof SingleReadEvidence) {
-			e = KmerEvidence.create(k, (SingleReadEvidence)de);
+			e = KmerEvidence.create(encoding, (SingleReadEvidence)de);
 		} else if (de instanceof NonReferenceReadPair) {
 			NonReferenceReadPair nrrp = (NonReferenceReadPair)de;
-			e = KmerEvidence.create(k, nrrp);
+			e = KmerEvidence.create(encoding, nrrp);
 			if (includePairAnchors) {
-				e2 = KmerEvidence.createAnchor(k, nrrp, disallowMismatch, nrrp.getEvidenceSource().getContext().getReference());
+				e2 = KmerEvidence.createAnchor(encoding, nrrp, disallowMismatch, nrrp.getEvidenceSource().getContext().getReference());
 			}
 		} else {
 			throw new RuntimeException("Assembler able to process only soft clip and read pair evidence");
@@ -0,0 +1,78 @@
+package au.edu.wehi.idsv.debruijn.positional;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * Evidence tracker that can be shared between the stages of a pipelined assembly graph.
+ * 
+ * Support nodes are tracked by the kmer support generation thread
+ * while the contig caller untracks evidence on the assembly thread.
+ * 
+ * @author Daniel Cameron
+ *
+ */
+class SynchronizedEvidenceTracker extends EvidenceTracker {
+	@Override
+	public synchronized KmerSupportNode track(KmerSupportNode support) {
+		return super.track(support);
+	}
+	@Override
+	public synchronized Set<KmerEvidence> remove(Set<KmerEvidence> evidenceSet) {
+		return super.remove(evidenceSet);
+	}
+	@Override
+	public synchronized Set<KmerEvidence> support(Collection<KmerPathSubnode> contig) {
+		return super.support(contig);
+	}
+	@Override
+	public synchronized Set<KmerEvidence> untrack(Collection<KmerPathSubnode> contig) {
+		return super.untrack(contig);
+	}
+	@Override
+	public synchronized Set<KmerEvidence> traverse(Collection<KmerPathSubnode> contig, boolean remove) {
+		return super.traverse(contig, remove);
+	}
+	@Override
+	public synchronized boolean matchesExpected(KmerPathSubnode pn) {
+		return super.matchesExpected(pn);
+	}
+	@Override
+	public synchronized boolean matchesExpected(int expectedWidthWeight, LongArrayList kmers, int start, int end) {
+		return super.matchesExpected(expectedWidthWeight, kmers, start, end);
+	}
+	@Override
+	public synchronized boolean isTracked(String evidenceId) {
+		return super.isTracked(evidenceId);
+	}
+	@Override
+	public synchronized Set<KmerEvidence> getTrackedEvidence() {
+		return super.getTrackedEvidence();
+	}
+	@Override
+	public synchronized long tracking_evidenceTotal() {
+		return super.tracking_evidenceTotal();
+	}
+	@Override
+	public synchronized long tracking_evidenceActive() {
+		return super.tracking_evidenceActive();
+	}
+	@Override
+	public synchronized int tracking_kmerCount() {
+		return super.tracking_kmerCount();
+	}
+	@Override
+	public synchronized int tracking_supportNodeCount() {
+		return super.tracking_supportNodeCount();
+	}
+	@Override
+	public synchronized int tracking_maxKmerSupportNodesCount() {
+		return super.tracking_maxKmerSupportNodesCount();
+	}
+	@Override
+	public synchronized void sanityCheck() {
+		super.sanityCheck();
+	}
+}
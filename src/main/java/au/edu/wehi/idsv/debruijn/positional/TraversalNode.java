@@ -33,6 +33,19 @@ public class TraversalNode {
 		this.parent = prev;
 		this.pathLength = prev.pathLength + node.length();
 	}
+	/**
+	 * Recreates a previously memoized path
+	 * @param parent path predecessor
+	 * @param node path node
+	 * @param score path score
+	 * @param pathLength path length in kmers
+	 */
+	TraversalNode(TraversalNode parent, KmerPathSubnode node, int score, int pathLength) {
+		this.node = node;
+		this.score = score;
+		this.parent = parent;
+		this.pathLength = pathLength;
+	}
 	/**
 	 * First starting position of the first kmer in the path
 	 * @return first position
@@ -0,0 +1,42 @@
+package au.edu.wehi.idsv.debruijn.positional.optimiseddatastructures;
+
+import au.edu.wehi.idsv.debruijn.positional.KmerNode;
+
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * Set of KmerNodes ordered by KmerNodeUtil.ByFirstStartKmer.
+ *
+ * Nodes with the same first start and first kmer are considered equal.
+ */
+public interface KmerNodeByFirstStartKmerSet<T extends KmerNode> extends Set<T> {
+    /**
+     * @return first node in the set
+     * @throws java.util.NoSuchElementException if the set is empty
+     */
+    T first();
+
+    /**
+     * @return last node in the set
+     * @throws java.util.NoSuchElementException if the set is empty
+     */
+    T last();
+
+    /**
+     * Removes the first node
+     * @return first node, null if the set is empty
+     */
+    T pollFirst();
+
+    /**
+     * Removes the last node
+     * @return last node, null if the set is empty
+     */
+    T pollLast();
+
+    /**
+     * @return iterator over the nodes in descending order
+     */
+    Iterator<T> descendingIterator();
+}
@@ -0,0 +1,301 @@
+package au.edu.wehi.idsv.debruijn.positional.optimiseddatastructures;
+
+import au.edu.wehi.idsv.debruijn.positional.KmerNode;
+
+import java.util.*;
+
+/**
+ * Set of KmerNodes ordered by KmerNodeUtil.ByFirstStartKmer.
+ *
+ * Nodes are bucketed by first start position in a circular buffer
+ * covering the window of currently occupied positions. This is optimised
+ * for a graph that is loaded and flushed in genomic order so the window
+ * slides along the genome without reallocating buckets.
+ *
+ * As with the TreeSet this replaces, nodes with the same first start and
+ * first kmer are considered equal.
+ */
+public class KmerNodeByFirstStartKmerSlidingWindowSet<T extends KmerNode> extends AbstractSet<T> implements KmerNodeByFirstStartKmerSet<T> {
+    @SuppressWarnings("rawtypes")
+    private static final ArrayList EMPTY_BUCKET = new ArrayList<>(0);
+    private ArrayList<T>[] buckets;
+    private int mask;
+    /**
+     * First occupied position. Only valid if the set is not empty.
+     */
+    private int firstPosition;
+    /**
+     * Last occupied position. Only valid if the set is not empty.
+     */
+    private int lastPosition;
+    private int size = 0;
+    private int modCount = 0;
+
+    /**
+     * @param initialWindowBits initial window size in bits. The window grows as required.
+     */
+    public KmerNodeByFirstStartKmerSlidingWindowSet(int initialWindowBits) {
+        buckets = createBuckets(1 << initialWindowBits);
+        mask = buckets.length - 1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> ArrayList<T>[] createBuckets(int capacity) {
+        return (ArrayList<T>[])new ArrayList[capacity];
+    }
+
+    private ArrayList<T> bucket(int position) {
+        return buckets[position & mask];
+    }
+
+    /**
+     * Ensures the window is large enough to hold both the current window and the given position
+     */
+    private void ensureWindowContains(int position) {
+        if (size == 0) return;
+        long start = Math.min(firstPosition, position);
+        long end = Math.max(lastPosition, position);
+        long width = end - start + 1;
+        if (width <= buckets.length) return;
+        if (width > 1 << 30) {
+            throw new IllegalArgumentException(String.format("Window of %d positions exceeds maximum supported width", width));
+        }
+        ArrayList<T>[] newBuckets = createBuckets(Integer.highestOneBit((int)width - 1) << 1);
+        int newMask = newBuckets.length - 1;
+        for (int p = firstPosition; p <= lastPosition; p++) {
+            ArrayList<T> list = bucket(p);
+            if (list != null && !list.isEmpty()) {
+                newBuckets[p & newMask] = list;
+            }
+        }
+        buckets = newBuckets;
+        mask = newMask;
+    }
+
+    /**
+     * Finds the offset of the node with the given kmer in the bucket.
+     * Buckets are sorted by kmer.
+     * @return offset of node if found, (-(insertion point) - 1) otherwise
+     */
+    private static <T extends KmerNode> int indexOf(ArrayList<T> list, long kmer) {
+        int low = 0;
+        int high = list.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = Long.compare(list.get(mid).firstKmer(), kmer);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private void advanceFirstPosition() {
+        while (firstPosition <= lastPosition) {
+            ArrayList<T> list = bucket(firstPosition);
+            if (list != null && !list.isEmpty()) return;
+            firstPosition++;
+        }
+    }
+
+    private void retreatLastPosition() {
+        while (lastPosition >= firstPosition) {
+            ArrayList<T> list = bucket(lastPosition);
+            if (list != null && !list.isEmpty()) return;
+            lastPosition--;
+        }
+    }
+
+    @Override
+    public boolean add(T t) {
+        int position = t.firstStart();
+        ensureWindowContains(position);
+        int offset = position & mask;
+        ArrayList<T> list = buckets[offset];
+        if (list == null) {
+            list = new ArrayList<>(4);
+            buckets[offset] = list;
+        }
+        int index = indexOf(list, t.firstKmer());
+        if (index >= 0) return false;
+        list.add(-index - 1, t);
+        if (size == 0) {
+            firstPosition = position;
+            lastPosition = position;
+        } else {
+            firstPosition = Math.min(firstPosition, position);
+            lastPosition = Math.max(lastPosition, position);
+        }
+        size++;
+        modCount++;
+        return true;
+    }
+
+    /**
+     * Removes the node without updating the window bounds
+     */
+    private boolean removeFromBucket(KmerNode node) {
+        if (size == 0) return false;
+        int position = node.firstStart();
+        if (position < firstPosition || position > lastPosition) return false;
+        ArrayList<T> list = bucket(position);
+        if (list == null) return false;
+        int index = indexOf(list, node.firstKmer());
+        if (index < 0) return false;
+        list.remove(index);
+        size--;
+        modCount++;
+        return true;
+    }
+
+    private void updateWindowBounds() {
+        if (size == 0) return;
+        advanceFirstPosition();
+        retreatLastPosition();
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        boolean removed = removeFromBucket((KmerNode)o);
+        if (removed) {
+            updateWindowBounds();
+        }
+        return removed;
+    }
+
+    /**
+     * Removes all the given nodes. The window bounds are updated once
+     * after all nodes have been removed.
+     */
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        boolean changed = false;
+        for (Object o : c) {
+            changed |= removeFromBucket((KmerNode)o);
+        }
+        if (changed) {
+            updateWindowBounds();
+        }
+        return changed;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (size == 0) return false;
+        KmerNode node = (KmerNode)o;
+        int position = node.firstStart();
+        if (position < firstPosition || position > lastPosition) return false;
+        ArrayList<T> list = bucket(position);
+        return list != null && indexOf(list, node.firstKmer()) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(buckets, null);
+        size = 0;
+        modCount++;
+    }
+
+    @Override
+    public T first() {
+        if (size == 0) throw new NoSuchElementException();
+        return bucket(firstPosition).get(0);
+    }
+
+    @Override
+    public T last() {
+        if (size == 0) throw new NoSuchElementException();
+        ArrayList<T> list = bucket(lastPosition);
+        return list.get(list.size() - 1);
+    }
+
+    @Override
+    public T pollFirst() {
+        if (size == 0) return null;
+        T t = first();
+        remove(t);
+        return t;
+    }
+
+    @Override
+    public T pollLast() {
+        if (size == 0) return null;
+        T t = last();
+        remove(t);
+        return t;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new WindowIterator(true);
+    }
+
+    @Override
+    public Iterator<T> descendingIterator() {
+        return new WindowIterator(false);
+    }
+
+    private class WindowIterator implements Iterator<T> {
+        private final int step;
+        private final int expectedModCount = modCount;
+        private int position;
+        private int index;
+        private ArrayList<T> current = null;
+
+        private WindowIterator(boolean ascending) {
+            this.step = ascending ? 1 : -1;
+            if (size > 0) {
+                position = ascending ? firstPosition : lastPosition;
+                current = bucket(position);
+                index = ascending ? 0 : current.size() - 1;
+            }
+        }
+
+        /**
+         * Advances to the next non-empty bucket if the current bucket has been fully traversed
+         */
+        private void ensureCurrent() {
+            while (current != null && (index < 0 || index >= current.size())) {
+                position += step;
+                if (position < firstPosition || position > lastPosition) {
+                    current = null;
+                } else {
+                    current = bucket(position);
+                    if (current == null) {
+                        current = EMPTY_BUCKET;
+                    }
+                    index = step > 0 ? 0 : current.size() - 1;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (modCount != expectedModCount) throw new ConcurrentModificationException();
+            ensureCurrent();
+            return current != null;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            T t = current.get(index);
+            index += step;
+            return t;
+        }
+    }
+}
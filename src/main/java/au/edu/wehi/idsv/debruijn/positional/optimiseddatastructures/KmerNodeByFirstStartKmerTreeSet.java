@@ -0,0 +1,15 @@
+package au.edu.wehi.idsv.debruijn.positional.optimiseddatastructures;
+
+import au.edu.wehi.idsv.debruijn.positional.KmerNode;
+import au.edu.wehi.idsv.debruijn.positional.KmerNodeUtil;
+
+import java.util.TreeSet;
+
+/**
+ * TreeSet of KmerNodes ordered by KmerNodeUtil.ByFirstStartKmer.
+ */
+public class KmerNodeByFirstStartKmerTreeSet<T extends KmerNode> extends TreeSet<T> implements KmerNodeByFirstStartKmerSet<T> {
+    public KmerNodeByFirstStartKmerTreeSet() {
+        super(KmerNodeUtil.ByFirstStartKmer);
+    }
+}
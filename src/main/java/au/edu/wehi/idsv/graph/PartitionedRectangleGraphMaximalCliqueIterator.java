@@ -0,0 +1,140 @@
+package au.edu.wehi.idsv.graph;
+
+import au.edu.wehi.idsv.util.TaskGroupScheduler;
+import au.edu.wehi.idsv.visualisation.TrackedState;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.function.ToLongFunction;
+
+/**
+ * Streaming maximal clique caller that calls independent partitions of the rectangle graph concurrently.
+ *
+ * Rectangles in different partitions must not overlap. Input is processed in batches with each
+ * partition advanced to the start of the next batch before the batch results are merged. Since
+ * a single calculator calls cliques in end X, start Y order, merging in that order results in
+ * output identical to {@link RectangleGraphMaximalCliqueIterator}.
+ *
+ * @author Daniel Cameron
+ */
+public class PartitionedRectangleGraphMaximalCliqueIterator extends AbstractIterator<RectangleGraphNode> implements TrackedState {
+	private final Queue<RectangleGraphNode> buffer = new ArrayDeque<RectangleGraphNode>();
+	private final Long2ObjectLinkedOpenHashMap<Partition> partitions = new Long2ObjectLinkedOpenHashMap<>();
+	private final PeekingIterator<RectangleGraphNode> it;
+	private final ToLongFunction<RectangleGraphNode> partitionOf;
+	private final TaskGroupScheduler scheduler;
+	private final int batchSize;
+	private boolean complete = false;
+	/**
+	 * @param it rectangles sorted by start X
+	 * @param partitionOf partition of each rectangle. Rectangles in different partitions must not overlap.
+	 * @param scheduler scheduler to run partitions on. Partitions are called on the calling thread if null.
+	 * @param batchSize minimum number of rectangles read before the partitions are synchronised
+	 */
+	public PartitionedRectangleGraphMaximalCliqueIterator(Iterator<RectangleGraphNode> it, ToLongFunction<RectangleGraphNode> partitionOf, TaskGroupScheduler scheduler, int batchSize) {
+		if (batchSize <= 0) throw new IllegalArgumentException("batchSize must be positive");
+		this.it = Iterators.peekingIterator(it);
+		this.partitionOf = partitionOf;
+		this.scheduler = scheduler;
+		this.batchSize = batchSize;
+	}
+	private static class Partition implements Runnable {
+		private final RectangleGraphMaximalCliqueCalculator calc = new RectangleGraphMaximalCliqueCalculator();
+		private final List<RectangleGraphNode> pending = new ArrayList<>();
+		private final List<RectangleGraphNode> called = new ArrayList<>();
+		/**
+		 * Start position of the next batch. Long.MAX_VALUE indicates no further rectangles.
+		 */
+		private long nextBatchStartX;
+		@Override
+		public void run() {
+			for (RectangleGraphNode node : pending) {
+				called.addAll(calc.next(node));
+			}
+			pending.clear();
+			if (nextBatchStartX == Long.MAX_VALUE) {
+				called.addAll(calc.complete());
+			} else {
+				called.addAll(calc.advanceTo(nextBatchStartX));
+			}
+		}
+	}
+	private void processBatch() {
+		int count = 0;
+		long lastStartX = Long.MIN_VALUE;
+		// batches must not split rectangles with the same start position
+		while (it.hasNext() && (count < batchSize || it.peek().startX == lastStartX)) {
+			RectangleGraphNode node = it.next();
+			long key = partitionOf.applyAsLong(node);
+			Partition p = partitions.get(key);
+			if (p == null) {
+				p = new Partition();
+				partitions.put(key, p);
+			}
+			p.pending.add(node);
+			lastStartX = node.startX;
+			count++;
+		}
+		long nextBatchStartX = it.hasNext() ? it.peek().startX : Long.MAX_VALUE;
+		List<Partition> active = new ArrayList<>(partitions.values());
+		for (Partition p : active) {
+			p.nextBatchStartX = nextBatchStartX;
+		}
+		if (scheduler == null || active.size() <= 1) {
+			active.forEach(Partition::run);
+		} else {
+			scheduler.runAll(active);
+		}
+		List<RectangleGraphNode> called = new ArrayList<>();
+		for (Partition p : active) {
+			called.addAll(p.called);
+			p.called.clear();
+		}
+		// restore the order in which a single calculator would have called the cliques
+		called.sort(RectangleGraphNode.ByEndXStartYEndY);
+		buffer.addAll(called);
+		// A calculator with no rectangles is equivalent to a new calculator
+		partitions.values().removeIf(p -> p.calc.isEmpty());
+		complete = nextBatchStartX == Long.MAX_VALUE;
+	}
+	@Override
+	protected RectangleGraphNode computeNext() {
+		while (buffer.isEmpty() && !complete) {
+			processBatch();
+		}
+		if (!buffer.isEmpty()) {
+			return buffer.poll();
+		}
+		return endOfData();
+	}
+
+	@Override
+	public String[] trackedNames() {
+		return new String[] {
+				"partitions",
+				"bufferSize",
+		};
+	}
+
+	@Override
+	public Object[] trackedState() {
+		return new Object[] {
+				partitions.size(),
+				buffer.size(),
+		};
+	}
+
+	@Override
+	public Collection<TrackedState> trackedObjects() {
+		return ImmutableList.of(this);
+	}
+}
@@ -13,38 +13,53 @@ import java.util.PriorityQueue;
  * Calculates all maximal cliques of a rectangle graph
  *
  * Maximum clique problem of rectangle graphs, Advances in Computer Research, D T Lee, 1 (1983), pp. 91-107
- * 
+ *
  * Better implementation would be to partition the rectangle graph (boxicity=2)
  * into cliques such that each vertex is contained in exactly one clique.
- * 
+ *
  * Since total vertex weight is fixed, minimising number of cliques is equivalent to maximising average clique weight.
  * This an NP, see:
  * Greedy is good: An experimental study on minimum clique cover and maximum independent set problems for randomly generated rectangles
  * Finding the connected components and a maximum clique of an intersection graph of rectangles in the plane, Journal of Algorithms, Volume 4, Issue 4, December 1983, Pages 310-323
  * A note on maximum independent sets in rectangle intersection graphs, Information Processing Letters, Volume 89, Issue 1, 16 January 2004, Pages 19-23
- * GREEDY MAXIMUM-CLIQUE DECOMPOSITIONS http://faculty.tru.ca/smcguinness/greedymaxclique.pdf (we want to decompose by removing vertices, not edges) 
- * 
+ * GREEDY MAXIMUM-CLIQUE DECOMPOSITIONS http://faculty.tru.ca/smcguinness/greedymaxclique.pdf (we want to decompose by removing vertices, not edges)
+ *
+ * The scanline is stored as a treap of intervals ordered by start Y position. Weight changes
+ * and maximal clique status changes are lazily propagated so adding or removing a rectangle
+ * takes O(log n) expected time regardless of how many scanline intervals the rectangle overlaps.
+ *
  * @author Daniel Cameron
  */
 public class RectangleGraphMaximalCliqueCalculator implements TrackedState {
+	/**
+	 * Start position of the end sentinel scanline interval
+	 */
+	private static final long SENTINEL_START_Y = Long.MAX_VALUE - 1;
+	private static final int ASSIGN_NONE = 0;
+	/**
+	 * Intervals bounded by a rectangle start and a rectangle end are maximal cliques starting at the current scanline
+	 */
+	private static final int ASSIGN_BOUNDED = 1;
+	/**
+	 * Intervals are not maximal cliques
+	 */
+	private static final int ASSIGN_NOT_MAXIMAL = 2;
 	private RectangleGraphNode lastNode = null;
 	private List<RectangleGraphNode> outBuffer;
 	private final PriorityQueue<RectangleGraphNode> activeEndingX = new PriorityQueue<RectangleGraphNode>(11, RectangleGraphNode.ByEndXStartYEndY); // sorted by endX
-	//private final RangeMap<GraphNode> activeScanlineEvidence;
+	private ScanlineInterval root;
 	/**
-	 * Contains GraphNodes of which the start Y has been processed but the end Y has not yet been encountered
+	 * Priority source for the treap. Deterministic so performance is reproducible.
 	 */
-	private final PriorityQueue<RectangleGraphNode> activeScanlineEndingY = new PriorityQueue<RectangleGraphNode>(11, RectangleGraphNode.ByEndY); // sorted by endX
-	private final ScanlineInterval activeScanlineStart;
-	private ScanlineInterval activeScanlineCurrentPosition = null;
-	private long activeScanlineActiveWeight = 0;
+	private long priorityState = 0x9E3779B97F4A7C15L;
 	private long scanlineX = Long.MIN_VALUE;
+	// output of split()
+	private ScanlineInterval splitLeft;
+	private ScanlineInterval splitRight;
 	public RectangleGraphMaximalCliqueCalculator() {
-		activeScanlineStart = new ScanlineInterval();
-		activeScanlineStart.next = new ScanlineInterval();
-		activeScanlineStart.next.startY = Long.MAX_VALUE - 1;
-		activeScanlineCurrentPosition = activeScanlineStart;
-		assert(sanityCheckScanlineComplete());
+		root = merge(new ScanlineInterval(Long.MIN_VALUE, SENTINEL_START_Y, nextPriority()),
+				new ScanlineInterval(SENTINEL_START_Y, Long.MAX_VALUE, nextPriority()));
+		assert(sanityCheck());
 	}
 
 	/**
@@ -54,90 +69,230 @@ public class RectangleGraphMaximalCliqueCalculator implements TrackedState {
 	 * @author Daniel Cameron
 	 *
 	 */
-	private class ScanlineInterval implements Cloneable {
-		private ScanlineInterval(
-				long startY,
-				long startx,
-				long weight,
-				int startHere,
-				int endHere,
-				ScanlineInterval next) {
-			this.startY = startY;
-			this.startX = startx;
-			this.weight = weight;
-			this.startHere = startHere;
-			this.endHere = endHere;
-			this.next = next;
-		}
-		public ScanlineInterval() {
-			this(Long.MIN_VALUE, Long.MAX_VALUE, 0, 0, 0, null);
-		}
+	private static class ScanlineInterval {
+		private final long startY;
+		private long endY;
+		private final long priority;
+		private long weight = 0;
 		/**
-		 * Splits the given node containing the given y value
-		 * so a node starts at the given position
-		 * @param y start y to ensure
+		 * Long.MAX_VALUE indicates this interval is not maximal
 		 */
-		public void splitAt(long y) {
-			assert(y >= getStartY());
-			assert(y < getEndY());
-			if (y == getStartY()) return;
-			ScanlineInterval newNode = new ScanlineInterval(
-					y,
-					Long.MAX_VALUE,
-					this.weight,
-					0,
-					this.endHere,
-					this.next);
-			this.endHere = 0;
-			this.next = newNode;
-			this.startX = Long.MAX_VALUE;
-		}
-		private long startY = Long.MIN_VALUE;
+		private long startX = Long.MAX_VALUE;
 		/**
-		 * Long.MIN_VALUE indicates this interval is not maximal
+		 * Number of rectangles starting at the start of this interval
 		 */
-		private long startX = Long.MAX_VALUE;
-		private long weight = 0;
 		private int startHere = 0;
-		private int endHere = 0;
-		private ScanlineInterval next;
 		/**
-		 * Start coordinate of the half-open interval
-		 * @return
+		 * Number of rectangles ending at the end of this interval
 		 */
-		public long getStartY() {
-			return startY;
+		private int endHere = 0;
+		private ScanlineInterval left;
+		private ScanlineInterval right;
+		// subtree aggregates
+		private int size = 1;
+		private int boundedCount = 0;
+		private int maximalCount = 0;
+		// pending updates to the child subtrees
+		private long lazyWeight = 0;
+		private int lazyAssign = ASSIGN_NONE;
+		private long lazyStartX = Long.MAX_VALUE;
+		private ScanlineInterval(long startY, long endY, long priority) {
+			this.startY = startY;
+			this.endY = endY;
+			this.priority = priority;
 		}
-		/**
-		 * End coordinate of the half-open interval
-		 * @return
-		 */
-		public long getEndY() {
-			if (next == null) return Long.MAX_VALUE;
-			return next.startY;
+		private boolean isBounded() {
+			return startHere > 0 && endHere > 0;
 		}
 		private boolean isMaximalClique() {
 			return startX != Long.MAX_VALUE;
 		}
-		public ScanlineInterval getNext() {
-			return next;
-		}
-		public void mergeWithNext() {
-			assert(next != null);
-			assert(next.next != null); // can't merge with the end sentinal
-			assert(weight == next.weight);
-			assert(startX == Long.MAX_VALUE);
-			assert(next.startX == Long.MAX_VALUE);
-			endHere = next.endHere;
-			next = next.next;
-		}
 		@Override
 		public String toString() {
-			String s = String.format("[%d,%d)(w=%d,s=%d,e=%d,x=%d)", getStartY(), getEndY(), weight, startHere, endHere, startX);
-			if (next != null) return s + "\n" + next.toString();
-			return s;
+			return String.format("[%d,%d)(w=%d,s=%d,e=%d,x=%d)", startY, endY, weight, startHere, endHere, startX);
 		}
 	}
+	private long nextPriority() {
+		// xorshift
+		priorityState ^= priorityState << 13;
+		priorityState ^= priorityState >>> 7;
+		priorityState ^= priorityState << 17;
+		return priorityState;
+	}
+	private static int size(ScanlineInterval n) {
+		return n == null ? 0 : n.size;
+	}
+	private static void update(ScanlineInterval n) {
+		n.size = 1 + size(n.left) + size(n.right);
+		n.boundedCount = (n.isBounded() ? 1 : 0)
+				+ (n.left == null ? 0 : n.left.boundedCount)
+				+ (n.right == null ? 0 : n.right.boundedCount);
+		n.maximalCount = (n.isMaximalClique() ? 1 : 0)
+				+ (n.left == null ? 0 : n.left.maximalCount)
+				+ (n.right == null ? 0 : n.right.maximalCount);
+	}
+	/**
+	 * Applies the given update to every interval in the subtree
+	 */
+	private static void apply(ScanlineInterval n, long weight, int assign, long x) {
+		if (n == null) return;
+		n.weight += weight;
+		n.lazyWeight += weight;
+		if (assign != ASSIGN_NONE) {
+			if (assign == ASSIGN_BOUNDED) {
+				n.startX = n.isBounded() ? x : Long.MAX_VALUE;
+				n.maximalCount = n.boundedCount;
+			} else {
+				n.startX = Long.MAX_VALUE;
+				n.maximalCount = 0;
+			}
+			n.lazyAssign = assign;
+			n.lazyStartX = x;
+		}
+	}
+	private static void push(ScanlineInterval n) {
+		if (n.lazyWeight != 0 || n.lazyAssign != ASSIGN_NONE) {
+			apply(n.left, n.lazyWeight, n.lazyAssign, n.lazyStartX);
+			apply(n.right, n.lazyWeight, n.lazyAssign, n.lazyStartX);
+			n.lazyWeight = 0;
+			n.lazyAssign = ASSIGN_NONE;
+			n.lazyStartX = Long.MAX_VALUE;
+		}
+	}
+	/**
+	 * Splits the given subtree into intervals starting before the given position (splitLeft)
+	 * and intervals starting at or after the given position (splitRight)
+	 */
+	private void split(ScanlineInterval n, long startY) {
+		if (n == null) {
+			splitLeft = null;
+			splitRight = null;
+			return;
+		}
+		push(n);
+		if (n.startY < startY) {
+			split(n.right, startY);
+			n.right = splitLeft;
+			update(n);
+			splitLeft = n;
+		} else {
+			split(n.left, startY);
+			n.left = splitRight;
+			update(n);
+			splitRight = n;
+		}
+	}
+	/**
+	 * Merges two subtrees in which every interval of the first subtree is before every interval of the second
+	 */
+	private static ScanlineInterval merge(ScanlineInterval a, ScanlineInterval b) {
+		if (a == null) return b;
+		if (b == null) return a;
+		if (a.priority > b.priority) {
+			push(a);
+			a.right = merge(a.right, b);
+			update(a);
+			return a;
+		} else {
+			push(b);
+			b.left = merge(a, b.left);
+			update(b);
+			return b;
+		}
+	}
+	/**
+	 * Finds the interval containing the given position
+	 */
+	private ScanlineInterval find(long y) {
+		ScanlineInterval n = root;
+		ScanlineInterval containing = null;
+		while (n != null) {
+			push(n);
+			if (n.startY <= y) {
+				containing = n;
+				n = n.right;
+			} else {
+				n = n.left;
+			}
+		}
+		return containing;
+	}
+	/**
+	 * Removes the interval starting at the given position from the scanline.
+	 * The caller is responsible for reinserting the interval with reinsert()
+	 */
+	private ScanlineInterval extract(long startY) {
+		split(root, startY);
+		ScanlineInterval before = splitLeft;
+		split(splitRight, startY + 1);
+		ScanlineInterval n = splitLeft;
+		assert(n != null && n.size == 1 && n.startY == startY);
+		root = merge(before, splitRight);
+		return n;
+	}
+	private void reinsert(ScanlineInterval n) {
+		update(n);
+		split(root, n.startY);
+		root = merge(merge(splitLeft, n), splitRight);
+	}
+	/**
+	 * Ensures an interval starts at the given position
+	 */
+	private void splitAt(long y) {
+		ScanlineInterval n = find(y);
+		if (n.startY == y) return;
+		n = extract(n.startY);
+		ScanlineInterval newNode = new ScanlineInterval(y, n.endY, nextPriority());
+		newNode.weight = n.weight;
+		newNode.endHere = n.endHere;
+		n.endHere = 0;
+		n.endY = y;
+		n.startX = Long.MAX_VALUE;
+		reinsert(n);
+		reinsert(newNode);
+	}
+	/**
+	 * Updates the rectangle start and end counts of the intervals bounding the given rectangle
+	 */
+	private void updateBoundaryCounts(long startY, long endYExclusive, int multiplier) {
+		ScanlineInterval n = extract(startY);
+		n.startHere += multiplier;
+		reinsert(n);
+		n = extract(find(endYExclusive - 1).startY);
+		assert(n.endY == endYExclusive);
+		n.endHere += multiplier;
+		reinsert(n);
+	}
+	/**
+	 * Applies the given update to all intervals in the given range.
+	 * Intervals must start at both the start and end of the range.
+	 */
+	private void updateRange(long startY, long endYExclusive, long weight, int assign) {
+		split(root, startY);
+		ScanlineInterval before = splitLeft;
+		split(splitRight, endYExclusive);
+		ScanlineInterval after = splitRight;
+		apply(splitLeft, weight, assign, scanlineX);
+		root = merge(merge(before, splitLeft), after);
+	}
+	/**
+	 * Merges the intervals either side of the given position if no rectangles start or end at that position
+	 */
+	private void mergeIntervalsAt(long y) {
+		if (y == SENTINEL_START_Y) return; // can't merge with the end sentinel
+		ScanlineInterval next = find(y);
+		if (next.startY != y || next.startHere != 0) return;
+		ScanlineInterval prev = find(y - 1);
+		if (prev.endHere != 0) return;
+		assert(prev.weight == next.weight);
+		assert(!prev.isMaximalClique());
+		assert(!next.isMaximalClique());
+		next = extract(y);
+		prev = extract(prev.startY);
+		prev.endY = next.endY;
+		prev.endHere = next.endHere;
+		reinsert(prev);
+	}
 	private List<RectangleGraphNode> getCalledCliques() {
 		List<RectangleGraphNode> result = outBuffer == null ? ImmutableList.<RectangleGraphNode>of() : outBuffer;
 		outBuffer = null;
@@ -156,169 +311,101 @@ public class RectangleGraphMaximalCliqueCalculator implements TrackedState {
 		assert(lastNode == null || RectangleGraphNode.ByStartXY.compare(lastNode, node) <= 0);
 		lastNode = node;
 		if (node.startX != scanlineX) {
-			scanlineCompleteProcessing(1);
 			// advance scanline
 			processEndXBefore(node.startX);
 			scanlineX = node.startX;
 		}
-		incorporateInCurrentScanline(node, 1);
+		add(node);
 		activeEndingX.add(node);
 		return getCalledCliques();
 	}
-	private void mergeIntervals() {
-		assert(activeScanlineEndingY.isEmpty()); // can't merge in the middle of processing
-		// (make sure we don't merge our end sentinal
-		for (ScanlineInterval si = activeScanlineStart; si != null && si.next != null && si.next.next != null; si = si.next) {
-			// merge consecutive nodes
-			while (si.endHere == 0 && si.next.startHere == 0 && si.next.next != null) {
-				assert(si.weight == si.next.weight);
-				// we can merge these together since the separating node is no longer around
-				si.mergeWithNext();
-			}
-		}
-	}
-	private boolean sanityCheckScanlineActive() {
-		if (!Defaults.SANITY_CHECK_CLIQUE) return true;
+	/**
+	 * Adds the given node to the current scanline
+	 */
+	private void add(RectangleGraphNode node) {
+		long startY = node.startY;
+		long endYExclusive = node.endY + 1;
+		splitAt(startY);
+		splitAt(endYExclusive);
+		updateBoundaryCounts(startY, endYExclusive, 1);
+		updateRange(startY, endYExclusive, node.weight, ASSIGN_BOUNDED);
 		assert(sanityCheck());
-		assert(!activeScanlineEndingY.isEmpty());
-		assert(activeScanlineActiveWeight > 0);
-		assert(activeScanlineCurrentPosition != null);
-		assert(activeScanlineCurrentPosition.getStartY() < Long.MAX_VALUE - 1);
-		assert(activeScanlineCurrentPosition.getEndY() < Long.MAX_VALUE);
-		return true;
 	}
-	private boolean sanityCheckScanlineComplete() {
-		if (!Defaults.SANITY_CHECK_CLIQUE) return true;
-		assert(sanityCheck());
-		assert(activeScanlineCurrentPosition == activeScanlineStart);
-		assert(activeScanlineEndingY.isEmpty());
-		assert(activeScanlineActiveWeight == 0);
-		for (ScanlineInterval si = activeScanlineStart.next; si != null && si.next != null; si = si.next) {
-			if (si.next.next != null) {
-				// something should be splitting this node from the previous one
-				assert(si.endHere > 0 || si.next.startHere > 0);
-			}
-		}
-		return true;
+	/**
+	 * Removes the given node from the current scanline
+	 */
+	private void remove(RectangleGraphNode node) {
+		long startY = node.startY;
+		long endYExclusive = node.endY + 1;
+		updateBoundaryCounts(startY, endYExclusive, -1);
+		updateRange(startY, endYExclusive, -node.weight, ASSIGN_NOT_MAXIMAL);
 	}
 	private boolean sanityCheck() {
 		if (!Defaults.SANITY_CHECK_CLIQUE) return true;
-		assert(activeScanlineStart != null);
-		assert(activeScanlineStart.getStartY() == Long.MIN_VALUE);
-		assert(activeScanlineStart.weight == 0);
-		assert(activeScanlineStart.startHere == 0);
-		assert(activeScanlineStart.endHere == 0);
-		// check activeScanline is ordered
-		for (ScanlineInterval lastsi = null, si = activeScanlineStart; si != null; lastsi = si, si = si.next) {
-			assert(si.getStartY() < si.getEndY());
-			if (lastsi != null) {
-				assert(lastsi.getStartY() < si.getStartY());
-				assert(lastsi.getEndY() == si.getStartY());
-			} else {
-				assert(si.getStartY() == Long.MIN_VALUE);
-			}
-			if (si.next == null) {
-				// sentinel
-				assert(si.getStartY() == Long.MAX_VALUE - 1);
-				assert(si.getEndY() == Long.MAX_VALUE);
-				assert(si.weight == 0);
-				assert(si.startHere == 0);
-				assert(si.endHere == 0);
+		List<ScanlineInterval> intervals = new ArrayList<>();
+		collect(root, Long.MIN_VALUE, Long.MAX_VALUE, false, intervals);
+		assert(intervals.size() == size(root));
+		assert(intervals.get(0).startY == Long.MIN_VALUE);
+		assert(intervals.get(0).weight == 0);
+		assert(intervals.get(0).startHere == 0);
+		ScanlineInterval sentinel = intervals.get(intervals.size() - 1);
+		assert(sentinel.startY == SENTINEL_START_Y);
+		assert(sentinel.endY == Long.MAX_VALUE);
+		assert(sentinel.weight == 0);
+		assert(sentinel.startHere == 0);
+		assert(sentinel.endHere == 0);
+		for (int i = 0; i < intervals.size(); i++) {
+			ScanlineInterval si = intervals.get(i);
+			assert(si.startY < si.endY);
+			assert(si.weight >= 0);
+			assert(si.startHere >= 0);
+			assert(si.endHere >= 0);
+			if (i > 0) {
+				assert(intervals.get(i - 1).endY == si.startY);
 			}
 		}
-		long weight = 0;
-		for (RectangleGraphNode n : activeScanlineEndingY) {
-			assert(n.startY <= activeScanlineCurrentPosition.getStartY());
-			weight += n.weight;
-		}
-		assert(activeScanlineActiveWeight == weight);
+		return sanityCheckAggregates(root);
+	}
+	private static boolean sanityCheckAggregates(ScanlineInterval n) {
+		if (n == null) return true;
+		push(n);
+		sanityCheckAggregates(n.left);
+		sanityCheckAggregates(n.right);
+		int size = n.size;
+		int bounded = n.boundedCount;
+		int maximal = n.maximalCount;
+		update(n);
+		assert(size == n.size);
+		assert(bounded == n.boundedCount);
+		assert(maximal == n.maximalCount);
+		assert(n.left == null || n.left.priority <= n.priority);
+		assert(n.right == null || n.right.priority <= n.priority);
 		return true;
 	}
 	/**
-	 * Advances the current scanline position to the starting interval
-	 * of the given node and adds the given node to the scanline active
-	 * set 
-	 * @param node node to start processing
-	 * @Param multiplier 1 indicates we are incorporating the start of the given GraphNode to the current scanline 
-	 * 0 indicates we are incorporating the end of the given GraphNode to the current scanline
+	 * Collects the intervals starting within the given range in scanline order
+	 * @param maximalOnly only collect intervals that are maximal cliques
 	 */
-	private void incorporateInCurrentScanline(RectangleGraphNode node, int multiplier) {
-		assert(multiplier == -1 || multiplier == 1);
-		assert(scanlineX == (multiplier == 1 ? node.startX : node.endX));
-		long y = node.startY;
-		assert(activeScanlineCurrentPosition.startY <= y);
-		scanlineProcessYEndBefore(y, multiplier);
-		if (activeScanlineCurrentPosition.getStartY() != y) {
-			activeScanlineCurrentPosition.splitAt(y);
-			scanlineProcessYEndBefore(y, multiplier);
+	private static void collect(ScanlineInterval n, long startY, long endYExclusive, boolean maximalOnly, List<ScanlineInterval> out) {
+		if (n == null) return;
+		if (maximalOnly && n.maximalCount == 0) return;
+		push(n);
+		if (n.startY >= startY) {
+			collect(n.left, startY, endYExclusive, maximalOnly, out);
 		}
-		activeScanlineActiveWeight += node.weight;
-		activeScanlineCurrentPosition.startHere += multiplier;
-		activeScanlineEndingY.add(node);
-		assert(activeScanlineCurrentPosition.getStartY() == y);
-		assert(activeScanlineEndingY.contains(node));
-		assert(sanityCheckScanlineActive());
-	}
-	/**
-	 * Advances the current scanline position to the half-open interval containing the given y position.
-	 * @param endYBefore position to advance to
-	 * @Param multiplier 1 indicates we are incorporating the start of the given GraphNode to the current scanline 
-	 * 0 indicates we are incorporating the end of the given GraphNode to the current scanline
-	 */
-	private void scanlineProcessYEndBefore(long endYBefore, int multiplier) {
-		assert(multiplier == -1 || multiplier == 1);
-		while (!activeScanlineEndingY.isEmpty() && activeScanlineEndingY.peek().endY < endYBefore) {
-			RectangleGraphNode node = activeScanlineEndingY.poll();
-			long endYexclusive = node.endY + 1;
-			int yendCount = 1;
-			long yendWeight = node.weight;
-			while (!activeScanlineEndingY.isEmpty() && activeScanlineEndingY.peek().endY + 1 == endYexclusive) {
-				node = activeScanlineEndingY.poll();
-				yendCount++;
-				yendWeight += node.weight;
-			}
-			advanceScanlineToIntervalContaining(endYexclusive - 1, multiplier);
-			if (activeScanlineCurrentPosition.getEndY() > endYexclusive) {
-				activeScanlineCurrentPosition.splitAt(endYexclusive);
-			}
-			// no need to advance here since our current position is correct
-			activeScanlineCurrentPosition.endHere += yendCount * multiplier;
-			advanceScanlineToIntervalContaining(endYexclusive, multiplier); // move on past our closing position
-			activeScanlineActiveWeight -= yendWeight;
+		if (n.startY >= startY && n.startY < endYExclusive && (!maximalOnly || n.isMaximalClique())) {
+			out.add(n);
 		}
-		// advance position to node containing endYBefore
-		advanceScanlineToIntervalContaining(endYBefore, multiplier);
-	}
-	/**
-	 * Advances the current scanline to the interval containing
-	 * This method is responsible for setting activeScanlineCurrentPosition
-	 * This method is responsible for updating scanline weights based on activeScanlineActiveWeight
-	 * @param y included in half-open interval to advance scanline to  
-	 */
-	private void advanceScanlineToIntervalContaining(long y, int multiplier) {
-		assert(activeScanlineCurrentPosition.getStartY() <= y); // can't advance backwards
-		while (activeScanlineCurrentPosition.getEndY() <= y) {
-			activeScanlineCurrentPosition.weight += activeScanlineActiveWeight * multiplier;
-			if (activeScanlineActiveWeight != 0) {
-				// could be maximal if we're adding new evidence
-				// if we're removing evidence then we're now definitely not maximal
-				// if we're doing neither then there is no change from the previous scanline
-				activeScanlineCurrentPosition.startX = Long.MAX_VALUE;
-				if (multiplier == 1 && activeScanlineCurrentPosition.startHere > 0 && activeScanlineCurrentPosition.endHere > 0) {
-					activeScanlineCurrentPosition.startX = scanlineX;
-				}
-			}
-			activeScanlineCurrentPosition = activeScanlineCurrentPosition.getNext();
+		if (n.startY < endYExclusive) {
+			collect(n.right, startY, endYExclusive, maximalOnly, out);
 		}
-		assert(activeScanlineCurrentPosition.getStartY() <= y);
-		assert(activeScanlineCurrentPosition.getEndY() > y);
 	}
 	/**
 	 * Calls maximum cliques
 	 * @param endingCurrentScanline nodes ending here. Maximum cliques will always occur within one of these intervals
 	 */
 	private void callMaximumCliques(List<RectangleGraphNode> endingCurrentScanline) {
-		ScanlineInterval interval = activeScanlineStart;
+		List<ScanlineInterval> maximal = new ArrayList<>();
 		int index = 0;
 		while (index < endingCurrentScanline.size()) {
 			long startY = endingCurrentScanline.get(index).startY;
@@ -329,35 +416,19 @@ public class RectangleGraphMaximalCliqueCalculator implements TrackedState {
 				endYexclusive = Math.max(endYexclusive, endingCurrentScanline.get(index).endY + 1);
 				index++;
 			}
-			// advance to interval
-			while (interval.getEndY() <= startY) {
-				assert(interval.next != null);
-				interval = interval.next;
-			}
 			// call cliques in interval
-			assert(interval.getStartY() == startY);
-			while (interval.getStartY() < endYexclusive) {
-				if (interval.isMaximalClique()) {
-					outBuffer.add(new RectangleGraphNode(
-							interval.startX, scanlineX,
-							interval.getStartY(), interval.getEndY() - 1, // convert back from half-open to close interval
-							interval.weight));
-				}
-				interval = interval.next;
+			assert(find(startY).startY == startY);
+			assert(find(endYexclusive).startY == endYexclusive);
+			maximal.clear();
+			collect(root, startY, endYexclusive, true, maximal);
+			for (ScanlineInterval interval : maximal) {
+				outBuffer.add(new RectangleGraphNode(
+						interval.startX, scanlineX,
+						interval.startY, interval.endY - 1, // convert back from half-open to close interval
+						interval.weight));
 			}
-			assert(interval.getStartY() == endYexclusive);
 		}
 	}
-	private void scanlineCompleteProcessing(int multiplier) {
-		scanlineProcessYEndBefore(Long.MAX_VALUE - 1, multiplier);
-		// reset ready for next scanline
-		activeScanlineCurrentPosition = activeScanlineStart;
-		if (multiplier == -1) {
-			// removal of nodes can result in adjacent intervals requiring merge
-			mergeIntervals();
-		}
-		assert(sanityCheckScanlineComplete());
-	}
 	private void processEndXBefore(long endBeforeX) {
 		outBuffer = new ArrayList<RectangleGraphNode>();
 		while (!activeEndingX.isEmpty() && activeEndingX.peek().endX < endBeforeX) {
@@ -366,19 +437,42 @@ public class RectangleGraphMaximalCliqueCalculator implements TrackedState {
 		}
 	}
 	private void processEndingXOnCurrentScanline() {
-		assert(activeScanlineEndingY.isEmpty());
 		List<RectangleGraphNode> endingCurrentScanline = new ArrayList<RectangleGraphNode>();
 		while (!activeEndingX.isEmpty() && activeEndingX.peek().endX == scanlineX) {
 			endingCurrentScanline.add(activeEndingX.poll());
 		}
 		callMaximumCliques(endingCurrentScanline);
 		for (RectangleGraphNode g : endingCurrentScanline) {
-			incorporateInCurrentScanline(g, -1);
+			remove(g);
+		}
+		// removal of nodes can result in adjacent intervals requiring merge
+		for (RectangleGraphNode g : endingCurrentScanline) {
+			mergeIntervalsAt(g.startY);
+			mergeIntervalsAt(g.endY + 1);
 		}
-		scanlineCompleteProcessing(-1);
+		assert(sanityCheck());
+	}
+	/**
+	 * Calls all maximal cliques ending before the given position.
+	 *
+	 * Cliques are called exactly as they would be if the next node started at the given position.
+	 * @param x position at or before the start of the next node
+	 * @return maximal cliques ending before the given position
+	 */
+	public List<RectangleGraphNode> advanceTo(long x) {
+		assert(x > scanlineX);
+		assert(lastNode == null || lastNode.startX < x);
+		processEndXBefore(x);
+		return getCalledCliques();
+	}
+	/**
+	 * Determines whether any rectangles are on the current scanline
+	 * @return true if no rectangles are on the current scanline
+	 */
+	public boolean isEmpty() {
+		return activeEndingX.isEmpty();
 	}
 	public List<RectangleGraphNode> complete() {
-		scanlineCompleteProcessing(1);
 		processEndXBefore(Long.MAX_VALUE);
 		return outBuffer;
 	}
@@ -388,7 +482,7 @@ public class RectangleGraphMaximalCliqueCalculator implements TrackedState {
 		return new String[] {
 			"outBufferSize",
 			"activeEndingXSize",
-			"activeScanlineEndingYSize",
+			"scanlineIntervalCount",
 		};
 	}
 
@@ -397,7 +491,7 @@ public class RectangleGraphMaximalCliqueCalculator implements TrackedState {
 		return new Object[] {
 				outBuffer == null ? 0 : outBuffer.size(),
 				activeEndingX == null ? 0 : activeEndingX.size(),
-				activeScanlineEndingY == null ? 0 : activeScanlineEndingY.size(),
+				size(root),
 		};
 	}
 
@@ -405,4 +499,4 @@ public class RectangleGraphMaximalCliqueCalculator implements TrackedState {
 	public Collection<TrackedState> trackedObjects() {
 		return ImmutableList.of(this);
 	}
-}
\ No newline at end of file
+}
@@ -8,6 +8,7 @@ import org.apache.commons.collections4.iterators.ReverseListIterator;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
@@ -82,4 +83,105 @@ public class KrakenClassificationChecker {
         }
         return foundGood;
     }
+
+    /**
+     * Determines whether the given line of Kraken2 output is of interest.
+     *
+     * This is equivalent to isOfInterest(new KrakenClassification(line)) but
+     * evaluates the line in place without allocating any objects.
+     *
+     * @param buf buffer containing the line
+     * @param start offset of the start of the line
+     * @param end offset of the end of the line, excluding any line terminator
+     */
+    public boolean isOfInterest(byte[] buf, int start, int end) {
+        int sequenceIdStart = indexOf(buf, start, end, (byte)'\t') + 1;
+        int taxonomyIdStart = sequenceIdStart == 0 ? 0 : indexOf(buf, sequenceIdStart, end, (byte)'\t') + 1;
+        if (taxonomyIdStart == 0) {
+            throw new IllegalArgumentException("Malformed Kraken2 output: " + new String(buf, start, end - start, StandardCharsets.UTF_8));
+        }
+        int taxonomyIdEnd = indexOf(buf, taxonomyIdStart, end, (byte)'\t');
+        if (taxonomyIdEnd < 0) taxonomyIdEnd = end;
+        if (goodTaxId[parseInt(buf, taxonomyIdStart, taxonomyIdEnd)]) return true;
+        int lengthEnd = taxonomyIdEnd == end ? -1 : indexOf(buf, taxonomyIdEnd + 1, end, (byte)'\t');
+        if (lengthEnd < 0) return false;
+        int kmerStart = lengthEnd + 1;
+        int kmerEnd = indexOf(buf, kmerStart, end, (byte)'\t');
+        if (kmerEnd < 0) kmerEnd = end;
+        int readSeparator = indexOfReadSeparator(buf, kmerStart, kmerEnd);
+        if (readSeparator < 0) {
+            return isOfInterest(buf, kmerStart, kmerEnd, true) || isOfInterest(buf, kmerStart, kmerEnd, false);
+        }
+        return isOfInterest(buf, kmerStart, readSeparator, true) || isOfInterest(buf, kmerStart, readSeparator, false)
+                || isOfInterest(buf, readSeparator + 3, kmerEnd, true) || isOfInterest(buf, readSeparator + 3, kmerEnd, false);
+    }
+    /**
+     * Byte-level equivalent of isOfInterest(Iterator) over the space-delimited kmer classifications
+     * in the given range of the buffer.
+     */
+    private boolean isOfInterest(byte[] buf, int start, int end, boolean forward) {
+        boolean foundGood = false;
+        int i = forward ? start : end - 1;
+        while (forward ? i < end : i >= start) {
+            if (buf[i] == ' ') {
+                i += forward ? 1 : -1;
+                continue;
+            }
+            int tokenStart = i;
+            int tokenEnd = i;
+            if (forward) {
+                while (tokenEnd < end && buf[tokenEnd] != ' ') tokenEnd++;
+                i = tokenEnd;
+            } else {
+                tokenEnd = i + 1;
+                while (tokenStart > start && buf[tokenStart - 1] != ' ') tokenStart--;
+                i = tokenStart - 1;
+            }
+            int taxonomyId = parseKmerTaxonomyId(buf, tokenStart, tokenEnd);
+            if (taxonomyId != KrakenKmerClassification.AMBIGUOUS) {
+                foundGood |= goodTaxId[taxonomyId];
+                if (badTaxId[taxonomyId]) {
+                    break;
+                }
+            }
+        }
+        return foundGood;
+    }
+    private static int parseKmerTaxonomyId(byte[] buf, int start, int end) {
+        int taxonomyIdEnd = indexOf(buf, start, end, (byte)':');
+        if (taxonomyIdEnd < 0) taxonomyIdEnd = end;
+        if (taxonomyIdEnd == start + 1 && buf[start] == 'A') {
+            return KrakenKmerClassification.AMBIGUOUS;
+        }
+        return parseInt(buf, start, taxonomyIdEnd);
+    }
+    private static int parseInt(byte[] buf, int start, int end) {
+        if (start >= end) {
+            throw new NumberFormatException("Expected integer, found empty string");
+        }
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = buf[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Expected integer, found " + new String(buf, start, end - start, StandardCharsets.UTF_8));
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+    private static int indexOf(byte[] buf, int start, int end, byte b) {
+        for (int i = start; i < end; i++) {
+            if (buf[i] == b) return i;
+        }
+        return -1;
+    }
+    /**
+     * Offset of the "|:|" token separating the kmers of each read of a read pair
+     */
+    private static int indexOfReadSeparator(byte[] buf, int start, int end) {
+        for (int i = start; i + 2 < end; i++) {
+            if (buf[i] == '|' && buf[i + 1] == ':' && buf[i + 2] == '|') return i;
+        }
+        return -1;
+    }
 }
@@ -0,0 +1,181 @@
+package au.edu.wehi.idsv.kraken;
+
+import au.edu.wehi.idsv.util.ParallelTransformIterator;
+import com.google.common.collect.AbstractIterator;
+import htsjdk.samtools.util.RuntimeIOException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+
+/**
+ * Subsets Kraken2 output to the records of interest.
+ *
+ * The input is read in large blocks that are split on line boundaries into segments.
+ * Segments are evaluated in parallel directly on the raw bytes so no per-record
+ * or per-kmer objects are created. Matching lines are written in input order.
+ */
+public class KrakenOutputFilter {
+    public static final int DEFAULT_SEGMENT_SIZE = 4 * 1024 * 1024;
+    private final KrakenClassificationChecker checker;
+    private final boolean readNameOnly;
+    private final int segmentSize;
+    private long recordsProcessed = 0;
+    private long recordsOfInterest = 0;
+
+    /**
+     * @param checker taxonomic subset to retain
+     * @param readNameOnly write only the read name of matching records instead of the full Kraken2 output line
+     * @param segmentSize number of bytes of input in each segment
+     */
+    public KrakenOutputFilter(KrakenClassificationChecker checker, boolean readNameOnly, int segmentSize) {
+        if (segmentSize <= 0) throw new IllegalArgumentException("segmentSize must be positive");
+        this.checker = checker;
+        this.readNameOnly = readNameOnly;
+        this.segmentSize = segmentSize;
+    }
+
+    public KrakenOutputFilter(KrakenClassificationChecker checker, boolean readNameOnly) {
+        this(checker, readNameOnly, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Writes the Kraken2 output records of interest
+     * @param input Kraken2 output
+     * @param output output stream
+     * @param threadpool threads to evaluate segments on
+     * @param parallelism number of segments to evaluate concurrently
+     */
+    public void filter(File input, OutputStream output, Executor threadpool, int parallelism) throws IOException {
+        try (FileChannel channel = FileChannel.open(input.toPath(), StandardOpenOption.READ)) {
+            Iterator<Segment> it = new ParallelTransformIterator<>(new SegmentIterator(channel), this::filter, parallelism, threadpool);
+            while (it.hasNext()) {
+                Segment s = it.next();
+                output.write(s.buf, 0, s.length);
+                recordsProcessed += s.records;
+                recordsOfInterest += s.recordsOfInterest;
+            }
+        }
+    }
+
+    public long getRecordsProcessed() {
+        return recordsProcessed;
+    }
+
+    public long getRecordsOfInterest() {
+        return recordsOfInterest;
+    }
+
+    /**
+     * Filters the complete lines in the given segment
+     * @return segment containing the output for each line of interest
+     */
+    private Segment filter(Segment in) {
+        // output is never larger than the input plus line terminators
+        Segment out = new Segment(new byte[in.length + 1], 0);
+        int lineStart = 0;
+        while (lineStart < in.length) {
+            int lineEnd = lineStart;
+            while (lineEnd < in.length && in.buf[lineEnd] != '\n') lineEnd++;
+            int next = lineEnd + 1;
+            if (lineEnd > lineStart && in.buf[lineEnd - 1] == '\r') lineEnd--;
+            if (lineEnd > lineStart) {
+                out.records++;
+                if (checker.isOfInterest(in.buf, lineStart, lineEnd)) {
+                    out.recordsOfInterest++;
+                    int writeStart = lineStart;
+                    int writeEnd = lineEnd;
+                    if (readNameOnly) {
+                        writeStart = nextField(in.buf, lineStart, lineEnd);
+                        writeEnd = Math.max(writeStart, nextField(in.buf, writeStart, lineEnd) - 1);
+                    }
+                    System.arraycopy(in.buf, writeStart, out.buf, out.length, writeEnd - writeStart);
+                    out.length += writeEnd - writeStart;
+                    out.buf[out.length++] = '\n';
+                }
+            }
+            lineStart = next;
+        }
+        return out;
+    }
+
+    /**
+     * Offset of the start of the next tab-delimited field, or the end offset plus one if there is no next field
+     */
+    private static int nextField(byte[] buf, int start, int end) {
+        int i = start;
+        while (i < end && buf[i] != '\t') i++;
+        return i + 1;
+    }
+
+    private static class Segment {
+        private final byte[] buf;
+        private int length;
+        private int records = 0;
+        private int recordsOfInterest = 0;
+
+        private Segment(byte[] buf, int length) {
+            this.buf = buf;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Reads the input in blocks ending on line boundaries.
+     * Partial lines at the end of a block are carried over to the next block.
+     */
+    private class SegmentIterator extends AbstractIterator<Segment> {
+        private final FileChannel channel;
+        private byte[] carry = new byte[0];
+        private int carryLength = 0;
+        private boolean eof = false;
+
+        private SegmentIterator(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        protected Segment computeNext() {
+            if (eof && carryLength == 0) return endOfData();
+            byte[] buf = new byte[Math.max(segmentSize, 2 * carryLength)];
+            System.arraycopy(carry, 0, buf, 0, carryLength);
+            int length = carryLength;
+            try {
+                while (true) {
+                    if (!eof) {
+                        ByteBuffer bb = ByteBuffer.wrap(buf, length, buf.length - length);
+                        while (bb.hasRemaining()) {
+                            if (channel.read(bb) < 0) {
+                                eof = true;
+                                break;
+                            }
+                        }
+                        length = bb.position();
+                    }
+                    if (length == 0) return endOfData();
+                    int lastLineEnd = length - 1;
+                    while (lastLineEnd >= 0 && buf[lastLineEnd] != '\n') lastLineEnd--;
+                    if (eof) {
+                        // final line does not require a line terminator
+                        lastLineEnd = length - 1;
+                    }
+                    if (lastLineEnd >= 0) {
+                        carryLength = length - lastLineEnd - 1;
+                        carry = Arrays.copyOfRange(buf, lastLineEnd + 1, length);
+                        return new Segment(buf, lastLineEnd + 1);
+                    }
+                    // line longer than the segment
+                    buf = Arrays.copyOf(buf, 2 * buf.length);
+                }
+            } catch (IOException e) {
+                throw new RuntimeIOException(e);
+            }
+        }
+    }
+}
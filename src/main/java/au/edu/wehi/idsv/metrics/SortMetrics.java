@@ -0,0 +1,41 @@
+package au.edu.wehi.idsv.metrics;
+
+import htsjdk.samtools.metrics.MetricBase;
+
+/**
+ * External sort metrics
+ */
+public class SortMetrics extends MetricBase {
+	/**
+	 * Number of records sorted
+	 */
+	public long RECORDS = 0;
+	/**
+	 * Memory budget for buffered records
+	 */
+	public long MAX_BYTES_IN_RAM = 0;
+	/**
+	 * Number of sorted runs merged into the output. This includes the final in-memory run.
+	 */
+	public long RUNS = 0;
+	/**
+	 * Number of sorted runs spilled to disk
+	 */
+	public long SPILLED_RUNS = 0;
+	/**
+	 * Number of records spilled to disk
+	 */
+	public long SPILLED_RECORDS = 0;
+	/**
+	 * Estimated in-memory size of the records spilled to disk
+	 */
+	public long SPILLED_RECORD_BYTES = 0;
+	/**
+	 * Size on disk of the spilled runs
+	 */
+	public long SPILLED_FILE_BYTES = 0;
+	/**
+	 * Number of intermediate merges of spilled runs required to limit the merge fan-in
+	 */
+	public long INTERMEDIATE_MERGES = 0;
+}
@@ -1,7 +1,6 @@
 package au.edu.wehi.idsv.picard;
 
 import au.edu.wehi.idsv.debruijn.KmerEncodingHelper;
-import au.edu.wehi.idsv.debruijn.PackedSequence;
 import com.google.common.collect.ImmutableMap;
 import htsjdk.samtools.SAMSequenceDictionary;
 import htsjdk.samtools.reference.ReferenceSequence;
@@ -9,16 +8,51 @@ import htsjdk.samtools.reference.ReferenceSequenceFile;
 import htsjdk.samtools.util.Log;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.util.BitSet;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 
 /**
  * 2bit encodes and buffers the entire reference to enable efficient random lookup of small subsequences
+ *
+ * The reference can be persisted to a cache file which is memory mapped on load.
+ * Lookups read directly from the mapped file so loading the cache requires no
+ * deserialisation and all processes on a node share the same physical pages.
+ *
+ * Cache file format (all values big-endian):
+ * <pre>
+ * magic                 8 bytes  "GRIDSS2B"
+ * version               int32    1
+ * sequenceCount         int32
+ * for each sequence, in sequence dictionary order:
+ *   nameLength          int32
+ *   name                nameLength bytes of UTF-8
+ *   length              int32    number of bases
+ *   packedOffset        int64    file offset of the 2bit packed bases
+ *   ambiguousRunCount   int32    number of runs of ambiguous bases
+ *   ambiguousRunOffset  int64    file offset of the ambiguous base run index
+ * packed bases          4 bases per byte, first base in the most significant bits,
+ *                       UCSC 2bit encoding (T=0, C=1, A=2, G=3)
+ * ambiguous run index   ambiguousRunCount int32 0-based run start positions
+ *                       followed by ambiguousRunCount int32 0-based exclusive run end positions.
+ *                       Runs are sorted and non-overlapping. Bases in runs are returned as N.
+ * </pre>
+ * Data sections are 8-byte aligned.
+ *
  * @author Daniel Cameron
  *
  */
 public class TwoBitBufferedReferenceSequenceFile implements ReferenceSequenceFile, ReferenceLookup {
 	private static final Log log = Log.getInstance(TwoBitBufferedReferenceSequenceFile.class);
+	private static final byte[] MAGIC = "GRIDSS2B".getBytes(StandardCharsets.US_ASCII);
+	private static final int VERSION = 1;
+	private static final int BASES_PER_BYTE = 4;
+	private static final int SECTION_ALIGNMENT = 8;
 	private final ReferenceSequenceFile underlying;
 	private final PackedReferenceSequence[] referenceIndexLookup;
 	private File cacheFile;
@@ -42,20 +76,68 @@ public class TwoBitBufferedReferenceSequenceFile implements ReferenceSequenceFil
 		if (seq == null) {
 			seq = addToCache(underlying.getSequenceDictionary().getSequence(referenceIndex).getSequenceName());
 		}
-		if (seq.ambiguous.get(position - 1)) {
+		if (seq.isAmbiguous(position - 1)) {
 			return 'N';
 		}
 		return seq.get(position - 1);
 	}
+	/**
+	 * Determines whether the given file is a reference cache in the current format.
+	 * @param file cache file
+	 * @return true if the file can be loaded by {@link #load(File)}
+	 */
+	public static boolean isCacheFile(File file) {
+		if (!file.isFile()) {
+			return false;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			byte[] magic = new byte[MAGIC.length];
+			in.readFully(magic);
+			return Arrays.equals(MAGIC, magic) && in.readInt() == VERSION;
+		} catch (IOException e) {
+			return false;
+		}
+	}
 	public synchronized void load(File file) {
+		PackedReferenceSequence[] loaded = new PackedReferenceSequence[referenceIndexLookup.length];
 		ImmutableMap.Builder<String, PackedReferenceSequence> builder = ImmutableMap.<String, PackedReferenceSequence>builder();
-		try(FileInputStream fis = new FileInputStream(file)) {
-			try(ObjectInputStream ois = new ObjectInputStream(fis)) {
-				for (int i =  0; i < referenceIndexLookup.length; i++) {
-					referenceIndexLookup[i] = (PackedReferenceSequence)ois.readObject();
-					builder.put(referenceIndexLookup[i].name, referenceIndexLookup[i]);
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+				DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			byte[] magic = new byte[MAGIC.length];
+			in.readFully(magic);
+			int version = in.readInt();
+			if (!Arrays.equals(MAGIC, magic) || version != VERSION) {
+				log.warn(file + " is not a GRIDSS reference cache file of the current format. Ignoring. Delete this file or rerun PrepareReference to regenerate.");
+				return;
+			}
+			int sequenceCount = in.readInt();
+			if (sequenceCount != referenceIndexLookup.length) {
+				log.warn(String.format("Reference genome cache %s contains %d sequences but %d were expected. Ignoring cache.", file, sequenceCount, referenceIndexLookup.length));
+				return;
+			}
+			for (int i = 0; i < sequenceCount; i++) {
+				byte[] name = new byte[in.readInt()];
+				in.readFully(name);
+				int length = in.readInt();
+				long packedOffset = in.readLong();
+				int ambiguousRunCount = in.readInt();
+				long ambiguousRunOffset = in.readLong();
+				String contig = new String(name, StandardCharsets.UTF_8);
+				if (!contig.equals(underlying.getSequenceDictionary().getSequence(i).getSequenceName())) {
+					log.warn(String.format("Reference genome cache %s does not match the reference sequence dictionary (found %s, expected %s). Ignoring cache.", file, contig, underlying.getSequenceDictionary().getSequence(i).getSequenceName()));
+					return;
 				}
+				ByteBuffer packed = channel.map(FileChannel.MapMode.READ_ONLY, packedOffset, packedByteCount(length));
+				IntBuffer runs = channel.map(FileChannel.MapMode.READ_ONLY, ambiguousRunOffset, 2L * Integer.BYTES * ambiguousRunCount).asIntBuffer();
+				runs.limit(ambiguousRunCount);
+				IntBuffer ambiguousStart = runs.slice();
+				runs.clear();
+				runs.position(ambiguousRunCount);
+				IntBuffer ambiguousEnd = runs.slice();
+				loaded[i] = new PackedReferenceSequence(contig, i, length, packed, ambiguousStart, ambiguousEnd);
+				builder.put(contig, loaded[i]);
 			}
+			System.arraycopy(loaded, 0, referenceIndexLookup, 0, loaded.length);
 			cache = builder.build();
 		} catch (Exception e) {
 			log.error("Error loading reference genome from cache " + file, e);
@@ -71,54 +153,187 @@ public class TwoBitBufferedReferenceSequenceFile implements ReferenceSequenceFil
 				.stream()
 				.map(s -> s.getSequenceName())
 				.forEach(s -> cacheLoad(s));
-		try(FileOutputStream fos = new FileOutputStream(file)) {
-			try(ObjectOutputStream oos = new ObjectOutputStream(fos)) {
-				for (int i =  0; i < referenceIndexLookup.length; i++) {
-					oos.writeObject(referenceIndexLookup[i]);
-				}
-			}
+		// Write to a temporary file first so concurrent processes never map a partially written cache
+		File tmp = null;
+		try {
+			tmp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+			writeCache(tmp);
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
 		} catch (Exception e) {
 			log.error("Error saving reference genome to cache file " + file, e);
 			try {
-				if (file.exists()) {
-					Files.delete(file.toPath());
+				if (tmp != null) {
+					Files.deleteIfExists(tmp.toPath());
 				}
 			} catch (IOException e1) {
 				// swallow recovery exception
 			}
 		}
 	}
-	private static class PackedReferenceSequence extends PackedSequence implements Serializable {
+	private void writeCache(File file) throws IOException {
+		byte[][] names = new byte[referenceIndexLookup.length][];
+		long headerSize = MAGIC.length + 2 * Integer.BYTES;
+		for (int i = 0; i < referenceIndexLookup.length; i++) {
+			names[i] = referenceIndexLookup[i].name.getBytes(StandardCharsets.UTF_8);
+			headerSize += 3 * Integer.BYTES + 2 * Long.BYTES + names[i].length;
+		}
+		long[] packedOffset = new long[referenceIndexLookup.length];
+		long[] ambiguousRunOffset = new long[referenceIndexLookup.length];
+		long offset = align(headerSize);
+		for (int i = 0; i < referenceIndexLookup.length; i++) {
+			PackedReferenceSequence seq = referenceIndexLookup[i];
+			packedOffset[i] = offset;
+			offset = align(offset + packedByteCount(seq.length));
+			ambiguousRunOffset[i] = offset;
+			offset = align(offset + 2L * Integer.BYTES * seq.ambiguousRunCount());
+		}
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+			out.write(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(referenceIndexLookup.length);
+			for (int i = 0; i < referenceIndexLookup.length; i++) {
+				PackedReferenceSequence seq = referenceIndexLookup[i];
+				out.writeInt(names[i].length);
+				out.write(names[i]);
+				out.writeInt(seq.length);
+				out.writeLong(packedOffset[i]);
+				out.writeInt(seq.ambiguousRunCount());
+				out.writeLong(ambiguousRunOffset[i]);
+			}
+			long written = headerSize;
+			for (int i = 0; i < referenceIndexLookup.length; i++) {
+				PackedReferenceSequence seq = referenceIndexLookup[i];
+				written = pad(out, written, packedOffset[i]);
+				if (seq.packed.hasArray()) {
+					out.write(seq.packed.array(), seq.packed.arrayOffset(), seq.packed.limit());
+				} else {
+					for (int j = 0; j < seq.packed.limit(); j++) {
+						out.write(seq.packed.get(j));
+					}
+				}
+				written += seq.packed.limit();
+				written = pad(out, written, ambiguousRunOffset[i]);
+				for (int j = 0; j < seq.ambiguousRunCount(); j++) {
+					out.writeInt(seq.ambiguousStart.get(j));
+				}
+				for (int j = 0; j < seq.ambiguousRunCount(); j++) {
+					out.writeInt(seq.ambiguousEnd.get(j));
+				}
+				written += 2L * Integer.BYTES * seq.ambiguousRunCount();
+			}
+		}
+	}
+	private static long pad(DataOutputStream out, long position, long target) throws IOException {
+		while (position < target) {
+			out.write(0);
+			position++;
+		}
+		return position;
+	}
+	private static long align(long offset) {
+		return (offset + SECTION_ALIGNMENT - 1) / SECTION_ALIGNMENT * SECTION_ALIGNMENT;
+	}
+	private static int packedByteCount(int length) {
+		return (int)(((long)length + BASES_PER_BYTE - 1) / BASES_PER_BYTE);
+	}
+	private static class PackedReferenceSequence {
 		private final String name;
-	    private final int contigIndex;
-	    private final long length;
-	    private final BitSet ambiguous;
-		public PackedReferenceSequence(ReferenceSequence seq) {
-			super(seq.getBases(), false, false);
-			this.name = seq.getName();
-			this.contigIndex = seq.getContigIndex();
-			this.length = seq.length();
-			this.ambiguous = new BitSet(seq.length());
+		private final int contigIndex;
+		private final int length;
+		/**
+		 * First base is packed in the MSBs of the first byte
+		 */
+		private final ByteBuffer packed;
+		/**
+		 * 0-based start positions of the sorted runs of ambiguous bases
+		 */
+		private final IntBuffer ambiguousStart;
+		/**
+		 * 0-based exclusive end positions of the sorted runs of ambiguous bases
+		 */
+		private final IntBuffer ambiguousEnd;
+		private PackedReferenceSequence(String name, int contigIndex, int length, ByteBuffer packed, IntBuffer ambiguousStart, IntBuffer ambiguousEnd) {
+			this.name = name;
+			this.contigIndex = contigIndex;
+			this.length = length;
+			this.packed = packed;
+			this.ambiguousStart = ambiguousStart;
+			this.ambiguousEnd = ambiguousEnd;
+		}
+		public static PackedReferenceSequence create(ReferenceSequence seq) {
 			byte[] seqBases = seq.getBases();
-			for (int i = 0; i < length; i++) {
+			byte[] packed = new byte[packedByteCount(seqBases.length)];
+			int runCount = 0;
+			for (int i = 0; i < seqBases.length; i++) {
+				int encoded = KmerEncodingHelper.picardBaseToEncoded(seqBases[i]);
+				packed[i / BASES_PER_BYTE] |= encoded << (2 * (BASES_PER_BYTE - 1 - i % BASES_PER_BYTE));
+				if (KmerEncodingHelper.isAmbiguous(seqBases[i]) && (i == 0 || !KmerEncodingHelper.isAmbiguous(seqBases[i - 1]))) {
+					runCount++;
+				}
+			}
+			int[] start = new int[runCount];
+			int[] end = new int[runCount];
+			int run = 0;
+			for (int i = 0; i < seqBases.length; i++) {
 				if (KmerEncodingHelper.isAmbiguous(seqBases[i])) {
-					ambiguous.set(i);
+					if (i == 0 || !KmerEncodingHelper.isAmbiguous(seqBases[i - 1])) {
+						start[run] = i;
+					}
+					if (i == seqBases.length - 1 || !KmerEncodingHelper.isAmbiguous(seqBases[i + 1])) {
+						end[run++] = i + 1;
+					}
 				}
 			}
+			return new PackedReferenceSequence(seq.getName(), seq.getContigIndex(), seqBases.length, ByteBuffer.wrap(packed), IntBuffer.wrap(start), IntBuffer.wrap(end));
+		}
+		public int ambiguousRunCount() {
+			return ambiguousStart.limit();
+		}
+		/**
+		 * Index of the last ambiguous run starting at or before the given position
+		 * @param offset 0-based position
+		 * @return run index, or -1 if all runs start after the given position
+		 */
+		private int floorRun(int offset) {
+			int low = 0;
+			int high = ambiguousRunCount() - 1;
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				if (ambiguousStart.get(mid) <= offset) {
+					low = mid + 1;
+				} else {
+					high = mid - 1;
+				}
+			}
+			return high;
+		}
+		public boolean isAmbiguous(int offset) {
+			int run = floorRun(offset);
+			return run >= 0 && offset < ambiguousEnd.get(run);
+		}
+		public byte get(int offset) {
+			if (offset < 0 || offset >= length) throw new IllegalArgumentException("offset must fall within sequence");
+			int encoded = packed.get(offset / BASES_PER_BYTE) >>> (2 * (BASES_PER_BYTE - 1 - offset % BASES_PER_BYTE));
+			return KmerEncodingHelper.encodedToPicardBase(encoded);
 		}
 		public ReferenceSequence getSequence() {
 			return getSubsequenceAt(1, length);
 		}
 		public ReferenceSequence getSubsequenceAt(long start, long stop) {
+			int offset = (int)(start - 1);
 			int length = (int)(stop - start + 1);
-			ReferenceSequence seq = new ReferenceSequence(name, contigIndex, getBytes((int)(start - 1), length));
-			byte[] seqBases = seq.getBases();
+			byte[] seqBases = new byte[length];
 			for (int i = 0; i < length; i++) {
-				if (ambiguous.get((int)start - 1 + i)) {
-					seqBases[i] = 'N';
+				seqBases[i] = get(offset + i);
+			}
+			for (int run = Math.max(0, floorRun(offset)); run < ambiguousRunCount() && ambiguousStart.get(run) < offset + length; run++) {
+				int from = Math.max(offset, ambiguousStart.get(run));
+				int to = Math.min(offset + length, ambiguousEnd.get(run));
+				if (from < to) {
+					Arrays.fill(seqBases, from - offset, to - offset, (byte)'N');
 				}
 			}
-			return seq;
+			return new ReferenceSequence(name, contigIndex, seqBases);
 		}
 	}
 	@Override
@@ -154,6 +369,10 @@ public class TwoBitBufferedReferenceSequenceFile implements ReferenceSequenceFil
 					log.info("Saving reference genome cache to " + cacheFile);
 					save(cacheFile);
 					log.info("Saving reference genome cache complete");
+					if (cacheFile.exists()) {
+						// switch to the memory mapped copy so the heap copy can be reclaimed
+						load(cacheFile);
+					}
 				}
 			}
 			// Only attempt load/save once
@@ -170,7 +389,7 @@ public class TwoBitBufferedReferenceSequenceFile implements ReferenceSequenceFil
 		}
 		log.info("Caching reference genome contig " + contig);
 		ReferenceSequence fullContigSequence = underlying.getSequence(contig);
-		seq = new PackedReferenceSequence(fullContigSequence);
+		seq = PackedReferenceSequence.create(fullContigSequence);
 		cache = ImmutableMap.<String, PackedReferenceSequence>builder()
 				.putAll(cache)
 				.put(contig, seq)
@@ -196,6 +415,6 @@ public class TwoBitBufferedReferenceSequenceFile implements ReferenceSequenceFil
 	}
 	@Override
 	public void close() throws IOException {
-		underlying.close();	
+		underlying.close();
 	}
 }
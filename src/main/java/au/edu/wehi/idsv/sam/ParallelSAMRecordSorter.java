@@ -0,0 +1,376 @@
+package au.edu.wehi.idsv.sam;
+
+import au.edu.wehi.idsv.metrics.SortMetrics;
+import au.edu.wehi.idsv.util.FileHelper;
+import au.edu.wehi.idsv.util.StableMergingIterator;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.PeekingIterator;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import htsjdk.samtools.BAMRecordCodec;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecord.SAMTagAndValue;
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.samtools.util.CloserUtil;
+import htsjdk.samtools.util.Log;
+import htsjdk.samtools.util.RuntimeIOException;
+import htsjdk.samtools.util.TempStreamFactory;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * External SAMRecord sorter with a memory budget in bytes rather than records.
+ *
+ * Records are buffered until the estimated size of the buffer reaches the run budget.
+ * Full buffers are sorted and spilled to disk on a background thread while the next
+ * run is buffered. Runs are sorted using a parallel sort and spilled using the BAM record
+ * encoding wrapped in the htsjdk temporary file block codec (snappy when available).
+ *
+ * The final run is not spilled but merged directly from memory with the spilled runs.
+ * Runs are decoded synchronously during the merge. The number of runs merged at once is
+ * limited so the merge read buffers fit within the memory budget, with intermediate merge
+ * passes performed when there are more spilled runs than can be merged at once.
+ *
+ * Sorters using the default memory budget share it with all other such sorters in progress.
+ *
+ * @author Daniel Cameron
+ *
+ */
+public class ParallelSAMRecordSorter implements Closeable {
+	private static final Log log = Log.getInstance(ParallelSAMRecordSorter.class);
+	private static final ExecutorService spillThreadpool = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+			.setDaemon(true)
+			.setNameFormat("sortSpill-%d")
+			.build());
+	/**
+	 * Approximate JVM object overhead of a SAMRecord excluding variable length fields
+	 */
+	private static final int RECORD_OVERHEAD = 256;
+	private static final int ARRAY_OVERHEAD = 16;
+	private static final int STRING_OVERHEAD = 40;
+	private static final int CIGAR_ELEMENT_SIZE = 24;
+	private static final int TAG_OVERHEAD = 48;
+	/**
+	 * Approximate size of the read buffers of each run being merged
+	 */
+	private static final int MERGE_BUFFER_BYTES = 2 * htsjdk.samtools.Defaults.BUFFER_SIZE;
+	/**
+	 * Number of sorters currently sharing the default memory budget
+	 */
+	private static final AtomicInteger sharedBudgetSorters = new AtomicInteger();
+	private final SAMFileHeader header;
+	private final Comparator<SAMRecord> comparator;
+	private final File tmpDir;
+	private final long maxBytesInRam;
+	private final boolean sharedBudget;
+	private final int concurrentSpills;
+	private final Semaphore spillSlots;
+	private final List<Future<File>> spilledRuns = new ArrayList<>();
+	/**
+	 * Spilled runs to merge into the output
+	 */
+	private List<File> runs;
+	private final List<File> spillFiles = Collections.synchronizedList(new ArrayList<>());
+	private final SortMetrics metrics = new SortMetrics();
+	private List<SAMRecord> buffer = new ArrayList<>();
+	private long bufferBytes = 0;
+	private boolean doneAdding = false;
+	private boolean cleanedUp = false;
+	/**
+	 * Creates a sorter that shares the default memory budget with all other sorters using the default budget
+	 * @param header SAM header of records to sort
+	 * @param comparator sort order
+	 * @param concurrentSpills maximum number of runs concurrently sorted and spilled in the background
+	 * @param tmpDir directory to write spilled runs to
+	 */
+	public ParallelSAMRecordSorter(SAMFileHeader header, Comparator<SAMRecord> comparator, int concurrentSpills, File tmpDir) {
+		this(header, comparator, getDefaultMaxBytesInRam(), true, concurrentSpills, tmpDir);
+	}
+	/**
+	 * @param header SAM header of records to sort
+	 * @param comparator sort order
+	 * @param maxBytesInRam maximum estimated size of buffered records. This budget is shared between the run being
+	 * buffered and the runs being spilled.
+	 * @param concurrentSpills maximum number of runs concurrently sorted and spilled in the background
+	 * @param tmpDir directory to write spilled runs to
+	 */
+	public ParallelSAMRecordSorter(SAMFileHeader header, Comparator<SAMRecord> comparator, long maxBytesInRam, int concurrentSpills, File tmpDir) {
+		this(header, comparator, maxBytesInRam, false, concurrentSpills, tmpDir);
+	}
+	private ParallelSAMRecordSorter(SAMFileHeader header, Comparator<SAMRecord> comparator, long maxBytesInRam, boolean sharedBudget, int concurrentSpills, File tmpDir) {
+		if (maxBytesInRam <= 0) throw new IllegalArgumentException("maxBytesInRam must be positive");
+		if (concurrentSpills <= 0) throw new IllegalArgumentException("concurrentSpills must be positive");
+		this.header = header;
+		this.comparator = comparator;
+		this.tmpDir = tmpDir;
+		this.maxBytesInRam = maxBytesInRam;
+		this.sharedBudget = sharedBudget;
+		this.concurrentSpills = concurrentSpills;
+		this.spillSlots = new Semaphore(concurrentSpills);
+		if (sharedBudget) {
+			sharedBudgetSorters.incrementAndGet();
+		}
+		this.metrics.MAX_BYTES_IN_RAM = maxBytesInRam;
+	}
+	/**
+	 * Memory budget of each run. The budget of a sorter sharing the default budget
+	 * shrinks as other sorters start and grows as they complete.
+	 */
+	private long runBudget() {
+		long budget = maxBytesInRam;
+		if (sharedBudget) {
+			budget /= Math.max(1, sharedBudgetSorters.get());
+		}
+		return Math.max(1, budget / (concurrentSpills + 1));
+	}
+	/**
+	 * Default memory budget for sorting. This budget is shared between all sorters using the default budget.
+	 */
+	public static long getDefaultMaxBytesInRam() {
+		if (gridss.Defaults.SORT_BUFFER_MB > 0) {
+			return gridss.Defaults.SORT_BUFFER_MB * 1024L * 1024L;
+		}
+		return Runtime.getRuntime().maxMemory() / 4;
+	}
+	public void add(SAMRecord r) {
+		if (doneAdding) throw new IllegalStateException("Cannot add records after doneAdding() has been called");
+		buffer.add(r);
+		bufferBytes += estimateSize(r);
+		metrics.RECORDS++;
+		if (bufferBytes >= runBudget()) {
+			spill();
+		}
+	}
+	/**
+	 * Estimated memory footprint of the given record
+	 */
+	public static long estimateSize(SAMRecord r) {
+		long size = RECORD_OVERHEAD;
+		String readName = r.getReadName();
+		if (readName != null) {
+			size += STRING_OVERHEAD + 2 * readName.length();
+		}
+		size += ARRAY_OVERHEAD + r.getReadLength();
+		size += ARRAY_OVERHEAD + r.getBaseQualities().length;
+		size += CIGAR_ELEMENT_SIZE * r.getCigarLength();
+		for (SAMTagAndValue tv : r.getAttributes()) {
+			size += TAG_OVERHEAD + valueSize(tv.value);
+		}
+		return size;
+	}
+	private static long valueSize(Object value) {
+		if (value instanceof String) return STRING_OVERHEAD + 2 * ((String)value).length();
+		if (value instanceof byte[]) return ARRAY_OVERHEAD + ((byte[])value).length;
+		if (value instanceof short[]) return ARRAY_OVERHEAD + 2 * ((short[])value).length;
+		if (value instanceof int[]) return ARRAY_OVERHEAD + 4 * ((int[])value).length;
+		if (value instanceof float[]) return ARRAY_OVERHEAD + 4 * ((float[])value).length;
+		return ARRAY_OVERHEAD;
+	}
+	private void spill() {
+		final SAMRecord[] run = buffer.toArray(new SAMRecord[0]);
+		final long runBytes = bufferBytes;
+		buffer = new ArrayList<>();
+		bufferBytes = 0;
+		try {
+			spillSlots.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted waiting to spill sorted run", e);
+		}
+		try {
+			spilledRuns.add(spillThreadpool.submit(() -> {
+				try {
+					return writeRun(run, runBytes);
+				} finally {
+					spillSlots.release();
+				}
+			}));
+		} catch (RejectedExecutionException e) {
+			spillSlots.release();
+			throw e;
+		}
+	}
+	private File writeRun(SAMRecord[] run, long runBytes) throws IOException {
+		Arrays.parallelSort(run, comparator);
+		File file = File.createTempFile("gridss.sort.", ".tmp", tmpDir);
+		spillFiles.add(file);
+		BAMRecordCodec codec = new BAMRecordCodec(header);
+		try (OutputStream os = new TempStreamFactory().wrapTempOutputStream(new FileOutputStream(file), htsjdk.samtools.Defaults.BUFFER_SIZE)) {
+			codec.setOutputStream(os, file.getName());
+			for (SAMRecord r : run) {
+				codec.encode(r);
+			}
+		}
+		synchronized (metrics) {
+			metrics.SPILLED_RUNS++;
+			metrics.SPILLED_RECORDS += run.length;
+			metrics.SPILLED_RECORD_BYTES += runBytes;
+			metrics.SPILLED_FILE_BYTES += file.length();
+		}
+		return file;
+	}
+	/**
+	 * Completes sorting of the buffered records. No more records can be added.
+	 */
+	public void doneAdding() {
+		if (doneAdding) return;
+		doneAdding = true;
+		SAMRecord[] run = buffer.toArray(new SAMRecord[0]);
+		buffer = null;
+		Arrays.parallelSort(run, comparator);
+		buffer = Arrays.asList(run);
+		List<File> files = new ArrayList<>(spilledRuns.size());
+		for (Future<File> f : spilledRuns) {
+			try {
+				files.add(f.get());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("Interrupted waiting for sorted run to be written", e);
+			} catch (ExecutionException e) {
+				throw new RuntimeException("Error writing sorted run", e.getCause());
+			}
+		}
+		try {
+			runs = reduceRuns(files);
+		} catch (IOException e) {
+			throw new RuntimeIOException("Error merging sorted runs", e);
+		}
+		synchronized (metrics) {
+			metrics.RUNS = runs.size() + (buffer.isEmpty() ? 0 : 1);
+		}
+	}
+	/**
+	 * Maximum number of runs to merge at once.
+	 * Once all runs have been spilled, the memory reserved for spilling runs is used for the merge read buffers.
+	 */
+	private int mergeFanIn() {
+		long mergeBudget = concurrentSpills * runBudget();
+		return (int)Math.max(2, Math.min(gridss.Defaults.SORT_MAX_MERGE_FAN_IN, mergeBudget / MERGE_BUFFER_BYTES));
+	}
+	/**
+	 * Merges consecutive spilled runs until the remaining runs can be merged with the in-memory run at once.
+	 * Consecutive runs are merged so the merge remains stable.
+	 */
+	private List<File> reduceRuns(List<File> files) throws IOException {
+		int fanIn = mergeFanIn();
+		while (files.size() > fanIn - 1) {
+			List<File> merged = new ArrayList<>((files.size() + fanIn - 1) / fanIn);
+			for (int i = 0; i < files.size(); i += fanIn) {
+				List<File> group = files.subList(i, Math.min(files.size(), i + fanIn));
+				merged.add(group.size() == 1 ? group.get(0) : mergeRuns(group));
+			}
+			files = merged;
+		}
+		return files;
+	}
+	private File mergeRuns(List<File> group) throws IOException {
+		File file = File.createTempFile("gridss.sort.", ".tmp", tmpDir);
+		spillFiles.add(file);
+		BAMRecordCodec codec = new BAMRecordCodec(header);
+		try (StableMergingIterator<SAMRecord> it = merge(group, Collections.emptyList())) {
+			try (OutputStream os = new TempStreamFactory().wrapTempOutputStream(new FileOutputStream(file), htsjdk.samtools.Defaults.BUFFER_SIZE)) {
+				codec.setOutputStream(os, file.getName());
+				while (it.hasNext()) {
+					codec.encode(it.next());
+				}
+			}
+		}
+		for (File f : group) {
+			FileHelper.delete(f, true);
+			spillFiles.remove(f);
+		}
+		synchronized (metrics) {
+			metrics.INTERMEDIATE_MERGES++;
+		}
+		return file;
+	}
+	/**
+	 * Iterates over the sorted records.
+	 */
+	public CloseableIterator<SAMRecord> iterator() {
+		if (!doneAdding) throw new IllegalStateException("doneAdding() not called");
+		if (cleanedUp) throw new IllegalStateException("Sorter has already been cleaned up");
+		return merge(runs, buffer);
+	}
+	public SortMetrics getMetrics() {
+		return metrics;
+	}
+	/**
+	 * Deletes spilled runs
+	 */
+	public void cleanup() {
+		if (cleanedUp) return;
+		cleanedUp = true;
+		for (Future<File> f : spilledRuns) {
+			try {
+				f.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			} catch (ExecutionException e) {
+				// already reported
+			}
+		}
+		synchronized (spillFiles) {
+			for (File f : spillFiles) {
+				try {
+					FileHelper.delete(f, true);
+				} catch (IOException e) {
+					log.warn(e, "Unable to delete " + f);
+				}
+			}
+			spillFiles.clear();
+		}
+		buffer = null;
+		if (sharedBudget) {
+			sharedBudgetSorters.decrementAndGet();
+		}
+	}
+	@Override
+	public void close() {
+		cleanup();
+	}
+	private class RunIterator extends AbstractIterator<SAMRecord> implements PeekingIterator<SAMRecord>, Closeable {
+		private final InputStream is;
+		private final BAMRecordCodec codec = new BAMRecordCodec(header);
+		public RunIterator(File file) throws IOException {
+			this.is = new TempStreamFactory().wrapTempInputStream(new FileInputStream(file), htsjdk.samtools.Defaults.BUFFER_SIZE);
+			codec.setInputStream(is, file.getName());
+		}
+		@Override
+		protected SAMRecord computeNext() {
+			SAMRecord r = codec.decode();
+			if (r == null) {
+				close();
+				return endOfData();
+			}
+			return r;
+		}
+		@Override
+		public void close() {
+			CloserUtil.close(is);
+		}
+	}
+	/**
+	 * K-way merge of the sorted runs.
+	 * Ties are broken by run order so sorting is stable with respect to the input order.
+	 * @param files spilled runs
+	 * @param inMemory sorted records following the spilled runs in input order
+	 */
+	private StableMergingIterator<SAMRecord> merge(List<File> files, List<SAMRecord> inMemory) {
+		List<Iterator<SAMRecord>> its = new ArrayList<>(files.size() + 1);
+		try {
+			for (File file : files) {
+				its.add(new RunIterator(file));
+			}
+		} catch (IOException e) {
+			its.forEach(CloserUtil::close);
+			throw new RuntimeIOException(e);
+		}
+		its.add(inMemory.iterator());
+		return new StableMergingIterator<>(its, comparator);
+	}
+}
@@ -3,6 +3,7 @@ package au.edu.wehi.idsv.sam;
 import au.edu.wehi.idsv.Defaults;
 import au.edu.wehi.idsv.FileSystemContext;
 import au.edu.wehi.idsv.IntermediateFileUtil;
+import au.edu.wehi.idsv.metrics.SortMetrics;
 import au.edu.wehi.idsv.util.AsyncBufferedIterator;
 import au.edu.wehi.idsv.util.FileHelper;
 import au.edu.wehi.idsv.validation.OrderAssertingIterator;
@@ -64,6 +65,7 @@ public class SAMFileUtil {
 		private final Function<SAMFileHeader, SAMFileHeader> headerCallback;
 		private final SamReaderFactory readerFactory;
 		private final SAMFileWriterFactory writerFactory;
+		private SortMetrics metrics = null;
 		public SortCallable(FileSystemContext fsc, File unsorted, File output, SortOrder sortOrder, Function<SAMFileHeader, SAMFileHeader> headerCallback) {
 			this(fsc, unsorted, output, null, sortOrder, headerCallback, null, null);
 		}
@@ -85,11 +87,18 @@ public class SAMFileUtil {
 			this.sortOrder = sortOrder;
 			this.headerCallback = headerCallback;
 			this.readerFactory = readerFactory == null ? SamReaderFactory.makeDefault() : readerFactory;
-			this.writerFactory = writerFactory == null ? new SAMFileWriterFactory() : writerFactory;
+			// encode and compress output on a background thread so it overlaps the merge
+			this.writerFactory = writerFactory == null ? new SAMFileWriterFactory().setUseAsyncIo(true) : writerFactory;
 			if (this.sortComparator == null) {
 				throw new IllegalArgumentException("Sort order not specified");
 			}
 		}
+		/**
+		 * Sort metrics. Only available after records have been sorted.
+		 */
+		public SortMetrics getMetrics() {
+			return metrics;
+		}
 		@Override
 		public Void call() throws IOException {
 			if (IntermediateFileUtil.checkIntermediate(output)) {
@@ -114,7 +123,7 @@ public class SAMFileUtil {
 					break;
 			}
 			log.info("Sorting " + unsorted);
-			SortingCollection<SAMRecord> collection = null;
+			ParallelSAMRecordSorter sorter = null;
 			if (tmpFile != output && tmpFile.exists()) {
 				FileHelper.delete(tmpFile, true);
 			}
@@ -127,21 +136,20 @@ public class SAMFileUtil {
 						header = headerCallback.apply(header);
 					}
 					try (CloseableIterator<SAMRecord> rit = reader.iterator()) {
-						collection = SortingCollection.newInstance(
-								SAMRecord.class,
-								new BAMRecordCodec(header),
+						sorter = new ParallelSAMRecordSorter(
+								header,
 								sortComparator,
-								fsc.getMaxBufferedRecordsPerFile(),
-								fsc.getTemporaryDirectory().toPath());
+								gridss.Defaults.SORT_CONCURRENT_SPILLS,
+								fsc.getTemporaryDirectory());
 						while (rit.hasNext()) {
-							collection.add(rit.next());
+							sorter.add(rit.next());
 						}
 					}
 				}
-				collection.doneAdding();
+				sorter.doneAdding();
 				try (SAMFileWriter writer = writerFactory.makeSAMOrBAMWriter(header, true, tmpFile)) {
 					writer.setProgressLogger(new ProgressLogger(log, 10000000));
-					try (CloseableIterator<SAMRecord> wit = collection.iterator()) {
+					try (CloseableIterator<SAMRecord> wit = sorter.iterator()) {
 						@SuppressWarnings("resource") // bad eclipse warning 
 						Iterator<SAMRecord> it = wit;
 				    	if (Defaults.SANITY_CHECK_ITERATORS) {
@@ -152,13 +160,16 @@ public class SAMFileUtil {
 						}
 					}
 				}
-				collection.cleanup();
-				collection = null;
+				metrics = sorter.getMetrics();
+				log.info(String.format("Sorted %d records from %s using %d runs. Spilled %d runs (%d records, %d bytes) to disk.",
+						metrics.RECORDS, unsorted, metrics.RUNS, metrics.SPILLED_RUNS, metrics.SPILLED_RECORDS, metrics.SPILLED_FILE_BYTES));
+				sorter.cleanup();
+				sorter = null;
 				if (tmpFile != output) {
 					FileHelper.move(tmpFile, output, true);
 				}
 			} finally {
-				if (collection != null) collection.cleanup();
+				if (sorter != null) sorter.cleanup();
 				if (tmpFile != output & tmpFile.exists()) {
 					FileHelper.delete(tmpFile, true);
 				}
@@ -26,6 +26,7 @@ import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 
 import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
@@ -1719,19 +1720,40 @@ public class SAMRecordUtil {
 			.mapToInt(ce -> ce.getLength()).sum();
 		return lengthWithHardClipping;
 	}
+	/**
+	 * Parsed value of a tag. The tag value is retained so a stale parse is detected if the tag is updated.
+	 */
+	private static class ParsedTag<T> {
+		private final String tagValue;
+		private final T parsed;
+		private ParsedTag(String tagValue, T parsed) {
+			this.tagValue = tagValue;
+			this.parsed = parsed;
+		}
+	}
+	@SuppressWarnings("unchecked")
+	private static <T> T getCachedParse(SAMRecord r, String tag, Function<String, T> parser) {
+		String s = r.getStringAttribute(tag);
+		if (s == null) return null;
+		Object cached = r.getTransientAttribute(tag);
+		if (cached instanceof ParsedTag && s.equals(((ParsedTag<T>)cached).tagValue)) {
+			return ((ParsedTag<T>)cached).parsed;
+		}
+		T parsed = parser.apply(s);
+		r.setTransientAttribute(tag, new ParsedTag<>(s, parsed));
+		return parsed;
+	}
 	public static Cigar getCachedMateCigar(SAMRecord r) {
-		Object cached = r.getTransientAttribute(SAMTag.MC.name());
-		if (cached != null) {
-			return (Cigar)cached;
-		} else {
-			String s = r.getStringAttribute(SAMTag.MC.name());
-			if (s != null) {
-				Cigar cigar = TextCigarCodec.decode(s);
-				r.setTransientAttribute(cigar, SAMTag.MC.name());
-				return cigar;
-			}
-		}
-		return null;
+		return getCachedParse(r, SAMTag.MC.name(), TextCigarCodec::decode);
+	}
+	/**
+	 * Split read alignments in the SA tag.
+	 * The SA tag is parsed once and cached on the record until the SA tag changes.
+	 * @return unmodifiable list of split read alignments
+	 */
+	public static List<ChimericAlignment> getCachedChimericAlignments(SAMRecord r) {
+		List<ChimericAlignment> list = getCachedParse(r, SAMTag.SA.name(), sa -> Collections.unmodifiableList(ChimericAlignment.getChimericAlignments(sa)));
+		return list == null ? Collections.emptyList() : list;
 	}
 	public static boolean forceValidContigBounds(SAMRecord r, SAMSequenceDictionary dict) {
 		if (r.getReadUnmappedFlag()) return false;
@@ -3,12 +3,15 @@ package au.edu.wehi.idsv.util;
 import com.google.common.collect.PeekingIterator;
 import htsjdk.samtools.util.Log;
 
+import java.io.Closeable;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -23,16 +26,20 @@ import java.util.concurrent.atomic.AtomicInteger;
  * @author Daniel Cameron
  *
  */
-public class DuplicatingIterable<T> implements Iterable<T> {
+public class DuplicatingIterable<T> implements Iterable<T>, Closeable {
 	private static final Log log = Log.getInstance(DuplicatingIterable.class);
 	private static final Object endofstream = new Object();
 	private static final AtomicInteger threadCount = new AtomicInteger(0);
+	/**
+	 * Interval at which blocked feeders and consumers check whether we have been closed
+	 */
+	private static final long CLOSE_POLL_INTERVAL_MS = 100;
 	private final Iterator<T> it;
 	private final List<DuplicatingIterableIterator> iterators = new ArrayList<DuplicatingIterableIterator>();
 	private final List<BlockingQueue<Object>> queues = new ArrayList<BlockingQueue<Object>>();
 	private int iteratorsRequested = 0;
-	private FeedingThread thread;
 	private volatile Exception error = null;
+	private volatile boolean closed = false;
 	
 	/**
 	 * Duplicates an iterator
@@ -42,6 +49,21 @@ public class DuplicatingIterable<T> implements Iterable<T> {
 	 * for other iterators to catch up
 	 */
 	public DuplicatingIterable(int nIterators, Iterator<T> it,  int maxIteratorDifference) {
+		this(nIterators, it, maxIteratorDifference, feeder -> {
+			Thread thread = new Thread(feeder);
+			thread.setName(String.format("DuplicatingIterable-%d", threadCount.incrementAndGet()));
+			thread.start();
+		});
+	}
+	/**
+	 * Duplicates an iterator
+	 * @param nIterators number of consuming iterators
+	 * @param it underlying iterator
+	 * @param maxIteratorDifference maximum number of records an iterator can traverse before blocking to wait
+	 * for other iterators to catch up
+	 * @param feedExecutor executor used to run the task feeding the consuming iterators
+	 */
+	public DuplicatingIterable(int nIterators, Iterator<T> it,  int maxIteratorDifference, Executor feedExecutor) {
 		if (it == null) throw new IllegalArgumentException();
 		if (maxIteratorDifference <= 0) throw new IllegalArgumentException("buffer size must be greater than zero.");
 		this.it = it;
@@ -49,9 +71,15 @@ public class DuplicatingIterable<T> implements Iterable<T> {
 			queues.add(new ArrayBlockingQueue<Object>(maxIteratorDifference));
 			iterators.add(new DuplicatingIterableIterator(queues.get(i)));
 		}
-		this.thread = new FeedingThread();
-		this.thread.setName(String.format("DuplicatingIterable-%d", threadCount.incrementAndGet()));
-		this.thread.start();
+		feedExecutor.execute(new Feeder());
+	}
+	/**
+	 * Stops feeding the consuming iterators. Consuming iterators will report end of stream
+	 * instead of blocking once closed.
+	 */
+	@Override
+	public void close() {
+		closed = true;
 	}
 	/**
 	 * Creates a new iterator
@@ -61,14 +89,16 @@ public class DuplicatingIterable<T> implements Iterable<T> {
 		if (iteratorsRequested >= iterators.size()) throw new IllegalStateException(String.format("Already created %d iterators", iterators.size()));
 		return iterators.get(iteratorsRequested++);
 	}
-	private class FeedingThread extends Thread {
+	private class Feeder implements Runnable {
 		@Override
 		public void run() {
 			try {
-				while (it.hasNext()) {
+				while (!closed && it.hasNext()) {
 					T n = it.next();
 					for (BlockingQueue<Object> queue : queues) {
-						queue.put(n);
+						while (!queue.offer(n, CLOSE_POLL_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+							if (closed) return;
+						}
 					}
 				}
 				eos();
@@ -94,7 +124,9 @@ public class DuplicatingIterable<T> implements Iterable<T> {
 		}
 		private void eos() throws InterruptedException {
 			for (BlockingQueue<Object> queue : queues) {
-				queue.put(endofstream);
+				while (!queue.offer(endofstream, CLOSE_POLL_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+					if (closed) return;
+				}
 			}
 		}
 	}
@@ -112,7 +144,12 @@ public class DuplicatingIterable<T> implements Iterable<T> {
 			if (nextRecord == endofstream) return;
 			if (nextRecord == null) {
 				try {
-					nextRecord = queue.take();
+					while (nextRecord == null) {
+						nextRecord = queue.poll(CLOSE_POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+						if (nextRecord == null && closed) {
+							nextRecord = endofstream;
+						}
+					}
 				} catch (InterruptedException e) {
 					log.debug("Interrupted waiting for next record");
 					throw new RuntimeException(e);
@@ -31,6 +31,7 @@ public abstract class FileHelper {
 		}
 		moveIndex(from, to, ".bai");
 		moveIndex(from, to, ".idx");
+		moveIndex(from, to, ".tbi");
 	}
 	public static void delete(File file, boolean deleteIndexes) throws IOException {
 		file.delete();
@@ -89,8 +90,10 @@ public abstract class FileHelper {
 	}
 	public static List<File> getIndexFilesFor(File file) {
 		return Stream.concat(
-				getPossibleIndexFilesFor(file, ".bai"),
-				getPossibleIndexFilesFor(file, ".idx"))
+				Stream.concat(
+					getPossibleIndexFilesFor(file, ".bai"),
+					getPossibleIndexFilesFor(file, ".idx")),
+				getPossibleIndexFilesFor(file, ".tbi"))
 			.filter(f -> f.exists())
 			.collect(Collectors.toList());
 	}
@@ -0,0 +1,80 @@
+package au.edu.wehi.idsv.util;
+
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.samtools.util.CloserUtil;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * K-way merge of sorted iterators.
+ *
+ * Ties are broken by iterator order so the merge is stable with respect to the order
+ * in which the iterators are supplied. Records are pulled from the underlying iterators
+ * on the calling thread.
+ *
+ * Closing the merge closes all underlying iterators.
+ *
+ * @author Daniel Cameron
+ *
+ * @param <T>
+ */
+public class StableMergingIterator<T> implements CloseableIterator<T> {
+	private final List<? extends Iterator<? extends T>> underlying;
+	private final PriorityQueue<IndexedIterator<T>> queue;
+	/**
+	 * @param iterators sorted iterators to merge
+	 * @param comparator sort order of every iterator
+	 */
+	public StableMergingIterator(List<? extends Iterator<? extends T>> iterators, Comparator<? super T> comparator) {
+		this.underlying = new ArrayList<>(iterators);
+		this.queue = new PriorityQueue<>(Math.max(1, iterators.size()), (a, b) -> {
+			int cmp = comparator.compare(a.it.peek(), b.it.peek());
+			if (cmp == 0) {
+				cmp = Integer.compare(a.index, b.index);
+			}
+			return cmp;
+		});
+		for (int i = 0; i < iterators.size(); i++) {
+			offer(new IndexedIterator<T>(i, Iterators.peekingIterator(iterators.get(i))));
+		}
+	}
+	private void offer(IndexedIterator<T> it) {
+		if (it.it.hasNext()) {
+			queue.add(it);
+		}
+	}
+	@Override
+	public boolean hasNext() {
+		return !queue.isEmpty();
+	}
+	@Override
+	public T next() {
+		IndexedIterator<T> it = queue.poll();
+		if (it == null) throw new NoSuchElementException();
+		T record = it.it.next();
+		offer(it);
+		return record;
+	}
+	@Override
+	public void close() {
+		for (Iterator<? extends T> it : underlying) {
+			CloserUtil.close(it);
+		}
+		queue.clear();
+	}
+	private static class IndexedIterator<T> {
+		private final int index;
+		private final PeekingIterator<? extends T> it;
+		public IndexedIterator(int index, PeekingIterator<? extends T> it) {
+			this.index = index;
+			this.it = it;
+		}
+	}
+}
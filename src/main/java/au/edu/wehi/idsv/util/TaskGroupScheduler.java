@@ -0,0 +1,158 @@
+package au.edu.wehi.idsv.util;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import htsjdk.samtools.util.Log;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs groups of tasks on a shared executor whilst limiting the number
+ * of tasks running concurrently.
+ *
+ * Tasks within a group may block waiting on each other so each group
+ * is only started once there is capacity to run every task in the group.
+ *
+ * Tasks are run on virtual threads when the JVM supports them. Otherwise, tasks are
+ * run on a pool of at most maxConcurrentTasks platform threads.
+ *
+ * @author Daniel Cameron
+ *
+ */
+public class TaskGroupScheduler {
+	private static final Log log = Log.getInstance(TaskGroupScheduler.class);
+	private final int maxConcurrentTasks;
+	private final Semaphore available;
+	private final ExecutorService executor;
+	/**
+	 * @param name thread name prefix
+	 * @param maxConcurrentTasks maximum number of tasks to run at any one time.
+	 */
+	public TaskGroupScheduler(String name, int maxConcurrentTasks) {
+		if (maxConcurrentTasks <= 0) throw new IllegalArgumentException("maxConcurrentTasks must be positive");
+		this.maxConcurrentTasks = maxConcurrentTasks;
+		this.available = new Semaphore(maxConcurrentTasks, true);
+		this.executor = createExecutor(name, maxConcurrentTasks);
+	}
+	private static ExecutorService createExecutor(String name, int maxThreads) {
+		try {
+			Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			ExecutorService virtual = (ExecutorService)m.invoke(null);
+			log.debug("Using virtual threads for " + name);
+			return virtual;
+		} catch (ReflectiveOperationException e) {
+			// virtual threads require Java 21
+		}
+		// A task can be handed to the pool before the thread of the task that released its
+		// capacity has returned to the pool so a cached pool could briefly exceed the limit.
+		// Tasks queued behind such a thread start as soon as it returns.
+		return Executors.newFixedThreadPool(maxThreads, new ThreadFactoryBuilder()
+				.setDaemon(true)
+				.setNameFormat(name + "-%d")
+				.build());
+	}
+	public int getMaxConcurrentTasks() {
+		return maxConcurrentTasks;
+	}
+	/**
+	 * Starts the given tasks once capacity is available to run them all concurrently.
+	 * This method blocks until the group can be started.
+	 * @param tasks tasks to run
+	 * @return task futures
+	 * @throws InterruptedException if interrupted whilst waiting for capacity
+	 */
+	public List<Future<?>> submit(List<Runnable> tasks) throws InterruptedException {
+		if (tasks.size() > maxConcurrentTasks) {
+			throw new IllegalArgumentException(String.format("Cannot schedule group of %d tasks with a limit of %d concurrent tasks", tasks.size(), maxConcurrentTasks));
+		}
+		available.acquire(tasks.size());
+		List<Future<?>> futures = new ArrayList<>(tasks.size());
+		for (int i = 0; i < tasks.size(); i++) {
+			Runnable task = tasks.get(i);
+			try {
+				futures.add(executor.submit(() -> {
+					try {
+						task.run();
+					} finally {
+						available.release();
+					}
+				}));
+			} catch (RuntimeException e) {
+				// release the capacity reserved for the tasks we could not start
+				available.release(tasks.size() - i);
+				throw e;
+			}
+		}
+		return futures;
+	}
+	/**
+	 * Runs the given independent tasks and waits for them to complete.
+	 *
+	 * The calling thread runs tasks itself and is only helped by additional threads
+	 * when spare capacity is available. This method never waits for capacity so it
+	 * can safely be called from within a scheduled task.
+	 * @param tasks tasks to run. Tasks must not block waiting on each other.
+	 */
+	public void runAll(List<? extends Runnable> tasks) {
+		AtomicInteger nextTask = new AtomicInteger(0);
+		Runnable worker = () -> {
+			for (int i = nextTask.getAndIncrement(); i < tasks.size(); i = nextTask.getAndIncrement()) {
+				tasks.get(i).run();
+			}
+		};
+		List<Future<?>> helpers = new ArrayList<>();
+		while (helpers.size() < tasks.size() - 1 && available.tryAcquire()) {
+			try {
+				helpers.add(executor.submit(() -> {
+					try {
+						worker.run();
+					} finally {
+						available.release();
+					}
+				}));
+			} catch (RuntimeException e) {
+				available.release();
+				break;
+			}
+		}
+		RuntimeException error = null;
+		try {
+			worker.run();
+		} catch (RuntimeException e) {
+			error = e;
+			// stop helpers from starting any further tasks
+			nextTask.set(tasks.size());
+		}
+		boolean interrupted = false;
+		for (Future<?> f : helpers) {
+			while (true) {
+				try {
+					f.get();
+					break;
+				} catch (InterruptedException e) {
+					// helpers are already running tasks so we must wait for them to finish
+					interrupted = true;
+				} catch (ExecutionException e) {
+					if (error == null) {
+						error = new RuntimeException(e.getCause());
+					}
+					break;
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		if (error != null) {
+			log.error(error);
+			throw error;
+		}
+	}
+}
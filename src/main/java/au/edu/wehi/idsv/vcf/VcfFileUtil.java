@@ -6,8 +6,10 @@ import au.edu.wehi.idsv.IntermediateFileUtil;
 import au.edu.wehi.idsv.ProcessingContext;
 import au.edu.wehi.idsv.util.AsyncBufferedIterator;
 import au.edu.wehi.idsv.util.FileHelper;
+import au.edu.wehi.idsv.util.StableMergingIterator;
 import htsjdk.samtools.SAMSequenceDictionary;
 import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.samtools.util.CloserUtil;
 import htsjdk.samtools.util.Log;
 import htsjdk.samtools.util.SortingCollection;
 import htsjdk.variant.variantcontext.VariantContext;
@@ -20,6 +22,7 @@ import htsjdk.variant.vcf.VCFRecordCodec;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 import java.util.concurrent.Callable;
@@ -122,6 +125,63 @@ public class VcfFileUtil {
 			return null;
 		}
 	}
+	/**
+	 * Merges VCFs already sorted by the given sort order into a single sorted VCF.
+	 * Records with equal sort keys are written in input file order.
+	 * @param input sorted input files
+	 * @param output output file
+	 * @param header VCF header of the output file. This header is written even if there are no input files.
+	 * @param sortComparator sort order of the input files
+	 * @param createIndex write an index for the output file
+	 * @return true if the merge was successful, false if an input file was not sorted.
+	 * No output is written if an input file is not sorted.
+	 * @throws IOException
+	 */
+	public static boolean mergeSorted(ProcessingContext processContext, List<File> input, File output, VCFHeader header, Comparator<VariantContext> sortComparator, boolean createIndex) throws IOException {
+		File tmpout = gridss.Defaults.OUTPUT_TO_TEMP_FILE ? FileSystemContext.getWorkingFileFor(output, "gridss.tmp.merging.") : output;
+		List<VCFFileReader> readers = new ArrayList<>(input.size());
+		// records are decoded on the calling thread so merging many chunks does not need a thread per chunk
+		List<CloseableIterator<VariantContext>> iterators = new ArrayList<>(input.size());
+		boolean success = false;
+		try {
+			for (File f : input) {
+				VCFFileReader reader = new VCFFileReader(f, false);
+				readers.add(reader);
+				iterators.add(reader.iterator());
+			}
+			try (VariantContextWriter writer = processContext.getVariantContextWriterBuilder(tmpout, createIndex).build()) {
+				writer.writeHeader(header);
+				// a stable merge of sorted inputs is sorted so any out of order record indicates an unsorted input
+				StableMergingIterator<VariantContext> it = new StableMergingIterator<>(iterators, sortComparator);
+				VariantContext last = null;
+				while (it.hasNext()) {
+					VariantContext vc = it.next();
+					if (last != null && sortComparator.compare(last, vc) > 0) {
+						log.warn(String.format("Input is not sorted: %s:%d found after %s:%d", vc.getContig(), vc.getStart(), last.getContig(), last.getStart()));
+						return false;
+					}
+					writer.add(vc);
+					last = vc;
+				}
+			}
+			if (tmpout != output) {
+				FileHelper.move(tmpout, output, true);
+			}
+			success = true;
+		} finally {
+			for (CloseableIterator<VariantContext> it : iterators) {
+				CloserUtil.close(it);
+			}
+			for (VCFFileReader reader : readers) {
+				CloserUtil.close(reader);
+			}
+			if (!success) {
+				// also removes any index written when the writer was closed
+				FileHelper.delete(tmpout, true);
+			}
+		}
+		return true;
+	}
 	/**
 	 * Concatenates the input files in order.
 	 * @param input input files.
@@ -49,6 +49,14 @@ public class AssemblyTelemetry implements Closeable {
 			String str = String.format("%d,%s,flushReferenceNodes,%s,%d,%d,%d,,%d\n", chunk, direction.toChar(), dict.getSequence(referenceIndex).getSequenceName(), flushStart, flushEnd, readsFlushed, nsSinceLast / 1000);
 			put(str);
 		}
+		/**
+		 * Memoization usage of a contig caller over the given interval
+		 * @param safetyMode caller was discarded due to safety mode being entered
+		 */
+		public void memoization(int referenceIndex, int start, int end, int peakMemoizedNodes, boolean safetyMode, int peakSpilledNodes, long pathsSpilled, long peakSpillBytes) {
+			String str = String.format("%d,%s,memoization,%s,%d,%d,%d,%b,,%d,%d,%d\n", chunk, direction.toChar(), dict.getSequence(referenceIndex).getSequenceName(), start, end, peakMemoizedNodes, safetyMode, peakSpilledNodes, pathsSpilled, peakSpillBytes);
+			put(str);
+		}
 		public void callContig(int referenceIndex, int start, int end, int nodes, int reads, boolean repeatsSimplified) {
 		}
 	}
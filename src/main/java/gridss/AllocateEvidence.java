@@ -6,22 +6,47 @@ import au.edu.wehi.idsv.SequentialEvidenceAllocator.VariantEvidenceSupport;
 import au.edu.wehi.idsv.configuration.VariantCallingConfiguration;
 import au.edu.wehi.idsv.util.AsyncBufferedIterator;
 import au.edu.wehi.idsv.util.AutoClosingIterator;
+import au.edu.wehi.idsv.util.FileHelper;
+import au.edu.wehi.idsv.vcf.VcfFileUtil;
+import au.edu.wehi.idsv.vcf.VcfSvConstants;
 import au.edu.wehi.idsv.validation.OrderAssertingIterator;
 import au.edu.wehi.idsv.validation.PairedEvidenceTracker;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterators;
+import com.google.common.util.concurrent.MoreExecutors;
 import gridss.cmdline.VcfTransformCommandLineProgram;
+import htsjdk.samtools.BAMIndex;
+import htsjdk.samtools.BAMIndexer;
+import htsjdk.samtools.QueryInterval;
 import htsjdk.samtools.SAMRecordIterator;
+import htsjdk.samtools.SamInputResource;
 import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
 import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.samtools.util.IOUtil;
 import htsjdk.samtools.util.Log;
+import htsjdk.tribble.Tribble;
+import htsjdk.tribble.index.Index;
+import htsjdk.tribble.index.IndexFactory;
+import htsjdk.variant.variantcontext.writer.VariantContextWriter;
+import htsjdk.variant.vcf.VCFCodec;
+import htsjdk.variant.vcf.VCFFileReader;
+import htsjdk.variant.vcf.VCFHeader;
 import org.broadinstitute.barclay.argparser.Argument;
 import org.broadinstitute.barclay.argparser.CommandLineProgramProperties;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 @CommandLineProgramProperties(
         summary = "Evidence reallocation is required to ensure that any given read/read pair/assembly "
@@ -44,7 +69,14 @@ public class AllocateEvidence extends VcfTransformCommandLineProgram {
 	public static enum EvidenceAllocationStrategy {
 		GREEDY,
 	}
+	/**
+	 * Number of evidence windows each chunk is padded by to ensure that allocation
+	 * of calls at the chunk boundary matches that of the whole genome
+	 */
+	private static final int CHUNK_PADDING_WINDOWS = 4;
 	private CalledBreakpointPositionLookup lookup = new CalledBreakpointPositionLookup();
+	private File rawAssemblyIndex = null;
+	private File inputVcfIndex = null;
 	public CloseableIterator<DirectedEvidence> getReadIterator() {
 		CloseableIterator<DirectedEvidence> evidenceIt;
 		List<SAMEvidenceSource> sources = getSamEvidenceSources();
@@ -71,15 +103,20 @@ public class AllocateEvidence extends VcfTransformCommandLineProgram {
 	public CloseableIterator<VariantContextDirectedEvidence> iterator(CloseableIterator<VariantContextDirectedEvidence> calls, ExecutorService threadpool) {
 		log.info("Allocating evidence"); 
 		CloseableIterator<DirectedEvidence> rawReads = new AsyncBufferedIterator<>(getReadIterator(), "mergedReads-allocation");
-		CloseableIterator<DirectedEvidence> reads = new AsyncBufferedIterator<>(annotateAssembly(rawReads), "annotate-associated-assembly");
+		CloseableIterator<DirectedEvidence> reads = new AsyncBufferedIterator<>(annotateAssembly(rawReads, null), "annotate-associated-assembly");
 		CloseableIterator<DirectedEvidence> assemblies = new AsyncBufferedIterator<>(getAssemblyIterator(), "assembly-allocation");
 		Iterator<VariantEvidenceSupport> annotator = new SequentialEvidenceAllocator(getContext(), calls, reads, assemblies, SAMEvidenceSource.maximumWindowSize(getContext(), getSamEvidenceSources(), getAssemblySource()), true);
 		CloseableIterator<VariantEvidenceSupport> bufferedAnnotator = new AsyncBufferedIterator<>(annotator, "annotator", 2, 8);
-		Iterator<VariantContextDirectedEvidence> it = Iterators.transform(bufferedAnnotator, bp -> annotate(bp));
+		Iterator<VariantContextDirectedEvidence> it = Iterators.transform(bufferedAnnotator, bp -> annotate(bp, lookup));
 		it = Iterators.filter(it, v -> v != null);
 		return new AutoClosingIterator<>(it, calls, rawReads, reads, assemblies, bufferedAnnotator);
 	}
-	private CloseableIterator<DirectedEvidence> annotateAssembly(CloseableIterator<DirectedEvidence> it) {
+	/**
+	 * Annotates reads with the assembly they were assembled in to.
+	 * @param it reads
+	 * @param intervals intervals to annotate. All reads are annotated if null.
+	 */
+	private CloseableIterator<DirectedEvidence> annotateAssembly(CloseableIterator<DirectedEvidence> it, QueryInterval[] intervals) {
 		AssemblyEvidenceSource aes = getAssemblySource();
 		// need to use the raw breakend assembly file (prior to realignment) so we annotate correctly
 		File assemblyFile = aes.getFile();
@@ -90,11 +127,196 @@ public class AllocateEvidence extends VcfTransformCommandLineProgram {
 		int windowSize = aes.getMaxAssemblyLength() + 2 * aes.getMaxConcordantFragmentSize();
 		// defensive over-eager loading
 		windowSize *= 2;
-		SamReader reader = getContext().getSamReader(assemblyFile);
-		SAMRecordIterator assit = reader.iterator();
+		SamReader reader;
+		SAMRecordIterator assit;
+		if (intervals == null) {
+			reader = getContext().getSamReader(assemblyFile);
+			assit = reader.iterator();
+		} else {
+			reader = getContext().getSamReaderFactory().open(rawAssemblyIndex == null ? SamInputResource.of(assemblyFile) : SamInputResource.of(assemblyFile).index(rawAssemblyIndex));
+			assit = reader.queryOverlapping(QueryIntervalUtil.padIntervals(getContext().getDictionary(), intervals, windowSize));
+		}
 		return new AutoClosingIterator<>(new AssemblyAssociator(it, assit, windowSize), assit, reader);
 	}
-	private VariantContextDirectedEvidence annotate(VariantEvidenceSupport ves) {
+	/**
+	 * Ensures the raw breakend assembly file can be queried by genomic position.
+	 * The raw assembly file is not indexed by the assembly step so an index is written to a temporary file.
+	 */
+	private void ensureRawAssemblyIndexed() {
+		File assemblyFile = getAssemblySource().getFile();
+		if (assemblyFile == null || !assemblyFile.exists()) return;
+		try (SamReader reader = getContext().getSamReaderFactory().enable(SamReaderFactory.Option.INCLUDE_SOURCE_IN_RECORDS).open(assemblyFile)) {
+			if (reader.hasIndex()) return;
+			rawAssemblyIndex = new File(OUTPUT_VCF.getParent(), "gridss.tmp.allocation." + OUTPUT_VCF.getName() + "." + assemblyFile.getName() + BAMIndex.BAI_INDEX_SUFFIX);
+			log.info("Indexing " + assemblyFile);
+			BAMIndexer.createIndex(reader, rawAssemblyIndex);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	/**
+	 * Ensures the input VCF can be queried by genomic position.
+	 * Calls are not indexed by the variant calling step so an index is written to a temporary file.
+	 * @return true if the input VCF can be queried, false otherwise
+	 */
+	private boolean ensureInputIndexed() throws IOException {
+		try (VCFFileReader reader = new VCFFileReader(INPUT_VCF, false)) {
+			if (reader.isQueryable()) return true;
+		}
+		if (IOUtil.hasBlockCompressedExtension(INPUT_VCF)) return false;
+		inputVcfIndex = new File(OUTPUT_VCF.getParent(), "gridss.tmp.allocation." + OUTPUT_VCF.getName() + "." + INPUT_VCF.getName() + Tribble.STANDARD_INDEX_EXTENSION);
+		log.info("Indexing " + INPUT_VCF);
+		Index index = IndexFactory.createDynamicIndex(INPUT_VCF, new VCFCodec());
+		index.write(inputVcfIndex);
+		return true;
+	}
+	@Override
+	protected CloseableIterator<VariantContextDirectedEvidence> transformedBreakends(ExecutorService threadpool) throws IOException {
+		List<QueryInterval[]> chunks = getContext().getReference().getIntervals(getContext().getConfig().chunkSize, getContext().getConfig().chunkSequenceChangePenalty);
+		if (chunks.size() <= 1) {
+			return super.transformedBreakends(threadpool);
+		}
+		if (!ensureInputIndexed()) {
+			log.info(INPUT_VCF + " is not indexable. Allocating evidence in a single pass.");
+			return super.transformedBreakends(threadpool);
+		}
+		if (threadpool == null) {
+			threadpool = MoreExecutors.newDirectExecutorService();
+		}
+		log.info(String.format("Allocating evidence in %d chunks", chunks.size()));
+		// ensure the header is loaded before the chunk threads need it
+		getOutputHeader();
+		ensureRawAssemblyIndexed();
+		long[] chunkStart = chunks.stream()
+				.mapToLong(chunk -> getContext().getLinear().getLinearCoordinate(chunk[0].referenceIndex, chunk[0].start))
+				.toArray();
+		List<CompletableFuture<Map<String, CalledBreakpointPositionLookup.NominalPosition>>> upperPositions = new ArrayList<>();
+		List<File> allocatedChunk = new ArrayList<>();
+		List<Future<Void>> tasks = new ArrayList<>();
+		for (int i = 0; i < chunks.size(); i++) {
+			upperPositions.add(new CompletableFuture<>());
+			allocatedChunk.add(getContext().getFileSystemContext().getVariantCallChunkVcf(OUTPUT_VCF, i));
+		}
+		// Chunks must be submitted in genomic order as chunks wait on the nominal positions of earlier chunks
+		for (int i = 0; i < chunks.size(); i++) {
+			int chunkNumber = i;
+			tasks.add(threadpool.submit(() -> {
+				allocateChunk(allocatedChunk.get(chunkNumber), chunkNumber, chunks.get(chunkNumber), chunkStart, upperPositions);
+				return null;
+			}));
+		}
+		runTasks(tasks);
+		File mergedOut = FileSystemContext.getWorkingFileFor(OUTPUT_VCF, "gridss.allocated.");
+		VcfFileUtil.concat(getContext().getReference().getSequenceDictionary(), allocatedChunk, mergedOut);
+		if (gridss.Defaults.DELETE_TEMPORARY_FILES) {
+			for (File f : allocatedChunk) {
+				FileHelper.delete(f, true);
+			}
+			if (rawAssemblyIndex != null) {
+				FileHelper.delete(rawAssemblyIndex, true);
+			}
+			if (inputVcfIndex != null) {
+				FileHelper.delete(inputVcfIndex, true);
+			}
+		}
+		CloseableIterator<VariantContextDirectedEvidence> it = getBreakends(mergedOut);
+		return new AutoClosingIterator<>(it, it, () -> {
+			if (gridss.Defaults.DELETE_TEMPORARY_FILES) {
+				FileHelper.delete(mergedOut, true);
+			}
+		});
+	}
+	private void runTasks(List<Future<Void>> tasks) {
+		// Run as many tasks as we can before dying
+		Exception firstException = null;
+		for (Future<Void> f : tasks) {
+			try {
+				f.get();
+			} catch (Exception e) {
+				if (firstException == null) {
+					firstException = e;
+				}
+			}
+		}
+		if (firstException != null) {
+			log.error(firstException, "Fatal error during evidence allocation");
+			throw new RuntimeException(firstException);
+		}
+	}
+	private static int getChunk(long[] chunkStart, long linearCoordinate) {
+		int index = Arrays.binarySearch(chunkStart, linearCoordinate);
+		return index >= 0 ? index : -index - 2;
+	}
+	/**
+	 * Allocates evidence for the calls whose breakend starts within the given chunk.
+	 *
+	 * The nominal position of a breakpoint is determined by whichever breakend is allocated first.
+	 * To match the allocation order of a single pass over the genome, breakends whose mate starts
+	 * in an earlier chunk are deferred until that chunk has published the nominal positions of its
+	 * lower breakends.
+	 */
+	private void allocateChunk(File output, int chunkNumber, QueryInterval[] chunk, long[] chunkStart, List<CompletableFuture<Map<String, CalledBreakpointPositionLookup.NominalPosition>>> upperPositions) {
+		String chunkMsg = String.format("chunk %d (%s:%d-%s:%d)", chunkNumber,
+				getContext().getDictionary().getSequence(chunk[0].referenceIndex).getSequenceName(), chunk[0].start,
+				getContext().getDictionary().getSequence(chunk[chunk.length - 1].referenceIndex).getSequenceName(), chunk[chunk.length - 1].end);
+		log.debug("Start allocating evidence for " + chunkMsg);
+		CalledBreakpointPositionLookup chunkLookup = new CalledBreakpointPositionLookup();
+		List<VariantContextDirectedEvidence> allocated = new ArrayList<>();
+		Map<Integer, VariantEvidenceSupport> deferred = new LinkedHashMap<>();
+		try {
+			int windowSize = SAMEvidenceSource.maximumWindowSize(getContext(), getSamEvidenceSources(), getAssemblySource());
+			QueryInterval[] padded = QueryIntervalUtil.padIntervals(getContext().getDictionary(), chunk, CHUNK_PADDING_WINDOWS * (windowSize + 1));
+			try (CloseableIterator<VariantContextDirectedEvidence> calls = getBreakends(INPUT_VCF, inputVcfIndex, padded);
+					CloseableIterator<DirectedEvidence> rawReads = SAMEvidenceSource.mergedIterator(getSamEvidenceSources(), padded, SAMEvidenceSource.EvidenceSortOrder.EvidenceStartPosition);
+					CloseableIterator<DirectedEvidence> reads = annotateAssembly(rawReads, padded);
+					CloseableIterator<DirectedEvidence> assemblies = getAssemblySource().iterator(padded, SAMEvidenceSource.EvidenceSortOrder.EvidenceStartPosition)) {
+				Iterator<VariantEvidenceSupport> it = new SequentialEvidenceAllocator(getContext(), calls, reads, assemblies, windowSize, true);
+				while (it.hasNext()) {
+					VariantEvidenceSupport ves = it.next();
+					BreakendSummary bs = ves.variant.getBreakendSummary();
+					if (!QueryIntervalUtil.overlaps(chunk, bs.referenceIndex, bs.start)) continue;
+					if (bs instanceof BreakpointSummary) {
+						BreakpointSummary bp = (BreakpointSummary) bs;
+						if (getChunk(chunkStart, getContext().getLinear().getLinearCoordinate(bp.referenceIndex2, bp.start2)) < chunkNumber) {
+							deferred.put(allocated.size(), ves);
+							allocated.add(null);
+							continue;
+						}
+					}
+					allocated.add(annotate(ves, chunkLookup));
+				}
+			}
+			upperPositions.get(chunkNumber).complete(chunkLookup.removeAllUpper());
+			for (Entry<Integer, VariantEvidenceSupport> entry : deferred.entrySet()) {
+				VariantEvidenceSupport ves = entry.getValue();
+				BreakpointSummary bp = (BreakpointSummary) ves.variant.getBreakendSummary();
+				String event = ves.variant.getAttributeAsString(VcfSvConstants.BREAKEND_EVENT_ID_KEY, null);
+				CalledBreakpointPositionLookup.NominalPosition np = upperPositions.get(getChunk(chunkStart, getContext().getLinear().getLinearCoordinate(bp.referenceIndex2, bp.start2))).join().get(event);
+				if (np != null) {
+					chunkLookup.addUpper(event, np);
+				}
+				allocated.set(entry.getKey(), annotate(ves, chunkLookup));
+			}
+			File tmp = gridss.Defaults.OUTPUT_TO_TEMP_FILE ? FileSystemContext.getWorkingFileFor(output) : output;
+			try (VariantContextWriter writer = getContext().getVariantContextWriter(tmp, new VCFHeader(getOutputHeader()), false)) {
+				for (VariantContextDirectedEvidence v : allocated) {
+					if (v != null) {
+						writer.add(v);
+					}
+				}
+			}
+			if (tmp != output) {
+				FileHelper.move(tmp, output, true);
+			}
+		} catch (Exception e) {
+			log.error(e, "Error allocating evidence for " + chunkMsg);
+			// unblock any later chunks waiting on this chunk
+			upperPositions.get(chunkNumber).completeExceptionally(e);
+			throw new RuntimeException(e);
+		}
+		log.debug("Completed allocating evidence for " + chunkMsg);
+	}
+	private VariantContextDirectedEvidence annotate(VariantEvidenceSupport ves, CalledBreakpointPositionLookup lookup) {
 		VariantCallingConfiguration vc = getContext().getConfig().getVariantCalling();
 		StructuralVariationCallBuilder builder = new StructuralVariationCallBuilder(getContext(), lookup, ves.variant);
 		builder.setUpdateAssemblyInformation(ALLOCATE_ASSEMBLIES);
@@ -2,7 +2,9 @@ package gridss;
 
 import au.edu.wehi.idsv.FileSystemContext;
 import au.edu.wehi.idsv.VariantContextRepeatMaskerAnnotator;
+import au.edu.wehi.idsv.alignment.AlignmentCache;
 import au.edu.wehi.idsv.alignment.BwaStreamingAligner;
+import au.edu.wehi.idsv.alignment.CachingStreamingAligner;
 import au.edu.wehi.idsv.alignment.ExternalProcessStreamingAligner;
 import au.edu.wehi.idsv.alignment.StreamingAligner;
 import au.edu.wehi.idsv.util.FileHelper;
@@ -53,6 +55,12 @@ public class AnnotateInsertedSequence extends ReferenceCommandLineProgram {
     public List<String> ALIGNER_COMMAND_LINE = null;
     @Argument(doc = "Number of records to buffer when performing in-process or streaming alignment. Not applicable when performing external alignment.", optional = true)
     public int ALIGNER_BATCH_SIZE = MAX_RECORDS_IN_RAM;
+    @Argument(doc = "Number of external aligner processes to run. WORKER_THREADS are split evenly between the aligner processes.", optional = true)
+    public int ALIGNER_PROCESSES = 1;
+    @Argument(doc = "Directory to cache alignments in. Alignments of previously aligned sequences are reused instead of realigned."
+            + " The cache directory can be shared between runs using the same reference genome and aligner."
+            + " Should only be used with aligners that do not consider base qualities when aligning.", optional = true)
+    public File ALIGNMENT_CACHE = null;
     @Argument(doc = "Whether to align inserted sequences to REFERENCE_GENOME. Valid values are:" +
             "APPEND (Append alignments to REFERENCE_GENOME to the BEALN field), " +
             "REPLACE (Replace all BEALN fields)  (default)," +
@@ -102,14 +110,20 @@ public class AnnotateInsertedSequence extends ReferenceCommandLineProgram {
         try {
             SAMSequenceDictionary dict = new IndexedFastaSequenceFile(REFERENCE_SEQUENCE).getSequenceDictionary();
             Iterator<VariantContext> it;
+            AlignmentCache cache = null;
             if (ALIGNMENT != AlignmentStatus.SKIP) {
                 StreamingAligner sa;
-                if (ALIGNER_COMMAND_LINE == null || ALIGNER_COMMAND_LINE.size() == 0) {
+                boolean inProcess = ALIGNER_COMMAND_LINE == null || ALIGNER_COMMAND_LINE.size() == 0;
+                if (inProcess) {
                     log.info("Using in-process bwa alignment");
                     sa = new BwaStreamingAligner(REFERENCE_SEQUENCE, dict, WORKER_THREADS, ALIGNER_BATCH_SIZE * 150);
                 } else {
                     log.info("Using external process alignment");
-                    sa = new ExternalProcessStreamingAligner(SamReaderFactory.make(), ALIGNER_COMMAND_LINE, REFERENCE_SEQUENCE, WORKER_THREADS, dict);
+                    sa = new ExternalProcessStreamingAligner(SamReaderFactory.make(), ALIGNER_COMMAND_LINE, REFERENCE_SEQUENCE, WORKER_THREADS, dict, ALIGNER_PROCESSES, ExternalProcessStreamingAligner.DEFAULT_BATCH_SIZE);
+                }
+                if (ALIGNMENT_CACHE != null) {
+                    cache = new AlignmentCache(ALIGNMENT_CACHE, REFERENCE_SEQUENCE, dict, inProcess ? "bwa-jni" : String.join(" ", ALIGNER_COMMAND_LINE));
+                    sa = new CachingStreamingAligner(sa, cache);
                 }
                 InsertedSequenceAnnotator ann = new InsertedSequenceAnnotator(
                         INPUT,
@@ -133,7 +147,13 @@ public class AnnotateInsertedSequence extends ReferenceCommandLineProgram {
                 VariantContextRepeatMaskerAnnotator finalRma = rma;
                 it = Iterators.transform(it, (vc) -> finalRma.apply(vc));
             }
-            saveVcf(INPUT, OUTPUT, it);
+            try {
+                saveVcf(INPUT, OUTPUT, it);
+            } finally {
+                if (cache != null) {
+                    cache.close();
+                }
+            }
             log.info("Annotated variants written to " + OUTPUT);
         } catch (IOException e) {
             log.error(e);
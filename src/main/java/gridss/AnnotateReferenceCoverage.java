@@ -1,6 +1,7 @@
 package gridss;
 
 import au.edu.wehi.idsv.*;
+import au.edu.wehi.idsv.util.AutoClosingIterator;
 import gridss.cmdline.VcfTransformCommandLineProgram;
 import htsjdk.samtools.util.CloseableIterator;
 
@@ -17,6 +18,10 @@ public class AnnotateReferenceCoverage extends VcfTransformCommandLineProgram {
 		ProcessingContext context = getContext();
 		List<SAMEvidenceSource> sources = getSamEvidenceSources();
 		AssemblyEvidenceSource asm = getAssemblySource();
+		if (Defaults.INDEXED_REFERENCE_COVERAGE && IndexedCoverageAnnotator.canAnnotate(context, sources)) {
+			IndexedCoverageAnnotator<VariantContextDirectedEvidence> annotator = new IndexedCoverageAnnotator<VariantContextDirectedEvidence>(context, sources, calls, WORKER_THREADS + 1, threadpool);
+			return new AutoClosingIterator<>(annotator, annotator, calls);
+		}
 		int windowSize = SAMEvidenceSource.maximumWindowSize(context, sources, asm);
 		return new SequentialCoverageAnnotator<VariantContextDirectedEvidence>(context, sources, calls, 2 * windowSize + WINDOW_SIZE_SAFETY_MARGIN, threadpool);
 	}
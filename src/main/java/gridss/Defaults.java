@@ -18,6 +18,50 @@ public class Defaults {
 	 * See http://stackoverflow.com/questions/2972986/how-to-unmap-a-file-from-memory-mapped-using-filechannel-in-java
 	 */
 	public static final boolean DEFENSIVE_GC;
+	/**
+	 * Stream SV read extraction, SAM tag computation and split read identification
+	 * through a single in-process pipeline instead of writing intermediate BAM files.
+	 * The streaming pipeline realigns soft clips with a streaming external aligner
+	 * instead of the default iterative file-based realignment, so it is opt-in.
+	 */
+	public static final boolean STREAMING_SV_READ_EXTRACTION;
+	/**
+	 * Memory budget in megabytes for sorting SAM records.
+	 * The budget is shared between all concurrent sorts.
+	 * Defaults to a quarter of the maximum heap size.
+	 */
+	public static final int SORT_BUFFER_MB;
+	/**
+	 * Number of sorted runs concurrently spilled to disk while the next run is buffered
+	 */
+	public static final int SORT_CONCURRENT_SPILLS;
+	/**
+	 * Maximum number of sorted runs merged at once
+	 */
+	public static final int SORT_MAX_MERGE_FAN_IN;
+	/**
+	 * Annotate reference coverage using BAM index queries around each call
+	 * instead of a full pass over each input file.
+	 */
+	public static final boolean INDEXED_REFERENCE_COVERAGE;
+	/**
+	 * Schedule assembly and variant calling chunks in decreasing order of the evidence
+	 * density estimated from the BAM indexes instead of genomic order.
+	 */
+	public static final boolean ADAPTIVE_CHUNK_SCHEDULING;
+	/**
+	 * Maximum number of sub-chunks an expensive assembly chunk is split into.
+	 * Splitting is disabled if this value is 1.
+	 */
+	public static final int ADAPTIVE_CHUNK_MAX_SPLIT;
+	/**
+	 * Call maximal cliques for each pair of contigs concurrently within each variant calling chunk.
+	 */
+	public static final boolean PARALLEL_CLIQUE_PARTITIONS;
+	/**
+	 * Maximum number of reads whose alignments are held in the alignment cache
+	 */
+	public static final int ALIGNMENT_CACHE_MAX_ENTRIES;
 	static {
 		IGNORE_FILE_TIMESTAMPS = Boolean.valueOf(System.getProperty("gridss.ignoreTimestamps", "true"));
 		ASYNC_BUFFERS = Integer.parseInt(System.getProperty("gridss.async.buffers", "2"));
@@ -27,5 +71,14 @@ public class Defaults {
 		WRITE_ZERO_OR_EMTPY_VCF_FIELDS = Boolean.valueOf(System.getProperty("gridss.writeZeroOrEmptyVcfFields", "true"));
 		DEFENSIVE_GC = Boolean.valueOf(System.getProperty("gridss.defensiveGC", "false"));
 		OUTPUT_TO_TEMP_FILE = Boolean.valueOf(System.getProperty("gridss.output_to_temp_file", "false"));
+		STREAMING_SV_READ_EXTRACTION = Boolean.valueOf(System.getProperty("gridss.streamingExtraction", "false"));
+		SORT_BUFFER_MB = Integer.parseInt(System.getProperty("gridss.sort.bufferMB", "0"));
+		SORT_CONCURRENT_SPILLS = Integer.parseInt(System.getProperty("gridss.sort.spillThreads", "2"));
+		SORT_MAX_MERGE_FAN_IN = Integer.parseInt(System.getProperty("gridss.sort.maxMergeFanIn", "64"));
+		INDEXED_REFERENCE_COVERAGE = Boolean.valueOf(System.getProperty("gridss.indexedCoverage", "true"));
+		ADAPTIVE_CHUNK_SCHEDULING = Boolean.valueOf(System.getProperty("gridss.adaptiveChunks", "true"));
+		ADAPTIVE_CHUNK_MAX_SPLIT = Integer.parseInt(System.getProperty("gridss.adaptiveChunks.maxSplit", "8"));
+		PARALLEL_CLIQUE_PARTITIONS = Boolean.valueOf(System.getProperty("gridss.parallelCliques", "true"));
+		ALIGNMENT_CACHE_MAX_ENTRIES = Integer.parseInt(System.getProperty("gridss.alignmentCache.maxEntries", "2000000"));
 	}
 }
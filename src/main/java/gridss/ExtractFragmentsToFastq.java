@@ -1,23 +1,36 @@
 package gridss;
 
+import au.edu.wehi.idsv.ReadNameIndex;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import htsjdk.samtools.*;
 import htsjdk.samtools.fastq.FastqRecord;
 import htsjdk.samtools.fastq.FastqWriter;
 import htsjdk.samtools.fastq.FastqWriterFactory;
 import htsjdk.samtools.util.Log;
 import htsjdk.samtools.util.SequenceUtil;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import org.broadinstitute.barclay.argparser.Argument;
 import org.broadinstitute.barclay.argparser.CommandLineProgramProperties;
 import picard.cmdline.CommandLineProgram;
 import picard.cmdline.StandardOptionDefinitions;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 @CommandLineProgramProperties(
 		summary = "Exports reads and read pairs with the given names to fastq",
@@ -36,6 +49,12 @@ public class ExtractFragmentsToFastq extends CommandLineProgram {
 	public File OUTPUT_FQ1;
 	@Argument(doc="File to extract second read in pair to.")
 	public File OUTPUT_FQ2;
+	@Argument(doc="Read name index of INPUT created by IndexReadNames. "
+			+ "If not specified, the index is used if it exists alongside INPUT. "
+			+ "Using an index allows the matching reads to be loaded directly instead of traversing the entire input file.", optional=true)
+	public File READ_NAME_INDEX = null;
+	@Argument(doc="Number of worker threads to spawn when loading indexed reads.", shortName="THREADS")
+	public int WORKER_THREADS = Runtime.getRuntime().availableProcessors();
 
 	public static void main(String[] argv) {
 		System.exit(new ExtractFragmentsToFastq().instanceMain(argv));
@@ -55,59 +74,48 @@ public class ExtractFragmentsToFastq extends CommandLineProgram {
 				SAMUtils.phredToFastq(quals));
 	}
 
+	@Override
+	protected String[] customCommandLineValidation() {
+		if (WORKER_THREADS < 1) {
+			return new String[] { "WORKER_THREADS must be at least one." };
+		}
+		return super.customCommandLineValidation();
+	}
+
 	@Override
 	protected int doWork() {
-		Map<String, SAMRecord> lookup = new HashMap<>();
 		try {
-			HashSet<String> readNames = new HashSet<>(Files.readAllLines(READ_NAMES.toPath()));
+			Set<String> readNames = new HashSet<>();
+			try (BufferedReader br = Files.newBufferedReader(READ_NAMES.toPath())) {
+				String line;
+				while ((line = br.readLine()) != null) {
+					readNames.add(line);
+				}
+			}
+			File index = READ_NAME_INDEX != null ? READ_NAME_INDEX : ReadNameIndex.getIndexFile(INPUT);
+			if (READ_NAME_INDEX == null && index.exists() && !isCurrentIndex(index)) {
+				log.warn("Ignoring read name index ", index, " as it was not created from the current version of ", INPUT);
+				index = null;
+			}
 			FastqWriterFactory factory = new FastqWriterFactory();
 			try (FastqWriter fq1 = factory.newWriter(OUTPUT_FQ1)) {
 				try (FastqWriter fq2 = factory.newWriter(OUTPUT_FQ2)) {
 					try (FastqWriter fq = factory.newWriter(OUTPUT_FQ)) {
-						try (SamReader reader = SamReaderFactory.makeDefault().open(INPUT)) {
-							try (SAMRecordIterator it = reader.iterator()) {
-								while (it.hasNext()) {
-									if (readNames.isEmpty()) {
-										log.debug("Found all reads. Stopping input file traversal.");
-										break;
-									}
-									SAMRecord r = it.next();
-									String name = r.getReadName();
-									if (!r.getSupplementaryAlignmentFlag() && !r.isSecondaryAlignment() && readNames.contains(name)) {
-										if (!r.getReadPairedFlag()) {
-											fq.write(samToFastq(r));
-											readNames.remove(name);
-										} else {
-											SAMRecord lookupMatch = lookup.get(name);
-											if (lookupMatch == null) {
-												lookup.put(name, r);
-												continue;
-											}
-											if (lookupMatch.getFirstOfPairFlag() == r.getFirstOfPairFlag()) {
-												log.error("Found multiple primary alignment records for %s", name, ". Ignoring all but first.");
-												continue;
-											}
-											SAMRecord r1 = r.getFirstOfPairFlag() ? r : lookupMatch;
-											SAMRecord r2 = r.getFirstOfPairFlag() ? lookupMatch : r;
-											lookup.remove(name);
-											readNames.remove(name);
-											fq1.write(samToFastq(r1));
-											fq2.write(samToFastq(r2));
-										}
-									}
-								}
+						if (index != null && index.exists()) {
+							log.info("Using read name index ", index);
+							List<SAMRecord> records = indexedLookup(index, readNames);
+							extract(records.iterator(), readNames, fq, fq1, fq2);
+						} else {
+							if (READ_NAME_INDEX != null) {
+								log.error("Missing read name index ", READ_NAME_INDEX);
+								return -1;
 							}
-						}
-						if (!lookup.isEmpty()) {
-							log.error("Missing paired primary alignment for ", lookup.size(), " reads. Writing to unpaired fastq.");
-							for (SAMRecord r : lookup.values()) {
-								fq.write(samToFastq(r));
-								readNames.remove(r.getReadName());
+							try (SamReader reader = SamReaderFactory.makeDefault().open(INPUT)) {
+								try (SAMRecordIterator it = reader.iterator()) {
+									extract(it, readNames, fq, fq1, fq2);
+								}
 							}
 						}
-						if (!readNames.isEmpty()) {
-							log.warn("Missing SAM records for ", readNames.size(), " reads.");
-						}
 					}
 				}
 			}
@@ -117,4 +125,119 @@ public class ExtractFragmentsToFastq extends CommandLineProgram {
 		}
 		return 0;
 	}
+
+	private void extract(Iterator<SAMRecord> it, Set<String> readNames, FastqWriter fq, FastqWriter fq1, FastqWriter fq2) {
+		Map<String, SAMRecord> lookup = new HashMap<>();
+		while (it.hasNext()) {
+			if (readNames.isEmpty()) {
+				log.debug("Found all reads. Stopping input file traversal.");
+				break;
+			}
+			SAMRecord r = it.next();
+			String name = r.getReadName();
+			if (!r.getSupplementaryAlignmentFlag() && !r.isSecondaryAlignment() && readNames.contains(name)) {
+				if (!r.getReadPairedFlag()) {
+					fq.write(samToFastq(r));
+					readNames.remove(name);
+				} else {
+					SAMRecord lookupMatch = lookup.get(name);
+					if (lookupMatch == null) {
+						lookup.put(name, r);
+						continue;
+					}
+					if (lookupMatch.getFirstOfPairFlag() == r.getFirstOfPairFlag()) {
+						log.error("Found multiple primary alignment records for %s", name, ". Ignoring all but first.");
+						continue;
+					}
+					SAMRecord r1 = r.getFirstOfPairFlag() ? r : lookupMatch;
+					SAMRecord r2 = r.getFirstOfPairFlag() ? lookupMatch : r;
+					lookup.remove(name);
+					readNames.remove(name);
+					fq1.write(samToFastq(r1));
+					fq2.write(samToFastq(r2));
+				}
+			}
+		}
+		if (!lookup.isEmpty()) {
+			log.error("Missing paired primary alignment for ", lookup.size(), " reads. Writing to unpaired fastq.");
+			for (SAMRecord r : lookup.values()) {
+				fq.write(samToFastq(r));
+				readNames.remove(r.getReadName());
+			}
+		}
+		if (!readNames.isEmpty()) {
+			log.warn("Missing SAM records for ", readNames.size(), " reads.");
+		}
+	}
+
+	private boolean isCurrentIndex(File index) throws IOException {
+		try (ReadNameIndex rni = new ReadNameIndex(index)) {
+			return rni.isIndexOf(INPUT);
+		}
+	}
+
+	/**
+	 * Loads the records with the given read names directly from their indexed file locations.
+	 * Due to read name fingerprint collisions, records with other read names can also be returned.
+	 * @return records in file order
+	 */
+	private List<SAMRecord> indexedLookup(File index, Set<String> readNames) throws IOException {
+		LongOpenHashSet fingerprints = new LongOpenHashSet(readNames.size());
+		for (String name : readNames) {
+			fingerprints.add(ReadNameIndex.fingerprint(name));
+		}
+		long[] offsets;
+		try (ReadNameIndex rni = new ReadNameIndex(index)) {
+			if (!rni.isIndexOf(INPUT)) {
+				throw new IOException(String.format("Read name index %s was not created from the current version of %s", index, INPUT));
+			}
+			offsets = rni.lookup(fingerprints);
+		}
+		log.info("Loading ", offsets.length, " records from ", INPUT);
+		int partitions = Math.max(1, Math.min(WORKER_THREADS, offsets.length));
+		ExecutorService threadpool = Executors.newFixedThreadPool(partitions, new ThreadFactoryBuilder().setDaemon(false).setNameFormat("Worker-%d").build());
+		try {
+			List<Future<List<SAMRecord>>> futures = new ArrayList<>();
+			for (int i = 0; i < partitions; i++) {
+				long[] partition = Arrays.copyOfRange(offsets, (int)((long)offsets.length * i / partitions), (int)((long)offsets.length * (i + 1) / partitions));
+				futures.add(threadpool.submit(() -> readRecords(partition)));
+			}
+			List<SAMRecord> records = new ArrayList<>(offsets.length);
+			for (Future<List<SAMRecord>> f : futures) {
+				records.addAll(f.get());
+			}
+			return records;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			log.error(e, "Error reading indexed records from ", INPUT);
+			throw new RuntimeException(e);
+		} finally {
+			threadpool.shutdown();
+		}
+	}
+
+	/**
+	 * Reads the records starting at each of the given virtual file offsets
+	 */
+	private List<SAMRecord> readRecords(long[] offsets) throws IOException {
+		List<Chunk> chunks = new ArrayList<>(offsets.length);
+		for (long offset : offsets) {
+			// a record start is the only position in the chunk so exactly one record is read
+			chunks.add(new Chunk(offset, offset + 1));
+		}
+		List<SAMRecord> records = new ArrayList<>(offsets.length);
+		try (SamReader reader = SamReaderFactory.makeDefault().open(INPUT)) {
+			if (!(reader instanceof SamReader.PrimitiveSamReaderToSamReaderAdapter) || reader.type() != SamReader.Type.BAM_TYPE) {
+				throw new IllegalArgumentException("Read name index lookup requires a BAM file. " + INPUT + " is not a BAM file.");
+			}
+			try (SAMRecordIterator it = ((SamReader.PrimitiveSamReaderToSamReaderAdapter)reader).iterator(new BAMFileSpan(chunks))) {
+				while (it.hasNext()) {
+					records.add(it.next());
+				}
+			}
+		}
+		return records;
+	}
 }
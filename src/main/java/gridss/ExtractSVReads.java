@@ -6,6 +6,9 @@ import au.edu.wehi.idsv.picard.ReferenceLookup;
 import au.edu.wehi.idsv.sam.ChimericAlignment;
 import au.edu.wehi.idsv.sam.SAMRecordUtil;
 import au.edu.wehi.idsv.util.FileHelper;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
 import gridss.analysis.CollectStructuralVariantReadMetrics;
 import gridss.cmdline.ProcessStructuralVariantReadsCommandLineProgram;
 import gridss.filter.*;
@@ -18,9 +21,7 @@ import org.broadinstitute.barclay.argparser.CommandLineProgramProperties;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
+import java.util.*;
 
 @CommandLineProgramProperties(
 		summary = "Extracts reads and read pairs supporting putative structural variations. "
@@ -42,16 +43,18 @@ public class ExtractSVReads extends ProcessStructuralVariantReadsCommandLineProg
     private int count;
     @Override
     protected void setup(SAMFileHeader header, File samFile) {
+    	setupExtraction(header, samFile);
+    	SAMFileWriterFactory writerFactory = new SAMFileWriterFactory();
+    	tmpoutput = gridss.Defaults.OUTPUT_TO_TEMP_FILE ? FileSystemContext.getWorkingFileFor(OUTPUT, "gridss.tmp.ExtractSVReads.") : OUTPUT;
+    	writer = writerFactory.makeSAMOrBAMWriter(header, true, tmpoutput);
+    }
+    private void setupExtraction(SAMFileHeader header, File samFile) {
     	if (METRICS_OUTPUT != null) {
     		metricsCollector = new CollectStructuralVariantReadMetrics();
     		copyInput(metricsCollector);
     		metricsCollector.OUTPUT = METRICS_OUTPUT;
     		metricsCollector.setup(header, samFile);
     	}
-    	SAMFileWriterFactory writerFactory = new SAMFileWriterFactory();
-    	tmpoutput = gridss.Defaults.OUTPUT_TO_TEMP_FILE ? FileSystemContext.getWorkingFileFor(OUTPUT, "gridss.tmp.ExtractSVReads.") : OUTPUT;
-    	writer = writerFactory.makeSAMOrBAMWriter(header, true, tmpoutput);
-    	
     	IndelReadFilter indelFilter = new IndelReadFilter(INDELS ? MIN_INDEL_SIZE : Integer.MAX_VALUE);
 		ClippedReadFilter softClipFilter = new ClippedReadFilter(CLIPPED ? MIN_CLIP_LENGTH : Integer.MAX_VALUE); 
 		SplitReadFilter splitReadFilter = new SplitReadFilter();
@@ -192,6 +195,63 @@ public class ExtractSVReads extends ProcessStructuralVariantReadsCommandLineProg
 			metricsCollector.acceptFragment(records, lookup);
 		}
 	}
+	/**
+	 * Extracts SV reads from the given records without writing to OUTPUT.
+	 * 
+	 * Records are extracted lazily as the returned iterator is traversed and
+	 * METRICS_OUTPUT is written once all records have been consumed.
+	 * 
+	 * @param header input header
+	 * @param samFile input file
+	 * @param it input records. All records with the same read name must be consecutive.
+	 * @param lookup reference genome
+	 * @return extracted records in input order
+	 */
+	public Iterator<SAMRecord> extract(SAMFileHeader header, File samFile, Iterator<SAMRecord> it, ReferenceLookup lookup) {
+		setupExtraction(header, samFile);
+		return new ExtractingIterator(Iterators.peekingIterator(it), lookup);
+	}
+	private class ExtractingIterator extends AbstractIterator<SAMRecord> {
+		private final PeekingIterator<SAMRecord> it;
+		private final ReferenceLookup lookup;
+		private final List<SAMRecord> fragment = new ArrayList<>();
+		private final Deque<SAMRecord> extracted = new ArrayDeque<>();
+		public ExtractingIterator(PeekingIterator<SAMRecord> it, ReferenceLookup lookup) {
+			this.it = it;
+			this.lookup = lookup;
+		}
+		@Override
+		protected SAMRecord computeNext() {
+			while (extracted.isEmpty() && it.hasNext()) {
+				fragment.clear();
+				SAMRecord r = it.next();
+				fragment.add(r);
+				String readname = r.getReadName();
+				// records without a read name are treated as a single read
+				while (readname != null && it.hasNext() && readname.equals(it.peek().getReadName())) {
+					fragment.add(it.next());
+				}
+				boolean[] extract = shouldExtract(fragment, lookup);
+				for (int i = 0; i < fragment.size(); i++) {
+					if (extract[i]) {
+						extracted.add(fragment.get(i));
+						count++;
+					}
+				}
+				if (metricsCollector != null) {
+					metricsCollector.acceptFragment(fragment, lookup);
+				}
+			}
+			if (!extracted.isEmpty()) {
+				return extracted.poll();
+			}
+			log.info(String.format("Extracted %d reads from %s", count, INPUT));
+			if (METRICS_OUTPUT != null) {
+				metricsCollector.finish();
+			}
+			return endOfData();
+		}
+	}
 	@Override
 	protected void finish() {
 		writer.close();
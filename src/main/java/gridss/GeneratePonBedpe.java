@@ -5,16 +5,18 @@ import au.edu.wehi.idsv.bed.BedpeIterator;
 import au.edu.wehi.idsv.bed.BedpeRecord;
 import au.edu.wehi.idsv.bed.BedpeWriter;
 import au.edu.wehi.idsv.configuration.GridssConfiguration;
-import au.edu.wehi.idsv.util.AsyncBufferedIterator;
 import au.edu.wehi.idsv.util.AutoClosingIterator;
+import au.edu.wehi.idsv.util.FileHelper;
 import au.edu.wehi.idsv.util.WindowedSortingIterator;
 import au.edu.wehi.idsv.vcf.VcfFormatAttributes;
 import au.edu.wehi.idsv.vcf.VcfSvConstants;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Ordering;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import htsjdk.samtools.SAMSequenceDictionary;
 import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.samtools.util.CloserUtil;
 import htsjdk.samtools.util.IOUtil;
 import htsjdk.samtools.util.Log;
 import htsjdk.tribble.AbstractFeatureReader;
@@ -32,16 +34,17 @@ import org.broadinstitute.barclay.argparser.CommandLineProgramProperties;
 import picard.cmdline.CommandLineProgram;
 import picard.cmdline.StandardOptionDefinitions;
 
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 
@@ -123,14 +126,88 @@ public class GeneratePonBedpe extends CommandLineProgram {
 			}
 			GenomicProcessingContext pc = new GenomicProcessingContext(new FileSystemContext(TMP_DIR.get(0), TMP_DIR.get(0), MAX_RECORDS_IN_RAM), REFERENCE_SEQUENCE, null);
 			pc.setCommandLineProgram(this);
-			Iterator<Pair<BreakendSummary, Integer>> mergedIt = Iterators.mergeSorted(ImmutableList.of(
-					filteredMerge(pc, INPUT, NORMAL_ORDINAL),
-					getExistingPON(pc.getDictionary(), INPUT_BEDPE, INPUT_BED)), ByBreakendStartEnd);
-			BedpeMergingCounter pe = new BedpeMergingCounter();
-			BedMergingCounter se = new BedMergingCounter(true);
-			BedpeWriter writer = new BedpeWriter(pc.getDictionary(), OUTPUT_BEDPE);
-			BufferedWriter seWriter = Files.newBufferedWriter(OUTPUT_BED.toPath(), StandardCharsets.US_ASCII);
-			while(mergedIt.hasNext()) {
+			ExecutorService threadpool = Executors.newFixedThreadPool(WORKER_THREADS, new ThreadFactoryBuilder().setDaemon(true).setNameFormat("Worker-%d").build());
+			try {
+				generatePon(pc, threadpool);
+			} finally {
+				threadpool.shutdown();
+			}
+		} catch (IOException e) {
+			log.error(e);
+			return 1;
+		} catch (InterruptedException e) {
+		}
+		log.error("Imprecise call inclusion not recommended due to overly aggressive PON matching.");
+		return 0;
+ 	}
+	/**
+	 * Generates the PON with each contig processed independently.
+	 *
+	 * Input VCFs are decoded in parallel and spooled to per-contig temporary files.
+	 * Contigs are then merged and counted in parallel and the per-contig output
+	 * concatenated in contig order. Since the merging counters flush all records
+	 * on a contig before processing the next contig, this output is identical to a
+	 * single traversal of all records.
+	 */
+	private void generatePon(GenomicProcessingContext pc, ExecutorService threadpool) throws IOException, InterruptedException {
+		SAMSequenceDictionary dict = pc.getDictionary();
+		List<Iterator<Pair<BreakendSummary, Integer>>> streams = new ArrayList<>(filteredMerge(pc, INPUT, NORMAL_ORDINAL));
+		streams.add(getExistingPON(dict, INPUT_BEDPE, INPUT_BED));
+		try (BreakendShardSpool spool = new BreakendShardSpool(streams.size(), dict.size(), ByBreakendStartEnd, TMP_DIR.get(0))) {
+			log.info(String.format("Reading %d input files using %d threads", INPUT.size(), WORKER_THREADS));
+			List<Future<Void>> spooled = new ArrayList<>();
+			for (int i = 0; i < streams.size(); i++) {
+				int streamIndex = i;
+				spooled.add(threadpool.submit(() -> {
+					spool.write(streamIndex, streams.get(streamIndex));
+					CloserUtil.close(streams.get(streamIndex));
+					return null;
+				}));
+			}
+			for (Future<Void> f : spooled) {
+				getResult(f);
+			}
+			log.info("Merging breakpoints and breakends");
+			List<Future<File[]>> shards = new ArrayList<>();
+			for (int i = 0; i < dict.size(); i++) {
+				int referenceIndex = i;
+				shards.add(threadpool.submit(() -> generatePon(pc, spool, referenceIndex)));
+			}
+			try (OutputStream bedpeOut = new BufferedOutputStream(new FileOutputStream(OUTPUT_BEDPE));
+					OutputStream bedOut = new BufferedOutputStream(new FileOutputStream(OUTPUT_BED))) {
+				for (Future<File[]> f : shards) {
+					File[] shard = getResult(f);
+					append(shard[0], bedpeOut);
+					append(shard[1], bedOut);
+				}
+			}
+		}
+	}
+	private static <T> T getResult(Future<T> f) throws InterruptedException {
+		try {
+			return f.get();
+		} catch (ExecutionException e) {
+			log.error(e.getCause(), "Error generating PON");
+			throw new RuntimeException(e.getCause());
+		}
+	}
+	private static void append(File shard, OutputStream os) throws IOException {
+		Files.copy(shard.toPath(), os);
+		FileHelper.delete(shard, true);
+	}
+	/**
+	 * Generates the PON for a single contig
+	 * @return BEDPE and BED output files for the contig
+	 */
+	private File[] generatePon(GenomicProcessingContext pc, BreakendShardSpool spool, int referenceIndex) throws IOException {
+		File bedpeShard = File.createTempFile("gridss.pon." + referenceIndex + ".", ".bedpe", TMP_DIR.get(0));
+		File bedShard = File.createTempFile("gridss.pon." + referenceIndex + ".", ".bed", TMP_DIR.get(0));
+		BedpeMergingCounter pe = new BedpeMergingCounter();
+		BedMergingCounter se = new BedMergingCounter(true);
+		try (CloseableIterator<Pair<BreakendSummary, Integer>> mergedIt = spool.iterator(referenceIndex);
+				BedpeWriter writer = new BedpeWriter(pc.getDictionary(), bedpeShard);
+				BufferedWriter seWriter = Files.newBufferedWriter(bedShard.toPath(), StandardCharsets.US_ASCII)) {
+			while (mergedIt.hasNext()) {
 				Pair<BreakendSummary, Integer> record = mergedIt.next();
 				if (record.getFirst() instanceof BreakpointSummary) {
 					Pair<BreakpointSummary, Integer> bpRecord = Pair.create((BreakpointSummary)record.getFirst(), record.getSecond());
@@ -141,16 +218,9 @@ public class GeneratePonBedpe extends CommandLineProgram {
 			}
 			writeBedpe(pe.finish(), writer);
 			writeBed(pc.getReference().getSequenceDictionary(), seWriter, se.finish());
-			writer.close();
-			seWriter.close();
-		} catch (IOException e) {
-			log.error(e);
-			return 1;
-		} catch (InterruptedException e) {
 		}
-		log.error("Imprecise call inclusion not recommended due to overly aggressive PON matching.");
-		return 0;
- 	}
+		return new File[] { bedpeShard, bedShard };
+	}
  	private static Pair<BreakendSummary, Integer> toPair(SAMSequenceDictionary dictionary, BEDFeature feat) {
 		String chr = feat.getContig();
 		int start = feat.getStart();
@@ -198,23 +268,27 @@ public class GeneratePonBedpe extends CommandLineProgram {
 		}
 	}
 
-	private Iterator<Pair<BreakendSummary, Integer>> filteredMerge(GenomicProcessingContext pc, List<File> file, List<Integer> ordinals) {
-    	List<CloseableIterator<Pair<BreakendSummary, Integer>>> fileIt = new ArrayList<>();
-    	for (File f : file) {
-    		fileIt.add(getFilteredIterator(pc, f, ordinals));
+	/**
+	 * Allocates the input VCFs to worker threads
+	 * @return sorted records from each group of input files
+	 */
+	private List<Iterator<Pair<BreakendSummary, Integer>>> filteredMerge(GenomicProcessingContext pc, List<File> file, List<Integer> ordinals) {
+		List<List<File>> partitioned = new ArrayList<>();
+		for (int i = 0; i < Math.min(WORKER_THREADS, file.size()); i++) {
+			partitioned.add(new ArrayList<>());
+		}
+		for (int i = 0; i < file.size(); i++) {
+			partitioned.get(i % partitioned.size()).add(file.get(i));
 		}
-		// allocate VCF files to worker threads
-		final AtomicInteger counter = new AtomicInteger(0);
-		final int size = WORKER_THREADS;
-		final List<Iterator<Pair<BreakendSummary, Integer>>> partitioned = fileIt.stream()
-				.collect(Collectors.groupingBy(it -> counter.getAndIncrement() % size))
-				.values()
-				.stream()
-				.map(list -> list.size() == 1 ? list.get(0) : Iterators.mergeSorted(list, ByBreakendStartEnd))
-				.map(it -> new AsyncBufferedIterator<>(it,"AsyncVCF"))
+		// records are decoded by the worker thread that spools the group
+		return partitioned.stream()
+				.map(list -> {
+					List<CloseableIterator<Pair<BreakendSummary, Integer>>> fileIt = list.stream()
+							.map(f -> getFilteredIterator(pc, f, ordinals))
+							.collect(Collectors.toList());
+					return (Iterator<Pair<BreakendSummary, Integer>>)new AutoClosingIterator<>(Iterators.mergeSorted(fileIt, ByBreakendStartEnd), fileIt.toArray(new Closeable[0]));
+				})
 				.collect(Collectors.toList());
-		Iterator<Pair<BreakendSummary, Integer>> mergedIt = new AsyncBufferedIterator<>(Iterators.mergeSorted(partitioned, ByBreakendStartEnd), "Merged VCF reader");
-		return mergedIt;
 	}
 	private CloseableIterator<Pair<BreakendSummary, Integer>> getFilteredIterator(GenomicProcessingContext pc, File file, List<Integer> ordinals) {
 		VCFFileReader vcfReader = new VCFFileReader(file, false);
@@ -0,0 +1,51 @@
+package gridss;
+
+import au.edu.wehi.idsv.FileSystemContext;
+import au.edu.wehi.idsv.ReadNameIndex;
+import au.edu.wehi.idsv.util.FileHelper;
+import htsjdk.samtools.util.IOUtil;
+import htsjdk.samtools.util.Log;
+import org.broadinstitute.barclay.argparser.Argument;
+import org.broadinstitute.barclay.argparser.CommandLineProgramProperties;
+import picard.cmdline.CommandLineProgram;
+import picard.cmdline.StandardOptionDefinitions;
+
+import java.io.File;
+import java.io.IOException;
+
+@CommandLineProgramProperties(
+		summary = "Creates a read name index for a BAM file. " +
+				"The index allows ExtractFragmentsToFastq to load reads by name without traversing the entire BAM file. " +
+				"Only primary read alignments are indexed.",
+        oneLineSummary = "Creates a read name index for a BAM file.",
+        programGroup = gridss.cmdline.programgroups.DataConversion.class
+)
+public class IndexReadNames extends CommandLineProgram {
+	private static final Log log = Log.getInstance(IndexReadNames.class);
+	@Argument(shortName= StandardOptionDefinitions.INPUT_SHORT_NAME, doc="Input BAM file.")
+	public File INPUT;
+	@Argument(shortName= StandardOptionDefinitions.OUTPUT_SHORT_NAME, doc="Output read name index. Defaults to the input file with a " + ReadNameIndex.FILE_EXTENSION + " suffix.", optional=true)
+	public File OUTPUT = null;
+
+	public static void main(String[] argv) {
+		System.exit(new IndexReadNames().instanceMain(argv));
+	}
+
+	@Override
+	protected int doWork() {
+		IOUtil.assertFileIsReadable(INPUT);
+		File output = OUTPUT != null ? OUTPUT : ReadNameIndex.getIndexFile(INPUT);
+		IOUtil.assertFileIsWritable(output);
+		File tmpOut = gridss.Defaults.OUTPUT_TO_TEMP_FILE ? FileSystemContext.getWorkingFileFor(output) : output;
+		try {
+			ReadNameIndex.create(INPUT, tmpOut);
+			if (tmpOut != output) {
+				FileHelper.move(tmpOut, output, true);
+			}
+		} catch (IOException e) {
+			log.error(e);
+			return -1;
+		}
+		return 0;
+	}
+}
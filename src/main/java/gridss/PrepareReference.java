@@ -41,6 +41,10 @@ public class PrepareReference extends CommandLineProgram {
 			}
 			File cache = GenomicProcessingContext.getGridssCacheFileForReference(REFERENCE_SEQUENCE);
 			if (CREATE_GRIDSS_REFERENCE_CACHE) {
+				if (cache.exists() && !TwoBitBufferedReferenceSequenceFile.isCacheFile(cache)) {
+					log.info("Removing " + cache + " as it is not in the current GRIDSS reference cache format");
+					cache.delete();
+				}
 				if (!cache.exists()) {
 					log.info("Creating GRIDSS reference cache file " + cache);
 					ReferenceSequenceFile ref = new IndexedFastaSequenceFile(REFERENCE_SEQUENCE);
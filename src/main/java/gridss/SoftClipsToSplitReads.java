@@ -4,9 +4,14 @@ import au.edu.wehi.idsv.GenomicProcessingContext;
 import au.edu.wehi.idsv.IterativeSplitReadRealigner;
 import au.edu.wehi.idsv.SplitReadRealigner;
 import au.edu.wehi.idsv.StreamingSplitReadRealigner;
+import au.edu.wehi.idsv.alignment.AlignmentCache;
 import au.edu.wehi.idsv.alignment.BwaStreamingAligner;
+import au.edu.wehi.idsv.alignment.CachingFastqAligner;
+import au.edu.wehi.idsv.alignment.CachingStreamingAligner;
 import au.edu.wehi.idsv.alignment.ExternalProcessFastqAligner;
 import au.edu.wehi.idsv.alignment.ExternalProcessStreamingAligner;
+import au.edu.wehi.idsv.alignment.FastqAligner;
+import au.edu.wehi.idsv.alignment.StreamingAligner;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import gridss.cmdline.ReferenceCommandLineProgram;
@@ -71,12 +76,19 @@ public class SoftClipsToSplitReads extends ReferenceCommandLineProgram {
 			+ " The aligner must support using \"-\" as the input filename when reading from stdin."
 			+ " The sort order of the input file will not be retained.", optional=true)
 	public boolean ALIGNER_STREAMING = false;
+	@Argument(doc="Number of external aligner processes to run when performing streaming alignment."
+			+ " WORKER_THREADS are split evenly between the aligner processes.", optional=true)
+	public int ALIGNER_STREAMING_PROCESSES = 1;
     @Argument(doc="Command line arguments to run external aligner. Aligner output should be written to stdout and the records MUST match the input fastq order."
     		+ "Java argument formatting is used with %1$s being the fastq file to align, "
     		+ "%2$s the reference genome, and %3$d the number of threads to use.", optional=true)
 	public List<String> ALIGNER_COMMAND_LINE = Lists.newArrayList(BWA_COMMAND_LINE);
 	@Argument(doc="Base quality score to sent to aligner if quality scores are missing.", optional=true)
 	public byte FALLBACK_BASE_QUALITY = 20;
+	@Argument(doc="Directory to cache alignments in. Alignments of previously aligned sequences are reused instead of realigned."
+			+ " The cache directory can be shared between runs using the same reference genome and aligner."
+			+ " Should only be used with aligners that do not consider base qualities when aligning.", optional=true)
+	public File ALIGNMENT_CACHE = null;
 	/**
 	 * Which aligner to perform the alignment with
 	 */
@@ -98,24 +110,36 @@ public class SoftClipsToSplitReads extends ReferenceCommandLineProgram {
     	try {
     		SamReaderFactory readerFactory = SamReaderFactory.makeDefault().referenceSequence(REFERENCE_SEQUENCE);
         	SAMFileWriterFactory writerFactory = new SAMFileWriterFactory();
+        	AlignmentCache cache = null;
+        	if (ALIGNMENT_CACHE != null) {
+        		String alignerName = ALIGNER == Aligner.BWAMEM ? "bwa-jni" : String.join(" ", ALIGNER_COMMAND_LINE);
+        		cache = new AlignmentCache(ALIGNMENT_CACHE, REFERENCE_SEQUENCE, getReference().getSequenceDictionary(), alignerName);
+			}
         	switch (ALIGNER) {
 				case BWAMEM:
 					BwaStreamingAligner bwaAligner = new BwaStreamingAligner(REFERENCE_SEQUENCE, getReference().getSequenceDictionary(), WORKER_THREADS, ALIGNER_BATCH_SIZE * 150);
-					realigner = new StreamingSplitReadRealigner(pc, bwaAligner, ALIGNER_BATCH_SIZE);
+					realigner = new StreamingSplitReadRealigner(pc, withCache(bwaAligner, cache), ALIGNER_BATCH_SIZE);
 					toClose.add(bwaAligner);
 					break;
 				case EXTERNAL:
 				default:
 					if (ALIGNER_STREAMING) {
-						ExternalProcessStreamingAligner streamingAligner = new ExternalProcessStreamingAligner(readerFactory, ALIGNER_COMMAND_LINE, REFERENCE_SEQUENCE, WORKER_THREADS, getReference().getSequenceDictionary());
+						ExternalProcessStreamingAligner streamingAligner = new ExternalProcessStreamingAligner(readerFactory, ALIGNER_COMMAND_LINE, REFERENCE_SEQUENCE, WORKER_THREADS, getReference().getSequenceDictionary(), ALIGNER_STREAMING_PROCESSES, ExternalProcessStreamingAligner.DEFAULT_BATCH_SIZE);
 						toClose.add(streamingAligner);
-						realigner = new StreamingSplitReadRealigner(pc, streamingAligner, ALIGNER_BATCH_SIZE);
+						realigner = new StreamingSplitReadRealigner(pc, withCache(streamingAligner, cache), ALIGNER_BATCH_SIZE);
 					} else {
-						ExternalProcessFastqAligner externalAligner = new ExternalProcessFastqAligner(readerFactory, writerFactory, ALIGNER_COMMAND_LINE);
+						FastqAligner externalAligner = new ExternalProcessFastqAligner(readerFactory, writerFactory, ALIGNER_COMMAND_LINE);
+						if (cache != null) {
+							externalAligner = new CachingFastqAligner(externalAligner, cache, readerFactory, writerFactory);
+						}
 						realigner = new IterativeSplitReadRealigner(pc, externalAligner);
 					}
 					break;
 			}
+			if (cache != null) {
+				// flush the cache after the aligners have completed
+				toClose.add(cache);
+			}
 			realigner.setFallbackBaseQuality(FALLBACK_BASE_QUALITY);
 			realigner.setMinSoftClipLength(MIN_CLIP_LENGTH);
 			realigner.setMinSoftClipQuality(MIN_CLIP_QUAL);
@@ -137,6 +161,10 @@ public class SoftClipsToSplitReads extends ReferenceCommandLineProgram {
     	return 0;
 	}
     
+	private static StreamingAligner withCache(StreamingAligner aligner, AlignmentCache cache) {
+		if (cache == null) return aligner;
+		return new CachingStreamingAligner(aligner, cache);
+	}
 	private void validateParameters() {
     	IOUtil.assertFileIsReadable(INPUT);
     	IOUtil.assertFileIsWritable(OUTPUT);
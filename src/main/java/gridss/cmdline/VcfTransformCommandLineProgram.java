@@ -5,6 +5,7 @@ import au.edu.wehi.idsv.util.AutoClosingIterator;
 import au.edu.wehi.idsv.util.FileHelper;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterators;
+import htsjdk.samtools.QueryInterval;
 import htsjdk.samtools.util.CloseableIterator;
 import htsjdk.samtools.util.IOUtil;
 import htsjdk.samtools.util.Log;
@@ -16,9 +17,12 @@ import htsjdk.variant.vcf.VCFHeader;
 import org.broadinstitute.barclay.argparser.Argument;
 import picard.cmdline.StandardOptionDefinitions;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 
@@ -47,12 +51,18 @@ public abstract class VcfTransformCommandLineProgram extends FullEvidenceCommand
 			return 1;
 		}
 		log.info("Annotating variants in " + INPUT_VCF);
-		try (CloseableIterator<VariantContextDirectedEvidence> it = iterator(getBreakends(INPUT_VCF), threadpool)) {
+		try (CloseableIterator<VariantContextDirectedEvidence> it = transformedBreakends(threadpool)) {
 			saveVcf(OUTPUT_VCF, getAllCalls(INPUT_VCF, it));
 		}
 		log.info("Annotated variants written to " + OUTPUT_VCF);
 		return 0;
 	}
+	/**
+	 * Transformed breakend calls ordered by breakend start position
+	 */
+	protected CloseableIterator<VariantContextDirectedEvidence> transformedBreakends(ExecutorService threadpool) throws IOException {
+		return iterator(getBreakends(INPUT_VCF), threadpool);
+	}
 	public CloseableIterator<VariantContextDirectedEvidence> getBreakends(File file) {
 		VCFFileReader vcfReader = new VCFFileReader(file, false);
 		CloseableIterator<VariantContext> it = vcfReader.iterator();
@@ -62,6 +72,33 @@ public abstract class VcfTransformCommandLineProgram extends FullEvidenceCommand
 		beit = new DirectEvidenceWindowedSortingIterator<>(getContext(), SAMEvidenceSource.maximumWindowSize(getContext(), getSamEvidenceSources(), getAssemblySource()), beit);
 		return new AutoClosingIterator<VariantContextDirectedEvidence>(beit, it, vcfReader);
 	}
+	/**
+	 * Breakend calls overlapping the given intervals.
+	 * @param file VCF
+	 * @param index VCF index. The default index location is used if null.
+	 * @param intervals sorted, non-overlapping intervals
+	 */
+	public CloseableIterator<VariantContextDirectedEvidence> getBreakends(File file, File index, QueryInterval[] intervals) {
+		int windowSize = SAMEvidenceSource.maximumWindowSize(getContext(), getSamEvidenceSources(), getAssemblySource());
+		// VCF position can differ from the breakend start position
+		QueryInterval[] vcfIntervals = QueryIntervalUtil.padIntervals(getContext().getDictionary(), intervals, windowSize);
+		VCFFileReader vcfReader = index == null ? new VCFFileReader(file, true) : new VCFFileReader(file, index, true);
+		List<CloseableIterator<VariantContext>> queries = new ArrayList<>();
+		List<Iterator<VariantContext>> intervalIts = new ArrayList<>();
+		for (QueryInterval qi : vcfIntervals) {
+			CloseableIterator<VariantContext> it = vcfReader.query(getContext().getDictionary().getSequence(qi.referenceIndex).getSequenceName(), qi.start, qi.end);
+			queries.add(it);
+			// records spanning multiple intervals are only returned by the interval containing their position
+			intervalIts.add(Iterators.filter(it, variant -> variant.getStart() >= qi.start && variant.getStart() <= qi.end));
+		}
+		Iterator<IdsvVariantContext> idsvIt = Iterators.transform(Iterators.concat(intervalIts.iterator()), variant -> IdsvVariantContext.create(getContext().getDictionary(), null, variant));
+		Iterator<VariantContextDirectedEvidence> beit = Iterators.filter(idsvIt, VariantContextDirectedEvidence.class);
+		beit = Iterators.filter(beit, variant -> QueryIntervalUtil.overlaps(intervals, variant.getBreakendSummary()));
+		beit = new DirectEvidenceWindowedSortingIterator<>(getContext(), windowSize, beit);
+		List<Closeable> toClose = new ArrayList<>(queries);
+		toClose.add(vcfReader);
+		return new AutoClosingIterator<VariantContextDirectedEvidence>(beit, toClose.toArray(new Closeable[0]));
+	}
 	public Iterator<IdsvVariantContext> getAllCalls(File file, CloseableIterator<VariantContextDirectedEvidence> breakendCalls) {
 		VCFFileReader vcfReader = new VCFFileReader(file, false);
 		if (inputHeader != null) {
@@ -1,11 +1,9 @@
 package gridss.kraken;
 
-import au.edu.wehi.idsv.kraken.KrakenClassification;
 import au.edu.wehi.idsv.kraken.KrakenClassificationChecker;
-import au.edu.wehi.idsv.kraken.KrakenKmerClassification;
-import au.edu.wehi.idsv.kraken.KrakenParser;
-import au.edu.wehi.idsv.ncbi.TaxonomyHelper;
+import au.edu.wehi.idsv.kraken.KrakenOutputFilter;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import htsjdk.samtools.util.IOUtil;
 import htsjdk.samtools.util.Log;
 import htsjdk.samtools.util.RuntimeIOException;
@@ -15,8 +13,9 @@ import picard.cmdline.CommandLineProgram;
 import picard.cmdline.StandardOptionDefinitions;
 
 import java.io.*;
-import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 @CommandLineProgramProperties(
         summary = "Processes Kraken2 output and subsets to only those records under the given taxonomic IDs. ",
@@ -38,6 +37,9 @@ public class SubsetToTaxonomy extends CommandLineProgram {
     public File NCBI_NODES_DMP;
     @Argument(doc="Include in output if any kmer unambiguously matches the taxonomic classification.", optional = true)
     public Boolean ANY_KMER = true;
+    @Argument(doc = "Number of worker threads to spawn. Defaults to number of cores available.",
+            shortName = "THREADS")
+    public int WORKER_THREADS = Runtime.getRuntime().availableProcessors();
 
     public enum OutputFormat {
         /**
@@ -55,32 +57,32 @@ public class SubsetToTaxonomy extends CommandLineProgram {
         IOUtil.assertFileIsReadable(INPUT);
         IOUtil.assertFileIsReadable(NCBI_NODES_DMP);
         IOUtil.assertFileIsWritable(OUTPUT);
-        try (KrakenParser parser = new KrakenParser(new BufferedReader(new InputStreamReader(new FileInputStream(INPUT))))) {
+        ExecutorService threadpool = Executors.newFixedThreadPool(WORKER_THREADS, new ThreadFactoryBuilder().setDaemon(true).setNameFormat("Worker-%d").build());
+        try {
             KrakenClassificationChecker kcc = new KrakenClassificationChecker(TAXONOMY_IDS, NCBI_NODES_DMP);
             log.info("Performing taxonomy lookup on ", INPUT);
+            KrakenOutputFilter filter = new KrakenOutputFilter(kcc, FORMAT == OutputFormat.READ_NAME);
             try (BufferedOutputStream os = new BufferedOutputStream(new FileOutputStream(OUTPUT))) {
-                while (parser.hasNext()) {
-                    KrakenClassification kc = parser.next();
-                    if (kcc.isOfInterest(kc)) {
-                        switch (FORMAT) {
-                            case READ_NAME:
-                                os.write(kc.sequenceId.getBytes(StandardCharsets.UTF_8));
-                                os.write('\n');
-                            case KRAKEN:
-                            default:
-                                os.write(kc.toKrakenOutput().getBytes(StandardCharsets.UTF_8));
-                                os.write('\n');
-                        }
-                    }
-                }
+                filter.filter(INPUT, os, threadpool, WORKER_THREADS + 1);
             }
+            log.info(String.format("Found %d records of interest in %d Kraken2 output records.", filter.getRecordsOfInterest(), filter.getRecordsProcessed()));
         } catch (IOException e) {
             log.error(e);
             throw new RuntimeIOException(e);
+        } finally {
+            threadpool.shutdown();
         }
         return 0;
     }
 
+    @Override
+    protected String[] customCommandLineValidation() {
+        if (WORKER_THREADS < 1) {
+            return new String[] { "WORKER_THREADS must be at least one." };
+        }
+        return super.customCommandLineValidation();
+    }
+
     public static void main(String[] argv) {
         System.exit(new SubsetToTaxonomy().instanceMain(argv));
     }
@@ -506,6 +506,8 @@ public class BAMFileReader extends SamReader.ReaderImplementation {
         }
         if (mIsSeekable) {
             try {
+                // full file scans would just churn the block cache
+                mCompressedInputStream.setBlockCache(null);
                 mCompressedInputStream.seek(mFirstRecordPointer);
             } catch (final IOException exc) {
                 throw new RuntimeIOException(exc.getMessage(), exc);
@@ -671,6 +673,7 @@ public class BAMFileReader extends SamReader.ReaderImplementation {
             throw new UnsupportedOperationException("Cannot query stream-based BAM file");
         }
         try {
+            mCompressedInputStream.setBlockCache(null);
             final long startOfLastLinearBin = getIndex().getStartOfLastLinearBin();
             if (startOfLastLinearBin != -1) {
                 mCompressedInputStream.seek(startOfLastLinearBin);
@@ -1118,6 +1121,8 @@ public class BAMFileReader extends SamReader.ReaderImplementation {
         BAMFileIndexIterator(final long[] filePointers) {
             super(false);  // delay advance() until after construction
             mFilePointers = filePointers;
+            // index queries of overlapping regions share inflated blocks
+            mCompressedInputStream.setBlockCache(InflatedBlockCache.getDefault());
             advance();
         }
 
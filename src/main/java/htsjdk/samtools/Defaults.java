@@ -119,6 +119,12 @@ public class Defaults {
     public static final boolean DISABLE_SNAPPY_COMPRESSOR;
 
 
+    /**
+     * Maximum size, in bytes, of the process-wide cache of inflated BGZF blocks shared by BAM index queries.
+     * Set to 0 to disable caching. Default = 128MB.
+     */
+    public static final long INFLATED_BLOCK_CACHE_SIZE;
+
     public static final String SAMJDK_PREFIX = "samjdk.";
     static {
         CREATE_INDEX = getBooleanProperty("create_index", false);
@@ -143,6 +149,7 @@ public class Defaults {
         SAM_FLAG_FIELD_FORMAT = SamFlagField.valueOf(getStringProperty("sam_flag_field_format", SamFlagField.DECIMAL.name()));
         SRA_LIBRARIES_DOWNLOAD = getBooleanProperty("sra_libraries_download", false);
         DISABLE_SNAPPY_COMPRESSOR = getBooleanProperty(DISABLE_SNAPPY_PROPERTY_NAME, false);
+        INFLATED_BLOCK_CACHE_SIZE = 1024L * 1024L * getIntProperty("inflated_block_cache_mb", 128);
     }
 
     /**
@@ -166,6 +173,7 @@ public class Defaults {
         result.put("CUSTOM_READER_FACTORY", CUSTOM_READER_FACTORY);
         result.put("SAM_FLAG_FIELD_FORMAT", SAM_FLAG_FIELD_FORMAT);
         result.put("DISABLE_SNAPPY_COMPRESSOR", DISABLE_SNAPPY_COMPRESSOR);
+        result.put("INFLATED_BLOCK_CACHE_SIZE", INFLATED_BLOCK_CACHE_SIZE);
         return Collections.unmodifiableSortedMap(result);
     }
 
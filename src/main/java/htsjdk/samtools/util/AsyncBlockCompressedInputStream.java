@@ -87,6 +87,7 @@ public class AsyncBlockCompressedInputStream extends BlockCompressedInputStream
     @Override
     protected CompressionBlock nextBlock(CompressionBlock releasedBlock) throws IOException {
         if (releasedBlock != null &&
+                !releasedBlock.isCached() &&
                 releasedBlock.getUncompressedBlock() != null &&
                 releasedBlock.getUncompressedBlock().length > 0) {
             mFreeDecompressedBlockedBuffers.add(releasedBlock.getUncompressedBlock());
@@ -122,6 +123,10 @@ public class AsyncBlockCompressedInputStream extends BlockCompressedInputStream
         }
         @Override
         public Tuple<CompressionBlock, Long> performReadAhead(long bufferBudget) throws IOException {
+            CompressionBlock cached = readCachedBlock(null);
+            if (cached != null) {
+                return new Tuple<>(cached, (long)cached.getUncompressedBlock().length);
+            }
             byte[] compressedBuffer = mFreeCompressedBlockBuffers.get();
             CompressionBlock block = readNextBlock(compressedBuffer);
             if (block != null) {
@@ -134,6 +139,10 @@ public class AsyncBlockCompressedInputStream extends BlockCompressedInputStream
 
         @Override
         public CompressionBlock transform(CompressionBlock record) {
+            if (record.isCached()) {
+                // already decompressed
+                return record;
+            }
             BlockGunzipper inflater = mFreeInflaters.get();
             try {
                 inflater.setCheckCrcs(AsyncBlockCompressedInputStream.this.checkCrc);
@@ -141,6 +150,7 @@ public class AsyncBlockCompressedInputStream extends BlockCompressedInputStream
             } finally {
                 mFreeInflaters.recycle(inflater);
             }
+            cacheBlock(record);
             // compressed block is not needed once we have the decompressed version
             byte[] compressedBlockBuffer = record.getCompressedBlock();
             if (compressedBlockBuffer != null && compressedBlockBuffer.length > 0) {
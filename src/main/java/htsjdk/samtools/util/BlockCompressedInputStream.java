@@ -69,6 +69,8 @@ public class BlockCompressedInputStream extends InputStream implements LocationA
     private int mCurrentOffset = 0;
     private long mStreamOffset = 0;
     private final BlockGunzipper blockGunzipper;
+    private volatile InflatedBlockCache mBlockCache = null;
+    private String mBlockCacheFile = null;
 
     /**
      * Note that seek() is not supported if this ctor is used.
@@ -174,6 +176,22 @@ public class BlockCompressedInputStream extends InputStream implements LocationA
         blockGunzipper = new BlockGunzipper(inflaterFactory);
     }
 
+    /**
+     * Shares inflated blocks with other readers of the same file through the given cache.
+     * Caching is only performed for seekable local files.
+     * @param cache block cache. Caching is disabled if null.
+     */
+    public void setBlockCache(final InflatedBlockCache cache) {
+        if (cache == null || !cache.isEnabled() || mFile == null) {
+            mBlockCache = null;
+            return;
+        }
+        if (mBlockCacheFile == null) {
+            mBlockCacheFile = InflatedBlockCache.getFileIdentifier(mFile.getSource());
+        }
+        mBlockCache = mBlockCacheFile == null ? null : cache;
+    }
+
     /**
      * Determines whether or not the inflater will re-calculated the CRC on the decompressed data
      * and check it against the value stored in the GZIP header.  CRC checking is an expensive
@@ -467,17 +485,58 @@ public class BlockCompressedInputStream extends InputStream implements LocationA
      */
     protected CompressionBlock nextBlock(CompressionBlock releasedBlock) throws IOException {
         byte[] compressedBuffer = releasedBlock == null ? null : releasedBlock.mCompressedBlock;
+        CompressionBlock cb = readCachedBlock(compressedBuffer);
+        if (cb != null) {
+            return cb;
+        }
         if (compressedBuffer == null || compressedBuffer.length < BlockCompressedStreamConstants.MAX_COMPRESSED_BLOCK_SIZE) {
             compressedBuffer = new byte[BlockCompressedStreamConstants.MAX_COMPRESSED_BLOCK_SIZE];
         }
-        CompressionBlock cb = readNextBlock(compressedBuffer);
+        cb = readNextBlock(compressedBuffer);
         if (cb != null) {
-            byte[] decompressionBufferAvailableForReuse = releasedBlock == null ? null : releasedBlock.getUncompressedBlock();
+            // cached blocks are shared with other readers so cannot be reused
+            byte[] decompressionBufferAvailableForReuse = releasedBlock == null || releasedBlock.isCached() ? null : releasedBlock.getUncompressedBlock();
             cb.decompress(decompressionBufferAvailableForReuse, blockGunzipper, this);
+            cacheBlock(cb);
+        }
+        return cb;
+    }
+
+    /**
+     * Returns the block at the current stream position from the block cache
+     * and advances the stream past the block.
+     * @param compressedBuffer compressed block buffer to retain for reuse by subsequent reads. Can be null.
+     * @return cached block, or null if the next block is not cached.
+     */
+    protected CompressionBlock readCachedBlock(byte[] compressedBuffer) throws IOException {
+        final InflatedBlockCache cache = mBlockCache;
+        if (cache == null) {
+            return null;
+        }
+        final InflatedBlockCache.Block block = cache.get(mBlockCacheFile, mStreamOffset);
+        if (block == null) {
+            return null;
         }
+        final CompressionBlock cb = new CompressionBlock(mStreamOffset, compressedBuffer, block.getCompressedSize());
+        cb.mDecompressedBlock = block.getUncompressedBlock();
+        cb.mCached = true;
+        mStreamOffset += block.getCompressedSize();
+        mFile.seek(mStreamOffset);
         return cb;
     }
 
+    /**
+     * Adds the given decompressed block to the block cache.
+     * Once cached, the decompressed block buffer must not be reused.
+     */
+    protected void cacheBlock(CompressionBlock block) {
+        final InflatedBlockCache cache = mBlockCache;
+        if (cache != null && block.mDecompressedBlock != null && block.mDecompressedBlock.length > 0) {
+            cache.put(mBlockCacheFile, block.getBlockAddress(), block.getBlockCompressedSize(), block.mDecompressedBlock);
+            block.mCached = true;
+        }
+    }
+
     /**
      * Reads the next block from the input stream
      * @param buffer buffer to read next block into. Must be at least MAX_COMPRESSED_BLOCK_SIZE in size.
@@ -657,6 +716,7 @@ public class BlockCompressedInputStream extends InputStream implements LocationA
         private final long mBlockAddress;
         private byte[] mDecompressedBlock;
         private byte[] mCompressedBlock;
+        private boolean mCached = false;
 
         public CompressionBlock(long blockAddress, byte[] compressedBlockBuffer, int compressedBlockSize) {
             mDecompressedBlock = null;
@@ -683,6 +743,14 @@ public class BlockCompressedInputStream extends InputStream implements LocationA
             }
         }
 
+        /**
+         * Indicates whether the decompressed block is shared through the block cache
+         * and must not be reused as a decompression buffer.
+         */
+        public boolean isCached() {
+            return mCached;
+        }
+
         /**
          * Decompressed block
          */
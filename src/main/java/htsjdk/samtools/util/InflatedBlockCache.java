@@ -0,0 +1,166 @@
+package htsjdk.samtools.util;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import htsjdk.samtools.Defaults;
+
+import java.io.File;
+import java.util.Objects;
+
+/**
+ * Process-wide cache of inflated BGZF blocks.
+ *
+ * Blocks are keyed by file and compressed block address so independent readers
+ * of the same file share decompressed blocks. This avoids re-reading and re-inflating
+ * the blocks at the boundaries of overlapping region queries, such as the padded
+ * per-chunk queries performed during assembly and variant calling.
+ *
+ * Files are identified by path, length and modification time so a file replaced
+ * at the same path does not return stale blocks.
+ *
+ * Cached blocks are shared between readers and must not be modified.
+ */
+public class InflatedBlockCache {
+    /**
+     * Approximate per-entry overhead in bytes of the cache data structures
+     */
+    private static final int ENTRY_OVERHEAD = 128;
+    private static final InflatedBlockCache DEFAULT = new InflatedBlockCache(Defaults.INFLATED_BLOCK_CACHE_SIZE);
+    private final long maxSizeInBytes;
+    private final Cache<Key, Block> cache;
+
+    /**
+     * @param maxSizeInBytes maximum size of the cache. A size of zero disables caching.
+     */
+    public InflatedBlockCache(long maxSizeInBytes) {
+        this.maxSizeInBytes = maxSizeInBytes;
+        if (maxSizeInBytes > 0) {
+            this.cache = CacheBuilder.newBuilder()
+                    .maximumWeight(maxSizeInBytes)
+                    .weigher((Key k, Block b) -> b.uncompressed.length + ENTRY_OVERHEAD)
+                    .concurrencyLevel(Runtime.getRuntime().availableProcessors())
+                    .recordStats()
+                    .build();
+        } else {
+            this.cache = null;
+        }
+    }
+
+    /**
+     * Gets the cache shared by all readers in this process
+     */
+    public static InflatedBlockCache getDefault() {
+        return DEFAULT;
+    }
+
+    public boolean isEnabled() {
+        return cache != null;
+    }
+
+    /**
+     * Identifier used to key the blocks of the given stream source
+     * @param source stream source
+     * @return cache identifier, or null if the source is not a local file
+     */
+    public static String getFileIdentifier(String source) {
+        if (source == null) return null;
+        File file = new File(source);
+        if (!file.isFile()) return null;
+        return file.getAbsolutePath() + ":" + file.length() + ":" + file.lastModified();
+    }
+
+    /**
+     * Gets the cached block
+     * @param file file identifier
+     * @param blockAddress compressed offset of the start of the block
+     * @return cached block, or null if the block is not cached
+     */
+    public Block get(String file, long blockAddress) {
+        if (cache == null) return null;
+        return cache.getIfPresent(new Key(file, blockAddress));
+    }
+
+    /**
+     * Adds the given block to the cache.
+     * The caller must not modify the uncompressed block after it has been added to the cache.
+     */
+    public void put(String file, long blockAddress, int compressedSize, byte[] uncompressed) {
+        if (cache == null) return;
+        cache.put(new Key(file, blockAddress), new Block(compressedSize, uncompressed));
+    }
+
+    public long getHitCount() {
+        return cache == null ? 0 : cache.stats().hitCount();
+    }
+
+    public long getMissCount() {
+        return cache == null ? 0 : cache.stats().missCount();
+    }
+
+    public long getEvictionCount() {
+        return cache == null ? 0 : cache.stats().evictionCount();
+    }
+
+    /**
+     * Number of cached blocks
+     */
+    public long size() {
+        return cache == null ? 0 : cache.size();
+    }
+
+    public void invalidateAll() {
+        if (cache != null) {
+            cache.invalidateAll();
+        }
+    }
+
+    @Override
+    public String toString() {
+        if (cache == null) return "inflated block cache disabled";
+        CacheStats stats = cache.stats();
+        return String.format("inflated block cache: %d hits, %d misses (%.1f%% hit rate), %d evictions, %d blocks cached (limit %dMB)",
+                stats.hitCount(), stats.missCount(), 100 * stats.hitRate(), stats.evictionCount(), cache.size(), maxSizeInBytes / (1024 * 1024));
+    }
+
+    public static final class Block {
+        private final int compressedSize;
+        private final byte[] uncompressed;
+
+        private Block(int compressedSize, byte[] uncompressed) {
+            this.compressedSize = compressedSize;
+            this.uncompressed = uncompressed;
+        }
+
+        public int getCompressedSize() {
+            return compressedSize;
+        }
+
+        public byte[] getUncompressedBlock() {
+            return uncompressed;
+        }
+    }
+
+    private static final class Key {
+        private final String file;
+        private final long blockAddress;
+
+        private Key(String file, long blockAddress) {
+            this.file = file;
+            this.blockAddress = blockAddress;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return blockAddress == key.blockAddress && file.equals(key.file);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(file, blockAddress);
+        }
+    }
+}
@@ -297,6 +297,39 @@ public class AssemblyEvidenceSourceTest extends IntermediateFilesTest {
 		assertEquals(100, list.size());
 	}
 	@Test
+	public void single_pass_bidirectional_assembly_should_not_affect_assembly_results() throws IOException {
+		List<SAMRecord> in = new ArrayList<>();
+		for (int i = 50; i < 150; i++) {
+			in.add(withSequence("AATTAATCGCAAGAGCGGGTTGTATTCGACGCCAAGTCAGCTGAAGCACCATTACCCGATCAAAACATATCAGAAATGATTGACGTATCACAAGCCGGA", Read(0, i, "41M58S"))[0]);
+			in.add(withSequence("AATTAATCGCAAGAGCGGGTTGTATTCGACGCCAAGTCAGCTGAAGCACCATTACCCGATCAAAACATATCAGAAATGATTGACGTATCACAAGCCGGA", Read(1, i, "58S41M"))[0]);
+		}
+		createInput(in);
+		ProcessingContext pc = getCommandlineContext();
+		pc.getConfig().getAssembly().minReads = 1;
+		pc.getConfig().chunkSize = 100;
+		SAMEvidenceSource ses = new SAMEvidenceSource(pc, input, null, 0);
+		FileHelper.copy(ses.getFile(), ses.getSVFile(), true);
+		AssemblyEvidenceSource aes = new AssemblyEvidenceSource(pc, ImmutableList.of(ses), assemblyFile);
+		aes.assembleBreakends(null);
+		List<SAMRecord> expected = getRecords(assemblyFile);
+
+		File singlePassFile = new File(super.testFolder.getRoot(), "singlepass.bam");
+		pc.getConfig().getAssembly().singlePassBidirectional = true;
+		AssemblyEvidenceSource singlePass = new AssemblyEvidenceSource(pc, ImmutableList.of(ses), singlePassFile);
+		ExecutorService threadpool = Executors.newFixedThreadPool(8);
+		singlePass.assembleBreakends(threadpool);
+		threadpool.shutdown();
+		List<SAMRecord> actual = getRecords(singlePassFile);
+		assertEquals(200, actual.size());
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i).getReferenceIndex(), actual.get(i).getReferenceIndex());
+			assertEquals(expected.get(i).getAlignmentStart(), actual.get(i).getAlignmentStart());
+			assertEquals(expected.get(i).getCigarString(), actual.get(i).getCigarString());
+			assertEquals(S(expected.get(i).getReadBases()), S(actual.get(i).getReadBases()));
+		}
+	}
+	@Test
 	public void bounds_check_should_apply_to_final_assembly_SAMRecord() throws IOException {
 		// TODO: how do we check
 		List<SAMRecord> in = new ArrayList<>();
@@ -0,0 +1,82 @@
+package au.edu.wehi.idsv;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import htsjdk.samtools.util.CloseableIterator;
+import org.apache.commons.math3.util.Pair;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class BreakendShardSpoolTest extends IntermediateFilesTest {
+	private static final Comparator<Pair<BreakendSummary, Integer>> ORDER = Comparator.comparing(Pair::getFirst, BreakendSummary.ByStartEnd);
+	private static Pair<BreakendSummary, Integer> be(int referenceIndex, BreakendDirection direction, int start, int end, int weight) {
+		return Pair.create(new BreakendSummary(referenceIndex, direction, start, start, end), weight);
+	}
+	private static Pair<BreakendSummary, Integer> bp(int referenceIndex, BreakendDirection direction, int start, int referenceIndex2, BreakendDirection direction2, int start2, int weight) {
+		return Pair.create(new BreakpointSummary(referenceIndex, direction, start, start, start + 1, referenceIndex2, direction2, start2, start2, start2 + 2), weight);
+	}
+	private static List<Pair<BreakendSummary, Integer>> read(BreakendShardSpool spool, int referenceIndex) {
+		try (CloseableIterator<Pair<BreakendSummary, Integer>> it = spool.iterator(referenceIndex)) {
+			return Lists.newArrayList(it);
+		}
+	}
+	@Test
+	public void should_round_trip_breakends_and_breakpoints() throws IOException {
+		List<Pair<BreakendSummary, Integer>> records = ImmutableList.of(
+				be(0, BreakendDirection.Forward, 10, 20, 1),
+				bp(0, BreakendDirection.Backward, 15, 2, BreakendDirection.Forward, 100, 3),
+				bp(1, BreakendDirection.Forward, 5, 0, BreakendDirection.Backward, 50, 7),
+				be(2, BreakendDirection.Backward, 1, 1, 2));
+		try (BreakendShardSpool spool = new BreakendShardSpool(1, 4, ORDER, testFolder.getRoot())) {
+			spool.write(0, records.iterator());
+			assertEquals(records.subList(0, 2), read(spool, 0));
+			assertEquals(records.subList(2, 3), read(spool, 1));
+			assertEquals(records.subList(3, 4), read(spool, 2));
+			assertEquals(0, read(spool, 3).size());
+		}
+	}
+	@Test
+	public void should_merge_streams_in_order() throws IOException {
+		try (BreakendShardSpool spool = new BreakendShardSpool(3, 2, ORDER, testFolder.getRoot())) {
+			spool.write(0, ImmutableList.of(
+					be(0, BreakendDirection.Forward, 10, 10, 1),
+					be(0, BreakendDirection.Forward, 30, 30, 1),
+					be(1, BreakendDirection.Forward, 1, 1, 1)).iterator());
+			spool.write(1, ImmutableList.of(
+					be(0, BreakendDirection.Forward, 20, 20, 2),
+					be(0, BreakendDirection.Forward, 30, 30, 2)).iterator());
+			spool.write(2, ImmutableList.<Pair<BreakendSummary, Integer>>of().iterator());
+			assertEquals(ImmutableList.of(
+					be(0, BreakendDirection.Forward, 10, 10, 1),
+					be(0, BreakendDirection.Forward, 20, 20, 2),
+					// ties are returned in stream order
+					be(0, BreakendDirection.Forward, 30, 30, 1),
+					be(0, BreakendDirection.Forward, 30, 30, 2)), read(spool, 0));
+			assertEquals(ImmutableList.of(be(1, BreakendDirection.Forward, 1, 1, 1)), read(spool, 1));
+		}
+	}
+	@Test(expected = IllegalArgumentException.class)
+	public void should_require_stream_sorted_by_contig() throws IOException {
+		try (BreakendShardSpool spool = new BreakendShardSpool(1, 2, ORDER, testFolder.getRoot())) {
+			spool.write(0, ImmutableList.of(
+					be(1, BreakendDirection.Forward, 10, 10, 1),
+					be(0, BreakendDirection.Forward, 10, 10, 1)).iterator());
+		}
+	}
+	@Test
+	public void close_should_delete_spool_files() throws IOException {
+		File dir = testFolder.newFolder("spool");
+		try (BreakendShardSpool spool = new BreakendShardSpool(1, 2, ORDER, dir)) {
+			spool.write(0, ImmutableList.of(be(0, BreakendDirection.Forward, 10, 10, 1), be(1, BreakendDirection.Forward, 10, 10, 1)).iterator());
+			assertEquals(2, dir.listFiles().length);
+		}
+		assertFalse(dir.listFiles().length > 0);
+	}
+}
@@ -0,0 +1,87 @@
+package au.edu.wehi.idsv;
+
+import com.google.common.collect.ImmutableList;
+import htsjdk.samtools.QueryInterval;
+import htsjdk.samtools.SAMRecord;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ChunkCostEstimatorTest extends IntermediateFilesTest {
+	private SAMEvidenceSource createDenseInput() {
+		Random rng = new Random(0);
+		List<SAMRecord> reads = new ArrayList<>();
+		for (int i = 0; i < 2000; i++) {
+			SAMRecord r = Read(0, 1 + rng.nextInt(9000), "50M");
+			r.setReadName("sparse" + i);
+			reads.add(r);
+		}
+		for (int i = 0; i < 50000; i++) {
+			SAMRecord r = Read(1, 1 + rng.nextInt(9000), "50M");
+			r.setReadName("dense" + i);
+			reads.add(r);
+		}
+		createInput(reads);
+		return new SAMEvidenceSource(getContext(), input, null, 0);
+	}
+	@Test
+	public void should_estimate_cost_from_index() {
+		SAMEvidenceSource ses = createDenseInput();
+		try (ChunkCostEstimator estimator = new ChunkCostEstimator(ImmutableList.of(ses))) {
+			assertTrue(estimator.canEstimate());
+			long sparse = estimator.estimate(new QueryInterval[] { new QueryInterval(0, 1, 10000) });
+			long dense = estimator.estimate(new QueryInterval[] { new QueryInterval(1, 1, 10000) });
+			long empty = estimator.estimate(new QueryInterval[] { new QueryInterval(2, 1, 10000) });
+			assertEquals(0, empty);
+			assertTrue(sparse > 0);
+			assertTrue(dense > 10 * sparse);
+		}
+	}
+	@Test
+	public void should_not_estimate_without_index() {
+		try (ChunkCostEstimator estimator = new ChunkCostEstimator(ImmutableList.of())) {
+			assertFalse(estimator.canEstimate());
+			assertEquals(0, estimator.estimate(new QueryInterval[] { new QueryInterval(0, 1, 10000) }));
+		}
+	}
+	@Test
+	public void split_should_partition_chunk_by_cost() {
+		SAMEvidenceSource ses = createDenseInput();
+		QueryInterval[] chunk = new QueryInterval[] {
+				new QueryInterval(0, 1, 10000),
+				new QueryInterval(1, 1, 10000),
+				new QueryInterval(2, 1, 10000),
+				new QueryInterval(3, 1, 10000),
+		};
+		try (ChunkCostEstimator estimator = new ChunkCostEstimator(ImmutableList.of(ses))) {
+			List<QueryInterval[]> split = estimator.split(chunk, 2, 1);
+			assertEquals(2, split.size());
+			// all the cost is in the first two contigs
+			assertArrayEquals(new QueryInterval[] { chunk[0], chunk[1] }, split.get(0));
+			assertArrayEquals(new QueryInterval[] { chunk[2], chunk[3] }, split.get(1));
+			// sub-chunks must respect the minimum size
+			assertEquals(1, estimator.split(chunk, 2, 30000).size());
+			assertEquals(1, estimator.split(chunk, 1, 1).size());
+		}
+	}
+	@Test
+	public void should_split_expensive_chunks() {
+		assertEquals(1, ChunkCostEstimator.getSplitCount(100, 100, 4, 8));
+		assertEquals(1, ChunkCostEstimator.getSplitCount(399, 100, 4, 8));
+		assertEquals(4, ChunkCostEstimator.getSplitCount(400, 100, 4, 8));
+		assertEquals(5, ChunkCostEstimator.getSplitCount(401, 100, 4, 8));
+		assertEquals(8, ChunkCostEstimator.getSplitCount(100000, 100, 4, 8));
+		assertEquals(1, ChunkCostEstimator.getSplitCount(100000, 100, 4, 1));
+		assertEquals(1, ChunkCostEstimator.getSplitCount(100000, 0, 4, 8));
+	}
+	@Test
+	public void longestFirst_should_order_by_decreasing_cost() {
+		assertArrayEquals(new int[] { 1, 0, 3, 2 }, ChunkCostEstimator.longestFirst(new long[] { 5, 10, 1, 5 }));
+		assertEquals(5, ChunkCostEstimator.median(new long[] { 5, 10, 1, 5 }));
+		assertEquals(0, ChunkCostEstimator.median(new long[0]));
+	}
+}
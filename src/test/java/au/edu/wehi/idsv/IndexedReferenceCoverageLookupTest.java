@@ -0,0 +1,76 @@
+package au.edu.wehi.idsv;
+
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordCoordinateComparator;
+import htsjdk.samtools.SamReaderFactory;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IndexedReferenceCoverageLookupTest extends IntermediateFilesTest {
+	private List<SAMRecord> reads() {
+		Random rng = new Random(0);
+		List<SAMRecord> reads = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			int pos = 1 + rng.nextInt(2000);
+			for (SAMRecord r : RP(i % 2, pos, pos + rng.nextInt(200), 10 + rng.nextInt(50))) {
+				r.setReadName("r" + i);
+				reads.add(r);
+			}
+		}
+		Collections.sort(reads, new SAMRecordCoordinateComparator());
+		return reads;
+	}
+	private IndexedReferenceCoverageLookup indexedLookup(List<SAMRecord> reads) {
+		return new IndexedReferenceCoverageLookup(input, SamReaderFactory.makeDefault(), IDSV(reads), new SAMFlagReadPairConcordanceCalculator(IDSV(reads)), 3, false);
+	}
+	@Test
+	public void should_report_correct_category() {
+		List<SAMRecord> reads = reads();
+		createInput(reads);
+		try (IndexedReferenceCoverageLookup lookup = indexedLookup(reads)) {
+			assertEquals(3, lookup.getCategory());
+		}
+	}
+	@Test
+	public void isIndexed_should_require_index() {
+		createInput(reads());
+		assertTrue(IndexedReferenceCoverageLookup.isIndexed(SamReaderFactory.makeDefault(), input));
+	}
+	@Test
+	public void should_match_sequential_lookup() {
+		List<SAMRecord> reads = reads();
+		createInput(reads);
+		SequentialReferenceCoverageLookup sequential = new SequentialReferenceCoverageLookup(reads.iterator(), IDSV(reads), new SAMFlagReadPairConcordanceCalculator(IDSV(reads)), 3000, 3, false);
+		try (IndexedReferenceCoverageLookup lookup = indexedLookup(reads)) {
+			for (int referenceIndex = 0; referenceIndex < 2; referenceIndex++) {
+				for (int i = 1; i < 2500; i++) {
+					assertEquals(sequential.readsSupportingNoBreakendAfter(referenceIndex, i), lookup.readsSupportingNoBreakendAfter(referenceIndex, i));
+					assertEquals(sequential.readPairsSupportingNoBreakendAfter(referenceIndex, i), lookup.readPairsSupportingNoBreakendAfter(referenceIndex, i));
+				}
+			}
+		}
+	}
+	@Test
+	public void should_allow_out_of_order_queries() {
+		List<SAMRecord> reads = reads();
+		createInput(reads);
+		SequentialReferenceCoverageLookup sequential = new SequentialReferenceCoverageLookup(reads.iterator(), IDSV(reads), new SAMFlagReadPairConcordanceCalculator(IDSV(reads)), 3000, 3, false);
+		int[] expected = new int[2500];
+		for (int i = 1; i < expected.length; i++) {
+			expected[i] = sequential.readsSupportingNoBreakendAfter(1, i);
+		}
+		try (IndexedReferenceCoverageLookup lookup = indexedLookup(reads)) {
+			for (int i = expected.length - 1; i >= 1; i -= 7) {
+				assertEquals(expected[i], lookup.readsSupportingNoBreakendAfter(1, i));
+				lookup.prefetch(0, i, i + 10);
+			}
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package au.edu.wehi.idsv;
+
+import htsjdk.samtools.SAMRecord;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ReadNameIndexTest extends IntermediateFilesTest {
+	private static LongOpenHashSet fingerprints(String... readNames) {
+		LongOpenHashSet set = new LongOpenHashSet();
+		for (String name : readNames) {
+			set.add(ReadNameIndex.fingerprint(name));
+		}
+		return set;
+	}
+	@Test
+	public void fingerprint_should_differ_for_similar_read_names() {
+		assertEquals(ReadNameIndex.fingerprint("read1"), ReadNameIndex.fingerprint("read1"));
+		assertNotEquals(ReadNameIndex.fingerprint("read1"), ReadNameIndex.fingerprint("read2"));
+		assertNotEquals(ReadNameIndex.fingerprint("read12"), ReadNameIndex.fingerprint("read21"));
+	}
+	@Test
+	public void should_lookup_primary_alignment_offsets() throws IOException {
+		List<SAMRecord> reads = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			SAMRecord[] dp = withName("read" + i, DP(0, 1 + i, "10M", true, 1, 1000 - i, "10M", false));
+			reads.add(dp[0]);
+			reads.add(dp[1]);
+		}
+		SAMRecord supp = withName("read5", Read(2, 1, "10M"))[0];
+		supp.setSupplementaryAlignmentFlag(true);
+		reads.add(supp);
+		createInput(reads);
+		File file = ReadNameIndex.getIndexFile(input);
+		ReadNameIndex.create(input, file);
+		try (ReadNameIndex index = new ReadNameIndex(file)) {
+			long[] offsets = index.lookup(fingerprints("read5", "read50", "missing"));
+			assertEquals(4, offsets.length);
+			for (int i = 1; i < offsets.length; i++) {
+				assertTrue(offsets[i - 1] < offsets[i]);
+			}
+			assertEquals(0, index.lookup(fingerprints("missing")).length);
+		}
+	}
+	@Test
+	public void should_merge_sorted_runs() throws IOException {
+		List<SAMRecord> reads = new ArrayList<>();
+		for (int i = 0; i < 10000; i++) {
+			reads.add(withName("read" + i, Read(0, 1 + i % 1000, "10M"))[0]);
+		}
+		createInput(reads);
+		File file = ReadNameIndex.getIndexFile(input);
+		ReadNameIndex.create(input, file, 777);
+		try (ReadNameIndex index = new ReadNameIndex(file)) {
+			for (int i = 0; i < 10000; i += 97) {
+				assertEquals(1, index.lookup(fingerprints("read" + i)).length);
+			}
+			assertEquals(10000, index.lookup(fingerprints(reads.stream().map(r -> r.getReadName()).toArray(String[]::new))).length);
+		}
+	}
+	@Test
+	public void should_detect_stale_index() throws IOException {
+		createInput(withName("read1", Read(0, 1, "10M")));
+		File file = ReadNameIndex.getIndexFile(input);
+		ReadNameIndex.create(input, file);
+		try (ReadNameIndex index = new ReadNameIndex(file)) {
+			assertTrue(index.isIndexOf(input));
+			assertTrue(input.setLastModified(input.lastModified() - 10000));
+			assertFalse(index.isIndexOf(input));
+		}
+	}
+}
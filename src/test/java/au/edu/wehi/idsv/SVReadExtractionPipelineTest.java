@@ -0,0 +1,91 @@
+package au.edu.wehi.idsv;
+
+import au.edu.wehi.idsv.alignment.AlignerFactory;
+import au.edu.wehi.idsv.alignment.SmithWatermanStreamingAligner;
+import au.edu.wehi.idsv.sam.ChimericAlignment;
+import com.google.common.collect.Ordering;
+import gridss.ComputeSamTags;
+import gridss.ExtractSVReads;
+import htsjdk.samtools.SAMFileHeader.SortOrder;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordCoordinateComparator;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class SVReadExtractionPipelineTest extends IntermediateFilesTest {
+	private List<SAMRecord> run(ProcessingContext pc, File in) throws IOException {
+		ExtractSVReads extract = new ExtractSVReads();
+		extract.INPUT = in;
+		extract.UNMAPPED_READS = false;
+		extract.INCLUDE_DUPLICATES = true;
+		extract.MIN_CLIP_LENGTH = 5;
+		extract.READ_PAIR_CONCORDANCE_MIN_FRAGMENT_SIZE = 0;
+		extract.READ_PAIR_CONCORDANCE_MAX_FRAGMENT_SIZE = 300;
+		StreamingSplitReadRealigner realigner = new StreamingSplitReadRealigner(pc, new SmithWatermanStreamingAligner(AlignerFactory.create(), SMALL_FA, 2), 10);
+		realigner.setMinSoftClipLength(20);
+		File out = new File(testFolder.getRoot(), "out.sv.bam");
+		new SVReadExtractionPipeline(pc, extract, new ComputeSamTags(), realigner).process(in, out);
+		return getRecords(out);
+	}
+	private SAMRecord splitRead() {
+		byte[] bases = new byte[100];
+		System.arraycopy(RANDOM, 99, bases, 0, 50);
+		System.arraycopy(RANDOM, 399, bases, 50, 50);
+		SAMRecord r = withSequence(bases, Read(2, 100, "50M50S"))[0];
+		r.setReadName("split");
+		r.setMappingQuality(40);
+		return r;
+	}
+	@Test
+	public void should_only_output_sv_reads() throws IOException {
+		SAMRecord[] concordant = RP(0, 100, 200, 50);
+		SAMRecord[] discordant = DP(0, 1, "50M", true, 1, 10, "50M", false);
+		concordant[0].setReadName("concordant");
+		concordant[1].setReadName("concordant");
+		discordant[0].setReadName("discordant");
+		discordant[1].setReadName("discordant");
+		createInput(concordant, discordant);
+		List<SAMRecord> result = run(getCommandlineContext(), input);
+		assertEquals(2, result.size());
+		assertTrue(result.stream().allMatch(r -> r.getReadName().equals("discordant")));
+	}
+	@Test
+	public void should_identify_split_reads() throws IOException {
+		createInput(splitRead());
+		List<SAMRecord> result = run(getCommandlineContext(), input);
+		assertEquals(2, result.size());
+		SAMRecord primary = result.stream().filter(r -> !r.getSupplementaryAlignmentFlag()).findFirst().get();
+		SAMRecord supp = result.stream().filter(r -> r.getSupplementaryAlignmentFlag()).findFirst().get();
+		assertEquals(100, primary.getAlignmentStart());
+		assertEquals(400, supp.getAlignmentStart());
+		assertEquals(400, ChimericAlignment.getChimericAlignments(primary).get(0).pos);
+		assertNotNull(primary.getIntegerAttribute("NM"));
+	}
+	@Test
+	public void should_write_coordinate_sorted_output() throws IOException {
+		SAMRecord[] discordant = DP(0, 300, "50M", true, 1, 10, "50M", false);
+		createInput(discordant, new SAMRecord[] { splitRead() });
+		List<SAMRecord> result = run(getCommandlineContext(), input);
+		assertEquals(4, result.size());
+		assertTrue(Ordering.from(new SAMRecordCoordinateComparator()).isOrdered(result));
+	}
+	@Test
+	public void should_stream_queryname_sorted_input() throws IOException {
+		SAMRecord[] discordant = DP(0, 300, "50M", true, 1, 10, "50M", false);
+		createInput(discordant, new SAMRecord[] { splitRead() });
+		List<String> coordinateInputResult = run(getCommandlineContext(), input).stream().map(r -> r.getSAMString()).collect(Collectors.toList());
+		File querynameInput = new File(testFolder.getRoot(), "input.namesorted.bam");
+		SAMRecord[] records = inputRecords.toArray(new SAMRecord[0]);
+		Arrays.sort(records, new htsjdk.samtools.SAMRecordQueryNameComparator());
+		createBAM(querynameInput, SortOrder.queryname, records);
+		List<String> querynameInputResult = run(getCommandlineContext(), querynameInput).stream().map(r -> r.getSAMString()).collect(Collectors.toList());
+		assertEquals(coordinateInputResult, querynameInputResult);
+	}
+}
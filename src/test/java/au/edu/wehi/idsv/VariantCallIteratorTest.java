@@ -13,6 +13,9 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -110,6 +113,49 @@ public class VariantCallIteratorTest extends IntermediateFilesTest {
 		assertEquals(1024, result.size());
 	}
 
+	@Test
+	public void should_bound_worker_threads_with_many_concurrent_chunks() throws Exception {
+		int workerThreads = 16;
+		ProcessingContext pc = getContext();
+		pc.setWorkerThreadCount(workerThreads);
+		int baseline = Thread.getAllStackTraces().size();
+		AtomicBoolean done = new AtomicBoolean(false);
+		AtomicInteger peak = new AtomicInteger(0);
+		Thread sampler = new Thread(() -> {
+			while (!done.get()) {
+				peak.accumulateAndGet(Thread.getAllStackTraces().size(), Math::max);
+				try {
+					Thread.sleep(1);
+				} catch (InterruptedException e) {
+					return;
+				}
+			}
+		});
+		sampler.setDaemon(true);
+		sampler.start();
+		ExecutorService chunkPool = Executors.newFixedThreadPool(workerThreads, new ThreadFactoryBuilder().setDaemon(true).setNameFormat("ChunkTest-%d").build());
+		List<Future<Integer>> chunks = new ArrayList<>();
+		for (int chunk = 0; chunk < 4 * workerThreads; chunk++) {
+			chunks.add(chunkPool.submit(() -> {
+				List<DirectedEvidence> list = new ArrayList<DirectedEvidence>();
+				for (int i = 1; i < 512; i++) {
+					list.add(SCE(FWD, Read(0, i, "10M10S")));
+				}
+				try (VariantCallIterator ecp = new VariantCallIterator(pc, list.iterator())) {
+					return Lists.newArrayList(ecp).size();
+				}
+			}));
+		}
+		for (Future<Integer> f : chunks) {
+			assertEquals(511, (int)f.get());
+		}
+		done.set(true);
+		sampler.join();
+		chunkPool.shutdown();
+		// chunk threads, worker task threads and the sampler itself
+		assertTrue(String.format("%d threads over baseline", peak.get() - baseline), peak.get() - baseline <= 2 * workerThreads + 1);
+	}
+
 	/**
 	 * https://github.com/PapenfussLab/gridss/issues/267
 	 */
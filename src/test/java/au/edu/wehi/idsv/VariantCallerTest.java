@@ -13,6 +13,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 
 public class VariantCallerTest extends IntermediateFilesTest {
@@ -83,6 +84,7 @@ public class VariantCallerTest extends IntermediateFilesTest {
 		List<IdsvVariantContext> calls = getVcf(output, null);
 		// start/end ramps are not max cliques but the rest are
 		assertEquals(2 * 3, calls.size());
+		assertTrue(IdsvVariantContext.VariantContextByLocationStart(pc.getDictionary()).isOrdered(calls));
 		for (IdsvVariantContext variant : calls) {
 			assertEquals(3 * ((DirectedBreakpoint)ses.evidence.get(0)).getBreakpointQual(), variant.getPhredScaledQual(), 0.01);
 		}
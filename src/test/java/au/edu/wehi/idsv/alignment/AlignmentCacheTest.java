@@ -0,0 +1,163 @@
+package au.edu.wehi.idsv.alignment;
+
+import au.edu.wehi.idsv.TestHelper;
+import com.google.common.collect.ImmutableList;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMFlag;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMUtils;
+import htsjdk.samtools.fastq.FastqRecord;
+import htsjdk.samtools.util.SequenceUtil;
+import org.apache.commons.lang3.ArrayUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class AlignmentCacheTest extends TestHelper {
+	@Rule
+	public TemporaryFolder testFolder = new TemporaryFolder();
+	private static FastqRecord fq(String name, String bases, String quals) {
+		return new FastqRecord(name, bases, "", quals);
+	}
+	/**
+	 * Alignments of the given read as they would be returned by an aligner:
+	 * a forward strand primary alignment and a hard clipped reverse strand supplementary alignment
+	 */
+	private static List<SAMRecord> alignments(FastqRecord read) {
+		SAMFileHeader header = new SAMFileHeader(SMALL_FA.getSequenceDictionary());
+		SAMRecord primary = new SAMRecord(header);
+		primary.setReadName(read.getReadName());
+		primary.setReferenceIndex(0);
+		primary.setAlignmentStart(100);
+		primary.setCigarString("6M4S");
+		primary.setMappingQuality(60);
+		primary.setReadBases(read.getReadBases());
+		primary.setBaseQualities(SAMUtils.fastqToPhred(read.getBaseQualityString()));
+		primary.setAttribute("NM", 0);
+		primary.setAttribute("SA", "polyA,200,-,6H4M,0,0;");
+		SAMRecord supp = new SAMRecord(header);
+		supp.setReadName(read.getReadName());
+		supp.setFlags(SAMFlag.SUPPLEMENTARY_ALIGNMENT.intValue() | SAMFlag.READ_REVERSE_STRAND.intValue());
+		supp.setReferenceIndex(1);
+		supp.setAlignmentStart(200);
+		supp.setCigarString("6H4M");
+		byte[] bases = read.getReadBases().clone();
+		SequenceUtil.reverseComplement(bases);
+		supp.setReadBases(Arrays.copyOfRange(bases, 6, 10));
+		byte[] quals = SAMUtils.fastqToPhred(read.getBaseQualityString());
+		ArrayUtils.reverse(quals);
+		supp.setBaseQualities(Arrays.copyOfRange(quals, 6, 10));
+		return ImmutableList.of(primary, supp);
+	}
+	private static void assertSameRecords(List<SAMRecord> expected, List<SAMRecord> actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i).getSAMString(), actual.get(i).getSAMString());
+		}
+	}
+	@Test
+	public void should_recreate_alignments_of_reads_with_same_bases() throws IOException {
+		AlignmentCache cache = new AlignmentCache(testFolder.getRoot(), SMALL_FA_FILE, SMALL_FA.getSequenceDictionary(), "test");
+		FastqRecord read1 = fq("read1", "ACGTTTGCAA", "ABCDEFGHIJ");
+		FastqRecord read2 = fq("read2", "ACGTTTGCAA", "0123456789");
+		assertNull(cache.get(read2));
+		cache.put(read1, alignments(read1));
+		assertSameRecords(alignments(read2), cache.get(read2));
+		assertNull(cache.get(fq("read3", "ACGTTTGCAT", "ABCDEFGHIJ")));
+		cache.close();
+	}
+	@Test
+	public void should_persist_alignments() throws IOException {
+		FastqRecord read = fq("read", "ACGTTTGCAA", "ABCDEFGHIJ");
+		AlignmentCache cache = new AlignmentCache(testFolder.getRoot(), SMALL_FA_FILE, SMALL_FA.getSequenceDictionary(), "test");
+		cache.put(read, alignments(read));
+		cache.close();
+		cache = new AlignmentCache(testFolder.getRoot(), SMALL_FA_FILE, SMALL_FA.getSequenceDictionary(), "test");
+		assertSameRecords(alignments(read), cache.get(read));
+		cache.close();
+	}
+	@Test
+	public void should_separate_aligners() throws IOException {
+		FastqRecord read = fq("read", "ACGTTTGCAA", "ABCDEFGHIJ");
+		AlignmentCache cache = new AlignmentCache(testFolder.getRoot(), SMALL_FA_FILE, SMALL_FA.getSequenceDictionary(), "test");
+		cache.put(read, alignments(read));
+		cache.close();
+		cache = new AlignmentCache(testFolder.getRoot(), SMALL_FA_FILE, SMALL_FA.getSequenceDictionary(), "another aligner");
+		assertNull(cache.get(read));
+		cache.close();
+	}
+	@Test
+	public void should_not_cache_alignments_that_cannot_be_recreated() throws IOException {
+		FastqRecord read = fq("read", "ACGTTTGCAA", "ABCDEFGHIJ");
+		List<SAMRecord> alignments = alignments(read);
+		// aligner trimmed the read
+		alignments.get(0).setReadBases("ACGTTTGCA".getBytes());
+		AlignmentCache cache = new AlignmentCache(testFolder.getRoot(), SMALL_FA_FILE, SMALL_FA.getSequenceDictionary(), "test");
+		cache.put(read, alignments);
+		assertNull(cache.get(read));
+		cache.close();
+	}
+	@Test
+	public void should_report_hit_rate() throws IOException {
+		FastqRecord read = fq("read", "ACGTTTGCAA", "ABCDEFGHIJ");
+		AlignmentCache cache = new AlignmentCache(testFolder.getRoot(), SMALL_FA_FILE, SMALL_FA.getSequenceDictionary(), "test");
+		cache.get(read);
+		cache.put(read, alignments(read));
+		cache.get(read);
+		cache.get(read);
+		cache.lookup(read);
+		assertEquals(2, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		assertEquals(2.0 / 3, cache.getHitRate(), 0.0001);
+		cache.close();
+	}
+	private int cacheFileCount() {
+		int count = 0;
+		for (File dir : testFolder.getRoot().listFiles()) {
+			count += dir.listFiles((d, name) -> name.endsWith(".alncache.gz")).length;
+		}
+		return count;
+	}
+	@Test
+	public void should_merge_cache_files() throws IOException {
+		for (int i = 0; i < 2 * AlignmentCache.MAX_FILES; i++) {
+			FastqRecord read = fq("read", "ACGTTTGC" + "ACGT".charAt(i % 4) + "ACGT".charAt(i / 4), "ABCDEFGHIJ");
+			AlignmentCache cache = new AlignmentCache(testFolder.getRoot(), SMALL_FA_FILE, SMALL_FA.getSequenceDictionary(), "test");
+			cache.put(read, alignments(read));
+			cache.close();
+			assertTrue(cacheFileCount() <= AlignmentCache.MAX_FILES);
+		}
+		AlignmentCache cache = new AlignmentCache(testFolder.getRoot(), SMALL_FA_FILE, SMALL_FA.getSequenceDictionary(), "test");
+		for (int i = 0; i < 2 * AlignmentCache.MAX_FILES; i++) {
+			FastqRecord read = fq("read", "ACGTTTGC" + "ACGT".charAt(i % 4) + "ACGT".charAt(i / 4), "ABCDEFGHIJ");
+			assertSameRecords(alignments(read), cache.get(read));
+		}
+		cache.close();
+	}
+	@Test
+	public void should_bound_cache_size() throws IOException {
+		AlignmentCache cache = new AlignmentCache(testFolder.getRoot(), SMALL_FA_FILE, SMALL_FA.getSequenceDictionary(), "test", 2);
+		FastqRecord read1 = fq("read1", "ACGTTTGCAA", "ABCDEFGHIJ");
+		FastqRecord read2 = fq("read2", "ACGTTTGCAC", "ABCDEFGHIJ");
+		FastqRecord read3 = fq("read3", "ACGTTTGCAG", "ABCDEFGHIJ");
+		cache.put(read1, alignments(read1));
+		cache.put(read2, alignments(read2));
+		cache.put(read3, alignments(read3));
+		assertNotNull(cache.get(read1));
+		assertNotNull(cache.get(read2));
+		assertNull(cache.get(read3));
+		cache.close();
+		cache = new AlignmentCache(testFolder.getRoot(), SMALL_FA_FILE, SMALL_FA.getSequenceDictionary(), "test", 1);
+		assertEquals(1, cacheFileCount());
+		cache.put(read3, alignments(read3));
+		assertNull(cache.get(read3));
+		cache.close();
+	}
+}
@@ -0,0 +1,62 @@
+package au.edu.wehi.idsv.alignment;
+
+import au.edu.wehi.idsv.TestHelper;
+import htsjdk.samtools.SAMFileWriterFactory;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
+import htsjdk.samtools.fastq.BasicFastqWriter;
+import htsjdk.samtools.fastq.FastqRecord;
+import htsjdk.samtools.fastq.FastqWriter;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class CachingFastqAlignerTest extends TestHelper {
+	@Rule
+	public TemporaryFolder testFolder = new TemporaryFolder();
+	private File writeFastq(String name, int start, int end) throws IOException {
+		byte[] ref = SMALL_FA.getSequence("random").getBases();
+		File file = testFolder.newFile(name + ".fq");
+		try (FastqWriter writer = new BasicFastqWriter(file)) {
+			for (int i = start; i < end; i++) {
+				String bases = new String(ref, 10 * i, 20 + i % 5);
+				writer.write(new FastqRecord("read" + i, bases, "", bases.replaceAll(".", "I")));
+			}
+		}
+		return file;
+	}
+	private List<String> align(FastqAligner aligner, File fastq) throws IOException {
+		File output = new File(testFolder.getRoot(), fastq.getName() + "." + aligner.getClass().getSimpleName() + ".sam");
+		aligner.align(fastq, output, SMALL_FA_FILE, 1, SMALL_FA.getSequenceDictionary());
+		List<String> result = new ArrayList<>();
+		try (SamReader reader = SamReaderFactory.makeDefault().open(output)) {
+			for (SAMRecord r : reader) {
+				result.add(r.getSAMString());
+			}
+		}
+		output.delete();
+		return result;
+	}
+	@Test
+	public void should_align_uncached_reads() throws IOException {
+		File fastq = writeFastq("all", 0, 20);
+		List<String> expected = align(new SmithWatermanFastqAligner(AlignerFactory.create(), 2), fastq);
+		AlignmentCache cache = new AlignmentCache(testFolder.newFolder(), SMALL_FA_FILE, SMALL_FA.getSequenceDictionary(), "sw");
+		FastqAligner aligner = new CachingFastqAligner(new SmithWatermanFastqAligner(AlignerFactory.create(), 2), cache, SamReaderFactory.makeDefault(), new SAMFileWriterFactory());
+		align(aligner, writeFastq("first", 5, 10));
+		assertEquals(expected, align(aligner, fastq));
+		assertEquals(5, cache.getHits());
+		// fully cached
+		assertEquals(expected, align(aligner, fastq));
+		assertEquals(25, cache.getHits());
+		cache.close();
+	}
+}
@@ -0,0 +1,155 @@
+package au.edu.wehi.idsv.alignment;
+
+import au.edu.wehi.idsv.TestHelper;
+import com.google.common.collect.ImmutableSet;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.fastq.FastqRecord;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+
+public class CachingStreamingAlignerTest extends TestHelper {
+	@Rule
+	public TemporaryFolder testFolder = new TemporaryFolder();
+	/**
+	 * Aligner that only returns alignments when flushed
+	 * and does not return any alignments for the given reads
+	 */
+	private static class DelayedStreamingAligner implements StreamingAligner {
+		private final StreamingAligner underlying;
+		private final Set<String> dropped;
+		private final Queue<SAMRecord> held = new ArrayDeque<>();
+		private final Queue<SAMRecord> buffer = new ArrayDeque<>();
+		private int outstanding = 0;
+		public DelayedStreamingAligner(StreamingAligner underlying, Set<String> dropped) {
+			this.underlying = underlying;
+			this.dropped = dropped;
+		}
+		@Override
+		public void asyncAlign(FastqRecord fq) throws IOException {
+			underlying.asyncAlign(fq);
+			while (underlying.processedAlignmentRecords() > 0) {
+				SAMRecord r = underlying.getAlignment();
+				if (!dropped.contains(r.getReadName())) {
+					held.add(r);
+				}
+			}
+			outstanding++;
+		}
+		@Override
+		public void flush() throws IOException {
+			buffer.addAll(held);
+			held.clear();
+			outstanding = 0;
+		}
+		@Override
+		public int processedAlignmentRecords() {
+			return buffer.size();
+		}
+		@Override
+		public int outstandingAlignmentRecord() {
+			return outstanding;
+		}
+		@Override
+		public SAMRecord getAlignment() {
+			return buffer.remove();
+		}
+		@Override
+		public void close() throws IOException {
+			flush();
+		}
+	}
+	private static List<FastqRecord> reads(int count) {
+		byte[] ref = SMALL_FA.getSequence("random").getBases();
+		List<FastqRecord> reads = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			String bases = new String(ref, 10 * i, 20 + i % 5);
+			char[] quals = new char[bases.length()];
+			Arrays.fill(quals, (char)('!' + i));
+			reads.add(new FastqRecord("read" + i, bases, "", new String(quals)));
+		}
+		return reads;
+	}
+	private static List<String> align(StreamingAligner aligner, List<FastqRecord> reads) throws IOException {
+		for (FastqRecord fq : reads) {
+			aligner.asyncAlign(fq);
+		}
+		aligner.flush();
+		List<String> result = new ArrayList<>();
+		while (aligner.processedAlignmentRecords() > 0) {
+			result.add(aligner.getAlignment().getSAMString());
+		}
+		return result;
+	}
+	private static StreamingAligner createAligner() {
+		return createAligner(ImmutableSet.of());
+	}
+	private static StreamingAligner createAligner(Set<String> dropped) {
+		return new DelayedStreamingAligner(new SmithWatermanStreamingAligner(AlignerFactory.create(), SMALL_FA, 2), dropped);
+	}
+	private AlignmentCache createCache() {
+		return new AlignmentCache(testFolder.getRoot(), SMALL_FA_FILE, SMALL_FA.getSequenceDictionary(), "sw");
+	}
+	@Test
+	public void should_return_cached_alignments_identical_to_aligner_alignments() throws IOException {
+		List<FastqRecord> reads = reads(20);
+		List<String> expected = align(createAligner(), reads);
+		AlignmentCache cache = createCache();
+		assertEquals(expected, align(new CachingStreamingAligner(createAligner(), cache), reads));
+		assertEquals(0, cache.getHits());
+		assertEquals(expected, align(new CachingStreamingAligner(createAligner(), cache), reads));
+		assertEquals(20, cache.getHits());
+		cache.close();
+	}
+	@Test
+	public void should_return_alignments_in_submission_order() throws IOException {
+		List<FastqRecord> reads = reads(20);
+		List<String> expected = align(createAligner(), reads);
+		AlignmentCache cache = createCache();
+		List<FastqRecord> alternateReads = new ArrayList<>();
+		for (int i = 0; i < reads.size(); i += 2) {
+			alternateReads.add(reads.get(i));
+		}
+		align(new CachingStreamingAligner(createAligner(), cache), alternateReads);
+		assertEquals(expected, align(new CachingStreamingAligner(createAligner(), cache), reads));
+		assertEquals(10, cache.getHits());
+		cache.close();
+	}
+	@Test
+	public void should_share_cache_between_runs() throws IOException {
+		List<FastqRecord> reads = reads(20);
+		List<String> expected = align(createAligner(), reads);
+		AlignmentCache cache = createCache();
+		align(new CachingStreamingAligner(createAligner(), cache), reads);
+		cache.close();
+		cache = createCache();
+		assertEquals(expected, align(new CachingStreamingAligner(createAligner(), cache), reads));
+		assertEquals(20, cache.getHits());
+		cache.close();
+	}
+	@Test
+	public void should_return_reads_after_reads_without_alignments() throws IOException {
+		List<FastqRecord> reads = reads(20);
+		Set<String> dropped = ImmutableSet.of("read3", "read4", "read19");
+		List<String> expected = align(createAligner(dropped), reads);
+		assertEquals(align(createAligner(), reads).stream()
+				.filter(r -> !dropped.contains(r.substring(0, r.indexOf('\t'))))
+				.collect(Collectors.toList()), expected);
+		AlignmentCache cache = createCache();
+		CachingStreamingAligner aligner = new CachingStreamingAligner(createAligner(dropped), cache);
+		assertEquals(expected, align(aligner, reads));
+		assertEquals(0, aligner.outstandingAlignmentRecord());
+		cache.close();
+	}
+}
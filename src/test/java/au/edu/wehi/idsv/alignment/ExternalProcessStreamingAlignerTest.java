@@ -1,15 +1,28 @@
 package au.edu.wehi.idsv.alignment;
 
+import com.google.common.collect.ImmutableList;
 import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
 import htsjdk.samtools.SamReaderFactory;
 import htsjdk.samtools.fastq.FastqRecord;
 import htsjdk.samtools.reference.IndexedFastaSequenceFile;
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.Assume;
+import org.junit.Rule;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public class ExternalProcessStreamingAlignerTest {
 	@Test
@@ -48,4 +61,115 @@ public class ExternalProcessStreamingAlignerTest {
 		}
 		aligner.close();
 	}
+	@Rule
+	public TemporaryFolder testFolder = new TemporaryFolder();
+	private static final SAMSequenceDictionary STUB_DICT = new SAMSequenceDictionary(ImmutableList.of(new SAMSequenceRecord("stub", 1000)));
+	/**
+	 * Stub aligner that places every read at the start of the stub contig.
+	 * Reads with names ending in 0 are also given a supplementary alignment.
+	 */
+	private List<String> createStubAligner(String body) throws IOException {
+		File script = testFolder.newFile("aligner.sh");
+		Files.write(script.toPath(), body.getBytes(StandardCharsets.US_ASCII));
+		return ImmutableList.of("/bin/sh", script.getPath(), "%1$s", "%2$s", "%3$d");
+	}
+	private List<String> createStubAligner() throws IOException {
+		return createStubAligner("printf '@HD\\tVN:1.6\\n@SQ\\tSN:stub\\tLN:1000\\n'\n" +
+				"awk 'NR%4==1 { name=substr($1,2) } NR%4==2 { seq=$0 } NR%4==0 {\n" +
+				"  printf \"%s\\t0\\tstub\\t1\\t60\\t%dM\\t*\\t0\\t0\\t%s\\t%s\\n\", name, length(seq), seq, $0\n" +
+				"  if (name ~ /0$/) printf \"%s\\t2048\\tstub\\t100\\t0\\t%dM\\t*\\t0\\t0\\t%s\\t%s\\n\", name, length(seq), seq, $0\n" +
+				"  fflush()\n" +
+				"}'\n");
+	}
+	private static FastqRecord stubRead(String name) {
+		return new FastqRecord(name, "ACGTACGTAC", "", "IIIIIIIIII");
+	}
+	@Test
+	public void should_return_alignments_in_submission_order() throws IOException {
+		Assume.assumeFalse(SystemUtils.IS_OS_WINDOWS);
+		int COUNT = 1000;
+		ExternalProcessStreamingAligner aligner = new ExternalProcessStreamingAligner(SamReaderFactory.makeDefault(), createStubAligner(), testFolder.getRoot(), 4, STUB_DICT, 4, 7);
+		for (int i = 0; i < COUNT; i++) {
+			aligner.asyncAlign(stubRead(Integer.toString(i)));
+		}
+		aligner.flush();
+		assertEquals(0, aligner.outstandingAlignmentRecord());
+		for (int i = 0; i < COUNT; i++) {
+			SAMRecord r = aligner.getAlignment();
+			assertEquals(Integer.toString(i), r.getReadName());
+			assertFalse(r.getSupplementaryAlignmentFlag());
+			if (i % 10 == 0) {
+				r = aligner.getAlignment();
+				assertEquals(Integer.toString(i), r.getReadName());
+				assertTrue(r.getSupplementaryAlignmentFlag());
+			}
+		}
+		assertEquals(0, aligner.processedAlignmentRecords());
+		aligner.close();
+	}
+	@Test
+	public void should_separate_consecutive_reads_with_the_same_name() throws IOException {
+		Assume.assumeFalse(SystemUtils.IS_OS_WINDOWS);
+		ExternalProcessStreamingAligner aligner = new ExternalProcessStreamingAligner(SamReaderFactory.makeDefault(), createStubAligner(), testFolder.getRoot(), 2, STUB_DICT, 2, 4);
+		for (int i = 0; i < 8; i++) {
+			aligner.asyncAlign(stubRead("10"));
+			aligner.asyncAlign(stubRead("10"));
+			aligner.asyncAlign(stubRead("read" + i + "x"));
+		}
+		aligner.flush();
+		for (int i = 0; i < 8; i++) {
+			for (int j = 0; j < 2; j++) {
+				SAMRecord r = aligner.getAlignment();
+				assertEquals("10", r.getReadName());
+				assertFalse(r.getSupplementaryAlignmentFlag());
+				r = aligner.getAlignment();
+				assertEquals("10", r.getReadName());
+				assertTrue(r.getSupplementaryAlignmentFlag());
+			}
+			assertEquals("read" + i + "x", aligner.getAlignment().getReadName());
+		}
+		assertEquals(0, aligner.processedAlignmentRecords());
+		aligner.close();
+	}
+	@Test
+	public void should_restart_aligner_after_flush() throws IOException {
+		Assume.assumeFalse(SystemUtils.IS_OS_WINDOWS);
+		ExternalProcessStreamingAligner aligner = new ExternalProcessStreamingAligner(SamReaderFactory.makeDefault(), createStubAligner(), testFolder.getRoot(), 2, STUB_DICT, 2, 16);
+		for (int i = 1; i < 8; i++) {
+			aligner.asyncAlign(stubRead(Integer.toString(i)));
+			aligner.flush();
+			assertEquals(1, aligner.processedAlignmentRecords());
+			assertEquals(Integer.toString(i), aligner.getAlignment().getReadName());
+		}
+		aligner.close();
+	}
+	@Test
+	public void should_not_assign_alignments_to_reads_dropped_by_aligner() throws IOException {
+		Assume.assumeFalse(SystemUtils.IS_OS_WINDOWS);
+		ExternalProcessStreamingAligner aligner = new ExternalProcessStreamingAligner(SamReaderFactory.makeDefault(), createStubAligner("printf '@HD\\tVN:1.6\\n@SQ\\tSN:stub\\tLN:1000\\n'\n" +
+				"awk 'NR%4==1 { name=substr($1,2) } NR%4==2 { seq=$0 } NR%4==0 && name !~ /^dropped/ {\n" +
+				"  printf \"%s\\t0\\tstub\\t1\\t60\\t%dM\\t*\\t0\\t0\\t%s\\t%s\\n\", name, length(seq), seq, $0\n" +
+				"  fflush()\n" +
+				"}'\n"), testFolder.getRoot(), 2, STUB_DICT, 1, 4);
+		for (int i = 0; i < 8; i++) {
+			aligner.asyncAlign(stubRead("dropped" + i));
+			aligner.asyncAlign(stubRead("read" + i));
+		}
+		aligner.flush();
+		assertEquals(0, aligner.outstandingAlignmentRecord());
+		assertEquals(8, aligner.processedAlignmentRecords());
+		for (int i = 0; i < 8; i++) {
+			assertEquals("read" + i, aligner.getAlignment().getReadName());
+		}
+		aligner.close();
+	}
+	@Test(expected=RuntimeException.class)
+	public void should_fail_if_aligner_fails() throws IOException {
+		Assume.assumeFalse(SystemUtils.IS_OS_WINDOWS);
+		ExternalProcessStreamingAligner aligner = new ExternalProcessStreamingAligner(SamReaderFactory.makeDefault(), createStubAligner("cat > /dev/null\nexit 1\n"), testFolder.getRoot(), 2, STUB_DICT, 2, 4);
+		for (int i = 0; i < 16; i++) {
+			aligner.asyncAlign(stubRead(Integer.toString(i)));
+		}
+		aligner.close();
+	}
 }
@@ -8,6 +8,8 @@ import org.junit.rules.TemporaryFolder;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
 
 import static org.junit.Assert.*;
 
@@ -116,4 +118,33 @@ public class IntervalBedTest extends TestHelper {
 			assertEquals(qi[i].end, result[i].end);
 		}
 	}
+	@Test
+	public void should_merge_concurrently_added_intervals() throws InterruptedException {
+		IntervalBed bed = new IntervalBed(getContext().getLinear());
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 4; t++) {
+			int offset = t;
+			threads.add(new Thread(() -> {
+				for (int i = 0; i < 1000; i++) {
+					bed.addInterval(0, 1 + 8 * i + 2 * offset, 1 + 8 * i + 2 * offset);
+					bed.overlaps(0, 1, 1);
+				}
+			}));
+		}
+		for (Thread t : threads) t.start();
+		for (Thread t : threads) t.join();
+		assertEquals(4000, bed.size());
+		assertTrue(bed.overlaps(0, 7, 7));
+		assertFalse(bed.overlaps(0, 8, 8));
+	}
+	@Test
+	public void cursor_should_not_see_subsequently_added_intervals() {
+		IntervalBed bed = new IntervalBed(getContext().getLinear());
+		bed.addInterval(0, 10, 20);
+		IntervalIndex.Cursor cursor = bed.cursor();
+		bed.addInterval(0, 30, 40);
+		assertTrue(cursor.overlaps(0, 15, 15));
+		assertFalse(cursor.overlaps(0, 35, 35));
+		assertTrue(bed.overlaps(0, 35, 35));
+	}
 }
@@ -0,0 +1,152 @@
+package au.edu.wehi.idsv.bed;
+
+import com.google.common.collect.Range;
+import com.google.common.collect.RangeSet;
+import com.google.common.collect.TreeRangeSet;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class IntervalIndexTest {
+	private static final int CONTIG_OFFSET = 1 << 20;
+	private static Range<Long> range(int referenceIndex, int start, int end) {
+		return Range.closed((long)referenceIndex * CONTIG_OFFSET + start, (long)referenceIndex * CONTIG_OFFSET + end);
+	}
+	@Test
+	public void should_merge_overlapping_and_adjacent_intervals() {
+		IntervalIndex index = new IntervalIndex.Builder()
+				.add(0, 10, 20)
+				.add(0, 15, 25)
+				.add(0, 26, 30)
+				.add(0, 40, 50)
+				.add(2, 1, 1)
+				.build();
+		assertEquals(3, index.size());
+		assertEquals(2, index.size(0));
+		assertEquals(0, index.size(1));
+		assertEquals(10, index.getStart(0, 0));
+		assertEquals(30, index.getEnd(0, 0));
+		assertEquals(40, index.getStart(0, 1));
+		assertEquals(50, index.getEnd(0, 1));
+	}
+	@Test
+	public void should_ignore_empty_intervals() {
+		IntervalIndex index = new IntervalIndex.Builder()
+				.add(0, 10, 9)
+				.add(-1, 1, 10)
+				.build();
+		assertEquals(0, index.size());
+		assertFalse(index.overlaps(-1, 1, 10));
+		assertFalse(index.overlaps(5, 1, 10));
+	}
+	@Test
+	public void overlaps_should_match_RangeSet() {
+		Random rng = new Random(0);
+		IntervalIndex.Builder builder = new IntervalIndex.Builder();
+		RangeSet<Long> expected = TreeRangeSet.create();
+		for (int i = 0; i < 500; i++) {
+			int referenceIndex = rng.nextInt(3);
+			int start = 1 + rng.nextInt(10000);
+			int end = start + rng.nextInt(50);
+			builder.add(referenceIndex, start, end);
+			expected.add(range(referenceIndex, start, end));
+		}
+		IntervalIndex index = builder.build();
+		IntervalIndex.Cursor cursor = index.cursor();
+		for (int referenceIndex = 0; referenceIndex < 4; referenceIndex++) {
+			for (int start = 1; start < 10100; start += 1 + rng.nextInt(20)) {
+				int end = start + rng.nextInt(30);
+				boolean overlaps = expected.intersects(range(referenceIndex, start, end));
+				assertEquals(overlaps, index.overlaps(referenceIndex, start, end));
+				assertEquals(overlaps, cursor.overlaps(referenceIndex, start, end));
+			}
+		}
+	}
+	@Test
+	public void cursor_should_allow_out_of_order_queries() {
+		IntervalIndex index = new IntervalIndex.Builder()
+				.add(0, 10, 20)
+				.add(0, 100, 200)
+				.add(1, 10, 20)
+				.build();
+		IntervalIndex.Cursor cursor = index.cursor();
+		assertTrue(cursor.overlaps(0, 150, 150));
+		assertTrue(cursor.overlaps(0, 15, 15));
+		assertFalse(cursor.overlaps(0, 21, 99));
+		assertTrue(cursor.overlaps(1, 1, 10));
+		assertTrue(cursor.overlaps(0, 200, 300));
+		assertFalse(cursor.overlaps(0, 1, 9));
+	}
+	@Test
+	public void subtract_should_match_RangeSet() {
+		Random rng = new Random(0);
+		IntervalIndex.Builder builder = new IntervalIndex.Builder();
+		IntervalIndex.Builder removeBuilder = new IntervalIndex.Builder();
+		RangeSet<Long> expected = TreeRangeSet.create();
+		RangeSet<Long> toRemove = TreeRangeSet.create();
+		for (int i = 0; i < 200; i++) {
+			int referenceIndex = rng.nextInt(2);
+			int start = 1 + rng.nextInt(2000);
+			int end = start + rng.nextInt(50);
+			builder.add(referenceIndex, start, end);
+			expected.add(range(referenceIndex, start, end));
+			referenceIndex = rng.nextInt(3);
+			start = 1 + rng.nextInt(2000);
+			end = start + rng.nextInt(20);
+			removeBuilder.add(referenceIndex, start, end);
+			toRemove.add(range(referenceIndex, start, end));
+		}
+		expected.removeAll(toRemove);
+		IntervalIndex index = builder.build().subtract(removeBuilder.build());
+		for (int referenceIndex = 0; referenceIndex < 3; referenceIndex++) {
+			for (int i = 1; i < 2100; i++) {
+				assertEquals(expected.contains((long)referenceIndex * CONTIG_OFFSET + i), index.overlaps(referenceIndex, i, i));
+			}
+		}
+	}
+	@Test
+	public void union_should_match_rebuilt_index() {
+		Random rng = new Random(0);
+		IntervalIndex.Builder builder = new IntervalIndex.Builder();
+		IntervalIndex.Builder otherBuilder = new IntervalIndex.Builder();
+		IntervalIndex.Builder allBuilder = new IntervalIndex.Builder();
+		for (int i = 0; i < 200; i++) {
+			int referenceIndex = rng.nextInt(2);
+			int start = 1 + rng.nextInt(2000);
+			int end = start + rng.nextInt(50);
+			builder.add(referenceIndex, start, end);
+			allBuilder.add(referenceIndex, start, end);
+			referenceIndex = rng.nextInt(3);
+			start = 1 + rng.nextInt(2000);
+			end = start + rng.nextInt(20);
+			otherBuilder.add(referenceIndex, start, end);
+			allBuilder.add(referenceIndex, start, end);
+		}
+		IntervalIndex expected = allBuilder.build();
+		IntervalIndex index = builder.build().union(otherBuilder.build());
+		assertEquals(expected.size(), index.size());
+		for (int referenceIndex = 0; referenceIndex < 3; referenceIndex++) {
+			assertEquals(expected.size(referenceIndex), index.size(referenceIndex));
+			for (int i = 0; i < expected.size(referenceIndex); i++) {
+				assertEquals(expected.getStart(referenceIndex, i), index.getStart(referenceIndex, i));
+				assertEquals(expected.getEnd(referenceIndex, i), index.getEnd(referenceIndex, i));
+			}
+		}
+	}
+	@Test
+	public void expand_should_truncate_at_contig_bounds() {
+		IntervalIndex index = new IntervalIndex.Builder()
+				.add(0, 5, 10)
+				.add(1, 95, 96)
+				.build()
+				.expand(10, 10, new int[] { 100, 100 });
+		assertEquals(1, index.getStart(0, 0));
+		assertEquals(20, index.getEnd(0, 0));
+		assertEquals(85, index.getStart(1, 0));
+		assertEquals(100, index.getEnd(1, 0));
+	}
+}
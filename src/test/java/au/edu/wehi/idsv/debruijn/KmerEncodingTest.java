@@ -0,0 +1,119 @@
+package au.edu.wehi.idsv.debruijn;
+
+import au.edu.wehi.idsv.TestHelper;
+import au.edu.wehi.idsv.sim.RandomBaseGenerator;
+import com.google.common.collect.Lists;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class KmerEncodingTest extends TestHelper {
+	private static final int[] K = new int[] { 33, 47, 55, 63 };
+	@Test
+	public void create_should_select_representation_by_kmer_size() {
+		assertTrue(KmerEncoding.create(25).isPacked());
+		assertTrue(KmerEncoding.create(32).isPacked());
+		assertFalse(KmerEncoding.create(33).isPacked());
+		assertFalse(KmerEncoding.create(63).isPacked());
+	}
+	@Test(expected = IllegalArgumentException.class)
+	public void create_should_not_allow_k_larger_than_63() {
+		KmerEncoding.create(64);
+	}
+	@Test
+	public void kmer_should_round_trip_bases() {
+		byte[] bases = new RandomBaseGenerator(0).getBases(200);
+		for (int k : K) {
+			KmerEncoding encoding = KmerEncoding.create(k);
+			PackedSequence seq = new PackedSequence(bases, false, false);
+			for (int i = 0; i + k <= bases.length; i++) {
+				long kmer = encoding.kmer(seq, i);
+				assertArrayEquals(Arrays.copyOfRange(bases, i, i + k), encoding.bases(kmer));
+				assertEquals(kmer, encoding.kmer(seq, i));
+			}
+		}
+	}
+	@Test
+	public void adjacent_kmers_should_be_next_states() {
+		byte[] bases = new RandomBaseGenerator(1).getBases(200);
+		for (int k : K) {
+			KmerEncoding encoding = KmerEncoding.create(k);
+			PackedSequence seq = new PackedSequence(bases, false, false);
+			for (int i = 0; i + k < bases.length; i++) {
+				long kmer = encoding.kmer(seq, i);
+				long next = encoding.kmer(seq, i + 1);
+				assertTrue(encoding.isNext(kmer, next));
+				assertFalse(encoding.isNext(next, kmer));
+				assertTrue(Arrays.stream(encoding.nextStates(kmer)).anyMatch(x -> x == next));
+				assertTrue(Arrays.stream(encoding.prevStates(next)).anyMatch(x -> x == kmer));
+				assertEquals(KmerEncodingHelper.picardBaseToEncoded(bases[i]), encoding.firstBase(kmer));
+				assertEquals(KmerEncodingHelper.picardBaseToEncoded(bases[i + k - 1]), encoding.lastBase(kmer));
+			}
+		}
+	}
+	@Test
+	public void nextStates_should_only_return_encoded_kmers() {
+		KmerEncoding encoding = KmerEncoding.create(40);
+		String s = S(new RandomBaseGenerator(2).getBases(41));
+		long kmer = encoding.kmer(new PackedSequence(B(s), false, false), 0);
+		assertEquals(0, encoding.nextStates(kmer).length);
+		long a = encoding.kmer(new PackedSequence(B(s.substring(1, 40) + "A"), false, false), 0);
+		long c = encoding.kmer(new PackedSequence(B(s.substring(1, 40) + "C"), false, false), 0);
+		assertEquals(2, encoding.nextStates(kmer).length);
+		assertTrue(Arrays.stream(encoding.nextStates(kmer)).anyMatch(x -> x == a));
+		assertTrue(Arrays.stream(encoding.nextStates(kmer)).anyMatch(x -> x == c));
+		assertEquals(1, encoding.prevStates(a).length);
+	}
+	@Test
+	public void basesDifference_should_count_mismatches_in_both_words() {
+		KmerEncoding encoding = KmerEncoding.create(40);
+		String s = S(new RandomBaseGenerator(3).getBases(40));
+		char[] mismatch = s.toCharArray();
+		mismatch[0] = mismatch[0] == 'A' ? 'C' : 'A';
+		mismatch[39] = mismatch[39] == 'A' ? 'C' : 'A';
+		long a = encoding.kmer(new PackedSequence(B(s), false, false), 0);
+		long b = encoding.kmer(new PackedSequence(B(new String(mismatch)), false, false), 0);
+		assertEquals(2, encoding.basesDifference(a, b));
+		assertEquals(0, encoding.basesDifference(a, a));
+		assertFalse(encoding.firstBaseMatches(a, b));
+		assertFalse(encoding.lastBaseMatches(a, b));
+	}
+	@Test
+	public void baseCalls_should_match_sequence() {
+		byte[] bases = new RandomBaseGenerator(4).getBases(100);
+		for (int k : new int[] { 25, 47 }) {
+			KmerEncoding encoding = KmerEncoding.create(k);
+			PackedKmerList list = new PackedKmerList(encoding, bases, null, false, false);
+			List<Long> path = Lists.newArrayList();
+			LongArrayList lal = new LongArrayList();
+			for (int i = 0; i < list.length(); i++) {
+				path.add(list.kmer(i));
+				lal.add(list.kmer(i));
+			}
+			assertArrayEquals(bases, encoding.baseCalls(path));
+			int[] counts = encoding.baseCounts(lal);
+			for (int b = 0; b < 4; b++) {
+				final int base = b;
+				assertEquals(S(bases).chars().filter(x -> KmerEncodingHelper.picardBaseToEncoded((byte)x) == base).count(), counts[b]);
+			}
+		}
+	}
+	@Test
+	public void dictionary_should_grow() {
+		Kmer128Dictionary dict = new Kmer128Dictionary(1);
+		for (int i = 0; i < 10000; i++) {
+			assertEquals(i, dict.intern(i, -i));
+		}
+		for (int i = 0; i < 10000; i++) {
+			assertEquals(i, dict.find(i, -i));
+			assertEquals(i, dict.high(i));
+			assertEquals(-i, dict.low(i));
+		}
+		assertEquals(-1, dict.find(1, 1));
+		assertEquals(10000, dict.size());
+	}
+}
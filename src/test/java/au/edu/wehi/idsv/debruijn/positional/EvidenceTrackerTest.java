@@ -146,4 +146,25 @@ public class EvidenceTrackerTest extends TestHelper {
 				.forEach(ksn -> tracker.track(ksn));
 		tracker.remove(ImmutableSet.of(e, e2));
 	}
+	@Test
+	public void should_reuse_storage_of_removed_evidence() {
+		final int k = 4;
+		final MockSAMEvidenceSource ses = SES();
+		EvidenceTracker tracker = new EvidenceTracker();
+		for (int round = 0; round < 3; round++) {
+			int finalRound = round;
+			Set<KmerEvidence> list = IntStream.range(0, 2000).mapToObj(i ->
+					KmerEvidence.create(k, SCE(FWD, ses, withReadName("read" + finalRound + "_" + i, Read(0, 1 + i % 10, "7M1S"))))
+			).collect(Collectors.toSet());
+			list.stream().forEach(ke -> IntStream.range(0, ke.length()).forEach(i -> tracker.track(ke.node(i))));
+			assertEquals(2000 * 5, tracker.tracking_supportNodeCount());
+			tracker.sanityCheck();
+			assertEquals(list, tracker.remove(list));
+			assertEquals(0, tracker.tracking_supportNodeCount());
+			assertEquals(0, tracker.tracking_kmerCount());
+			assertEquals(0, tracker.getTrackedEvidence().size());
+			tracker.sanityCheck();
+		}
+		assertEquals(3 * 2000, tracker.tracking_evidenceTotal());
+	}
 }
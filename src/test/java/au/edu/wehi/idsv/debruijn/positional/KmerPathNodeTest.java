@@ -1,6 +1,8 @@
 package au.edu.wehi.idsv.debruijn.positional;
 
 import au.edu.wehi.idsv.TestHelper;
+import au.edu.wehi.idsv.debruijn.KmerEncoding;
+import au.edu.wehi.idsv.debruijn.PackedKmerList;
 import com.google.common.collect.ImmutableList;
 import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.longs.LongArrayList;
@@ -496,4 +498,17 @@ public class KmerPathNodeTest extends TestHelper {
 		assertEquals(new KmerPathSubnode(n, 6, 6), result.get(4));
 		assertEquals(new KmerPathSubnode(n, 7, 10), result.get(5));
 	}
+	@Test
+	public void sanityCheck_should_use_graph_kmer_encoding() {
+		KmerEncoding encoding = KmerEncoding.create(40);
+		PackedKmerList kmers = new PackedKmerList(encoding, B("ACGTTGCAAGTCCATGGACTTACGGATCAGTTCAGGCATGCCATTAGA"), null, false, false);
+		KmerPathNode pn = new KmerPathNode(kmers.kmer(0), 1, 5, false, 1);
+		for (int i = 1; i < 5; i++) {
+			pn.append(new ImmutableKmerNode(kmers.kmer(i), 1 + i, 5 + i, false, 1));
+		}
+		KmerPathNode next = new KmerPathNode(kmers.kmer(5), 6, 10, false, 1);
+		KmerPathNode.addEdge(pn, next);
+		assertTrue(pn.sanityCheck(encoding, 5, 10));
+		assertTrue(next.sanityCheck(encoding, 5, 10));
+	}
 }
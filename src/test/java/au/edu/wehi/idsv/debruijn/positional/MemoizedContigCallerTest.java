@@ -1,15 +1,22 @@
 package au.edu.wehi.idsv.debruijn.positional;
 
+import au.edu.wehi.idsv.debruijn.KmerEncodingHelper;
+import au.edu.wehi.idsv.util.IntervalUtil;
 import com.google.common.collect.Sets;
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.IOException;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 
 public class MemoizedContigCallerTest extends ContigCallerTest {
@@ -262,4 +269,54 @@ public class MemoizedContigCallerTest extends ContigCallerTest {
 		caller.add(n3);
 		caller.frontierPath(6, 2);
 	}
+	@Rule
+	public TemporaryFolder testFolder = new TemporaryFolder();
+	@Test
+	public void spilled_memoization_should_call_same_contigs() throws IOException {
+		int k = 16;
+		Random rng = new Random(0);
+		List<KmerPathNode> list = new ArrayList<KmerPathNode>();
+		for (int i = 0; i < 256; i++) {
+			int start = 1 + rng.nextInt(2000);
+			int end = start + rng.nextInt(10);
+			int weight = 1 + rng.nextInt(100);
+			list.add(KPN(k, KmerEncodingHelper.toString(k, i), start, end, false, weight));
+		}
+		for (KmerPathNode prev : list) {
+			for (KmerPathNode next : list) {
+				if (IntervalUtil.overlapsClosed(prev.lastStart() + 1, prev.lastEnd() + 1, next.firstStart(), next.firstEnd())) {
+					KmerPathNode.addEdge(prev, next);
+				}
+			}
+		}
+		list.sort(KmerNodeUtil.ByFirstStart);
+		MemoizedContigCaller expected = new MemoizedContigCaller(0, 10);
+		MemoizedContigCaller spilled = new MemoizedContigCaller(0, 10, 1, testFolder.newFolder());
+		int spilledNodes = 0;
+		int offset = 0;
+		for (int position = 0; position <= 2100; position += 20) {
+			while (offset < list.size() && list.get(offset).firstStart() < position) {
+				expected.add(list.get(offset));
+				spilled.add(list.get(offset));
+				offset++;
+			}
+			ArrayDeque<KmerPathSubnode> expectedContig = expected.bestContig(position);
+			ArrayDeque<KmerPathSubnode> actualContig = spilled.bestContig(position);
+			assertEquals(expectedContig == null, actualContig == null);
+			if (expectedContig != null) {
+				assertEquals(S(expectedContig, k), S(actualContig, k));
+			}
+			spilledNodes = Math.max(spilledNodes, spilled.spilledNodeCount());
+			expectedContig = expected.callBestContigStartingBefore(position, position - 100);
+			actualContig = spilled.callBestContigStartingBefore(position, position - 100);
+			assertEquals(expectedContig == null, actualContig == null);
+			if (expectedContig != null) {
+				assertEquals(S(expectedContig, k), S(actualContig, k));
+			}
+		}
+		assertTrue(spilledNodes > 0);
+		assertEquals(expected.memoizedNodeCount(), spilled.memoizedNodeCount() + spilled.spilledNodeCount());
+		spilled.sanityCheckMatches(expected);
+		spilled.close();
+	}
 }
@@ -2,8 +2,11 @@ package au.edu.wehi.idsv.debruijn.positional;
 
 import au.edu.wehi.idsv.TestHelper;
 import com.google.common.collect.Lists;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.IOException;
 import java.util.ArrayList;
 
 import static org.junit.Assert.*;
@@ -190,4 +193,42 @@ public class MemoizedTraverseTest extends TestHelper {
 		// we still shouldn't remove c because the actual path doesn't overlap
 		assertEquals(1, mt.memoized(d).size());
 	}
+	@Rule
+	public TemporaryFolder testFolder = new TemporaryFolder();
+	@Test
+	public void spilled_paths_should_be_restored_on_access() throws IOException {
+		KmerPathNode n1 = N(1, 10, 1);
+		KmerPathNode n2 = N(2, 11, 2);
+		KmerPathNode.addEdge(n1, n2);
+		MemoizedTraverse mt = new MemoizedTraverse(testFolder.newFolder());
+		TraversalNode tn1 = new TraversalNode(new KmerPathSubnode(n1, 1, 4), 0);
+		TraversalNode tn2 = new TraversalNode(new KmerPathSubnode(n1, 5, 10), 3);
+		mt.memoize(tn1);
+		mt.memoize(tn2);
+		mt.memoize(new TraversalNode(tn1, new KmerPathSubnode(n2, 2, 5)));
+		mt.memoize(new TraversalNode(tn2, new KmerPathSubnode(n2, 6, 11)));
+		while (!mt.isEmptyFrontier()) {
+			mt.pollFrontier();
+		}
+		ArrayList<TraversalNode> expected = Lists.newArrayList(mt.memoized(n2));
+		assertEquals(2, mt.spill(n -> true));
+		assertEquals(0, mt.memoizedNodeCount());
+		assertEquals(2, mt.spilledNodeCount());
+		assertTrue(mt.isMemoized(n1));
+		ArrayList<TraversalNode> result = Lists.newArrayList(mt.memoized(n2));
+		assertEquals(1, mt.spilledNodeCount());
+		assertEquals(expected.size(), result.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i).score, result.get(i).score);
+			assertEquals(expected.get(i).pathLength, result.get(i).pathLength);
+			assertEquals(expected.get(i).node.firstStart(), result.get(i).node.firstStart());
+			assertEquals(expected.get(i).node.firstEnd(), result.get(i).node.firstEnd());
+			assertSame(n1, result.get(i).parent.node.node());
+			assertEquals(expected.get(i).parent.score, result.get(i).parent.score);
+		}
+		mt.unspillAll();
+		assertEquals(0, mt.spilledNodeCount());
+		assertEquals(2, mt.memoizedNodeCount());
+		mt.close();
+	}
 }
@@ -1,14 +1,21 @@
 package au.edu.wehi.idsv.debruijn.positional;
 
 import au.edu.wehi.idsv.*;
+import au.edu.wehi.idsv.bed.IntervalBed;
+import au.edu.wehi.idsv.configuration.GridssConfiguration;
 import au.edu.wehi.idsv.sam.SAMRecordUtil;
 import au.edu.wehi.idsv.sam.SamTags;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Ordering;
 import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.metrics.Header;
+import org.apache.commons.configuration.BaseConfiguration;
+import org.apache.commons.configuration.CompositeConfiguration;
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import java.io.File;
 import java.util.ArrayList;
@@ -52,7 +59,7 @@ public class NonReferenceContigAssemblerTest extends TestHelper {
 			pnIt = new PathCollapseIterator(pnIt, k, maxPathCollapseLength, pc.getAssemblyParameters().errorCorrection.maxBaseMismatchForCollapse, pc.getAssemblyParameters().errorCorrection.collapseBubblesOnly, 0);
 			pnIt = new PathSimplificationIterator(pnIt, maxPathLength, maxEvidenceWidth);
 		}
-		caller = new NonReferenceContigAssembler(pnIt, 0, maxEvidenceWidth + maxReadLength + 2, maxReadLength, k, aes, new SequentialIdGenerator("asm"), tracker, "test", direction, null, null);
+		caller = new NonReferenceContigAssembler(pnIt, 0, maxEvidenceWidth + maxReadLength + 2, maxReadLength, k, aes, new SequentialIdGenerator("asm"), tracker, "test", direction, null, new IntervalBed(pc.getLinear()));
 		return caller;
 	}
 	@Test
@@ -592,4 +599,69 @@ public class NonReferenceContigAssemblerTest extends TestHelper {
 		}
 		assertEquals(0, aa.getSupportingReadCount(output.get(0).getReadLength(), null, ImmutableSet.of(AssemblyEvidenceSupport.SupportType.ReadPair)));
 	}
+	@Rule
+	public TemporaryFolder testFolder = new TemporaryFolder();
+	private ProcessingContext getSpillContext(int spillThreshold, int safetyThreshold, int spilledSafetyThreshold) {
+		BaseConfiguration overrides = new BaseConfiguration();
+		overrides.setProperty("assembly.positional.memoizationSpillThreshold", spillThreshold);
+		overrides.setProperty("assembly.positional.safetyModePathCountThreshold", safetyThreshold);
+		overrides.setProperty("assembly.positional.safetyModeSpilledPathCountThreshold", spilledSafetyThreshold);
+		CompositeConfiguration config = new CompositeConfiguration();
+		config.addConfiguration(overrides);
+		config.addConfiguration(getDefaultConfig());
+		GridssConfiguration gc = new GridssConfiguration(config, testFolder.getRoot());
+		gc.minAnchorShannonEntropy = 0;
+		gc.minMapq = 10;
+		gc.getAssembly().minReads = 2;
+		gc.getAssembly().positional.trimSelfIntersectingReads = false;
+		gc.getSoftClip().minAverageQual = 0;
+		gc.getVariantCalling().breakendMargin = 3;
+		gc.getVisualisation().buffers = false;
+		gc.getVariantCalling().callBreakends = true;
+		ProcessingContext pc = new ProcessingContext(getFSContext(), SMALL_FA_FILE, SMALL_FA, new ArrayList<Header>(), gc);
+		pc.registerCategory("Normal");
+		pc.registerCategory("Tumour");
+		pc.getAssemblyParameters().k = 16;
+		return pc;
+	}
+	/**
+	 * Independent soft clips with weight increasing along the region so no contig
+	 * can be called until the entire region has been loaded.
+	 */
+	private DirectedEvidence[] highComplexityRegion(ProcessingContext pc) {
+		MockSAMEvidenceSource ses = new MockSAMEvidenceSource(pc, 10, 10);
+		byte[] random = SMALL_FA.getSequence("random").getBases();
+		List<DirectedEvidence> e = new ArrayList<>();
+		for (int i = 1; i < 100; i++) {
+			String seq = S(Arrays.copyOfRange(random, 24 * i, 24 * (i + 1)));
+			for (int j = 0; j < 2 + i / 10; j++) {
+				e.add(SCE(FWD, ses, withReadName(String.format("%d-%d", i, j), withSequence(seq, Read(0, i, "4M20S")))[0]));
+			}
+		}
+		return e.toArray(new DirectedEvidence[0]);
+	}
+	@Test
+	public void spilling_memoization_should_allow_high_complexity_regions_to_be_assembled() {
+		ProcessingContext pc = getSpillContext(0, Integer.MAX_VALUE, Integer.MAX_VALUE);
+		List<SAMRecord> unbounded = go(pc, false, highComplexityRegion(pc));
+		pc = getSpillContext(0, 20, Integer.MAX_VALUE);
+		List<SAMRecord> safetyMode = go(pc, false, highComplexityRegion(pc));
+		pc = getSpillContext(1, 20, Integer.MAX_VALUE);
+		List<SAMRecord> spilled = go(pc, false, highComplexityRegion(pc));
+		assertEquals(99, unbounded.size());
+		// reads are dropped once the in-memory memoization exceeds the safety mode threshold
+		assertTrue(safetyMode.size() < unbounded.size());
+		// spilled paths don't count towards the threshold so the full region is assembled
+		assertEquals(
+				unbounded.stream().map(r -> S(r.getReadBases())).collect(Collectors.toList()),
+				spilled.stream().map(r -> S(r.getReadBases())).collect(Collectors.toList()));
+	}
+	@Test
+	public void should_enter_safety_mode_when_spilled_memoization_exceeds_threshold() {
+		ProcessingContext pc = getSpillContext(1, 20, Integer.MAX_VALUE);
+		List<SAMRecord> spilled = go(pc, false, highComplexityRegion(pc));
+		pc = getSpillContext(1, 20, 50);
+		List<SAMRecord> safetyMode = go(pc, false, highComplexityRegion(pc));
+		assertTrue(safetyMode.size() < spilled.size());
+	}
 }
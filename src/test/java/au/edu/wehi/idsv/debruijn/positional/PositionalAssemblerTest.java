@@ -1,12 +1,15 @@
 package au.edu.wehi.idsv.debruijn.positional;
 
 import au.edu.wehi.idsv.*;
+import au.edu.wehi.idsv.sim.RandomBaseGenerator;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import htsjdk.samtools.SAMRecord;
 import org.junit.Test;
+import performancetesting.BenchmarkData;
 
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.stream.IntStream;
 
@@ -144,4 +147,62 @@ public class PositionalAssemblerTest extends TestHelper {
 			assertEquals(BreakendDirection.Forward, new AssemblyAttributes(r).getAssemblyDirection());
 		}
 	}
+	@Test
+	public void should_assemble_kmers_larger_than_32_bases() {
+		String seq = S(new RandomBaseGenerator(0).getBases(110));
+		for (int k : new int[] { 25, 47, 63 }) {
+			ProcessingContext pc = getContext();
+			AssemblyEvidenceSource aes = AES(pc);
+			pc.getAssemblyParameters().k = k;
+			List<DirectedEvidence> input = new ArrayList<DirectedEvidence>();
+			input.add(SCE(FWD, withSequence(seq.substring(0, 100), Read(0, 100, "80M20S"))[0]));
+			input.add(SCE(FWD, withSequence(seq.substring(10, 110), Read(0, 110, "70M30S"))[0]));
+			input.sort(DirectedEvidenceOrder.ByStartEnd);
+			List<SingleReadEvidence> r = asAssemblyEvidence(aes, Lists.newArrayList(new PositionalAssembler(pc, aes, new SequentialIdGenerator("asm"), input.iterator(), null, null)));
+			assertEquals(1, r.size());
+			assertEquals(new BreakendSummary(0, FWD, 179), r.get(0).getBreakendSummary());
+			assertEquals(seq.substring(80), S(r.get(0).getBreakendSequence()));
+			assertTrue(seq.substring(0, 80).endsWith(S(r.get(0).getAnchorSequence())));
+		}
+	}
+	@Test
+	public void should_assemble_independent_regions_of_kmers_larger_than_32_bases_separately() {
+		String seq = S(new RandomBaseGenerator(0).getBases(110));
+		ProcessingContext pc = getContext();
+		AssemblyEvidenceSource aes = AES(pc);
+		pc.getAssemblyParameters().k = 47;
+		List<DirectedEvidence> input = new ArrayList<DirectedEvidence>();
+		for (int offset : new int[] { 0, 4000 }) {
+			input.add(SCE(FWD, withSequence(seq.substring(0, 100), Read(0, offset + 100, "80M20S"))[0]));
+			input.add(SCE(FWD, withSequence(seq.substring(10, 110), Read(0, offset + 110, "70M30S"))[0]));
+		}
+		input.sort(DirectedEvidenceOrder.ByStartEnd);
+		List<SingleReadEvidence> r = asAssemblyEvidence(aes, Lists.newArrayList(new PositionalAssembler(pc, aes, new SequentialIdGenerator("asm"), input.iterator(), null, null)));
+		assertEquals(2, r.size());
+		r.sort(Comparator.comparing(e -> e.getBreakendSummary().start));
+		assertEquals(new BreakendSummary(0, FWD, 179), r.get(0).getBreakendSummary());
+		assertEquals(new BreakendSummary(0, FWD, 4179), r.get(1).getBreakendSummary());
+		assertEquals(seq.substring(80), S(r.get(1).getBreakendSequence()));
+	}
+	private List<String> assemble(AssemblyEvidenceSource aes, List<DirectedEvidence> input, boolean pipelined) {
+		PositionalAssembler pa = new PositionalAssembler(aes.getContext(), aes, new SequentialIdGenerator("asm"), input.iterator(), null, null);
+		pa.setPipelined(pipelined);
+		List<String> result = new ArrayList<>();
+		pa.forEachRemaining(r -> result.add(r.getSAMString()));
+		return result;
+	}
+	@Test
+	public void pipelined_assembly_should_match_single_threaded_assembly() {
+		SAMEvidenceSource ses = SES(BenchmarkData.FRAGMENT_SIZE);
+		ses.getContext().getAssemblyParameters().k = 25;
+		AssemblyEvidenceSource aes = AES(ses);
+		List<DirectedEvidence> input = new BenchmarkData(0, 100, 400).getEvidence(ses, 8);
+		// evidence on multiple contigs
+		input.add(SCE(BWD, ses, Read(0, 10, "5S5M")));
+		input.add(SCE(FWD, ses, Read(1, 100, "5M5S")));
+		input.sort(DirectedEvidenceOrder.ByStartEnd);
+		List<String> expected = assemble(aes, input, false);
+		assertTrue(expected.size() > 2);
+		assertEquals(expected, assemble(aes, input, true));
+	}
 }
@@ -0,0 +1,86 @@
+package au.edu.wehi.idsv.debruijn.positional.optimiseddatastructures;
+
+import au.edu.wehi.idsv.TestHelper;
+import au.edu.wehi.idsv.debruijn.positional.KmerNodeUtil;
+import au.edu.wehi.idsv.debruijn.positional.KmerPathNode;
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class KmerNodeByFirstStartKmerSlidingWindowSetTest extends TestHelper {
+    private static void assertSameOrder(NavigableSet<KmerPathNode> expected, KmerNodeByFirstStartKmerSet<KmerPathNode> actual) {
+        assertEquals(expected.size(), actual.size());
+        assertEquals(Lists.newArrayList(expected.iterator()), Lists.newArrayList(actual.iterator()));
+        assertEquals(Lists.newArrayList(expected.descendingIterator()), Lists.newArrayList(actual.descendingIterator()));
+        if (!expected.isEmpty()) {
+            assertEquals(expected.first(), actual.first());
+            assertEquals(expected.last(), actual.last());
+        }
+    }
+    @Test
+    public void should_match_tree_set() {
+        int k = 4;
+        String[] kmers = new String[] { "GTAC", "TTAC", "AAAA", "CCGT" };
+        Random r = new Random(0);
+        NavigableSet<KmerPathNode> ns = new TreeSet<>(KmerNodeUtil.ByFirstStartKmer);
+        KmerNodeByFirstStartKmerSlidingWindowSet<KmerPathNode> set = new KmerNodeByFirstStartKmerSlidingWindowSet<>(2);
+        List<KmerPathNode> added = new ArrayList<>();
+        for (int i = 0 ; i < 4096; i++) {
+            // slide the window along the genome
+            int offset = i / 16;
+            KmerPathNode kpn;
+            if (!added.isEmpty() && r.nextInt(5) < 2) {
+                kpn = added.get(r.nextInt(added.size()));
+                assertEquals(ns.remove(kpn), set.remove(kpn));
+            } else {
+                int start = offset + r.nextInt(24) - 8;
+                kpn = KPN(k, kmers[r.nextInt(kmers.length)], start, start + r.nextInt(3), r.nextBoolean());
+                assertEquals(ns.add(kpn), set.add(kpn));
+                added.add(kpn);
+            }
+            assertEquals(ns.contains(kpn), set.contains(kpn));
+            assertSameOrder(ns, set);
+        }
+    }
+    @Test
+    public void removeAll_should_remove_in_batch() {
+        int k = 4;
+        NavigableSet<KmerPathNode> ns = new TreeSet<>(KmerNodeUtil.ByFirstStartKmer);
+        KmerNodeByFirstStartKmerSlidingWindowSet<KmerPathNode> set = new KmerNodeByFirstStartKmerSlidingWindowSet<>(4);
+        List<KmerPathNode> toRemove = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            KmerPathNode kpn = KPN(k, "GTAC", i, i, false);
+            ns.add(kpn);
+            set.add(kpn);
+            if (i < 50 || i % 3 == 0) {
+                toRemove.add(kpn);
+            }
+        }
+        assertEquals(ns.removeAll(toRemove), set.removeAll(toRemove));
+        assertSameOrder(ns, set);
+        assertEquals(50, set.first().firstStart());
+        assertFalse(set.removeAll(toRemove));
+    }
+    @Test
+    public void should_grow_window() {
+        int k = 4;
+        KmerNodeByFirstStartKmerSlidingWindowSet<KmerPathNode> set = new KmerNodeByFirstStartKmerSlidingWindowSet<>(1);
+        set.add(KPN(k, "GTAC", 1000, 1000, false));
+        set.add(KPN(k, "GTAC", -1000, -1000, false));
+        set.add(KPN(k, "GTAC", 1, 1, false));
+        assertEquals(-1000, set.first().firstStart());
+        assertEquals(1000, set.last().firstStart());
+        assertTrue(set.contains(KPN(k, "GTAC", 1, 1, false)));
+        assertFalse(set.contains(KPN(k, "GTAC", 2, 2, false)));
+        assertEquals(3, set.size());
+    }
+}
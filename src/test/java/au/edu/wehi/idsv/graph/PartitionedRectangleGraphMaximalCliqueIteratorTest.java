@@ -0,0 +1,63 @@
+package au.edu.wehi.idsv.graph;
+
+import au.edu.wehi.idsv.util.TaskGroupScheduler;
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class PartitionedRectangleGraphMaximalCliqueIteratorTest {
+	private static final long PARTITION_SIZE = 1000;
+	private static long partitionOf(RectangleGraphNode node) {
+		return (node.startX / PARTITION_SIZE) * 1000 + node.startY / PARTITION_SIZE;
+	}
+	private static List<RectangleGraphNode> randomNodes(Random rng, int partitions, int count, int width) {
+		List<RectangleGraphNode> nodes = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			// rectangles are fully contained within a partition
+			long x = rng.nextInt(partitions) * PARTITION_SIZE + rng.nextInt(100);
+			long y = rng.nextInt(partitions) * PARTITION_SIZE + rng.nextInt(100);
+			nodes.add(new RectangleGraphNode(x, x + rng.nextInt(width), y, y + rng.nextInt(width), 1 + rng.nextInt(3)));
+		}
+		nodes.sort(RectangleGraphNode.ByStartXYEndXY);
+		return nodes;
+	}
+	private static void assertSameAsUnpartitioned(List<RectangleGraphNode> nodes, TaskGroupScheduler scheduler, int batchSize) {
+		List<RectangleGraphNode> expected = Lists.newArrayList(new RectangleGraphMaximalCliqueIterator(nodes.iterator()));
+		List<RectangleGraphNode> actual = Lists.newArrayList(new PartitionedRectangleGraphMaximalCliqueIterator(nodes.iterator(), PartitionedRectangleGraphMaximalCliqueIteratorTest::partitionOf, scheduler, batchSize));
+		assertEquals(expected.toString(), actual.toString());
+	}
+	@Test
+	public void should_match_unpartitioned_calls() {
+		Random rng = new Random(0);
+		for (int i = 0; i < 500; i++) {
+			assertSameAsUnpartitioned(randomNodes(rng, 1 + rng.nextInt(4), 1 + rng.nextInt(100), 1 + rng.nextInt(20)), null, 1 + rng.nextInt(10));
+		}
+	}
+	@Test
+	public void should_match_unpartitioned_calls_when_run_concurrently() {
+		Random rng = new Random(0);
+		TaskGroupScheduler scheduler = new TaskGroupScheduler("test", 4);
+		for (int i = 0; i < 100; i++) {
+			assertSameAsUnpartitioned(randomNodes(rng, 4, 2000, 50), scheduler, 1 + rng.nextInt(100));
+		}
+	}
+	@Test
+	public void should_not_split_batch_at_same_start_position() {
+		List<RectangleGraphNode> nodes = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			nodes.add(new RectangleGraphNode(1, 5, i, i + 2, 1));
+			nodes.add(new RectangleGraphNode(1, 5, PARTITION_SIZE + i, PARTITION_SIZE + i + 2, 1));
+		}
+		nodes.sort(RectangleGraphNode.ByStartXYEndXY);
+		assertSameAsUnpartitioned(nodes, null, 1);
+	}
+	@Test
+	public void should_handle_empty_input() {
+		assertSameAsUnpartitioned(new ArrayList<>(), null, 1);
+	}
+}
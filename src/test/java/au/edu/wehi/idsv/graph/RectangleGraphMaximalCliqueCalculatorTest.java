@@ -272,4 +272,26 @@ public class RectangleGraphMaximalCliqueCalculatorTest {
 		RectangleGraphNode[] cliques = getCliques(nodes.toArray(new RectangleGraphNode[nodes.size()]));
 		assertEquals(size * size, cliques.length); // clique at every grid position
 	}
+	@Test
+	public void should_handle_deeply_nested_rectangles() {
+		int depth = 2000;
+		RectangleGraphNode[] nodes = new RectangleGraphNode[depth];
+		for (int i = 0; i < depth; i++) {
+			nodes[i] = N(i, 2 * depth - i, i, 2 * depth - i);
+		}
+		go(nodes, N(depth - 1, depth + 1, depth - 1, depth + 1, depth));
+	}
+	@Test
+	public void should_handle_many_disjoint_overlapping_rectangles() {
+		int count = 2000;
+		List<RectangleGraphNode> nodes = new ArrayList<RectangleGraphNode>();
+		List<RectangleGraphNode> expected = new ArrayList<RectangleGraphNode>();
+		for (int i = 0; i < count; i++) {
+			// long X extent keeps all rectangles on the scanline
+			nodes.add(N(i, 3 * count, 4 * i, 4 * i + 2));
+			nodes.add(N(i, 3 * count, 4 * i + 1, 4 * i + 2));
+			expected.add(N(i, 3 * count, 4 * i + 1, 4 * i + 2, 2));
+		}
+		go(nodes.toArray(new RectangleGraphNode[0]), expected.toArray(new RectangleGraphNode[0]));
+	}
 }
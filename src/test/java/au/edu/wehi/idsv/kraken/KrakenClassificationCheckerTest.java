@@ -7,6 +7,7 @@ import org.junit.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 
 public class KrakenClassificationCheckerTest {
     @Test
@@ -34,4 +35,27 @@ public class KrakenClassificationCheckerTest {
         // read2 is good
         Assert.assertTrue(kkc.isOfInterest(new KrakenClassification("C\tid1\t1\t10\t1:1|:|9606:1 10239:1")));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void byte_level_check_should_match_parsed_classification() throws IOException {
+        KrakenClassificationChecker kkc = new KrakenClassificationChecker(ImmutableList.of(207598), new File("src/test/resources/ncbi/homo_sapiens.nodes.dmp"));
+        String[] lines = new String[] {
+                "C\tid1\t1\t10\t1:1",
+                "C\tid1\t1\t10\t9606:1 10239:1",
+                "C\tid1\t1\t10\t10239:1 9606:1",
+                "C\tid1\t1\t10\t10239:1 9606:1 10239:1",
+                "C\tid1\t9606\t10\t10239:1 9606:1 10239:1",
+                "C\tid1\t10239\t10\tA:1 1:1 2759:1 9606:1 10239:1",
+                "C\tid1\t10239\t10\t10239:1 9606:1 A:1 1:1 2759:1",
+                "C\tid1\t1\t10\t1:1|:|9606:1 10239:1",
+                "C\tid1\t1\t10\t9606:1|:|10239:1",
+                "C\tid1\t1\t10|10\t10239:1 1:1|:|10239:1",
+                "U\tid2\t0\t100\t",
+                "U\tid2\t0\t100",
+        };
+        for (String line : lines) {
+            byte[] b = ("xx" + line + "yy").getBytes(StandardCharsets.UTF_8);
+            Assert.assertEquals(line, kkc.isOfInterest(new KrakenClassification(line)), kkc.isOfInterest(b, 2, b.length - 2));
+        }
+    }
+}
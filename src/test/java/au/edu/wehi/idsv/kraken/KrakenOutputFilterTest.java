@@ -0,0 +1,79 @@
+package au.edu.wehi.idsv.kraken;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class KrakenOutputFilterTest {
+    @Rule
+    public TemporaryFolder testFolder = new TemporaryFolder();
+    private static final File KRAKEN_OUTPUT = new File("src/test/resources/kraken2_output.tsv");
+    private KrakenClassificationChecker checker() throws IOException {
+        return new KrakenClassificationChecker(ImmutableList.of(9606), new File("src/test/resources/ncbi/homo_sapiens.nodes.dmp"));
+    }
+    private String expected(KrakenClassificationChecker kcc, File input, boolean readNameOnly) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        try (KrakenParser parser = new KrakenParser(new BufferedReader(new InputStreamReader(new FileInputStream(input))))) {
+            while (parser.hasNext()) {
+                KrakenClassification kc = parser.next();
+                if (kcc.isOfInterest(kc)) {
+                    sb.append(readNameOnly ? kc.sequenceId : kc.toKrakenOutput());
+                    sb.append('\n');
+                }
+            }
+        }
+        return sb.toString();
+    }
+    private String filter(KrakenClassificationChecker kcc, File input, boolean readNameOnly, int segmentSize, ExecutorService threadpool) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        new KrakenOutputFilter(kcc, readNameOnly, segmentSize).filter(input, os, threadpool, 4);
+        return new String(os.toByteArray(), StandardCharsets.UTF_8);
+    }
+    @Test
+    public void should_match_parsed_classification() throws IOException {
+        KrakenClassificationChecker kcc = checker();
+        String expected = expected(kcc, KRAKEN_OUTPUT, false);
+        Assert.assertEquals(2, expected.split("\n").length);
+        for (int segmentSize : new int[] { 1, 7, 64, 1000, KrakenOutputFilter.DEFAULT_SEGMENT_SIZE }) {
+            Assert.assertEquals(expected, filter(kcc, KRAKEN_OUTPUT, false, segmentSize, MoreExecutors.newDirectExecutorService()));
+        }
+    }
+    @Test
+    public void should_write_read_names() throws IOException {
+        KrakenClassificationChecker kcc = checker();
+        Assert.assertEquals(expected(kcc, KRAKEN_OUTPUT, true), filter(kcc, KRAKEN_OUTPUT, true, 100, MoreExecutors.newDirectExecutorService()));
+    }
+    @Test
+    public void should_write_in_input_order() throws IOException {
+        KrakenClassificationChecker kcc = checker();
+        File input = testFolder.newFile("kraken.tsv");
+        try (Writer w = Files.newBufferedWriter(input.toPath(), StandardCharsets.UTF_8)) {
+            for (int i = 0; i < 10000; i++) {
+                w.write(String.format("C\tread%d\t%d\t151\t0:%d 9606:2 0:3\n", i, i % 3 == 0 ? 9606 : 0, i % 50));
+                w.write(String.format("U\tunclassified%d\t0\t151\t0:117\n", i));
+            }
+            // final line without a line terminator
+            w.write("C\tlast\t9606\t151\t9606:1");
+        }
+        ExecutorService threadpool = Executors.newFixedThreadPool(4);
+        try {
+            Assert.assertEquals(expected(kcc, input, false), filter(kcc, input, false, 4096, threadpool));
+        } finally {
+            threadpool.shutdown();
+        }
+    }
+    @Test
+    public void should_handle_empty_input() throws IOException {
+        File input = testFolder.newFile("empty.tsv");
+        Assert.assertEquals("", filter(checker(), input, false, 100, MoreExecutors.newDirectExecutorService()));
+    }
+}
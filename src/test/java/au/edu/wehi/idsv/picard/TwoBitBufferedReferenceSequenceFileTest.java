@@ -7,6 +7,7 @@ import org.junit.rules.TemporaryFolder;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.util.stream.Collectors;
 
 import static org.junit.Assert.*;
@@ -80,4 +81,36 @@ public class TwoBitBufferedReferenceSequenceFileTest extends TestHelper {
 		file.delete();
 		testFolder.delete();
 	}
+	@Test
+	public void should_round_trip_ambiguous_bases_through_cache() throws IOException {
+		TemporaryFolder testFolder = new TemporaryFolder();
+		testFolder.create();
+		File file = new File(testFolder.getRoot(), "ambiguous.gridsscache");
+		InMemoryReferenceSequenceFile ref = new InMemoryReferenceSequenceFile(new String[] { "a", "b", "c" }, new byte[][] { B("NNACGTNNNAcgtRYN"), B("ACGTA"), B("NNNNN") });
+		TwoBitBufferedReferenceSequenceFile a = new TwoBitBufferedReferenceSequenceFile(ref, file);
+		a.getBase(0, 1);
+		assertTrue(TwoBitBufferedReferenceSequenceFile.isCacheFile(file));
+		TwoBitBufferedReferenceSequenceFile b = new TwoBitBufferedReferenceSequenceFile(ref, file);
+		assertEquals("NNACGTNNNACGTNNN", S(b.getSequence("a").getBases()));
+		assertEquals("ACGTA", S(b.getSequence("b").getBases()));
+		assertEquals("NNNNN", S(b.getSequence("c").getBases()));
+		assertEquals("GTNNNA", S(b.getSubsequenceAt("a", 5, 10).getBases()));
+		assertEquals('N', b.getBase(0, 7));
+		assertEquals('A', b.getBase(0, 10));
+		assertEquals('N', b.getBase(0, 16));
+		file.delete();
+		testFolder.delete();
+	}
+	@Test
+	public void should_ignore_cache_in_unknown_format() throws IOException {
+		TemporaryFolder testFolder = new TemporaryFolder();
+		testFolder.create();
+		File file = new File(testFolder.getRoot(), "legacy.gridsscache");
+		Files.write(file.toPath(), B("not a 2bit reference cache"));
+		assertFalse(TwoBitBufferedReferenceSequenceFile.isCacheFile(file));
+		TwoBitBufferedReferenceSequenceFile b = new TwoBitBufferedReferenceSequenceFile(SMALL_FA, file);
+		String contig = SMALL_FA.getSequenceDictionary().getSequence(0).getSequenceName();
+		assertEquals(S(SMALL_FA.getSequence(contig).getBases()).toUpperCase(), S(b.getSequence(contig).getBases()));
+		testFolder.delete();
+	}
 }
@@ -0,0 +1,120 @@
+package au.edu.wehi.idsv.sam;
+
+import au.edu.wehi.idsv.IntermediateFilesTest;
+import com.google.common.collect.Lists;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMFileHeader.SortOrder;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordCoordinateComparator;
+import htsjdk.samtools.SAMRecordQueryNameComparator;
+import htsjdk.samtools.util.CloseableIterator;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class ParallelSAMRecordSorterTest extends IntermediateFilesTest {
+	private List<SAMRecord> randomReads(int n) {
+		Random rng = new Random(0);
+		List<SAMRecord> list = new ArrayList<>();
+		for (int i = 0; i < n; i++) {
+			SAMRecord r = Read(rng.nextInt(3), 1 + rng.nextInt(1000), "10M");
+			r.setReadName("r" + rng.nextInt(n));
+			r.setAttribute("SA", "polyA,100,+,10M,0,0;");
+			list.add(r);
+		}
+		return list;
+	}
+	private List<String> sort(List<SAMRecord> in, Comparator<SAMRecord> comparator, long maxBytesInRam, ParallelSAMRecordSorter[] sorterOut) {
+		List<String> result = new ArrayList<>();
+		SAMFileHeader header = getHeader();
+		ParallelSAMRecordSorter sorter = new ParallelSAMRecordSorter(header, comparator, maxBytesInRam, 2, testFolder.getRoot());
+		try {
+			for (SAMRecord r : in) {
+				sorter.add(r);
+			}
+			sorter.doneAdding();
+			try (CloseableIterator<SAMRecord> it = sorter.iterator()) {
+				while (it.hasNext()) {
+					result.add(it.next().getSAMString());
+				}
+			}
+		} finally {
+			sorter.cleanup();
+		}
+		sorterOut[0] = sorter;
+		return result;
+	}
+	private List<String> expected(List<SAMRecord> in, Comparator<SAMRecord> comparator) {
+		List<SAMRecord> sorted = Lists.newArrayList(in);
+		Collections.sort(sorted, comparator);
+		return sorted.stream().map(r -> r.getSAMString()).collect(Collectors.toList());
+	}
+	@Test
+	public void should_sort_in_memory() {
+		List<SAMRecord> in = randomReads(1000);
+		ParallelSAMRecordSorter[] sorter = new ParallelSAMRecordSorter[1];
+		assertEquals(expected(in, new SAMRecordCoordinateComparator()), sort(in, new SAMRecordCoordinateComparator(), 1L << 30, sorter));
+		assertEquals(0, sorter[0].getMetrics().SPILLED_RUNS);
+		assertEquals(1, sorter[0].getMetrics().RUNS);
+		assertEquals(1000, sorter[0].getMetrics().RECORDS);
+	}
+	@Test
+	public void should_spill_runs_when_over_memory_budget() {
+		List<SAMRecord> in = randomReads(1000);
+		ParallelSAMRecordSorter[] sorter = new ParallelSAMRecordSorter[1];
+		assertEquals(expected(in, new SAMRecordCoordinateComparator()), sort(in, new SAMRecordCoordinateComparator(), 50000, sorter));
+		assertTrue(sorter[0].getMetrics().SPILLED_RUNS > 1);
+		assertTrue(sorter[0].getMetrics().SPILLED_FILE_BYTES > 0);
+		assertEquals(1000, sorter[0].getMetrics().RECORDS);
+		assertTrue(sorter[0].getMetrics().SPILLED_RECORDS <= 1000);
+	}
+	@Test
+	public void should_limit_merge_fan_in() {
+		List<SAMRecord> in = randomReads(1000);
+		ParallelSAMRecordSorter[] sorter = new ParallelSAMRecordSorter[1];
+		assertEquals(expected(in, new SAMRecordCoordinateComparator()), sort(in, new SAMRecordCoordinateComparator(), 50000, sorter));
+		// budget only allows two runs to be merged at once
+		assertTrue(sorter[0].getMetrics().INTERMEDIATE_MERGES > 0);
+		assertTrue(sorter[0].getMetrics().RUNS <= 2);
+	}
+	@Test
+	public void should_be_stable() {
+		List<SAMRecord> in = randomReads(1000);
+		ParallelSAMRecordSorter[] sorter = new ParallelSAMRecordSorter[1];
+		assertEquals(expected(in, new SAMRecordQueryNameComparator()), sort(in, new SAMRecordQueryNameComparator(), 50000, sorter));
+	}
+	@Test
+	public void should_delete_spilled_runs() {
+		File dir = testFolder.getRoot();
+		int before = dir.listFiles().length;
+		sort(randomReads(1000), new SAMRecordCoordinateComparator(), 50000, new ParallelSAMRecordSorter[1]);
+		assertEquals(before, dir.listFiles().length);
+	}
+	@Test
+	public void estimateSize_should_include_attributes() {
+		SAMRecord r = Read(0, 1, "10M");
+		long size = ParallelSAMRecordSorter.estimateSize(r);
+		r.setAttribute("SA", "polyA,100,+,10M,0,0;polyA,200,+,10M,0,0;");
+		assertTrue(ParallelSAMRecordSorter.estimateSize(r) > size);
+	}
+	@Test
+	public void SAMFileUtil_sort_should_sort_by_queryname() throws IOException {
+		List<SAMRecord> in = randomReads(100);
+		createBAM(input, SortOrder.coordinate, in);
+		SAMFileUtil.sort(getFSContext(), input, output, SortOrder.queryname);
+		List<SAMRecord> out = getRecords(output);
+		assertEquals(100, out.size());
+		for (int i = 1; i < out.size(); i++) {
+			assertTrue(new SAMRecordQueryNameComparator().compare(out.get(i - 1), out.get(i)) <= 0);
+		}
+	}
+}
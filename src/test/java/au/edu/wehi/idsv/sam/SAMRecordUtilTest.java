@@ -1415,4 +1415,26 @@ public class SAMRecordUtilTest extends TestHelper {
 		assertEquals(1, removed.size());
 		assertEquals("40S80M", removed.get(0).getCigarString());
 	}
-}
\ No newline at end of file
+	@Test
+	public void getCachedChimericAlignments_should_reparse_updated_SA_tag() {
+		SAMRecord r = Read(0, 1, "10M10S");
+		assertEquals(0, SAMRecordUtil.getCachedChimericAlignments(r).size());
+		r.setAttribute(SAMTag.SA.name(), "polyA,100,+,10S10M,60,0");
+		List<ChimericAlignment> first = SAMRecordUtil.getCachedChimericAlignments(r);
+		assertEquals(1, first.size());
+		Assert.assertSame(first, SAMRecordUtil.getCachedChimericAlignments(r));
+		r.setAttribute(SAMTag.SA.name(), "polyA,200,+,10S10M,60,0;polyACGT,300,-,10S10M,60,0");
+		List<ChimericAlignment> updated = SAMRecordUtil.getCachedChimericAlignments(r);
+		assertEquals(2, updated.size());
+		assertEquals(200, updated.get(0).pos);
+	}
+	@Test
+	public void getCachedMateCigar_should_reparse_updated_MC_tag() {
+		SAMRecord r = Read(0, 1, "10M");
+		assertNull(SAMRecordUtil.getCachedMateCigar(r));
+		r.setAttribute(SAMTag.MC.name(), "5M");
+		assertEquals("5M", SAMRecordUtil.getCachedMateCigar(r).toString());
+		r.setAttribute(SAMTag.MC.name(), "6M");
+		assertEquals("6M", SAMRecordUtil.getCachedMateCigar(r).toString());
+	}
+}
@@ -133,4 +133,26 @@ public class DuplicatingIterableTest {
 		}
 		assertEquals(n, exceptionsFound);
 	}
-}
\ No newline at end of file
+	@Test(timeout=10000)
+	public void close_should_unblock_consumers() {
+		List<Integer> list = ImmutableList.of(0, 1, 2, 3, 4, 5, 6, 7);
+		DuplicatingIterable<Integer> dib = new DuplicatingIterable<Integer>(2, list.iterator(), 1);
+		Iterator<Integer> it1 = dib.iterator();
+		dib.iterator();
+		it1.next();
+		dib.close();
+		// it1 would otherwise wait forever for the second iterator to catch up
+		while (it1.hasNext()) {
+			it1.next();
+		}
+	}
+	@Test
+	public void should_feed_using_executor() {
+		List<Integer> list = ImmutableList.of(0, 1, 2, 3, 4, 5, 6, 7);
+		List<Runnable> feeders = new ArrayList<>();
+		DuplicatingIterable<Integer> dib = new DuplicatingIterable<Integer>(1, list.iterator(), 16, feeders::add);
+		assertEquals(1, feeders.size());
+		feeders.get(0).run();
+		assertEquals(list, Lists.newArrayList(dib.iterator()));
+	}
+}
@@ -0,0 +1,62 @@
+package au.edu.wehi.idsv.util;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.junit.Assert.*;
+
+
+public class StableMergingIteratorTest {
+	private static final Comparator<Pair<Integer, String>> ByKey = Comparator.comparing(Pair::getLeft);
+	@Test
+	public void should_merge_sorted_iterators() {
+		List<Integer> result = Lists.newArrayList(new StableMergingIterator<Integer>(ImmutableList.of(
+				ImmutableList.of(1, 4, 7).iterator(),
+				ImmutableList.of(2, 5, 8).iterator(),
+				ImmutableList.of(3, 6, 9).iterator()), Comparator.naturalOrder()));
+		assertEquals(ImmutableList.of(1, 2, 3, 4, 5, 6, 7, 8, 9), result);
+	}
+	@Test
+	public void should_break_ties_by_iterator_order() {
+		List<Pair<Integer, String>> result = Lists.newArrayList(new StableMergingIterator<>(ImmutableList.of(
+				ImmutableList.of(Pair.of(1, "a1"), Pair.of(2, "a2"), Pair.of(2, "a3")).iterator(),
+				ImmutableList.of(Pair.of(1, "b1"), Pair.of(2, "b2")).iterator(),
+				ImmutableList.of(Pair.of(0, "c1"), Pair.of(1, "c2")).iterator()), ByKey));
+		assertEquals(ImmutableList.of("c1", "a1", "b1", "c2", "a2", "a3", "b2"), Lists.transform(result, Pair::getRight));
+	}
+	@Test
+	public void should_handle_empty_input() {
+		StableMergingIterator<Integer> it = new StableMergingIterator<Integer>(new ArrayList<Iterator<Integer>>(), Comparator.naturalOrder());
+		assertFalse(it.hasNext());
+		List<Integer> result = Lists.newArrayList(new StableMergingIterator<Integer>(ImmutableList.of(
+				ImmutableList.<Integer>of().iterator(),
+				ImmutableList.of(1).iterator(),
+				ImmutableList.<Integer>of().iterator()), Comparator.naturalOrder()));
+		assertEquals(ImmutableList.of(1), result);
+	}
+	@Test(expected = NoSuchElementException.class)
+	public void next_should_throw_when_exhausted() {
+		StableMergingIterator<Integer> it = new StableMergingIterator<Integer>(ImmutableList.of(ImmutableList.of(1).iterator()), Comparator.naturalOrder());
+		it.next();
+		it.next();
+	}
+	@Test
+	public void close_should_close_underlying() {
+		AutoClosingMergedIteratorTest.CountingIterator a = new AutoClosingMergedIteratorTest.CountingIterator(2);
+		AutoClosingMergedIteratorTest.CountingIterator b = new AutoClosingMergedIteratorTest.CountingIterator(2);
+		StableMergingIterator<Integer> it = new StableMergingIterator<Integer>(ImmutableList.of(a, b), Comparator.naturalOrder());
+		it.next();
+		it.close();
+		assertTrue(a.isClosed);
+		assertTrue(b.isClosed);
+		assertFalse(it.hasNext());
+	}
+}
@@ -0,0 +1,87 @@
+package au.edu.wehi.idsv.util;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TaskGroupSchedulerTest {
+	@Test(expected=IllegalArgumentException.class)
+	public void should_not_schedule_group_larger_than_limit() throws InterruptedException {
+		TaskGroupScheduler scheduler = new TaskGroupScheduler("test", 2);
+		scheduler.submit(ImmutableList.of(() -> {}, () -> {}, () -> {}));
+	}
+	@Test
+	public void should_run_group_tasks_concurrently() throws InterruptedException, ExecutionException {
+		TaskGroupScheduler scheduler = new TaskGroupScheduler("test", 3);
+		CountDownLatch latch = new CountDownLatch(3);
+		Runnable r = () -> {
+			latch.countDown();
+			try {
+				latch.await();
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+		};
+		for (Future<?> f : scheduler.submit(ImmutableList.of(r, r, r))) {
+			f.get();
+		}
+	}
+	@Test
+	public void should_limit_concurrently_running_tasks() throws InterruptedException, ExecutionException {
+		TaskGroupScheduler scheduler = new TaskGroupScheduler("test", 4);
+		AtomicInteger running = new AtomicInteger(0);
+		AtomicInteger maxRunning = new AtomicInteger(0);
+		Runnable r = () -> {
+			maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+			try {
+				Thread.sleep(5);
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+			running.decrementAndGet();
+		};
+		List<Future<?>> futures = new ArrayList<>();
+		for (int i = 0; i < 16; i++) {
+			futures.addAll(scheduler.submit(ImmutableList.of(r, r, r)));
+		}
+		for (Future<?> f : futures) {
+			f.get();
+		}
+		assertTrue(maxRunning.get() <= 4);
+		assertEquals(0, running.get());
+	}
+	@Test
+	public void runAll_should_run_every_task() {
+		TaskGroupScheduler scheduler = new TaskGroupScheduler("test", 3);
+		AtomicInteger count = new AtomicInteger(0);
+		List<Runnable> tasks = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			tasks.add(count::incrementAndGet);
+		}
+		scheduler.runAll(tasks);
+		assertEquals(100, count.get());
+	}
+	@Test
+	public void runAll_should_not_wait_for_capacity() throws InterruptedException, ExecutionException {
+		TaskGroupScheduler scheduler = new TaskGroupScheduler("test", 1);
+		AtomicInteger count = new AtomicInteger(0);
+		// all capacity is used by the calling task
+		Future<?> f = scheduler.submit(ImmutableList.of(() -> scheduler.runAll(ImmutableList.of(count::incrementAndGet, count::incrementAndGet)))).get(0);
+		f.get();
+		assertEquals(2, count.get());
+	}
+	@Test(expected=RuntimeException.class)
+	public void runAll_should_rethrow_task_exception() {
+		TaskGroupScheduler scheduler = new TaskGroupScheduler("test", 2);
+		scheduler.runAll(ImmutableList.of(() -> {}, () -> { throw new IllegalStateException(); }, () -> {}));
+	}
+}
@@ -1,6 +1,78 @@
 package au.edu.wehi.idsv.vcf;
 
-public class VcfFileUtilTest {
+import au.edu.wehi.idsv.IdsvVariantContext;
+import au.edu.wehi.idsv.IntermediateFilesTest;
+import au.edu.wehi.idsv.ProcessingContext;
+import au.edu.wehi.idsv.util.FileHelper;
+import com.google.common.collect.ImmutableList;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.writer.VariantContextWriter;
+import htsjdk.variant.vcf.VCFFileReader;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class VcfFileUtilTest extends IntermediateFilesTest {
+	private VariantContext variant(String id, String chr, int pos) {
+		return minimalBreakend().id(id).chr(chr).start(pos).stop(pos).make();
+	}
+	private void writeVcf(ProcessingContext pc, File file, VariantContext... data) {
+		try (VariantContextWriter writer = pc.getVariantContextWriter(file, false)) {
+			for (VariantContext vc : data) {
+				writer.add(vc);
+			}
+		}
+	}
+	@Test
+	public void mergeSorted_should_merge_in_order() throws IOException {
+		ProcessingContext pc = getCommandlineContext();
+		File f1 = new File(testFolder.getRoot(), "1.vcf");
+		File f2 = new File(testFolder.getRoot(), "2.vcf");
+		writeVcf(pc, f1, variant("a", "polyA", 1), variant("c", "polyA", 5), variant("e", "polyACGT", 1));
+		writeVcf(pc, f2, variant("b", "polyA", 2), variant("d", "polyA", 10), variant("f", "random", 1));
+		assertTrue(VcfFileUtil.mergeSorted(pc, ImmutableList.of(f1, f2), output, pc.getVcfHeader(), IdsvVariantContext.VariantContextByLocationStart(pc.getDictionary()), true));
+		List<String> ids = getVcf(output, null).stream().map(vc -> vc.getID()).collect(Collectors.toList());
+		assertEquals(ImmutableList.of("a", "b", "c", "d", "e", "f"), ids);
+	}
+	@Test
+	public void mergeSorted_should_fail_for_unsorted_input() throws IOException {
+		ProcessingContext pc = getCommandlineContext();
+		File f1 = new File(testFolder.getRoot(), "1.vcf");
+		File f2 = new File(testFolder.getRoot(), "2.vcf");
+		writeVcf(pc, f1, variant("a", "polyA", 1), variant("c", "polyA", 5));
+		writeVcf(pc, f2, variant("d", "polyA", 10), variant("b", "polyA", 2));
+		output.delete();
+		assertFalse(VcfFileUtil.mergeSorted(pc, ImmutableList.of(f1, f2), output, pc.getVcfHeader(), IdsvVariantContext.VariantContextByLocationStart(pc.getDictionary()), true));
+		assertFalse(output.exists());
+		assertTrue(FileHelper.getIndexFilesFor(output).isEmpty());
+	}
+	@Test
+	public void mergeSorted_should_not_leave_tabix_index_for_unsorted_input() throws IOException {
+		ProcessingContext pc = getCommandlineContext();
+		File f1 = new File(testFolder.getRoot(), "1.vcf");
+		File f2 = new File(testFolder.getRoot(), "2.vcf");
+		File gzOutput = new File(testFolder.getRoot(), "merged.vcf.gz");
+		writeVcf(pc, f1, variant("a", "polyA", 1), variant("c", "polyA", 5));
+		writeVcf(pc, f2, variant("d", "polyA", 10), variant("b", "polyA", 2));
+		assertFalse(VcfFileUtil.mergeSorted(pc, ImmutableList.of(f1, f2), gzOutput, pc.getVcfHeader(), IdsvVariantContext.VariantContextByLocationStart(pc.getDictionary()), true));
+		assertFalse(gzOutput.exists());
+		assertFalse(new File(gzOutput.getPath() + ".tbi").exists());
+	}
+	@Test
+	public void mergeSorted_should_write_header_for_empty_input() throws IOException {
+		ProcessingContext pc = getCommandlineContext();
+		assertTrue(VcfFileUtil.mergeSorted(pc, ImmutableList.of(), output, pc.getVcfHeader(), IdsvVariantContext.VariantContextByLocationStart(pc.getDictionary()), true));
+		assertTrue(output.exists());
+		try (VCFFileReader reader = new VCFFileReader(output, false)) {
+			assertEquals(pc.getVcfHeader().getGenotypeSamples(), reader.getFileHeader().getGenotypeSamples());
+			assertFalse(reader.iterator().hasNext());
+		}
+	}
 	/*
 	public class TestCommandLineProgram extends CommandLineProgram {
 		public TestCommandLineProgram() {
@@ -11,6 +11,7 @@ import org.junit.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -249,4 +250,52 @@ public class AllocateEvidenceTest extends IntermediateFilesTest {
 		List<VariantContextDirectedEvidence> results = Lists.newArrayList(cmd.iterator(new AutoClosingIterator<>(vcfs.iterator()), MoreExecutors.newDirectExecutorService()));
 		assertEquals(0, results.size());
 	}
+	private List<String> allocate(ProcessingContext pc, SAMEvidenceSource ses, AssemblyEvidenceSource aes, File outputVcf) throws IOException, InterruptedException, ExecutionException {
+		AllocateEvidence cmd = new AllocateEvidence();
+		cmd.INPUT_VCF = output;
+		cmd.setContext(pc);
+		cmd.setAssemblySource(aes);
+		cmd.setSamEvidenceSources(ImmutableList.of(ses));
+		cmd.OUTPUT_VCF = outputVcf;
+		cmd.ASSEMBLY = aes.getFile();
+		ExecutorService threadpool = Executors.newFixedThreadPool(4);
+		try {
+			cmd.doWork(threadpool);
+		} finally {
+			threadpool.shutdown();
+		}
+		return Files.readAllLines(outputVcf.toPath()).stream()
+				.filter(line -> !line.startsWith("#"))
+				.collect(Collectors.toList());
+	}
+	@Test
+	public void chunked_allocation_should_match_single_pass_allocation() throws IOException, InterruptedException, ExecutionException {
+		final ProcessingContext pc = getCommandlineContext();
+		pc.getVariantCallingParameters().minSize = 0;
+		pc.getVariantCallingParameters().minScore = 0;
+		pc.getVariantCallingParameters().minReads = 0;
+		List<SAMRecord> in = new ArrayList<>();
+		for (int i = 0; i < 8; i++) {
+			in.addAll(ImmutableList.copyOf(withReadName("dp" + i, DP(0, 100 + 37 * i, "5M", true, 1, 500 - 31 * i, "5M", false))));
+			in.addAll(ImmutableList.copyOf(withReadName("sr" + i, DP(0, 96 + 37 * i, "5M5S", true, 1, 500 - 31 * i, "5M", false))));
+			in.addAll(ImmutableList.copyOf(withReadName("intra" + i, DP(0, 50 + 43 * i, "5M", true, 0, 450 - 29 * i, "5M", true))));
+		}
+		createInput(in);
+		SAMEvidenceSource ses = new SAMEvidenceSource(getContext(), input, null, 0);
+		ses.ensureMetrics();
+		FileHelper.copy(ses.getFile(), ses.getSVFile(), true);
+		File assemblyFile = new File(testFolder.getRoot(), "assembly.bam");
+		AssemblyEvidenceSource aes = new AssemblyEvidenceSource(pc, ImmutableList.of(ses), assemblyFile);
+		aes.assembleBreakends(null);
+		aes.ensureExtracted();
+		VariantCaller caller = new VariantCaller(pc, ImmutableList.of(ses), aes);
+		caller.callBreakends(output, MoreExecutors.newDirectExecutorService());
+
+		pc.getConfig().chunkSize = Integer.MAX_VALUE;
+		List<String> singlePass = allocate(pc, ses, aes, new File(testFolder.getRoot(), "single.vcf"));
+		pc.getConfig().chunkSize = 100;
+		List<String> chunked = allocate(pc, ses, aes, new File(testFolder.getRoot(), "chunked.vcf"));
+		assertTrue(singlePass.size() > 0);
+		assertEquals(singlePass, chunked);
+	}
 }
@@ -1,6 +1,7 @@
 package gridss;
 
 import au.edu.wehi.idsv.IntermediateFilesTest;
+import au.edu.wehi.idsv.ReadNameIndex;
 import com.google.common.collect.ImmutableList;
 import htsjdk.samtools.SAMRecord;
 import htsjdk.samtools.fastq.FastqRecord;
@@ -15,18 +16,25 @@ import java.util.List;
 
 public class ExtractFragmentsToFastqTest extends IntermediateFilesTest {
     private List<List<FastqRecord>> go(Collection<String> readNames, SAMRecord... records) throws IOException {
+        return go(false, readNames, records);
+    }
+    private List<List<FastqRecord>> go(boolean indexed, Collection<String> readNames, SAMRecord... records) throws IOException {
         File rnFile = new File(testFolder.getRoot(), "readnames.txt");
         File fq = new File(testFolder.getRoot(), "fq.fq");
         File fq1 = new File(testFolder.getRoot(), "fq1.fq");
         File fq2 = new File(testFolder.getRoot(), "fq2.fq");
         Files.write(rnFile.toPath(), readNames);
         createInput(records);
+        if (indexed) {
+            ReadNameIndex.create(input, ReadNameIndex.getIndexFile(input));
+        }
         ExtractFragmentsToFastq cmd = new ExtractFragmentsToFastq();
         cmd.INPUT = input;
         cmd.OUTPUT_FQ = fq;
         cmd.OUTPUT_FQ1 = fq1;
         cmd.OUTPUT_FQ2 = fq2;
         cmd.READ_NAMES = rnFile;
+        cmd.WORKER_THREADS = 2;
         cmd.doWork();
         List<List<FastqRecord>> result = ImmutableList.of(
                 getFastqRecords(fq),
@@ -53,4 +61,18 @@ public class ExtractFragmentsToFastqTest extends IntermediateFilesTest {
         Assert.assertEquals("r2", result.get(1).get(0).getReadName());
         Assert.assertEquals("r1", result.get(1).get(1).getReadName());
     }
-}
\ No newline at end of file
+    @Test
+    public void shouldUseReadNameIndex() throws IOException {
+        SAMRecord[] r1 = withName("r1", DP(0, 1, "10M", true, 1, 10, "10M", true));
+        SAMRecord[] r2 = withName("r2", DP(0, 01, "10M", true, 0, 20, "10M", true));
+        SAMRecord[] r3 = withName("r3", DP(0, 30, "10M", true, 1, 40, "10M", true));
+        SAMRecord r4 = withName("r4", withSequence("AACC", Read(0, 50, "4M")))[0];
+        SAMRecord r5 = withName("r5", withSequence("AACC", Read(0, 60, "4M")))[0];
+        List<List<FastqRecord>> result = go(true, ImmutableList.of("r1", "r2", "r4", "missing"), r1[0], r2[0], r2[1], r1[1], r3[0], r3[1], r4, r5);
+        Assert.assertEquals(1, result.get(0).size());
+        Assert.assertEquals("r4", result.get(0).get(0).getReadName());
+        Assert.assertEquals(2, result.get(1).size());
+        Assert.assertEquals("r2", result.get(1).get(0).getReadName());
+        Assert.assertEquals("r1", result.get(1).get(1).getReadName());
+    }
+}
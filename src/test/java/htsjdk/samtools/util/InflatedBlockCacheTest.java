@@ -0,0 +1,100 @@
+package htsjdk.samtools.util;
+
+import au.edu.wehi.idsv.IntermediateFilesTest;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class InflatedBlockCacheTest extends IntermediateFilesTest {
+    private void createTestInput() {
+        List<SAMRecord> records = new ArrayList<>();
+        for (int i = 1; i < 9000; i += 2) {
+            SAMRecord r = Read(0, i, "100M");
+            r.setReadName("r" + i);
+            records.add(r);
+        }
+        createInput(records);
+    }
+
+    private List<String> query(int start, int end) throws IOException {
+        List<String> result = new ArrayList<>();
+        try (SamReader reader = SamReaderFactory.makeDefault().open(input)) {
+            try (CloseableIterator<SAMRecord> it = reader.queryOverlapping("polyA", start, end)) {
+                while (it.hasNext()) {
+                    result.add(it.next().getSAMString());
+                }
+            }
+        }
+        return result;
+    }
+
+    private List<String> scan(int start, int end) throws IOException {
+        List<String> result = new ArrayList<>();
+        try (SamReader reader = SamReaderFactory.makeDefault().open(input)) {
+            for (SAMRecord r : reader) {
+                if (r.getAlignmentEnd() >= start && r.getAlignmentStart() <= end) {
+                    result.add(r.getSAMString());
+                }
+            }
+        }
+        return result;
+    }
+
+    @Test
+    public void should_not_cache_when_size_is_zero() {
+        InflatedBlockCache cache = new InflatedBlockCache(0);
+        assertFalse(cache.isEnabled());
+        cache.put("file", 0, 10, new byte[] { 1 });
+        assertNull(cache.get("file", 0));
+    }
+
+    @Test
+    public void should_key_by_file_and_block_address() {
+        InflatedBlockCache cache = new InflatedBlockCache(1024 * 1024);
+        byte[] block = new byte[] { 1, 2, 3 };
+        cache.put("file", 100, 10, block);
+        assertTrue(block == cache.get("file", 100).getUncompressedBlock());
+        assertEquals(10, cache.get("file", 100).getCompressedSize());
+        assertNull(cache.get("file", 0));
+        assertNull(cache.get("file2", 100));
+        assertEquals(2, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void should_bound_cache_size() {
+        InflatedBlockCache cache = new InflatedBlockCache(1024 * 1024);
+        for (int i = 0; i < 100; i++) {
+            cache.put("file", i, 10, new byte[65536]);
+        }
+        assertTrue(cache.size() <= 16);
+        assertTrue(cache.getEvictionCount() > 0);
+    }
+
+    @Test
+    public void overlapping_queries_should_share_blocks() throws IOException {
+        createTestInput();
+        InflatedBlockCache cache = InflatedBlockCache.getDefault();
+        List<String> first = query(1000, 3000);
+        long hits = cache.getHitCount();
+        List<String> second = query(2000, 4000);
+        assertTrue(cache.getHitCount() > hits);
+        assertEquals(scan(1000, 3000), first);
+        assertEquals(scan(2000, 4000), second);
+    }
+
+    @Test
+    public void identifier_should_require_local_file() throws IOException {
+        createTestInput();
+        assertNull(InflatedBlockCache.getFileIdentifier(null));
+        assertNull(InflatedBlockCache.getFileIdentifier(testFolder.getRoot().getAbsolutePath()));
+        assertNotNull(InflatedBlockCache.getFileIdentifier(input.getAbsolutePath()));
+    }
+}
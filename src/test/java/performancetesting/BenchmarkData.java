@@ -0,0 +1,205 @@
+package performancetesting;
+
+import au.edu.wehi.idsv.BreakendDirection;
+import au.edu.wehi.idsv.DirectedEvidence;
+import au.edu.wehi.idsv.DirectedEvidenceOrder;
+import au.edu.wehi.idsv.NonReferenceReadPair;
+import au.edu.wehi.idsv.SAMEvidenceSource;
+import au.edu.wehi.idsv.SoftClipEvidence;
+import au.edu.wehi.idsv.TestHelper;
+import au.edu.wehi.idsv.sim.RandomBaseGenerator;
+import au.edu.wehi.idsv.sim.SequentialVariantPlacer;
+import au.edu.wehi.idsv.sim.SequentialVariantPlacer.ContigExhaustedException;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordCoordinateComparator;
+import htsjdk.samtools.SAMTag;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Reproducible synthetic benchmark inputs.
+ *
+ * Deletions are placed on the test reference using the simulation
+ * variant placer and reads supporting each deletion are generated
+ * directly from the reference sequence so no aligner is required.
+ */
+public class BenchmarkData {
+	/**
+	 * Reference contig on which synthetic variants are placed
+	 */
+	public static final int REFERENCE_INDEX = 2;
+	public static final int READ_LENGTH = 100;
+	public static final int FRAGMENT_SIZE = 300;
+	private final int seed;
+	private final byte[] reference;
+	private final List<Integer> deletionStart = new ArrayList<>();
+	private final int deletionSize;
+
+	/**
+	 * @param seed random seed
+	 * @param deletionSize size of each simulated deletion
+	 * @param distanceBetweenVariants minimum distance between simulated deletions
+	 */
+	public BenchmarkData(int seed, int deletionSize, int distanceBetweenVariants) {
+		this.seed = seed;
+		this.deletionSize = deletionSize;
+		this.reference = TestHelper.SMALL_FA.getSequence(TestHelper.SMALL_FA.getSequenceDictionary().getSequence(REFERENCE_INDEX).getSequenceName()).getBases();
+		SequentialVariantPlacer placer = new SequentialVariantPlacer(reference, distanceBetweenVariants);
+		try {
+			while (true) {
+				deletionStart.add(placer.getNext(deletionSize));
+			}
+		} catch (ContigExhaustedException e) {
+			// placed as many variants as will fit on the contig
+		}
+	}
+
+	public static byte[] randomBases(int seed, int length) {
+		return new RandomBaseGenerator(seed).getBases(length);
+	}
+
+	/**
+	 * @return 1-based genomic positions of the first deleted base of each simulated deletion
+	 */
+	public List<Integer> getDeletionStarts() {
+		return deletionStart;
+	}
+
+	private byte[] referenceBases(int start, int length) {
+		return Arrays.copyOfRange(reference, start - 1, start - 1 + length);
+	}
+
+	private static byte[] concat(byte[] a, byte[] b) {
+		byte[] result = Arrays.copyOf(a, a.length + b.length);
+		System.arraycopy(b, 0, result, a.length, b.length);
+		return result;
+	}
+
+	private SAMRecord read(String name, int pos, String cigar, byte[] bases) {
+		SAMRecord r = TestHelper.withReadName(name, TestHelper.withSequence(bases, TestHelper.Read(REFERENCE_INDEX, pos, cigar)))[0];
+		r.setBaseQualities(quality(bases.length));
+		r.setMappingQuality(60);
+		return r;
+	}
+
+	private static byte[] quality(int length) {
+		byte[] qual = new byte[length];
+		Arrays.fill(qual, (byte)30);
+		return qual;
+	}
+
+	/**
+	 * Generates soft clipped reads and discordant read pairs supporting each simulated deletion
+	 * @param readsPerBreakend number of soft clipped reads and read pairs to generate on each side of each deletion
+	 * @return coordinate sorted reads
+	 */
+	public List<SAMRecord> getReads(int readsPerBreakend) {
+		Random rng = new Random(seed);
+		List<SAMRecord> reads = new ArrayList<>();
+		int readId = 0;
+		for (int start : deletionStart) {
+			int end = start + deletionSize;
+			for (int i = 0; i < readsPerBreakend; i++) {
+				// forward soft clip: anchored before the deletion
+				int anchor = 20 + rng.nextInt(READ_LENGTH - 40);
+				int readStart = start - anchor;
+				reads.add(read("sc" + readId++, readStart, String.format("%dM%dS", anchor, READ_LENGTH - anchor),
+						concat(referenceBases(readStart, anchor), referenceBases(end, READ_LENGTH - anchor))));
+				// backward soft clip: anchored after the deletion
+				anchor = 20 + rng.nextInt(READ_LENGTH - 40);
+				readStart = start - (READ_LENGTH - anchor);
+				reads.add(read("sc" + readId++, end, String.format("%dS%dM", READ_LENGTH - anchor, anchor),
+						concat(referenceBases(readStart, READ_LENGTH - anchor), referenceBases(end, anchor))));
+				// discordant read pair spanning the deletion
+				int gap = rng.nextInt(FRAGMENT_SIZE - 2 * READ_LENGTH);
+				int pos1 = Math.max(1, start - READ_LENGTH - gap);
+				int pos2 = end + rng.nextInt(FRAGMENT_SIZE - 2 * READ_LENGTH);
+				if (pos2 + READ_LENGTH <= reference.length) {
+					SAMRecord[] dp = TestHelper.withReadName("dp" + readId++, TestHelper.DP(REFERENCE_INDEX, pos1, READ_LENGTH + "M", true, REFERENCE_INDEX, pos2, READ_LENGTH + "M", false));
+					dp[0].setReadBases(referenceBases(pos1, READ_LENGTH));
+					dp[1].setReadBases(referenceBases(pos2, READ_LENGTH));
+					dp[0].setBaseQualities(quality(READ_LENGTH));
+					dp[1].setBaseQualities(quality(READ_LENGTH));
+					dp[0].setMappingQuality(60);
+					dp[1].setMappingQuality(60);
+					reads.add(dp[0]);
+					reads.add(dp[1]);
+				}
+			}
+		}
+		reads.sort(new SAMRecordCoordinateComparator());
+		return reads;
+	}
+
+	/**
+	 * Generates split reads supporting each simulated deletion.
+	 * Each split read consists of a primary alignment anchored before the deletion
+	 * and a supplementary alignment anchored after the deletion.
+	 * @param readsPerBreakend number of split reads to generate for each deletion
+	 * @return coordinate sorted reads
+	 */
+	public List<SAMRecord> getSplitReads(int readsPerBreakend) {
+		Random rng = new Random(seed);
+		String contig = TestHelper.SMALL_FA.getSequenceDictionary().getSequence(REFERENCE_INDEX).getSequenceName();
+		List<SAMRecord> reads = new ArrayList<>();
+		int readId = 0;
+		for (int start : deletionStart) {
+			int end = start + deletionSize;
+			for (int i = 0; i < readsPerBreakend; i++) {
+				int anchor = 20 + rng.nextInt(READ_LENGTH - 40);
+				int readStart = start - anchor;
+				byte[] bases = concat(referenceBases(readStart, anchor), referenceBases(end, READ_LENGTH - anchor));
+				String name = "sr" + readId++;
+				SAMRecord primary = read(name, readStart, String.format("%dM%dS", anchor, READ_LENGTH - anchor), bases);
+				SAMRecord supplementary = read(name, end, String.format("%dS%dM", anchor, READ_LENGTH - anchor), bases);
+				supplementary.setSupplementaryAlignmentFlag(true);
+				primary.setAttribute(SAMTag.SA.name(), String.format("%s,%d,+,%s,60,0;", contig, supplementary.getAlignmentStart(), supplementary.getCigarString()));
+				supplementary.setAttribute(SAMTag.SA.name(), String.format("%s,%d,+,%s,60,0;", contig, primary.getAlignmentStart(), primary.getCigarString()));
+				reads.add(primary);
+				reads.add(supplementary);
+			}
+		}
+		reads.sort(new SAMRecordCoordinateComparator());
+		return reads;
+	}
+
+	/**
+	 * Converts the synthetic reads to evidence
+	 * @return evidence sorted by breakend position
+	 */
+	public List<DirectedEvidence> getEvidence(SAMEvidenceSource ses, int readsPerBreakend) {
+		List<DirectedEvidence> evidence = new ArrayList<>();
+		List<SAMRecord> reads = getReads(readsPerBreakend);
+		for (SAMRecord r : reads) {
+			if (r.getReadName().startsWith("sc")) {
+				BreakendDirection dir = r.getCigar().getFirstCigarElement().getOperator().isClipping() ? BreakendDirection.Backward : BreakendDirection.Forward;
+				evidence.add(SoftClipEvidence.create(ses, dir, r));
+			}
+		}
+		Map<String, SAMRecord> firstOfPair = new HashMap<>();
+		for (SAMRecord r : reads) {
+			if (r.getReadName().startsWith("dp")) {
+				SAMRecord mate = firstOfPair.remove(r.getReadName());
+				if (mate == null) {
+					firstOfPair.put(r.getReadName(), r);
+				} else {
+					addIfNotNull(evidence, NonReferenceReadPair.create(r, mate, ses));
+					addIfNotNull(evidence, NonReferenceReadPair.create(mate, r, ses));
+				}
+			}
+		}
+		evidence.sort(DirectedEvidenceOrder.ByNatural);
+		return evidence;
+	}
+
+	private static void addIfNotNull(List<DirectedEvidence> list, DirectedEvidence e) {
+		if (e != null) {
+			list.add(e);
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package performancetesting;
+
+import au.edu.wehi.idsv.debruijn.KmerEncodingHelper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Kmer encoding and traversal throughput
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KmerEncodingHelperBenchmark {
+	@Param({ "25", "31" })
+	public int k;
+	@Param({ "1048576" })
+	public int sequenceLength;
+	private byte[] bases;
+	private long[] kmers;
+
+	@Setup
+	public void setup() {
+		bases = BenchmarkData.randomBases(0, sequenceLength);
+		kmers = new long[sequenceLength - k + 1];
+		for (int i = 0; i < kmers.length; i++) {
+			kmers[i] = KmerEncodingHelper.picardBaseToEncoded(k, Arrays.copyOfRange(bases, i, i + k));
+		}
+	}
+
+	@Benchmark
+	public long rollingEncode() {
+		long kmer = KmerEncodingHelper.picardBaseToEncoded(k, Arrays.copyOfRange(bases, 0, k));
+		long checksum = kmer;
+		for (int i = k; i < bases.length; i++) {
+			kmer = KmerEncodingHelper.nextState(k, kmer, bases[i]);
+			checksum += kmer;
+		}
+		return checksum;
+	}
+
+	@Benchmark
+	public long reverseComplement() {
+		long checksum = 0;
+		for (int i = 0; i < kmers.length; i++) {
+			checksum += KmerEncodingHelper.reverseComplement(k, kmers[i]);
+		}
+		return checksum;
+	}
+
+	@Benchmark
+	public void adjacentStates(Blackhole bh) {
+		for (int i = 0; i < kmers.length; i++) {
+			bh.consume(KmerEncodingHelper.nextStates(k, kmers[i]));
+			bh.consume(KmerEncodingHelper.prevStates(k, kmers[i]));
+		}
+	}
+
+	@Benchmark
+	public long basesDifference() {
+		long checksum = 0;
+		for (int i = 1; i < kmers.length; i++) {
+			checksum += KmerEncodingHelper.basesDifference(k, kmers[i - 1], kmers[i]);
+		}
+		return checksum;
+	}
+}
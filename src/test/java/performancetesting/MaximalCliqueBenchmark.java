@@ -0,0 +1,55 @@
+package performancetesting;
+
+import au.edu.wehi.idsv.graph.RectangleGraphMaximalCliqueCalculator;
+import au.edu.wehi.idsv.graph.RectangleGraphNode;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Maximal clique calling on a dense set of breakpoint evidence rectangles
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MaximalCliqueBenchmark {
+	@Param({ "65536" })
+	public int rectangles;
+	/**
+	 * Mean rectangles starting at each x position
+	 */
+	@Param({ "1", "8" })
+	public int density;
+	@Param({ "300" })
+	public int width;
+	private RectangleGraphNode[] nodes;
+
+	@Setup
+	public void setup() {
+		Random rng = new Random(0);
+		nodes = new RectangleGraphNode[rectangles];
+		int span = rectangles / density;
+		for (int i = 0; i < rectangles; i++) {
+			long startX = rng.nextInt(span);
+			// breakpoints are clustered around a small number of partner locations
+			long startY = startX + 1000 + rng.nextInt(8) * 10000 + rng.nextInt(width);
+			nodes[i] = new RectangleGraphNode(startX, startX + 1 + rng.nextInt(width), startY, startY + 1 + rng.nextInt(width), 1 + rng.nextInt(10));
+		}
+		Arrays.sort(nodes, RectangleGraphNode.ByStartXYEndXY);
+	}
+
+	@Benchmark
+	public void calculateCliques(Blackhole bh) {
+		RectangleGraphMaximalCliqueCalculator calc = new RectangleGraphMaximalCliqueCalculator();
+		for (RectangleGraphNode node : nodes) {
+			bh.consume(calc.next(node));
+		}
+		bh.consume(calc.complete());
+	}
+}
@@ -0,0 +1,80 @@
+package performancetesting;
+
+import au.edu.wehi.idsv.debruijn.PackedSequence;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 2bit packed sequence construction and kmer extraction
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PackedSequenceBenchmark {
+	@Param({ "150" })
+	public int readLength;
+	@Param({ "25" })
+	public int k;
+	public int readCount = 4096;
+	private byte[][] reads;
+	private PackedSequence[] packed;
+
+	@Setup
+	public void setup() {
+		byte[] bases = BenchmarkData.randomBases(0, readCount + readLength);
+		reads = new byte[readCount][];
+		packed = new PackedSequence[readCount];
+		for (int i = 0; i < readCount; i++) {
+			// overlapping reads tiled across the random sequence
+			reads[i] = Arrays.copyOfRange(bases, i, i + readLength);
+			packed[i] = new PackedSequence(reads[i], false, false);
+		}
+	}
+
+	@Benchmark
+	public void pack(Blackhole bh) {
+		for (int i = 0; i < reads.length; i++) {
+			bh.consume(new PackedSequence(reads[i], false, false));
+		}
+	}
+
+	@Benchmark
+	public void packReverseComplement(Blackhole bh) {
+		for (int i = 0; i < reads.length; i++) {
+			bh.consume(new PackedSequence(reads[i], true, true));
+		}
+	}
+
+	@Benchmark
+	public long getKmer() {
+		long checksum = 0;
+		for (int i = 0; i < packed.length; i++) {
+			for (int j = 0; j + k <= readLength; j++) {
+				checksum += packed[i].getKmer(j, k);
+			}
+		}
+		return checksum;
+	}
+
+	@Benchmark
+	public void unpack(Blackhole bh) {
+		for (int i = 0; i < packed.length; i++) {
+			bh.consume(packed[i].getBytes(0, readLength));
+		}
+	}
+
+	@Benchmark
+	public long overlapMatches() {
+		long checksum = 0;
+		for (int i = 1; i < packed.length; i++) {
+			checksum += PackedSequence.overlapMatches(packed[i - 1], packed[i], 1);
+		}
+		return checksum;
+	}
+}
@@ -0,0 +1,69 @@
+package performancetesting;
+
+import au.edu.wehi.idsv.DirectedEvidence;
+import au.edu.wehi.idsv.DirectedEvidenceOrder;
+import au.edu.wehi.idsv.TestHelper;
+import au.edu.wehi.idsv.debruijn.KmerEncoding;
+import au.edu.wehi.idsv.debruijn.positional.AggregateNodeIterator;
+import au.edu.wehi.idsv.debruijn.positional.EvidenceTracker;
+import au.edu.wehi.idsv.debruijn.positional.KmerPathNode;
+import au.edu.wehi.idsv.debruijn.positional.LeafBubbleCollapseIterator;
+import au.edu.wehi.idsv.debruijn.positional.PathNodeIterator;
+import au.edu.wehi.idsv.debruijn.positional.SupportNodeIterator;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Positional de Bruijn graph construction:
+ * SupportNodeIterator -> AggregateNodeIterator -> PathNodeIterator
+ *
+ * Kmers larger than 32 bases use the 128-bit kmer encoding. Run with
+ * -prof gc to compare the allocation cost against k=25.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PositionalGraphConstructionBenchmark {
+	@Param({ "25", "47", "63" })
+	public int k;
+	@Param({ "16", "64" })
+	public int readsPerBreakend;
+	private List<DirectedEvidence> evidence;
+
+	@Setup
+	public void setup() {
+		BenchmarkData data = new BenchmarkData(0, 100, 400);
+		evidence = data.getEvidence(TestHelper.SES(BenchmarkData.FRAGMENT_SIZE), readsPerBreakend);
+		evidence.sort(DirectedEvidenceOrder.ByStartEnd);
+	}
+
+	private Iterator<KmerPathNode> pathNodeIterator(KmerEncoding encoding) {
+		EvidenceTracker tracker = new EvidenceTracker();
+		SupportNodeIterator supportIt = new SupportNodeIterator(encoding, evidence.iterator(), BenchmarkData.FRAGMENT_SIZE, tracker, false, 0);
+		return new PathNodeIterator(new AggregateNodeIterator(supportIt), 2 * BenchmarkData.READ_LENGTH, encoding);
+	}
+
+	@Benchmark
+	public void pathNodes(Blackhole bh) {
+		Iterator<KmerPathNode> it = pathNodeIterator(KmerEncoding.create(k));
+		while (it.hasNext()) {
+			bh.consume(it.next());
+		}
+	}
+
+	@Benchmark
+	public void collapsedPathNodes(Blackhole bh) {
+		KmerEncoding encoding = KmerEncoding.create(k);
+		Iterator<KmerPathNode> it = new LeafBubbleCollapseIterator(pathNodeIterator(encoding), encoding, 2 * BenchmarkData.READ_LENGTH, 2);
+		while (it.hasNext()) {
+			bh.consume(it.next());
+		}
+	}
+}
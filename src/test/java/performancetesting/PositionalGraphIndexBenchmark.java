@@ -0,0 +1,103 @@
+package performancetesting;
+
+import au.edu.wehi.idsv.debruijn.positional.KmerPathNode;
+import au.edu.wehi.idsv.debruijn.positional.optimiseddatastructures.KmerNodeByFirstStartKmerSet;
+import au.edu.wehi.idsv.debruijn.positional.optimiseddatastructures.KmerNodeByFirstStartKmerSlidingWindowSet;
+import au.edu.wehi.idsv.debruijn.positional.optimiseddatastructures.KmerNodeByFirstStartKmerTreeSet;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the NonReferenceContigAssembler positional graph index implementations
+ * by replaying the add/first/iterate/flush access pattern of a dense region.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PositionalGraphIndexBenchmark {
+	@Param({ "TreeSet", "SlidingWindow" })
+	public String implementation;
+	/**
+	 * Number of graph nodes starting at each position
+	 */
+	@Param({ "64" })
+	public int nodesPerPosition;
+	public int positions = 16384;
+	public int retainWidth = 1000;
+	public int flushWidth = 300;
+	private List<List<KmerPathNode>> nodesByPosition;
+
+	@Setup
+	public void setup() {
+		Random r = new Random(0);
+		nodesByPosition = new ArrayList<>(positions);
+		for (int i = 0; i < positions; i++) {
+			List<KmerPathNode> list = new ArrayList<>(nodesPerPosition);
+			for (int j = 0; j < nodesPerPosition; j++) {
+				list.add(new KmerPathNode(r.nextLong(), i, i + r.nextInt(8), r.nextInt(8) == 0, 1));
+			}
+			nodesByPosition.add(list);
+		}
+	}
+
+	private KmerNodeByFirstStartKmerSet<KmerPathNode> create() {
+		switch (implementation) {
+			case "TreeSet":
+				return new KmerNodeByFirstStartKmerTreeSet<>();
+			case "SlidingWindow":
+				return new KmerNodeByFirstStartKmerSlidingWindowSet<>(12);
+			default:
+				throw new IllegalArgumentException(implementation);
+		}
+	}
+
+	@Benchmark
+	public void denseRegionReplay(Blackhole bh) {
+		KmerNodeByFirstStartKmerSet<KmerPathNode> graph = create();
+		List<KmerPathNode> toFlush = new ArrayList<>();
+		for (int position = 0; position < positions; position++) {
+			for (KmerPathNode n : nodesByPosition.get(position)) {
+				graph.add(n);
+			}
+			bh.consume(graph.first());
+			// down-weight the most recently loaded nodes
+			Iterator<KmerPathNode> it = graph.descendingIterator();
+			for (int i = 0; i < nodesPerPosition && it.hasNext(); i++) {
+				bh.consume(it.next());
+			}
+			if (graph.first().firstStart() + retainWidth + flushWidth < position) {
+				int flushBefore = position - retainWidth;
+				toFlush.clear();
+				for (KmerPathNode n : graph) {
+					if (n.firstStart() >= flushBefore) break;
+					toFlush.add(n);
+				}
+				graph.removeAll(toFlush);
+			}
+		}
+		bh.consume(graph.size());
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options opt = new OptionsBuilder()
+				.include(PositionalGraphIndexBenchmark.class.getSimpleName())
+				.resultFormat(ResultFormatType.JSON)
+				.result("PositionalGraphIndexBenchmark.json")
+				.build();
+		new Runner(opt).run();
+	}
+}
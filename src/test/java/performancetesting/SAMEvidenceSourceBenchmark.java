@@ -0,0 +1,121 @@
+package performancetesting;
+
+import au.edu.wehi.idsv.*;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMFileWriter;
+import htsjdk.samtools.SAMFileWriterFactory;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordCoordinateComparator;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.util.CloseableIterator;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversion of BAM records to DirectedEvidence
+ *
+ * The blacklist is a synthetic bed with the given number of 1bp intervals
+ * evenly spaced across every contig so each read performs a blacklist lookup
+ * against a populated interval index. Split reads exercise the SA tag
+ * processing of both the primary and supplementary alignments.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SAMEvidenceSourceBenchmark {
+	@Param({ "64" })
+	public int readsPerBreakend;
+	@Param({ "0", "1000" })
+	public int blacklistIntervals;
+	@Param({ "0", "16" })
+	public int splitReadsPerBreakend;
+	private File workingDirectory;
+	private SAMEvidenceSource ses;
+	private int readCount;
+
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class ReadCounter {
+		public long reads;
+		@Setup(Level.Iteration)
+		public void reset() {
+			reads = 0;
+		}
+	}
+
+	@Setup
+	public void setup() throws IOException {
+		workingDirectory = Files.createTempDir();
+		File bam = new File(workingDirectory, "benchmark.bam");
+		BenchmarkData data = new BenchmarkData(0, 100, 400);
+		List<SAMRecord> reads = data.getReads(readsPerBreakend);
+		reads.addAll(data.getSplitReads(splitReadsPerBreakend));
+		reads.sort(new SAMRecordCoordinateComparator());
+		readCount = reads.size();
+		SAMFileHeader header = TestHelper.getHeader();
+		header.setSortOrder(SAMFileHeader.SortOrder.coordinate);
+		try (SAMFileWriter writer = new SAMFileWriterFactory().setCreateIndex(true).makeBAMWriter(header, true, bam)) {
+			for (SAMRecord r : reads) {
+				writer.addAlignment(r);
+			}
+		}
+		ProcessingContext pc = new ProcessingContext(new FileSystemContext(workingDirectory, 500000), TestHelper.SMALL_FA_FILE, TestHelper.SMALL_FA,
+				Lists.newArrayList(), TestHelper.getConfig(workingDirectory));
+		if (blacklistIntervals > 0) {
+			File bed = new File(workingDirectory, "blacklist.bed");
+			writeBlacklist(bed, pc.getDictionary());
+			pc.setBlacklist(bed);
+		}
+		ses = new SAMEvidenceSource(pc, bam, null, 0);
+		ses.ensureMetrics();
+	}
+
+	private void writeBlacklist(File bed, SAMSequenceDictionary dictionary) throws IOException {
+		long genomeLength = dictionary.getReferenceLength();
+		try (BufferedWriter writer = java.nio.file.Files.newBufferedWriter(bed.toPath(), StandardCharsets.US_ASCII)) {
+			for (SAMSequenceRecord seq : dictionary.getSequences()) {
+				int intervals = (int)(blacklistIntervals * (long)seq.getSequenceLength() / genomeLength);
+				for (int i = 0; i < intervals; i++) {
+					int pos = (int)((long)i * seq.getSequenceLength() / intervals);
+					writer.write(String.format("%s\t%d\t%d\n", seq.getSequenceName(), pos, pos + 1));
+				}
+			}
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		FileUtils.deleteDirectory(workingDirectory);
+	}
+
+	@Benchmark
+	public void toDirectedEvidence(Blackhole bh) {
+		try (CloseableIterator<DirectedEvidence> it = ses.iterator(SAMEvidenceSource.EvidenceSortOrder.SAMRecordStartPosition)) {
+			while (it.hasNext()) {
+				bh.consume(it.next());
+			}
+		}
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public void readsPerSecond(Blackhole bh, ReadCounter counter) {
+		toDirectedEvidence(bh);
+		counter.reads += readCount;
+	}
+}
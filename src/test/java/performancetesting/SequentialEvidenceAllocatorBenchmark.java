@@ -0,0 +1,48 @@
+package performancetesting;
+
+import au.edu.wehi.idsv.*;
+import au.edu.wehi.idsv.TestHelper.StubSAMEvidenceSource;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Allocation of evidence to variant calls
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SequentialEvidenceAllocatorBenchmark {
+	@Param({ "16", "64" })
+	public int readsPerBreakend;
+	private ProcessingContext pc;
+	private List<DirectedEvidence> evidence;
+	private List<VariantContextDirectedEvidence> calls;
+
+	@Setup
+	public void setup() {
+		pc = TestHelper.getContext();
+		pc.getVariantCallingParameters().minScore = 0;
+		StubSAMEvidenceSource ses = new StubSAMEvidenceSource(pc, null, 0, 0, BenchmarkData.FRAGMENT_SIZE);
+		ses.evidence.addAll(new BenchmarkData(0, 100, 400).getEvidence(ses, readsPerBreakend));
+		evidence = ses.evidence;
+		AggregateEvidenceSource es = new AggregateEvidenceSource(pc, ImmutableList.of(ses), null, SAMEvidenceSource.EvidenceSortOrder.EvidenceStartPosition);
+		calls = Lists.newArrayList(new VariantCallIterator(es));
+		calls.sort(VariantContextDirectedEvidence.ByBreakendStartEnd);
+	}
+
+	@Benchmark
+	public void allocate(Blackhole bh) {
+		SequentialEvidenceAllocator allocator = new SequentialEvidenceAllocator(pc, calls.iterator(), evidence.iterator(), ImmutableList.<DirectedEvidence>of().iterator(), BenchmarkData.FRAGMENT_SIZE, true);
+		while (allocator.hasNext()) {
+			bh.consume(allocator.next());
+		}
+	}
+}